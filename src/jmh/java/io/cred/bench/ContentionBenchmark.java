@@ -0,0 +1,100 @@
+package io.cred.bench;
+
+import io.cred.IKeyStore;
+import io.cred.core.ColumnKeyStore;
+import io.cred.exception.KeyAlreadyExistsException;
+import io.cred.exception.KeyDoesNotExistsException;
+import io.cred.model.Entry;
+import io.cred.model.ResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Concurrent reads and writes on keys shared by all threads (SAME: a hot set of a few keys, so threads pile up on
+// the same lock stripes) versus keys owned by one thread (DISJOINT). Scale the thread count with -t 1, 2, 4 ...
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ContentionBenchmark {
+
+    private static final int TABLE_SIZE = 100_000;
+    private static final int HOT_KEYS = 16;
+    private static final int COLUMNS = 4;
+    private static final int CARDINALITY = 64;
+
+    @Param({"SAME", "DISJOINT"})
+    String keys;
+
+    IKeyStore keyStore;
+    String[] projection;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keyStore = new ColumnKeyStore();
+        Fixtures.populate(keyStore, TABLE_SIZE, COLUMNS, CARDINALITY);
+        projection = Fixtures.columnNames(COLUMNS);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+        int thread;
+        int threads;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams params) {
+            thread = params.getThreadIndex();
+            threads = params.getThreadCount();
+        }
+
+        int next(String mode) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if ("SAME".equals(mode)) {
+                return random.nextInt(HOT_KEYS);
+            }
+            return thread + random.nextInt(TABLE_SIZE / threads) * threads;
+        }
+    }
+
+    @Benchmark
+    public ResultSet get(ThreadKeys threadKeys) {
+        return keyStore.get(Fixtures.TABLE, Fixtures.key(threadKeys.next(keys)), projection);
+    }
+
+    // with shared keys another thread may delete or re-insert in between, the failed half still took the stripe
+    @Benchmark
+    public void deleteAndReinsert(ThreadKeys threadKeys, Blackhole blackhole) {
+        int row = threadKeys.next(keys);
+        String key = Fixtures.key(row);
+        List<Entry> entries = Fixtures.row(row, COLUMNS, CARDINALITY);
+        try {
+            keyStore.delete(Fixtures.TABLE, key);
+        } catch (KeyDoesNotExistsException e) {
+            blackhole.consume(e);
+        }
+        try {
+            keyStore.putAll(Fixtures.TABLE, key, entries);
+        } catch (KeyAlreadyExistsException e) {
+            blackhole.consume(e);
+        }
+    }
+}
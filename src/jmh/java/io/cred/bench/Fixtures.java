@@ -0,0 +1,58 @@
+package io.cred.bench;
+
+import io.cred.IKeyStore;
+import io.cred.core.TableRegistry;
+import io.cred.model.Entry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Shared table setup: rows key_0..key_(size-1), columns c0..c(columns-1). Every column holds
+// "v" + (row % cardinality), so a search on one value matches size / cardinality rows.
+final class Fixtures {
+
+    static final String TABLE = "bench";
+
+    private Fixtures() {
+    }
+
+    static String key(int row) {
+        return "key_" + row;
+    }
+
+    static String[] columnNames(int columns) {
+        String[] names = new String[columns];
+        for (int c = 0; c < columns; c++) {
+            names[c] = "c" + c;
+        }
+        return names;
+    }
+
+    static List<Entry> row(int row, int columns, int cardinality) {
+        List<Entry> entries = new ArrayList<>(columns);
+        String value = "v" + (row % cardinality);
+        for (int c = 0; c < columns; c++) {
+            entries.add(new Entry("c" + c, value));
+        }
+        return entries;
+    }
+
+    // the registry is process wide, every trial starts from an empty one
+    static void populate(IKeyStore keyStore, int size, int columns, int cardinality) {
+        TableRegistry.clear();
+        keyStore.createTable(TABLE);
+        Map<String, List<Entry>> batch = new LinkedHashMap<>();
+        for (int row = 0; row < size; row++) {
+            batch.put(key(row), row(row, columns, cardinality));
+            if (batch.size() == 4096) {
+                keyStore.putBatch(TABLE, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            keyStore.putBatch(TABLE, batch);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.cred.bench;
+
+import io.cred.IKeyStore;
+import io.cred.core.ColumnKeyStore;
+import io.cred.model.Entry;
+import io.cred.model.ResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Point reads and secondary index lookups against a pre-populated table
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+    @Param({"10000", "1000000"})
+    int tableSize;
+
+    @Param({"1", "8", "32"})
+    int columns;
+
+    @Param({"16", "10000"})
+    int cardinality;
+
+    IKeyStore keyStore;
+    String[] projection;
+    String[] allColumns;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keyStore = new ColumnKeyStore();
+        Fixtures.populate(keyStore, tableSize, columns, cardinality);
+        allColumns = Fixtures.columnNames(columns);
+        projection = new String[]{"c0"};
+    }
+
+    @Benchmark
+    public ResultSet getOneColumn() {
+        return keyStore.get(Fixtures.TABLE, Fixtures.key(ThreadLocalRandom.current().nextInt(tableSize)), projection);
+    }
+
+    @Benchmark
+    public ResultSet getAllColumns() {
+        return keyStore.get(Fixtures.TABLE, Fixtures.key(ThreadLocalRandom.current().nextInt(tableSize)), allColumns);
+    }
+
+    @Benchmark
+    public ResultSet getMissingKey() {
+        return keyStore.get(Fixtures.TABLE, "missing", projection);
+    }
+
+    @Benchmark
+    public List<String> searchKeys() {
+        return keyStore.search(Fixtures.TABLE, new Entry("c0", "v" + ThreadLocalRandom.current().nextInt(cardinality)));
+    }
+
+    @Benchmark
+    public ResultSet searchRows() {
+        return keyStore.search(Fixtures.TABLE, new Entry("c0", "v" + ThreadLocalRandom.current().nextInt(cardinality)), projection);
+    }
+}
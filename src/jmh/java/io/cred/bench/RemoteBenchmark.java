@@ -0,0 +1,83 @@
+package io.cred.bench;
+
+import io.cred.client.RemoteKeyStore;
+import io.cred.core.ColumnKeyStore;
+import io.cred.model.ResultSet;
+import io.cred.server.KeyStoreServer;
+import io.cred.server.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Point reads through KeyStoreServer over loopback, one client connection. unpipelined waits for every response
+// before sending the next request, pipelined keeps PIPELINE_DEPTH requests in flight; both count single gets.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RemoteBenchmark {
+
+    private static final int PIPELINE_DEPTH = 64;
+
+    @Param({"10000"})
+    int tableSize;
+
+    @Param({"1", "8"})
+    int columns;
+
+    KeyStoreServer server;
+    RemoteKeyStore keyStore;
+    String[] projection;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = KeyStoreServer.start(new ColumnKeyStore(), ServerConfig.of(0));
+        keyStore = RemoteKeyStore.connect("localhost", server.getPort());
+        Fixtures.populate(keyStore, tableSize, columns, 16);
+        projection = Fixtures.columnNames(columns);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        keyStore.close();
+        server.close();
+    }
+
+    @Benchmark
+    public ResultSet unpipelined() {
+        return keyStore.get(Fixtures.TABLE, Fixtures.key(ThreadLocalRandom.current().nextInt(tableSize)), projection);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public int pipelined() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        @SuppressWarnings("unchecked")
+        CompletableFuture<ResultSet>[] responses = new CompletableFuture[PIPELINE_DEPTH];
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            responses[i] = keyStore.getAsync(Fixtures.TABLE, Fixtures.key(random.nextInt(tableSize)), projection);
+        }
+        int rows = 0;
+        for (CompletableFuture<ResultSet> response : responses) {
+            rows += response.join().getRows().size();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,95 @@
+package io.cred.bench;
+
+import io.cred.IKeyStore;
+import io.cred.core.ColumnKeyStore;
+import io.cred.model.Entry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Inserts of fresh keys on top of a pre-populated table, and delete + re-insert of existing keys.
+// The store is insert only, so delete is measured as part of the churn round trip.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({"10000", "1000000"})
+    int tableSize;
+
+    @Param({"1", "8", "32"})
+    int columns;
+
+    @Param({"16", "10000"})
+    int cardinality;
+
+    IKeyStore keyStore;
+    final AtomicInteger nextKey = new AtomicInteger();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        keyStore = new ColumnKeyStore();
+        Fixtures.populate(keyStore, tableSize, columns, cardinality);
+        nextKey.set(tableSize);
+    }
+
+    // every thread owns the pre-populated keys congruent to its index, so churn never races on a key
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+        int thread;
+        int threads;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams params) {
+            thread = params.getThreadIndex();
+            threads = params.getThreadCount();
+        }
+
+        int next(int tableSize) {
+            int row = thread + (cursor++ * threads);
+            if (row >= tableSize) {
+                cursor = 1;
+                row = thread;
+            }
+            return row;
+        }
+    }
+
+    @Benchmark
+    public void put() {
+        int row = nextKey.getAndIncrement();
+        keyStore.put(Fixtures.TABLE, Fixtures.key(row), new Entry("c0", "v" + (row % cardinality)));
+    }
+
+    @Benchmark
+    public void putAll() {
+        int row = nextKey.getAndIncrement();
+        keyStore.putAll(Fixtures.TABLE, Fixtures.key(row), Fixtures.row(row, columns, cardinality));
+    }
+
+    @Benchmark
+    public void deleteAndReinsert(ThreadKeys keys) {
+        int row = keys.next(tableSize);
+        List<Entry> entries = Fixtures.row(row, columns, cardinality);
+        keyStore.delete(Fixtures.TABLE, Fixtures.key(row));
+        keyStore.putAll(Fixtures.TABLE, Fixtures.key(row), entries);
+    }
+}
@@ -1,9 +1,19 @@
 package io.cred;
 
+import io.cred.model.Aggregate;
+import io.cred.model.AggregateResult;
+import io.cred.model.BatchResult;
 import io.cred.model.Entry;
+import io.cred.model.Predicate;
 import io.cred.model.ResultSet;
+import io.cred.model.ScanCursor;
+import io.cred.model.TableConfig;
+import io.cred.model.TableSnapshot;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 // For smart Client - we can
 //    1. find hash of key
@@ -11,32 +21,82 @@ import java.util.List;
 //    3. This can also be done directly from each node that will redirect request to correct node.
 //            Benefit: Can have dumb clients. Isolate logic from client.
 
-
-// Improvements
-// 1. Make get query paginated
-// 2. Line 30
-
 public interface IKeyStore {
 
     boolean createTable(String name);
 
-    // Currently support insert only not upsert. Can modify to support update
+    boolean createTable(String name, TableConfig config);
+
+    // Insert only, an existing key is rejected, see update and upsert
     void put(String tableName, String key, Entry value);
 
-    // Currently support insert only not upsert. Can modify to support update
+    // Insert only, an existing key is rejected, see update and upsert
     void putAll(String tableName, String key, List<Entry> value);
 
+    // Row expiring ttlMillis from now: reads stop returning it at once, a background sweeper removes it and its
+    // secondary index entries shortly after
+    void put(String tableName, String key, Entry value, long ttlMillis);
+
+    void putAll(String tableName, String key, List<Entry> value, long ttlMillis);
+
+    // Changes the given columns of an existing key, other columns keep their values
+    void update(String tableName, String key, List<Entry> value);
+
+    // update when the key exists, insert otherwise
+    void upsert(String tableName, String key, List<Entry> value);
+
+    // Bulk ingest of many keys: validation, row id reservation and index updates are done per batch instead of per row.
+    // Rows failing (existing key, invalid datatype) are reported in the result, the remaining rows are inserted
+    BatchResult putBatch(String tableName, Map<String, List<Entry>> rows);
+
+    // Streaming bulk ingest, rows are consumed and inserted batchSize rows at a time
+    BatchResult putBatch(String tableName, Iterator<Map.Entry<String, List<Entry>>> rows, int batchSize);
+
     // get required columns only as there can be many column and end user will require only few columns basis usecase
-    // if still user need to get all rows, without passing required columns, we need to store some key metadata DS, that help in identifying
-    // only the non null values, instead of doing full search
     ResultSet get(String tableName, String Key, String [] columns);
 
+    // every populated column of the row, tables keep per row which columns are set so this does not search all of them
+    ResultSet get(String tableName, String key);
+
+    // Multi get: all keys are read in one call, column at a time, rows are returned in the order of keys
+    ResultSet getAll(String tableName, Collection<String> keys, String [] columns);
+
     void delete(String tableName, String key);
 
+    // Read view of the table as of now, unaffected by later writes. Close it when done, old row versions are
+    // retained while it is open
+    TableSnapshot snapshot(String tableName);
+
     // Seach all relevent keys for secondary index search
     List<String> search(String tableName, Entry entry);
 
     // Secondary Search: fetch required columns only as there can be many column and end user will require only few columns basis usecase
     ResultSet search(String tableName, Entry entry, String [] columns);
 
+    // Multi attribute secondary search, predicates are AND-ed (use Predicate.or/and to nest), e.g.
+    //     search("cities", eq("status", "ACTIVE"), lt("latitude", 0.0), like("name", "ja%"))
+    // The store drives with the most selective indexed predicate and checks the others on its rows only, so only
+    // the matching rows are ever read
+    List<String> search(String tableName, Predicate... predicates);
+
+    ResultSet search(String tableName, String [] columns, Predicate... predicates);
+
+    // Range search over the ordered index of an attribute, rows come back in value order. from/to are inclusive,
+    // null leaves that side open. Attributes not declared in TableConfig get their ordered index on first use
+    ResultSet searchRange(String tableName, String attribute, Object from, Object to, String [] columns);
+
+    ResultSet searchRange(String tableName, String attribute, Object from, Object to, String [] columns, int limit);
+
+    // count/sum/min/max/avg of a column computed inside the store, over the rows matching filter (all rows when null)
+    // and per value of the groupBy attribute when not null. Only COUNT is allowed on non numeric columns
+    AggregateResult aggregate(String tableName, String column, Aggregate function, Predicate filter, String groupBy);
+
+    // Paginated scan of keys between fromKey (inclusive) and toKey (exclusive) in key order, null bounds are open.
+    // Rows are read lazily one page at a time; the cursor's continuation token resumes the scan in a later call
+    ScanCursor scan(String tableName, String fromKey, String toKey, String [] columns, int pageSize);
+
+    ScanCursor scanPrefix(String tableName, String prefix, String [] columns, int pageSize);
+
+    ScanCursor resumeScan(String tableName, String continuationToken, String [] columns, int pageSize);
+
 }
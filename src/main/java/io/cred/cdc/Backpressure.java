@@ -0,0 +1,16 @@
+package io.cred.cdc;
+
+// What happens when a subscriber falls a whole ring behind the writers, SPILL unless configured otherwise
+public enum Backpressure {
+    // writers wait for the subscriber before reusing a slot it has not consumed, so a slow handler slows down
+    // writes to the table; only for handlers that must hold the writers back. The waiting writer holds the stripe of its key and a version it has not made visible:
+    // every other writer of the table stalls behind that version until the handler catches up, and a handler that
+    // writes to the table it follows, or reads it (e.g. store.get of a key in that stripe), deadlocks on a full
+    // ring. Such handlers need DROP or SPILL
+    BLOCK,
+    // the ring is overwritten, the subscriber skips to the oldest event still held and counts the ones it missed
+    DROP,
+    // a reader thread keeps taking events off the ring and parks what the handler has not taken yet, in memory up
+    // to a bound and in a file beyond it. Writers only wait for that reader, which never waits for the handler
+    SPILL
+}
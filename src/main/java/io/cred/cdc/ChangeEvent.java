@@ -0,0 +1,61 @@
+package io.cred.cdc;
+
+import io.cred.model.Entry;
+
+import java.util.List;
+
+// One change of a table as a subscriber receives it. INSERT carries the row, UPDATE the columns written, DELETE
+// no entries; a row removed because its ttl passed is a DELETE too
+public class ChangeEvent {
+
+    public enum Type {
+        INSERT, UPDATE, DELETE
+    }
+
+    // position in the table's change stream, gapless from 1 on
+    private final long sequence;
+    private final Type type;
+    private final String key;
+    private final List<Entry> entries;
+    // MVCC version of the write, a snapshot at this version or later includes the change
+    private final long version;
+    private final long publishedAtMillis;
+
+    public ChangeEvent(long sequence, Type type, String key, List<Entry> entries, long version, long publishedAtMillis) {
+        this.sequence = sequence;
+        this.type = type;
+        this.key = key;
+        this.entries = entries;
+        this.version = version;
+        this.publishedAtMillis = publishedAtMillis;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getPublishedAtMillis() {
+        return publishedAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return sequence + " " + type + " " + key + " " + entries;
+    }
+}
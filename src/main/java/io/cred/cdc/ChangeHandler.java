@@ -0,0 +1,11 @@
+package io.cred.cdc;
+
+import java.util.List;
+
+// Consumer of a subscription, called from the subscription's own thread with the events in sequence order. An
+// exception ends the subscription, see Subscription#getFailure
+@FunctionalInterface
+public interface ChangeHandler {
+
+    void onChanges(List<ChangeEvent> events);
+}
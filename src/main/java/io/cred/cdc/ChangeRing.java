@@ -0,0 +1,234 @@
+package io.cred.cdc;
+
+import io.cred.model.Entry;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Change stream of one table: a bounded ring of slots allocated up front, which the table's writers publish into
+// while they hold the key's stripe and subscriptions read on threads of their own.
+//
+// A writer claims the next sequence with a CAS on the cursor, fills the slot the sequence maps to and publishes it
+// by writing the sequence into the slot last. Writers of different stripes so publish side by side without a lock,
+// allocating only the immutable copy of the entries, and a reader only takes a slot whose sequence is the one it
+// expects. It checks the
+// sequence again after copying the slot out, a slot reused meanwhile was overwritten. Slots are only reused once
+// every BLOCK and SPILL subscription consumed them; DROP subscriptions can be lapped, see Backpressure.
+public class ChangeRing {
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+    // subscribe from the next change on
+    public static final long LATEST = -1;
+    // sequence of a slot while a writer fills it
+    private static final long WRITING = Long.MIN_VALUE;
+    private static final int BLOCKED_SPINS = 128;
+    private static final long BLOCKED_PARK_NANOS = 20_000;
+
+    private final String tableName;
+    private final Slot[] slots;
+    private final int mask;
+    // last sequence claimed by a writer, it may still be filling the slot
+    private final AtomicLong cursor = new AtomicLong();
+    // lowest sequence every gating subscription has consumed when last looked at, writers only look again once
+    // they would reuse a slot past it
+    private final AtomicLong gatingSequence = new AtomicLong(Long.MAX_VALUE);
+    // copy on write, changed under subscriptionLock
+    private volatile Subscription[] subscriptions = new Subscription[0];
+    private final ReentrantLock subscriptionLock = new ReentrantLock();
+    // subscriptions parked waiting for events, writers only wake them when there are any
+    final AtomicInteger sleepers = new AtomicInteger();
+
+    // capacity is rounded up to a power of two
+    public ChangeRing(String tableName, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive " + capacity);
+        }
+        this.tableName = tableName;
+        int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            // as if the lap before the first had been published
+            slots[i] = new Slot(i == 0 ? 0 : i - size);
+        }
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public long getLastSequence() {
+        return cursor.get();
+    }
+
+    // Called by the table with the key's stripe held once the write is applied, so the events of a key are in the
+    // order its writes were applied. Under BLOCK it parks there while the ring is full, see Backpressure. Returns the
+    // sequence of the event
+    public long publish(ChangeEvent.Type type, String key, List<Entry> entries, long version) {
+        // the caller may reuse its list, events handed to subscribers must not change under them
+        List<Entry> copy = List.copyOf(entries);
+        long now = System.currentTimeMillis();
+        long current;
+        long sequence;
+        do {
+            current = cursor.get();
+            sequence = current + 1;
+            if (sequence - slots.length > gatingSequence.get()) {
+                awaitConsumed(sequence - slots.length);
+            }
+        } while (!cursor.compareAndSet(current, sequence));
+
+        Slot slot = slots[(int) (sequence & mask)];
+        // the writer of the previous lap may still be filling the slot
+        long previous = sequence - slots.length;
+        while (slot.sequence != previous) {
+            Thread.onSpinWait();
+        }
+        slot.sequence = WRITING;
+        VarHandle.storeStoreFence();
+        slot.type = type;
+        slot.key = key;
+        slot.entries = copy;
+        slot.version = version;
+        slot.publishedAtMillis = now;
+        slot.sequence = sequence;
+
+        if (sleepers.get() > 0) {
+            for (Subscription subscription : subscriptions) {
+                subscription.wake();
+            }
+        }
+        return sequence;
+    }
+
+    // the writer waits, stripe held, until the slowest gating subscription consumed the slot's last lap
+    private void awaitConsumed(long sequence) {
+        int spins = 0;
+        while (true) {
+            long cached = gatingSequence.get();
+            long consumed = Long.MAX_VALUE;
+            for (Subscription subscription : subscriptions) {
+                if (subscription.gatesWriters()) {
+                    consumed = Math.min(consumed, subscription.getConsumedSequence());
+                }
+            }
+            // a subscription registered meanwhile lowered the cached sequence, it is not raised over it
+            gatingSequence.compareAndSet(cached, consumed);
+            if (consumed >= sequence) {
+                return;
+            }
+            if (++spins < BLOCKED_SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+            }
+        }
+    }
+
+    // Copies up to max events following after into events, stopping at the first slot not published yet. Returns
+    // whether the event following the copied ones was overwritten before it was read
+    boolean read(long after, int max, List<ChangeEvent> events) {
+        for (long next = after + 1; events.size() < max; next++) {
+            Slot slot = slots[(int) (next & mask)];
+            long sequence = slot.sequence;
+            if (sequence != next) {
+                return sequence > next;
+            }
+            ChangeEvent event = new ChangeEvent(next, slot.type, slot.key, slot.entries, slot.version, slot.publishedAtMillis);
+            VarHandle.loadLoadFence();
+            if (slot.sequence != next) {
+                return true;
+            }
+            events.add(event);
+        }
+        return false;
+    }
+
+    // publish time of the event, -1 when the ring does not hold it
+    long publishedAtMillis(long sequence) {
+        Slot slot = slots[(int) (sequence & mask)];
+        if (slot.sequence != sequence) {
+            return -1;
+        }
+        long publishedAtMillis = slot.publishedAtMillis;
+        VarHandle.loadLoadFence();
+        return slot.sequence == sequence ? publishedAtMillis : -1;
+    }
+
+    // oldest sequence that can still be read, later ones may be overwritten by the time they are
+    long oldestSequence() {
+        return Math.max(1, cursor.get() - slots.length + 1);
+    }
+
+    // Delivers the events from fromSequence on (LATEST for the ones published from now) to handler on threads of
+    // the subscription. fromSequence has to be one the ring still holds; a subscription starting at the oldest one
+    // may still lose events writers were overwriting at that moment, they count as dropped. A BLOCK handler must not
+    // read or write the table it follows, see Backpressure
+    public Subscription subscribe(long fromSequence, ChangeHandler handler, SubscriptionConfig config) {
+        subscriptionLock.lock();
+        try {
+            long last = cursor.get();
+            long after = fromSequence == LATEST ? last : fromSequence - 1;
+            if (after < 0 || after > last) {
+                throw new IllegalArgumentException("Change " + fromSequence + " of table " + tableName + " not published, last is " + last);
+            }
+            if (after < last - slots.length) {
+                throw new IllegalArgumentException("Change " + fromSequence + " of table " + tableName + " is no longer held, oldest is " + oldestSequence());
+            }
+            Subscription subscription = new Subscription(this, after, handler, config);
+            Subscription[] grown = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+            grown[grown.length - 1] = subscription;
+            subscriptions = grown;
+            if (subscription.gatesWriters()) {
+                gatingSequence.accumulateAndGet(after, Math::min);
+            }
+            subscription.start();
+            return subscription;
+        } finally {
+            subscriptionLock.unlock();
+        }
+    }
+
+    void remove(Subscription subscription) {
+        subscriptionLock.lock();
+        try {
+            subscriptions = Arrays.stream(subscriptions).filter(s -> s != subscription).toArray(Subscription[]::new);
+        } finally {
+            subscriptionLock.unlock();
+        }
+    }
+
+    public List<Subscription> getSubscriptions() {
+        return Arrays.asList(subscriptions);
+    }
+
+    // ends every subscription
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    // Fields are written between the WRITING marker and the sequence, readers validate the sequence around them
+    private static final class Slot {
+        volatile long sequence;
+        ChangeEvent.Type type;
+        String key;
+        List<Entry> entries;
+        long version;
+        long publishedAtMillis;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package io.cred.cdc;
+
+import io.cred.exception.SpillException;
+import io.cred.storage.SpillStore;
+import io.cred.util.BinaryCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A consumer of a ChangeRing. A reader thread copies batches of events off the ring and hands them to the handler,
+// under SPILL it parks them in an overflow instead and a second thread feeds the handler from there. The getters
+// are the subscription's lag metrics.
+public class Subscription implements AutoCloseable {
+
+    // bound on a park while the ring is idle, writers normally wake the reader right away
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final ChangeRing ring;
+    private final ChangeHandler handler;
+    private final SubscriptionConfig config;
+    private final Thread reader;
+    // SPILL only
+    private final Overflow overflow;
+    private final Thread dispatcher;
+
+    // last sequence taken off the ring, writers wait for it unless the subscription drops
+    private volatile long consumedSequence;
+    // last sequence the handler returned from
+    private volatile long deliveredSequence;
+    // publish time of that event
+    private volatile long deliveredAtMillis;
+    private final AtomicLong deliveredEvents = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+
+    Subscription(ChangeRing ring, long after, ChangeHandler handler, SubscriptionConfig config) {
+        this.ring = ring;
+        this.handler = handler;
+        this.config = config;
+        this.consumedSequence = after;
+        this.deliveredSequence = after;
+        this.deliveredAtMillis = System.currentTimeMillis();
+        this.reader = new Thread(this::read, "keystore-cdc-" + ring.getTableName());
+        this.reader.setDaemon(true);
+        if (config.getBackpressure() == Backpressure.SPILL) {
+            this.overflow = new Overflow();
+            this.dispatcher = new Thread(this::dispatch, "keystore-cdc-handler-" + ring.getTableName());
+            this.dispatcher.setDaemon(true);
+        } else {
+            this.overflow = null;
+            this.dispatcher = null;
+        }
+    }
+
+    void start() {
+        reader.start();
+        if (dispatcher != null) {
+            dispatcher.start();
+        }
+    }
+
+    boolean gatesWriters() {
+        return config.getBackpressure() != Backpressure.DROP && !closed;
+    }
+
+    void wake() {
+        if (sleeping) {
+            LockSupport.unpark(reader);
+        }
+    }
+
+    private void read() {
+        try {
+            while (!closed) {
+                List<ChangeEvent> events = new ArrayList<>(Math.min(config.getMaxBatch(), 1024));
+                long after = consumedSequence;
+                boolean lapped = ring.read(after, config.getMaxBatch(), events);
+                if (events.isEmpty()) {
+                    if (lapped) {
+                        // skipped to the oldest event still held, anything older is gone
+                        long oldest = ring.oldestSequence();
+                        droppedEvents.addAndGet(oldest - 1 - after);
+                        consumedSequence = oldest - 1;
+                    } else {
+                        idle(after);
+                    }
+                    continue;
+                }
+                if (overflow != null) {
+                    overflow.add(events);
+                } else {
+                    deliver(events);
+                }
+                consumedSequence = events.get(events.size() - 1).getSequence();
+            }
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void idle(long after) {
+        sleeping = true;
+        ring.sleepers.incrementAndGet();
+        try {
+            // a writer publishing after this check sees the sleeper and unparks
+            if (ring.getLastSequence() <= after && !closed) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        } finally {
+            ring.sleepers.decrementAndGet();
+            sleeping = false;
+        }
+    }
+
+    private void dispatch() {
+        try {
+            while (!closed) {
+                List<ChangeEvent> events = overflow.take(config.getMaxBatch());
+                if (!events.isEmpty()) {
+                    deliver(events);
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void deliver(List<ChangeEvent> events) {
+        handler.onChanges(events);
+        ChangeEvent last = events.get(events.size() - 1);
+        deliveredAtMillis = last.getPublishedAtMillis();
+        deliveredSequence = last.getSequence();
+        deliveredEvents.addAndGet(events.size());
+    }
+
+    private void fail(RuntimeException e) {
+        failure = e;
+        closed = true;
+        ring.remove(this);
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+    }
+
+    // last sequence handed to the handler
+    public long getDeliveredSequence() {
+        return deliveredSequence;
+    }
+
+    public long getConsumedSequence() {
+        return consumedSequence;
+    }
+
+    public long getDeliveredEvents() {
+        return deliveredEvents.get();
+    }
+
+    // events the ring overwrote before they were read, see ChangeRing#subscribe for the ones that are not DROP
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    // events taken off the ring but not handed to the handler yet, SPILL only
+    public long getSpilledEvents() {
+        return overflow == null ? 0 : overflow.size();
+    }
+
+    // events published and not handed to the handler yet
+    public long getLagEvents() {
+        return Math.max(0, ring.getLastSequence() - deliveredSequence);
+    }
+
+    // age of the oldest event not handed to the handler yet, 0 when caught up
+    public long getLagMillis() {
+        long delivered = deliveredSequence;
+        if (ring.getLastSequence() <= delivered) {
+            return 0;
+        }
+        long publishedAtMillis = overflow == null ? -1 : overflow.oldestPublishedAtMillis();
+        if (publishedAtMillis < 0) {
+            publishedAtMillis = ring.publishedAtMillis(delivered + 1);
+        }
+        // no longer held, at least as old as the last event delivered
+        if (publishedAtMillis < 0) {
+            publishedAtMillis = deliveredAtMillis;
+        }
+        return Math.max(0, System.currentTimeMillis() - publishedAtMillis);
+    }
+
+    // why the subscription ended, null while it runs or after close
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Stops delivering, a batch the handler is in still completes. Called from the handler it returns at once
+    @Override
+    public void close() {
+        closed = true;
+        ring.remove(this);
+        LockSupport.unpark(reader);
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        try {
+            if (Thread.currentThread() != reader) {
+                reader.join();
+            }
+            if (dispatcher != null && Thread.currentThread() != dispatcher) {
+                dispatcher.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (overflow != null) {
+            overflow.close();
+        }
+    }
+
+    // Events the reader took off the ring for a SPILL handler, oldest first: up to spillMemoryEvents in memory,
+    // then in a spill file. Once the file is in use later events go there too, so the order holds; it is
+    // deleted when the handler drained it
+    private final class Overflow {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition added = lock.newCondition();
+        private final ArrayDeque<ChangeEvent> memory = new ArrayDeque<>();
+        // offset in file, publish time: per spilled event
+        private final ArrayDeque<long[]> spilled = new ArrayDeque<>();
+        private SpillStore file;
+
+        void add(List<ChangeEvent> events) {
+            lock.lock();
+            try {
+                for (ChangeEvent event : events) {
+                    if (file == null && memory.size() < config.getSpillMemoryEvents()) {
+                        memory.add(event);
+                    } else {
+                        spill(event);
+                    }
+                }
+                added.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<ChangeEvent> take(int max) throws InterruptedException {
+            lock.lock();
+            try {
+                while (memory.isEmpty() && spilled.isEmpty() && !closed) {
+                    added.await();
+                }
+                List<ChangeEvent> events = new ArrayList<>(Math.min(max, memory.size() + spilled.size()));
+                while (events.size() < max && !memory.isEmpty()) {
+                    events.add(memory.poll());
+                }
+                while (events.size() < max && !spilled.isEmpty()) {
+                    events.add(unspill(spilled.poll()[0]));
+                }
+                if (spilled.isEmpty() && file != null) {
+                    file.close();
+                    file = null;
+                }
+                return events;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long size() {
+            lock.lock();
+            try {
+                return memory.size() + spilled.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long oldestPublishedAtMillis() {
+            lock.lock();
+            try {
+                if (!memory.isEmpty()) {
+                    return memory.peek().getPublishedAtMillis();
+                }
+                return spilled.isEmpty() ? -1 : spilled.peek()[1];
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void spill(ChangeEvent event) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                if (file == null) {
+                    Path directory = config.getSpillDirectory();
+                    file = new SpillStore(directory == null ? Files.createTempFile("keystore-cdc-" + ring.getTableName(), ".spill")
+                            : Files.createTempFile(directory, "keystore-cdc-" + ring.getTableName(), ".spill"));
+                }
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeLong(event.getSequence());
+                out.writeByte(event.getType().ordinal());
+                BinaryCodec.writeString(out, event.getKey());
+                BinaryCodec.writeEntries(out, event.getEntries());
+                out.writeLong(event.getVersion());
+                out.writeLong(event.getPublishedAtMillis());
+                out.flush();
+            } catch (IOException e) {
+                throw new SpillException("Unable to spill changes of table " + ring.getTableName(), e);
+            }
+            spilled.add(new long[]{file.append(bytes.toByteArray()), event.getPublishedAtMillis()});
+        }
+
+        private ChangeEvent unspill(long offset) {
+            byte[] record = file.read(offset);
+            file.release(record.length);
+            ByteBuffer in = ByteBuffer.wrap(record);
+            long sequence = in.getLong();
+            ChangeEvent.Type type = ChangeEvent.Type.values()[in.get()];
+            String key = BinaryCodec.readString(in);
+            return new ChangeEvent(sequence, type, key, BinaryCodec.readEntries(in), in.getLong(), in.getLong());
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                memory.clear();
+                spilled.clear();
+                if (file != null) {
+                    file.close();
+                    file = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.cred.cdc;
+
+import java.nio.file.Path;
+
+public class SubscriptionConfig {
+
+    // a handler never holds up the table's writers unless BLOCK is asked for
+    private Backpressure backpressure = Backpressure.SPILL;
+    private int maxBatch = 256;
+    private int spillMemoryEvents = 64 * 1024;
+    private Path spillDirectory;
+
+    public static SubscriptionConfig defaults() {
+        return new SubscriptionConfig();
+    }
+
+    public SubscriptionConfig withBackpressure(Backpressure backpressure) {
+        this.backpressure = backpressure;
+        return this;
+    }
+
+    // most events handed to one ChangeHandler call
+    public SubscriptionConfig withMaxBatch(int maxBatch) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive " + maxBatch);
+        }
+        this.maxBatch = maxBatch;
+        return this;
+    }
+
+    // SPILL only: events parked in memory before they go to a file, and the directory of that file (the temporary
+    // directory when not set)
+    public SubscriptionConfig withSpill(int memoryEvents, Path directory) {
+        if (memoryEvents < 0) {
+            throw new IllegalArgumentException("Spill memory must not be negative " + memoryEvents);
+        }
+        this.spillMemoryEvents = memoryEvents;
+        this.spillDirectory = directory;
+        return this;
+    }
+
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    public int getSpillMemoryEvents() {
+        return spillMemoryEvents;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+}
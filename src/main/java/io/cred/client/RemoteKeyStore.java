@@ -0,0 +1,512 @@
+package io.cred.client;
+
+import io.cred.IKeyStore;
+import io.cred.exception.KeyAlreadyExistsException;
+import io.cred.exception.RemoteKeyStoreException;
+import io.cred.model.Aggregate;
+import io.cred.model.AggregateResult;
+import io.cred.model.BatchResult;
+import io.cred.model.Entry;
+import io.cred.model.Predicate;
+import io.cred.model.ResultSet;
+import io.cred.model.Row;
+import io.cred.model.ScanCursor;
+import io.cred.model.TableConfig;
+import io.cred.model.TableSnapshot;
+import io.cred.server.Protocol;
+import io.cred.util.BinaryCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// IKeyStore talking to a KeyStoreServer over one TCP connection. Requests are written as soon as they are made and
+// matched to their responses by request id by a reader thread, so any number of threads share the connection and
+// their requests are pipelined. The *Async methods pipeline from a single thread: issue many, then join.
+// Store exceptions (TableDoesNotExistsException, KeyAlreadyExistsException, ...) are raised with their own type,
+// connection failures as RemoteKeyStoreException.
+public class RemoteKeyStore implements IKeyStore, AutoCloseable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong requestIds = new AtomicLong();
+    private final ConcurrentHashMap<Long, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+    private final Thread reader;
+    private volatile RemoteKeyStoreException failure;
+
+    private RemoteKeyStore(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        this.reader = new Thread(this::readResponses, "remote-keystore-reader-" + socket.getPort());
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    public static RemoteKeyStore connect(String host, int port) {
+        try {
+            Socket socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port));
+            return new RemoteKeyStore(socket);
+        } catch (IOException e) {
+            throw new RemoteKeyStoreException("Unable to connect to " + host + ":" + port, e);
+        }
+    }
+
+    @Override
+    public boolean createTable(String name) {
+        return call(Protocol.CREATE_TABLE, out -> {
+            BinaryCodec.writeString(out, name);
+            out.writeBoolean(false);
+        }).get() != 0;
+    }
+
+    @Override
+    public boolean createTable(String name, TableConfig config) {
+        return call(Protocol.CREATE_TABLE, out -> {
+            BinaryCodec.writeString(out, name);
+            out.writeBoolean(true);
+            config.write(out);
+        }).get() != 0;
+    }
+
+    @Override
+    public void put(String tableName, String key, Entry value) {
+        putAll(tableName, key, Collections.singletonList(value));
+    }
+
+    @Override
+    public void putAll(String tableName, String key, List<Entry> value) {
+        await(putAllAsync(tableName, key, value));
+    }
+
+    public CompletableFuture<Void> putAllAsync(String tableName, String key, List<Entry> value) {
+        return send(Protocol.PUT, out -> {
+            BinaryCodec.writeString(out, tableName);
+            BinaryCodec.writeString(out, key);
+            BinaryCodec.writeEntries(out, value);
+            out.writeLong(0);
+        }).thenApply(response -> null);
+    }
+
+    @Override
+    public void put(String tableName, String key, Entry value, long ttlMillis) {
+        putAll(tableName, key, Collections.singletonList(value), ttlMillis);
+    }
+
+    @Override
+    public void putAll(String tableName, String key, List<Entry> value, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Ttl must be positive " + ttlMillis);
+        }
+        call(Protocol.PUT, out -> {
+            BinaryCodec.writeString(out, tableName);
+            BinaryCodec.writeString(out, key);
+            BinaryCodec.writeEntries(out, value);
+            out.writeLong(ttlMillis);
+        });
+    }
+
+    @Override
+    public void update(String tableName, String key, List<Entry> value) {
+        call(Protocol.UPDATE, out -> {
+            BinaryCodec.writeString(out, tableName);
+            BinaryCodec.writeString(out, key);
+            BinaryCodec.writeEntries(out, value);
+        });
+    }
+
+    @Override
+    public void upsert(String tableName, String key, List<Entry> value) {
+        call(Protocol.UPSERT, out -> {
+            BinaryCodec.writeString(out, tableName);
+            BinaryCodec.writeString(out, key);
+            BinaryCodec.writeEntries(out, value);
+        });
+    }
+
+    @Override
+    public BatchResult putBatch(String tableName, Map<String, List<Entry>> rows) {
+        return Protocol.readBatchResult(call(Protocol.PUT_BATCH, out -> {
+            BinaryCodec.writeString(out, tableName);
+            Protocol.writeRows(out, rows);
+        }));
+    }
+
+    // rows are sent batchSize at a time, every batch is one request
+    @Override
+    public BatchResult putBatch(String tableName, Iterator<Map.Entry<String, List<Entry>>> rows, int batchSize) {
+        BatchResult result = new BatchResult();
+        Map<String, List<Entry>> batch = new LinkedHashMap<>();
+        while (rows.hasNext()) {
+            Map.Entry<String, List<Entry>> row = rows.next();
+            if (batch.containsKey(row.getKey())) {
+                result.addFailure(row.getKey(), new KeyAlreadyExistsException("Key {} already exists " + row.getKey()));
+                continue;
+            }
+            batch.put(row.getKey(), row.getValue());
+            if (batch.size() >= batchSize) {
+                result.merge(putBatch(tableName, batch));
+                batch = new LinkedHashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            result.merge(putBatch(tableName, batch));
+        }
+        return result;
+    }
+
+    @Override
+    public ResultSet get(String tableName, String key, String[] columns) {
+        return await(getAsync(tableName, key, columns));
+    }
+
+    // sent as a GET without columns
+    @Override
+    public ResultSet get(String tableName, String key) {
+        return await(getAsync(tableName, key, null));
+    }
+
+    public CompletableFuture<ResultSet> getAsync(String tableName, String key, String[] columns) {
+        return send(Protocol.GET, out -> {
+            BinaryCodec.writeString(out, tableName);
+            BinaryCodec.writeString(out, key);
+            Protocol.writeStrings(out, columns);
+        }).thenApply(Protocol::readResultSet);
+    }
+
+    @Override
+    public ResultSet getAll(String tableName, Collection<String> keys, String[] columns) {
+        return Protocol.readResultSet(call(Protocol.GET_ALL, out -> {
+            BinaryCodec.writeString(out, tableName);
+            Protocol.writeKeys(out, new ArrayList<>(keys));
+            Protocol.writeStrings(out, columns);
+        }));
+    }
+
+    @Override
+    public void delete(String tableName, String key) {
+        call(Protocol.DELETE, out -> {
+            BinaryCodec.writeString(out, tableName);
+            BinaryCodec.writeString(out, key);
+        });
+    }
+
+    // the snapshot stays open on the server until closed or the connection ends
+    @Override
+    public TableSnapshot snapshot(String tableName) {
+        ByteBuffer response = call(Protocol.SNAPSHOT, out -> BinaryCodec.writeString(out, tableName));
+        long snapshotId = response.getLong();
+        return new RemoteSnapshot(snapshotId, response.getLong());
+    }
+
+    @Override
+    public List<String> search(String tableName, Entry entry) {
+        return Protocol.readKeys(searchEntry(tableName, entry, null));
+    }
+
+    @Override
+    public ResultSet search(String tableName, Entry entry, String[] columns) {
+        return Protocol.readResultSet(searchEntry(tableName, entry, columns));
+    }
+
+    private ByteBuffer searchEntry(String tableName, Entry entry, String[] columns) {
+        return call(Protocol.SEARCH_ENTRY, out -> {
+            BinaryCodec.writeString(out, tableName);
+            BinaryCodec.writeString(out, entry.getName());
+            BinaryCodec.writeValue(out, entry.getValue());
+            Protocol.writeStrings(out, columns);
+        });
+    }
+
+    @Override
+    public List<String> search(String tableName, Predicate... predicates) {
+        return Protocol.readKeys(search(tableName, predicates, null));
+    }
+
+    @Override
+    public ResultSet search(String tableName, String[] columns, Predicate... predicates) {
+        return Protocol.readResultSet(search(tableName, predicates, columns));
+    }
+
+    private ByteBuffer search(String tableName, Predicate[] predicates, String[] columns) {
+        return call(Protocol.SEARCH, out -> {
+            BinaryCodec.writeString(out, tableName);
+            Protocol.writePredicates(out, predicates);
+            Protocol.writeStrings(out, columns);
+        });
+    }
+
+    @Override
+    public ResultSet searchRange(String tableName, String attribute, Object from, Object to, String[] columns) {
+        return searchRange(tableName, attribute, from, to, columns, -1);
+    }
+
+    @Override
+    public ResultSet searchRange(String tableName, String attribute, Object from, Object to, String[] columns, int limit) {
+        return Protocol.readResultSet(call(Protocol.SEARCH_RANGE, out -> {
+            BinaryCodec.writeString(out, tableName);
+            BinaryCodec.writeString(out, attribute);
+            BinaryCodec.writeValue(out, from);
+            BinaryCodec.writeValue(out, to);
+            Protocol.writeStrings(out, columns);
+            out.writeInt(limit);
+        }));
+    }
+
+    @Override
+    public AggregateResult aggregate(String tableName, String column, Aggregate function, Predicate filter, String groupBy) {
+        return Protocol.readAggregateResult(call(Protocol.AGGREGATE, out -> {
+            BinaryCodec.writeString(out, tableName);
+            BinaryCodec.writeString(out, column);
+            out.writeByte(function.ordinal());
+            out.writeBoolean(filter != null);
+            if (filter != null) {
+                Protocol.writePredicate(out, filter);
+            }
+            Protocol.writeNullableString(out, groupBy);
+        }));
+    }
+
+    @Override
+    public ScanCursor scan(String tableName, String fromKey, String toKey, String[] columns, int pageSize) {
+        return new RemoteScanCursor(tableName, columns, pageSize, call(Protocol.SCAN, out -> {
+            BinaryCodec.writeString(out, tableName);
+            Protocol.writeNullableString(out, fromKey);
+            Protocol.writeNullableString(out, toKey);
+            Protocol.writeStrings(out, columns);
+            out.writeInt(pageSize);
+        }));
+    }
+
+    @Override
+    public ScanCursor scanPrefix(String tableName, String prefix, String[] columns, int pageSize) {
+        return new RemoteScanCursor(tableName, columns, pageSize, call(Protocol.SCAN_PREFIX, out -> {
+            BinaryCodec.writeString(out, tableName);
+            BinaryCodec.writeString(out, prefix);
+            Protocol.writeStrings(out, columns);
+            out.writeInt(pageSize);
+        }));
+    }
+
+    @Override
+    public ScanCursor resumeScan(String tableName, String continuationToken, String[] columns, int pageSize) {
+        return new RemoteScanCursor(tableName, columns, pageSize, resumePage(tableName, continuationToken, columns, pageSize));
+    }
+
+    private ByteBuffer resumePage(String tableName, String continuationToken, String[] columns, int pageSize) {
+        return call(Protocol.RESUME_SCAN, out -> {
+            BinaryCodec.writeString(out, tableName);
+            BinaryCodec.writeString(out, continuationToken);
+            Protocol.writeStrings(out, columns);
+            out.writeInt(pageSize);
+        });
+    }
+
+    // requests in flight, waiting for their response
+    public int getPendingRequests() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        fail(new RemoteKeyStoreException("Remote key store is closed", null));
+        try {
+            socket.close();
+            reader.join();
+        } catch (IOException ignored) {
+            // closing anyway
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ByteBuffer call(byte opcode, Protocol.Payload payload) {
+        return await(send(opcode, payload));
+    }
+
+    // the future completes on the reader thread
+    private CompletableFuture<ByteBuffer> send(byte opcode, Protocol.Payload payload) {
+        long requestId = requestIds.incrementAndGet();
+        ByteBuffer frame = Protocol.frame(requestId, opcode, payload);
+        CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+        pending.put(requestId, response);
+        writeLock.lock();
+        try {
+            // checked after registering: a failure either sees this request in pending or is seen here
+            if (failure != null) {
+                throw failure;
+            }
+            out.write(frame.array(), 0, frame.limit());
+            out.flush();
+        } catch (IOException e) {
+            fail(new RemoteKeyStoreException("Unable to send request to " + socket.getRemoteSocketAddress(), e));
+        } catch (RemoteKeyStoreException e) {
+            pending.remove(requestId);
+            response.completeExceptionally(e);
+        } finally {
+            writeLock.unlock();
+        }
+        return response;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void readResponses() {
+        try {
+            while (true) {
+                int length = in.readInt();
+                long requestId = in.readLong();
+                byte status = in.readByte();
+                byte[] body = new byte[length - Protocol.HEADER_BYTES];
+                in.readFully(body);
+                CompletableFuture<ByteBuffer> response = pending.remove(requestId);
+                if (response == null) {
+                    continue;
+                }
+                if (status == Protocol.OK) {
+                    response.complete(ByteBuffer.wrap(body));
+                } else {
+                    response.completeExceptionally(Protocol.readError(ByteBuffer.wrap(body)));
+                }
+            }
+        } catch (IOException e) {
+            fail(new RemoteKeyStoreException("Connection to " + socket.getRemoteSocketAddress() + " closed", e));
+        } catch (RuntimeException e) {
+            // a response that can not be decoded leaves the stream out of step, nothing after it can be read
+            fail(new RemoteKeyStoreException("Invalid response from " + socket.getRemoteSocketAddress(), e));
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // failed anyway
+            }
+        }
+    }
+
+    private void fail(RemoteKeyStoreException error) {
+        if (failure == null) {
+            failure = error;
+        }
+        for (Long requestId : pending.keySet()) {
+            CompletableFuture<ByteBuffer> response = pending.remove(requestId);
+            if (response != null) {
+                response.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private class RemoteSnapshot extends TableSnapshot {
+        private final long snapshotId;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        RemoteSnapshot(long snapshotId, long version) {
+            super(version);
+            this.snapshotId = snapshotId;
+        }
+
+        @Override
+        public ResultSet get(String key, String[] columns) {
+            return getAll(Collections.singletonList(key), columns);
+        }
+
+        @Override
+        public ResultSet getAll(Collection<String> keys, String[] columns) {
+            return Protocol.readResultSet(call(Protocol.SNAPSHOT_GET, out -> {
+                out.writeLong(snapshotId);
+                Protocol.writeKeys(out, new ArrayList<>(keys));
+                Protocol.writeStrings(out, columns);
+            }));
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true) && failure == null) {
+                call(Protocol.SNAPSHOT_CLOSE, out -> out.writeLong(snapshotId));
+            }
+        }
+    }
+
+    // Pages are fetched on demand. Every page comes with the token resuming at its start, the token of a page
+    // handed out in part is rebuilt from it with ScanCursor#resumeAfter
+    private class RemoteScanCursor extends ScanCursor {
+        private final String tableName;
+        private final String[] columns;
+        private final int pageSize;
+        private String pageToken;
+        private Iterator<Row> page;
+        private String lastKey;
+        private String nextToken;
+
+        RemoteScanCursor(String tableName, String[] columns, int pageSize, ByteBuffer firstPage) {
+            super(columns, pageSize);
+            this.tableName = tableName;
+            this.columns = columns;
+            this.pageSize = pageSize;
+            load(firstPage);
+        }
+
+        private void load(ByteBuffer response) {
+            pageToken = Protocol.readNullableString(response);
+            page = Protocol.readResultSet(response).getRows().iterator();
+            nextToken = Protocol.readNullableString(response);
+            lastKey = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && nextToken != null) {
+                load(resumePage(tableName, nextToken, columns, pageSize));
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Row row = page.next();
+            lastKey = row.getKey();
+            return row;
+        }
+
+        @Override
+        public String getContinuationToken() {
+            if (!hasNext()) {
+                return null;
+            }
+            return lastKey == null ? pageToken : ScanCursor.resumeAfter(pageToken, lastKey);
+        }
+    }
+}
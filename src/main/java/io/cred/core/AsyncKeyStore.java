@@ -0,0 +1,303 @@
+package io.cred.core;
+
+import io.cred.IKeyStore;
+import io.cred.model.Aggregate;
+import io.cred.model.AggregateResult;
+import io.cred.model.BatchResult;
+import io.cred.model.Entry;
+import io.cred.model.Predicate;
+import io.cred.model.ResultSet;
+import io.cred.model.TableConfig;
+import io.cred.model.TableSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Asynchronous front of an IKeyStore, every call returns a CompletableFuture completed on the executor.
+//
+// Single row puts without ttl are not run one by one: they are queued per table and a single drainer per table
+// takes whatever has queued up (at most maxBatch rows) and writes it with one putBatch, so validation, row id
+// reservation, index updates and the journal append and fsync are done once per group. Nothing waits for a
+// group to fill, under low load a batch is a single row; the more callers arrive at once the larger the groups.
+// A put whose key is already in the group being built goes into the next group, so two puts of one key still
+// see each other. Rows rejected by the batch fail their own future only.
+//
+// Calls are not ordered against each other unless the caller waits for the future of the first one. Pass an
+// executor running virtual threads (Executors.newVirtualThreadPerTaskExecutor() on JDK 21) to serve thousands of
+// callers; the store itself blocks on j.u.c locks only, which do not pin the carrier thread.
+public class AsyncKeyStore implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_BATCH = 1024;
+
+    private final IKeyStore delegate;
+    private final Executor executor;
+    // shut down on close, null when the executor was passed in
+    private final ExecutorService ownedExecutor;
+    private final int maxBatch;
+    private final ConcurrentHashMap<String, WriteQueue> writeQueues = new ConcurrentHashMap<>();
+
+    public AsyncKeyStore(IKeyStore delegate) {
+        this(delegate, newExecutor(), DEFAULT_MAX_BATCH, true);
+    }
+
+    public AsyncKeyStore(IKeyStore delegate, Executor executor, int maxBatch) {
+        this(delegate, executor, maxBatch, false);
+    }
+
+    private AsyncKeyStore(IKeyStore delegate, Executor executor, int maxBatch, boolean owned) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive " + maxBatch);
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+        this.ownedExecutor = owned ? (ExecutorService) executor : null;
+        this.maxBatch = maxBatch;
+    }
+
+    private static ExecutorService newExecutor() {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "async-keystore-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<Boolean> createTable(String name) {
+        return CompletableFuture.supplyAsync(() -> delegate.createTable(name), executor);
+    }
+
+    public CompletableFuture<Boolean> createTable(String name, TableConfig config) {
+        return CompletableFuture.supplyAsync(() -> delegate.createTable(name, config), executor);
+    }
+
+    public CompletableFuture<Void> put(String tableName, String key, Entry value) {
+        return putAll(tableName, key, Collections.singletonList(value));
+    }
+
+    // coalesced with concurrent puts to the same table, see class comment
+    public CompletableFuture<Void> putAll(String tableName, String key, List<Entry> values) {
+        return writeQueues.computeIfAbsent(tableName, WriteQueue::new).submit(key, values);
+    }
+
+    public CompletableFuture<Void> put(String tableName, String key, Entry value, long ttlMillis) {
+        return CompletableFuture.runAsync(() -> delegate.put(tableName, key, value, ttlMillis), executor);
+    }
+
+    public CompletableFuture<Void> putAll(String tableName, String key, List<Entry> values, long ttlMillis) {
+        return CompletableFuture.runAsync(() -> delegate.putAll(tableName, key, values, ttlMillis), executor);
+    }
+
+    public CompletableFuture<Void> update(String tableName, String key, List<Entry> values) {
+        return CompletableFuture.runAsync(() -> delegate.update(tableName, key, values), executor);
+    }
+
+    public CompletableFuture<Void> upsert(String tableName, String key, List<Entry> values) {
+        return CompletableFuture.runAsync(() -> delegate.upsert(tableName, key, values), executor);
+    }
+
+    public CompletableFuture<BatchResult> putBatch(String tableName, Map<String, List<Entry>> rows) {
+        return CompletableFuture.supplyAsync(() -> delegate.putBatch(tableName, rows), executor);
+    }
+
+    public CompletableFuture<ResultSet> get(String tableName, String key, String[] columns) {
+        return CompletableFuture.supplyAsync(() -> delegate.get(tableName, key, columns), executor);
+    }
+
+    public CompletableFuture<ResultSet> get(String tableName, String key) {
+        return CompletableFuture.supplyAsync(() -> delegate.get(tableName, key), executor);
+    }
+
+    public CompletableFuture<ResultSet> getAll(String tableName, Collection<String> keys, String[] columns) {
+        return CompletableFuture.supplyAsync(() -> delegate.getAll(tableName, keys, columns), executor);
+    }
+
+    public CompletableFuture<Void> delete(String tableName, String key) {
+        return CompletableFuture.runAsync(() -> delegate.delete(tableName, key), executor);
+    }
+
+    public CompletableFuture<TableSnapshot> snapshot(String tableName) {
+        return CompletableFuture.supplyAsync(() -> delegate.snapshot(tableName), executor);
+    }
+
+    public CompletableFuture<List<String>> search(String tableName, Entry entry) {
+        return CompletableFuture.supplyAsync(() -> delegate.search(tableName, entry), executor);
+    }
+
+    public CompletableFuture<ResultSet> search(String tableName, Entry entry, String[] columns) {
+        return CompletableFuture.supplyAsync(() -> delegate.search(tableName, entry, columns), executor);
+    }
+
+    public CompletableFuture<List<String>> search(String tableName, Predicate... predicates) {
+        return CompletableFuture.supplyAsync(() -> delegate.search(tableName, predicates), executor);
+    }
+
+    public CompletableFuture<ResultSet> search(String tableName, String[] columns, Predicate... predicates) {
+        return CompletableFuture.supplyAsync(() -> delegate.search(tableName, columns, predicates), executor);
+    }
+
+    public CompletableFuture<ResultSet> searchRange(String tableName, String attribute, Object from, Object to, String[] columns) {
+        return CompletableFuture.supplyAsync(() -> delegate.searchRange(tableName, attribute, from, to, columns), executor);
+    }
+
+    public CompletableFuture<AggregateResult> aggregate(String tableName, String column, Aggregate function, Predicate filter, String groupBy) {
+        return CompletableFuture.supplyAsync(() -> delegate.aggregate(tableName, column, function, filter, groupBy), executor);
+    }
+
+    // the blocking store underneath, e.g. for scans
+    public IKeyStore getDelegate() {
+        return delegate;
+    }
+
+    // Waits for the queued writes when the executor is owned, then closes the wrapped store. An interrupt stops
+    // the wait, the store is still closed and the interrupt flag is set again on return
+    @Override
+    public void close() {
+        boolean interrupted = false;
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+            try {
+                ownedExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        try {
+            if (delegate instanceof AutoCloseable) {
+                ((AutoCloseable) delegate).close();
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to close " + delegate, e);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class PendingPut {
+        final String key;
+        final List<Entry> values;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingPut(String key, List<Entry> values) {
+            this.key = key;
+            this.values = values;
+        }
+    }
+
+    // Puts of one table. Callers only enqueue; the caller that finds no drainer scheduled schedules one, and the
+    // drainer keeps writing groups until the queue is empty
+    private class WriteQueue {
+        private final String tableName;
+        private final ConcurrentLinkedQueue<PendingPut> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        WriteQueue(String tableName) {
+            this.tableName = tableName;
+        }
+
+        CompletableFuture<Void> submit(String key, List<Entry> values) {
+            PendingPut put = new PendingPut(key, values);
+            queue.add(put);
+            schedule();
+            return put.future;
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                for (PendingPut put; (put = queue.poll()) != null; ) {
+                    put.future.completeExceptionally(e);
+                }
+            }
+        }
+
+        private void drain() {
+            List<PendingPut> deferred = Collections.emptyList();
+            try {
+                while (true) {
+                    Map<String, PendingPut> group = new LinkedHashMap<>();
+                    List<PendingPut> next = new ArrayList<>();
+                    for (PendingPut put : deferred) {
+                        if (group.size() < maxBatch) {
+                            add(group, next, put);
+                        } else {
+                            next.add(put);
+                        }
+                    }
+                    for (PendingPut put; group.size() < maxBatch && (put = queue.poll()) != null; ) {
+                        add(group, next, put);
+                    }
+                    if (group.isEmpty()) {
+                        return;
+                    }
+                    try {
+                        write(group);
+                    } catch (Throwable e) {
+                        // an Error out of the store ends this drainer, none of the puts it took may be left pending
+                        group.values().forEach(put -> put.future.completeExceptionally(e));
+                        next.forEach(put -> put.future.completeExceptionally(e));
+                        throw e;
+                    }
+                    deferred = next;
+                }
+            } finally {
+                scheduled.set(false);
+                // a put enqueued after the last poll found the drainer still scheduled and left it to us
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private void add(Map<String, PendingPut> group, List<PendingPut> next, PendingPut put) {
+            if (group.putIfAbsent(put.key, put) != null) {
+                next.add(put);
+            }
+        }
+
+        private void write(Map<String, PendingPut> group) {
+            Map<String, List<Entry>> rows = new LinkedHashMap<>();
+            group.forEach((key, put) -> rows.put(key, put.values));
+            BatchResult result;
+            try {
+                result = delegate.putBatch(tableName, rows);
+            } catch (RuntimeException e) {
+                group.values().forEach(put -> put.future.completeExceptionally(e));
+                return;
+            }
+            group.forEach((key, put) -> {
+                RuntimeException failure = result.getFailures().get(key);
+                if (failure == null) {
+                    put.future.complete(null);
+                } else {
+                    put.future.completeExceptionally(failure);
+                }
+            });
+        }
+    }
+}
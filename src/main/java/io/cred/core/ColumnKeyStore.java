@@ -1,15 +1,48 @@
 package io.cred.core;
 
 import io.cred.IKeyStore;
+import io.cred.cdc.ChangeHandler;
+import io.cred.cdc.ChangeRing;
+import io.cred.cdc.Subscription;
+import io.cred.cdc.SubscriptionConfig;
+import io.cred.exception.CheckpointException;
+import io.cred.exception.KeyAlreadyExistsException;
 import io.cred.exception.TableDoesNotExistsException;
+import io.cred.model.Aggregate;
+import io.cred.model.AggregateResult;
+import io.cred.model.BatchResult;
 import io.cred.model.Entry;
+import io.cred.model.Predicate;
 import io.cred.model.ResultSet;
+import io.cred.model.ScanCursor;
 import io.cred.model.Table;
+import io.cred.model.TableConfig;
+import io.cred.model.TableSnapshot;
+import io.cred.replication.ReplicationLog;
+import io.cred.util.BinaryCodec;
+import io.cred.util.FileSync;
+import io.cred.wal.WalConfig;
+import io.cred.wal.WalRecord;
+import io.cred.wal.WriteAheadLog;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 
 // Benefits
 // This key store is storing data based on columnar and not row wise.
@@ -20,34 +53,105 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 //Drawbacks
 // Will take more computing resource to write data, as we need write data in each column store.
 
-public class ColumnKeyStore implements IKeyStore {
+// Durability
+// Constructed with a WalConfig the store replays the log into the registry and then journals every createTable,
+// put, putAll and delete before applying it. The registry is process wide, so the log covers every table in it.
+// checkpoint() writes every table as columnar segment files under <wal dir>/checkpoint and truncates the log;
+// a restart maps those segments and only replays the log written after the checkpoint started.
 
-    private final TableRegistry tableRegistry = TableRegistry.of();
+// Replication
+// enableReplication() puts a ReplicationLog in front of the write ahead log: every mutation also gets a sequence
+// numbered record read replicas (ReplicaKeyStore) poll and apply, see io.cred.replication.
+
+// Change data capture
+// subscribe() follows the inserts, updates and deletes of one table as they are applied: the table publishes them
+// into a ring per table and every subscription delivers batches of them on its own threads, see io.cred.cdc.
+
+public class ColumnKeyStore implements IKeyStore, AutoCloseable {
+
+    private final TableRegistry tableRegistry;
     private final ReentrantReadWriteLock tableLock = new ReentrantReadWriteLock();
+    private static final String CHECKPOINT_DIRECTORY = "checkpoint";
+    private static final String MANIFEST_FILE = "MANIFEST";
+    private static final int MANIFEST_MAGIC = 0x4D414E31;
+
+    private final WriteAheadLog writeAheadLog;
+    private final Path checkpointDirectory;
+    private volatile ReplicationLog replicationLog;
 
     public ColumnKeyStore() {
+        this(TableRegistry.of());
+    }
+
+    // in memory store over a registry of its own, e.g. one partition of a ShardedKeyStore
+    public ColumnKeyStore(TableRegistry tableRegistry) {
+        this.tableRegistry = tableRegistry;
+        this.writeAheadLog = null;
+        this.checkpointDirectory = null;
+    }
+
+    // Recovers the tables of the log apart and only then registers them in the default registry, journaled by this
+    // log alone. A table of the same name registered already, e.g. by another store, fails the open: the recovered
+    // one would be dropped and writes to the other one logged here
+    public ColumnKeyStore(WalConfig walConfig) {
+        this.tableRegistry = TableRegistry.of();
+        this.writeAheadLog = WriteAheadLog.open(walConfig);
+        this.checkpointDirectory = walConfig.getDirectory().resolve(CHECKPOINT_DIRECTORY);
+        ColumnKeyStore recovered = new ColumnKeyStore(TableRegistry.isolated());
+        try {
+            long fromSegment = recovered.restore(checkpointDirectory);
+            this.writeAheadLog.replay(fromSegment, recovered::apply);
+            for (Table table : recovered.tableRegistry.tables()) {
+                if (tableRegistry.contains(table.getName())) {
+                    throw new IllegalStateException("Table {} of " + walConfig.getDirectory() + " is already registered " + table.getName());
+                }
+            }
+        } catch (RuntimeException e) {
+            writeAheadLog.close();
+            throw e;
+        }
+        for (Table table : recovered.tableRegistry.tables()) {
+            table.setJournal(writeAheadLog);
+            tableRegistry.register(table);
+        }
     }
 
     @Override
     public boolean createTable(String name) {
+        return createTable(name, TableConfig.defaults());
+    }
+
+    @Override
+    public boolean createTable(String name, TableConfig config) {
+        long sequence = 0;
         this.tableLock.writeLock().lock();
         try {
-            if (!tableRegistry.isPresent(name)) {
-                Table table = new Table(name);
+            if (!tableRegistry.contains(name)) {
+                Table table = new Table(name, config);
+                if (writeAheadLog != null) {
+                    sequence = writeAheadLog.append(WalRecord.createTable(name, config));
+                    table.setJournal(writeAheadLog);
+                }
+                if (replicationLog != null) {
+                    replicationLog.logCreateTable(name, config);
+                    table.setJournal(replicationLog);
+                }
                 tableRegistry.register(table);
-                return true;
+            } else {
+                return false;
             }
         } finally {
             this.tableLock.writeLock().unlock();
         }
-        return false;
+        sync(sequence);
+        return true;
     }
 
     @Override
     public void put(String tableName, String key, Entry value) {
-        Optional<Table> table = this.tableRegistry.getTable(tableName);
+        Optional<Table> table = this.tableRegistry.find(tableName);
         if (table.isPresent()) {
-            table.get().insertRecord(key, Arrays.asList(value));
+            sync(table.get().insertRecord(key, Arrays.asList(value)));
         } else {
             throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
         }
@@ -55,19 +159,116 @@ public class ColumnKeyStore implements IKeyStore {
 
     @Override
     public void putAll(String tableName, String key, List<Entry> values) {
-        Optional<Table> table = this.tableRegistry.getTable(tableName);
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            sync(table.get().insertRecord(key, values));
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public void put(String tableName, String key, Entry value, long ttlMillis) {
+        putAll(tableName, key, Arrays.asList(value), ttlMillis);
+    }
+
+    @Override
+    public void putAll(String tableName, String key, List<Entry> values, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Ttl must be positive " + ttlMillis);
+        }
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            sync(table.get().insertRecord(key, values, System.currentTimeMillis() + ttlMillis));
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public void update(String tableName, String key, List<Entry> values) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            sync(table.get().updateRecord(key, values));
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public void upsert(String tableName, String key, List<Entry> values) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            sync(table.get().upsertRecord(key, values));
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public BatchResult putBatch(String tableName, Map<String, List<Entry>> rows) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
         if (table.isPresent()) {
-            table.get().insertRecord(key, values);
+            BatchResult result = table.get().insertBatch(rows);
+            sync(result.getSequence());
+            return result;
         } else {
             throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
         }
     }
 
+    @Override
+    public BatchResult putBatch(String tableName, Iterator<Map.Entry<String, List<Entry>>> rows, int batchSize) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (!table.isPresent()) {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+        BatchResult result = new BatchResult();
+        Map<String, List<Entry>> batch = new LinkedHashMap<>();
+        while (rows.hasNext()) {
+            Map.Entry<String, List<Entry>> row = rows.next();
+            if (batch.containsKey(row.getKey())) {
+                result.addFailure(row.getKey(), new KeyAlreadyExistsException("Key {} already exists " + row.getKey()));
+                continue;
+            }
+            batch.put(row.getKey(), row.getValue());
+            if (batch.size() >= batchSize) {
+                result.merge(table.get().insertBatch(batch));
+                batch = new LinkedHashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            result.merge(table.get().insertBatch(batch));
+        }
+        sync(result.getSequence());
+        return result;
+    }
+
     @Override
     public ResultSet get(String tableName, String key, String[] columns) {
-        Optional<Table> table = this.tableRegistry.getTable(tableName);
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            return table.get().fetchRecord(Collections.singletonList(key), columns);
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public ResultSet get(String tableName, String key) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            return table.get().fetchRow(key);
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public ResultSet getAll(String tableName, Collection<String> keys, String[] columns) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
         if (table.isPresent()) {
-            return table.get().fetchRecord(Arrays.asList(key), columns);
+            return table.get().fetchRecords(keys, columns);
         } else {
             throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
         }
@@ -75,9 +276,19 @@ public class ColumnKeyStore implements IKeyStore {
 
     @Override
     public void delete(String tableName, String key) {
-        Optional<Table> table = this.tableRegistry.getTable(tableName);
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            sync(table.get().deleteRecord(key));
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public TableSnapshot snapshot(String tableName) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
         if (table.isPresent()) {
-            table.get().deleteRecord(key);
+            return table.get().openSnapshot();
         } else {
             throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
         }
@@ -85,7 +296,7 @@ public class ColumnKeyStore implements IKeyStore {
 
     @Override
     public ResultSet search(String tableName, Entry entry, String[] columns) {
-        Optional<Table> table = this.tableRegistry.getTable(tableName);
+        Optional<Table> table = this.tableRegistry.find(tableName);
         if (table.isPresent()) {
             return table.get().searchBySecondaryIndex(entry, columns);
         } else {
@@ -95,7 +306,7 @@ public class ColumnKeyStore implements IKeyStore {
 
     @Override
     public List<String> search(String tableName, Entry entry) {
-        Optional<Table> table = this.tableRegistry.getTable(tableName);
+        Optional<Table> table = this.tableRegistry.find(tableName);
         if (table.isPresent()) {
             return table.get().searchBySecondaryIndex(entry);
         } else {
@@ -103,4 +314,272 @@ public class ColumnKeyStore implements IKeyStore {
         }
     }
 
+    @Override
+    public List<String> search(String tableName, Predicate... predicates) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            return table.get().searchByPredicates(predicates);
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public ResultSet search(String tableName, String[] columns, Predicate... predicates) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            return table.get().searchByPredicates(columns, predicates);
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public ResultSet searchRange(String tableName, String attribute, Object from, Object to, String[] columns) {
+        return searchRange(tableName, attribute, from, to, columns, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public ResultSet searchRange(String tableName, String attribute, Object from, Object to, String[] columns, int limit) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            return table.get().searchRange(attribute, from, to, columns, limit);
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public AggregateResult aggregate(String tableName, String column, Aggregate function, Predicate filter, String groupBy) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            return table.get().aggregate(column, function, filter, groupBy);
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public ScanCursor scan(String tableName, String fromKey, String toKey, String[] columns, int pageSize) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            return table.get().scan(fromKey, toKey, columns, pageSize);
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public ScanCursor scanPrefix(String tableName, String prefix, String[] columns, int pageSize) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            return table.get().scanPrefix(prefix, columns, pageSize);
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    @Override
+    public ScanCursor resumeScan(String tableName, String continuationToken, String[] columns, int pageSize) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            return ScanCursor.resume(table.get(), continuationToken, columns, pageSize);
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    // waits for the journal to make the write durable, called after the table released its lock stripe
+    private void sync(long sequence) {
+        if (writeAheadLog != null) {
+            writeAheadLog.awaitDurable(sequence);
+        }
+    }
+
+    // Starts journaling every mutation into a replication log keeping the last capacity records, returns the log
+    // already running when called again. Replicas bootstrap from it, so it can be enabled on a loaded store
+    public ReplicationLog enableReplication(int capacity) {
+        this.tableLock.writeLock().lock();
+        try {
+            if (replicationLog == null) {
+                replicationLog = new ReplicationLog(capacity, tableRegistry::tables, writeAheadLog);
+                tableRegistry.tables().forEach(table -> table.setJournal(replicationLog));
+            }
+            return replicationLog;
+        } finally {
+            this.tableLock.writeLock().unlock();
+        }
+    }
+
+    // Change data capture of a table, see io.cred.cdc. Events are published from now on into a ring of capacity
+    // events; the ring already running is returned when called again
+    public ChangeRing enableChangeCapture(String tableName, int capacity) {
+        Optional<Table> table = this.tableRegistry.find(tableName);
+        if (table.isPresent()) {
+            return table.get().enableChangeCapture(capacity);
+        } else {
+            throw new TableDoesNotExistsException("Table {} does not exists " + tableName);
+        }
+    }
+
+    // Follows the changes of a table from fromSequence on (ChangeRing.LATEST for new ones only) with the default
+    // SPILL backpressure, a slow handler falls behind without holding up the writers and may read or write this
+    // table. Change capture is enabled with the default capacity if it was not
+    public Subscription subscribe(String tableName, long fromSequence, ChangeHandler handler) {
+        return subscribe(tableName, fromSequence, handler, SubscriptionConfig.defaults());
+    }
+
+    public Subscription subscribe(String tableName, long fromSequence, ChangeHandler handler, SubscriptionConfig config) {
+        return enableChangeCapture(tableName, ChangeRing.DEFAULT_CAPACITY).subscribe(fromSequence, handler, config);
+    }
+
+    // Replay is idempotent: a put replaces whatever the key held and a delete of a missing key is skipped,
+    // so records already reflected in the registry (e.g. by a checkpoint) can be applied again safely.
+    // Replicas apply the leader's records the same way
+    public void apply(WalRecord record) {
+        Optional<Table> table = this.tableRegistry.find(record.getTableName());
+        switch (record.getType()) {
+            case CREATE_TABLE:
+                if (!table.isPresent()) {
+                    tableRegistry.register(new Table(record.getTableName(), record.getConfig()));
+                }
+                break;
+            case PUT:
+                if (table.isPresent()) {
+                    if (table.get().containsKey(record.getKey())) {
+                        table.get().deleteRecord(record.getKey());
+                    }
+                    table.get().insertRecord(record.getKey(), record.getEntries(), record.getExpiresAtMillis());
+                }
+                break;
+            case DELETE:
+                if (table.isPresent() && table.get().containsKey(record.getKey())) {
+                    table.get().deleteRecord(record.getKey());
+                }
+                break;
+        }
+    }
+
+    // Checkpoints every table into the log directory and truncates the log. Writers are not blocked while the
+    // segments are written: the log is rolled first, the dump is fuzzy, and the records after the roll fix it up.
+    public void checkpoint() {
+        if (writeAheadLog == null) {
+            throw new IllegalStateException("checkpoint() requires a write ahead log, use checkpoint(Path)");
+        }
+        long segment;
+        List<Table> tables;
+        this.tableLock.readLock().lock();
+        try {
+            segment = writeAheadLog.roll();
+            tables = new ArrayList<>(tableRegistry.tables());
+        } finally {
+            this.tableLock.readLock().unlock();
+        }
+        // throws unless the checkpoint is durable, the log is only truncated after that
+        writeCheckpoint(checkpointDirectory, segment, tables);
+        writeAheadLog.deleteSegmentsBefore(segment);
+    }
+
+    // checkpoint without a log: only consistent if no writer runs concurrently
+    public void checkpoint(Path directory) {
+        writeCheckpoint(directory, 0, new ArrayList<>(tableRegistry.tables()));
+    }
+
+    // Registers the tables of a checkpoint, returns the log segment replay has to start from (0 if none)
+    public long restore(Path directory) {
+        Path previous = sibling(directory, ".old");
+        if (!Files.exists(directory) && Files.exists(previous)) {
+            directory = previous;
+        }
+        Path manifest = directory.resolve(MANIFEST_FILE);
+        if (!Files.exists(manifest)) {
+            return 0;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(manifest));
+            if (buffer.getInt() != MANIFEST_MAGIC) {
+                throw new CheckpointException("Corrupt checkpoint manifest " + manifest, null);
+            }
+            long segment = buffer.getLong();
+            int tables = buffer.getInt();
+            for (int i = 0; i < tables; i++) {
+                tableRegistry.register(Table.open(directory.resolve(BinaryCodec.readString(buffer))));
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new CheckpointException("Unable to read checkpoint " + directory, e);
+        }
+    }
+
+    // Tables are dumped into a temporary directory which replaces the previous checkpoint once complete. Files and
+    // directories are forced before the renames and the parent after them, so a checkpoint that returned survives
+    // a power loss and the log it covers can go
+    private void writeCheckpoint(Path directory, long segment, List<Table> tables) {
+        Path temporary = sibling(directory, ".tmp");
+        Path previous = sibling(directory, ".old");
+        try {
+            deleteRecursively(temporary);
+            Files.createDirectories(temporary);
+            tables.forEach(Table::awaitInFlightWrites);
+            List<String> names = new ArrayList<>();
+            for (Table table : tables) {
+                String name = "table-" + names.size();
+                table.checkpoint(temporary.resolve(name));
+                names.add(name);
+            }
+            try (DataOutputStream out = new DataOutputStream(FileSync.newOutputStream(temporary.resolve(MANIFEST_FILE)))) {
+                out.writeInt(MANIFEST_MAGIC);
+                out.writeLong(segment);
+                out.writeInt(names.size());
+                for (String name : names) {
+                    BinaryCodec.writeString(out, name);
+                }
+            }
+            FileSync.syncDirectory(temporary);
+            deleteRecursively(previous);
+            if (Files.exists(directory)) {
+                Files.move(directory, previous, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(temporary, directory, StandardCopyOption.ATOMIC_MOVE);
+            FileSync.syncDirectory(directory.toAbsolutePath().getParent());
+            deleteRecursively(previous);
+        } catch (IOException e) {
+            throw new CheckpointException("Unable to write checkpoint " + directory, e);
+        }
+    }
+
+    private static Path sibling(Path directory, String suffix) {
+        return directory.resolveSibling(directory.getFileName() + suffix);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // The tables stay registered, they are detached from the logs closed here and keep working in memory
+    @Override
+    public void close() {
+        for (Table table : tableRegistry.tables()) {
+            if (table.getChangeRing() != null) {
+                table.getChangeRing().close();
+            }
+            if (writeAheadLog != null) {
+                table.detachJournal(writeAheadLog);
+            }
+            if (replicationLog != null) {
+                table.detachJournal(replicationLog);
+            }
+        }
+        if (writeAheadLog != null) {
+            writeAheadLog.close();
+        }
+    }
+
 }
@@ -0,0 +1,56 @@
+package io.cred.core;
+
+import java.util.Arrays;
+
+// Consistent hash ring over shards 0..shards-1, each placed at virtualNodes points. A key belongs to the first
+// point at or after its hash. The points of a shard only depend on the shard number, so going from n to n+1 shards
+// only moves the keys the new shard's points take over, about 1/(n+1) of them, and shrinking only moves the keys of
+// the removed shards. Immutable, lookups are a binary search over a sorted array.
+final class HashRing {
+
+    private final int shards;
+    private final long[] points;
+    private final int[] owners;
+
+    HashRing(int shards, int virtualNodes) {
+        if (shards <= 0 || virtualNodes <= 0) {
+            throw new IllegalArgumentException("Shards and virtual nodes must be positive " + shards + " " + virtualNodes);
+        }
+        this.shards = shards;
+        long[][] placed = new long[shards * virtualNodes][];
+        for (int shard = 0; shard < shards; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                placed[shard * virtualNodes + node] = new long[]{mix(((long) shard << 32) | node), shard};
+            }
+        }
+        Arrays.sort(placed, (a, b) -> Long.compare(a[0], b[0]));
+        this.points = new long[placed.length];
+        this.owners = new int[placed.length];
+        for (int i = 0; i < placed.length; i++) {
+            points[i] = placed[i][0];
+            owners[i] = (int) placed[i][1];
+        }
+    }
+
+    int shards() {
+        return shards;
+    }
+
+    int shardOf(String key) {
+        int index = Arrays.binarySearch(points, mix(key.hashCode()));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // murmur3 finalizer, spreads String.hashCode's clustered values over the whole ring
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,778 @@
+package io.cred.core;
+
+import io.cred.IKeyStore;
+import io.cred.exception.AttributeDoesNotExistsException;
+import io.cred.exception.KeyAlreadyExistsException;
+import io.cred.exception.KeyDoesNotExistsException;
+import io.cred.model.Aggregate;
+import io.cred.model.AggregateResult;
+import io.cred.model.BatchResult;
+import io.cred.model.Entry;
+import io.cred.model.Predicate;
+import io.cred.model.ResultSet;
+import io.cred.model.Row;
+import io.cred.model.ScanCursor;
+import io.cred.model.Table;
+import io.cred.model.TableConfig;
+import io.cred.model.TableSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+// IKeyStore partitioned over independent in memory ColumnKeyStores (shards), one per core by default. Every table
+// exists in every shard and a key lives in the shard the consistent hash ring assigns it to, so writes to different
+// shards share no lock, version counter, row id allocator or index and write throughput grows with the shards.
+//
+// Key operations go to the owning shard. Table wide reads (search, searchRange, aggregate, scans, snapshots) run on
+// every shard in parallel and the partial results are merged: range results by value, aggregates per group, scans by
+// key. Snapshots are consistent per shard, not across shards.
+//
+// With singleWriter every shard gets a thread that runs all writes to it, callers hand the write over and wait.
+// Writers then never contend on the shard's stripes, at the cost of a thread handoff per write.
+//
+// resize changes the number of shards in place: only the keys whose owner changes on the new ring are moved, the
+// other shards keep their rows. Operations wait while the keys move.
+//
+// Datatypes are checked per shard: the first value of a column routed to a shard fixes its type in that shard only.
+public class ShardedKeyStore implements IKeyStore, AutoCloseable {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+    private static final int MOVE_PAGE_SIZE = 1024;
+
+    private final int virtualNodes;
+    private final boolean singleWriter;
+    // runs the per shard parts of table wide operations, the calling thread takes one part itself
+    private final ExecutorService scatterExecutor;
+    private final ReentrantLock resizeLock = new ReentrantLock();
+    private volatile Layout layout;
+
+    public ShardedKeyStore() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedKeyStore(int shards) {
+        this(shards, DEFAULT_VIRTUAL_NODES, false);
+    }
+
+    public ShardedKeyStore(int shards, int virtualNodes, boolean singleWriter) {
+        HashRing ring = new HashRing(shards, virtualNodes);
+        this.virtualNodes = virtualNodes;
+        this.singleWriter = singleWriter;
+        AtomicInteger threads = new AtomicInteger();
+        this.scatterExecutor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "keystore-scatter-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Shard[] partitions = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            partitions[i] = new Shard(i, singleWriter);
+        }
+        this.layout = new Layout(ring, partitions);
+    }
+
+    public int getShardCount() {
+        return layout.shards.length;
+    }
+
+    @Override
+    public boolean createTable(String name) {
+        return createTable(name, TableConfig.defaults());
+    }
+
+    // memory budgets and off heap capacities of config apply to every shard's table
+    @Override
+    public boolean createTable(String name, TableConfig config) {
+        Layout current = lockAll();
+        try {
+            return scatter(current, store -> store.createTable(name, config)).get(0);
+        } finally {
+            unlockAll(current);
+        }
+    }
+
+    @Override
+    public void put(String tableName, String key, Entry value) {
+        putAll(tableName, key, Arrays.asList(value));
+    }
+
+    @Override
+    public void putAll(String tableName, String key, List<Entry> values) {
+        write(key, store -> {
+            store.putAll(tableName, key, values);
+            return null;
+        });
+    }
+
+    @Override
+    public void put(String tableName, String key, Entry value, long ttlMillis) {
+        putAll(tableName, key, Arrays.asList(value), ttlMillis);
+    }
+
+    @Override
+    public void putAll(String tableName, String key, List<Entry> values, long ttlMillis) {
+        write(key, store -> {
+            store.putAll(tableName, key, values, ttlMillis);
+            return null;
+        });
+    }
+
+    @Override
+    public void update(String tableName, String key, List<Entry> values) {
+        write(key, store -> {
+            store.update(tableName, key, values);
+            return null;
+        });
+    }
+
+    @Override
+    public void upsert(String tableName, String key, List<Entry> values) {
+        write(key, store -> {
+            store.upsert(tableName, key, values);
+            return null;
+        });
+    }
+
+    // the rows are split by shard and the parts inserted in parallel
+    @Override
+    public BatchResult putBatch(String tableName, Map<String, List<Entry>> rows) {
+        Layout current = lockAll();
+        try {
+            List<Map<String, List<Entry>>> parts = new ArrayList<>();
+            for (int i = 0; i < current.shards.length; i++) {
+                parts.add(new LinkedHashMap<>());
+            }
+            rows.forEach((key, entries) -> parts.get(current.ring.shardOf(key)).put(key, entries));
+            BatchResult result = new BatchResult();
+            gather(current.shards.length, shard -> current.shards[shard].write(store -> store.putBatch(tableName, parts.get(shard))))
+                    .forEach(result::merge);
+            return result;
+        } finally {
+            unlockAll(current);
+        }
+    }
+
+    @Override
+    public BatchResult putBatch(String tableName, Iterator<Map.Entry<String, List<Entry>>> rows, int batchSize) {
+        BatchResult result = new BatchResult();
+        Map<String, List<Entry>> batch = new LinkedHashMap<>();
+        while (rows.hasNext()) {
+            Map.Entry<String, List<Entry>> row = rows.next();
+            if (batch.containsKey(row.getKey())) {
+                result.addFailure(row.getKey(), new KeyAlreadyExistsException("Key {} already exists " + row.getKey()));
+                continue;
+            }
+            batch.put(row.getKey(), row.getValue());
+            if (batch.size() >= batchSize) {
+                result.merge(putBatch(tableName, batch));
+                batch = new LinkedHashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            result.merge(putBatch(tableName, batch));
+        }
+        return result;
+    }
+
+    @Override
+    public ResultSet get(String tableName, String key, String[] columns) {
+        return read(key, store -> store.get(tableName, key, columns));
+    }
+
+    @Override
+    public ResultSet get(String tableName, String key) {
+        return read(key, store -> store.get(tableName, key));
+    }
+
+    @Override
+    public ResultSet getAll(String tableName, Collection<String> keys, String[] columns) {
+        Layout current = lockAll();
+        try {
+            int[] owners = new int[keys.size()];
+            List<List<String>> parts = partition(current.ring, keys, owners);
+            List<ResultSet> results = gather(current.shards.length, shard -> parts.get(shard).isEmpty() ? new ResultSet()
+                    : current.shards[shard].store.getAll(tableName, parts.get(shard), columns));
+            return interleave(owners, results);
+        } finally {
+            unlockAll(current);
+        }
+    }
+
+    @Override
+    public void delete(String tableName, String key) {
+        write(key, store -> {
+            store.delete(tableName, key);
+            return null;
+        });
+    }
+
+    @Override
+    public TableSnapshot snapshot(String tableName) {
+        Layout current = lockAll();
+        try {
+            TableSnapshot[] snapshots = new TableSnapshot[current.shards.length];
+            try {
+                for (int i = 0; i < snapshots.length; i++) {
+                    snapshots[i] = current.shards[i].store.snapshot(tableName);
+                }
+            } catch (RuntimeException e) {
+                Arrays.stream(snapshots).filter(Objects::nonNull).forEach(TableSnapshot::close);
+                throw e;
+            }
+            return new ShardedSnapshot(current.ring, snapshots);
+        } finally {
+            unlockAll(current);
+        }
+    }
+
+    @Override
+    public List<String> search(String tableName, Entry entry) {
+        return concat(scatterAll(store -> store.search(tableName, entry)));
+    }
+
+    @Override
+    public ResultSet search(String tableName, Entry entry, String[] columns) {
+        return concatRows(scatterAll(store -> store.search(tableName, entry, columns)));
+    }
+
+    @Override
+    public List<String> search(String tableName, Predicate... predicates) {
+        return concat(scatterAll(store -> store.search(tableName, predicates)));
+    }
+
+    @Override
+    public ResultSet search(String tableName, String[] columns, Predicate... predicates) {
+        return concatRows(scatterAll(store -> store.search(tableName, columns, predicates)));
+    }
+
+    @Override
+    public ResultSet searchRange(String tableName, String attribute, Object from, Object to, String[] columns) {
+        return searchRange(tableName, attribute, from, to, columns, Integer.MAX_VALUE);
+    }
+
+    // every shard returns its first limit rows in value order, the merge keeps the first limit overall
+    @Override
+    public ResultSet searchRange(String tableName, String attribute, Object from, Object to, String[] columns, int limit) {
+        // the merge needs the attribute's value, it is read along and dropped again when not asked for
+        boolean extra = !Arrays.asList(columns).contains(attribute);
+        String[] read = columns;
+        if (extra) {
+            read = Arrays.copyOf(columns, columns.length + 1);
+            read[columns.length] = attribute;
+        }
+        String[] readColumns = read;
+        List<Row> rows = new ArrayList<>();
+        scatterAll(store -> store.searchRange(tableName, attribute, from, to, readColumns, limit)).stream()
+                .filter(Objects::nonNull)
+                .forEach(part -> rows.addAll(part.getRows()));
+        rows.sort((a, b) -> compareValues(valueOf(a, attribute), valueOf(b, attribute)));
+        ResultSet resultSet = new ResultSet();
+        for (Row row : rows.subList(0, Math.min(limit, rows.size()))) {
+            resultSet.addRow(extra ? new Row(row.getKey(), row.getEntries().subList(0, columns.length), row.getVersion()) : row);
+        }
+        return resultSet;
+    }
+
+    // AVG is summed and counted per shard and divided once merged
+    @Override
+    public AggregateResult aggregate(String tableName, String column, Aggregate function, Predicate filter, String groupBy) {
+        if (function == Aggregate.AVG) {
+            AggregateResult sum = combine(Aggregate.SUM, scatterAll(store -> store.aggregate(tableName, column, Aggregate.SUM, filter, groupBy)));
+            AggregateResult count = combine(Aggregate.COUNT, scatterAll(store -> store.aggregate(tableName, column, Aggregate.COUNT, filter, groupBy)));
+            Map<Object, Object> groups = new LinkedHashMap<>();
+            sum.getGroups().forEach((group, total) -> groups.put(group, average((Number) total, (Number) count.getGroups().get(group))));
+            return new AggregateResult(average((Number) sum.getValue(), (Number) count.getValue()), ordered(groups));
+        }
+        return combine(function, scatterAll(store -> store.aggregate(tableName, column, function, filter, groupBy)));
+    }
+
+    @Override
+    public ScanCursor scan(String tableName, String fromKey, String toKey, String[] columns, int pageSize) {
+        return mergedScan(store -> store.scan(tableName, fromKey, toKey, columns, pageSize), columns, pageSize);
+    }
+
+    @Override
+    public ScanCursor scanPrefix(String tableName, String prefix, String[] columns, int pageSize) {
+        return mergedScan(store -> store.scanPrefix(tableName, prefix, columns, pageSize), columns, pageSize);
+    }
+
+    // tokens only hold keys and bounds, every shard resumes from the same token
+    @Override
+    public ScanCursor resumeScan(String tableName, String continuationToken, String[] columns, int pageSize) {
+        return mergedScan(store -> store.resumeScan(tableName, continuationToken, columns, pageSize), columns, pageSize);
+    }
+
+    // Changes the number of shards to shards and returns the number of keys moved. New shards get every table,
+    // then each existing shard hands the keys it no longer owns to their new owner; removed shards hand over all.
+    // Moved rows keep their values and expiry, not their version history: snapshots opened before the resize keep
+    // reading the old owners. Scans running across a resize may miss or repeat moved keys.
+    public long resize(int shards) {
+        HashRing ring = new HashRing(shards, virtualNodes);
+        resizeLock.lock();
+        try {
+            Layout current = this.layout;
+            if (shards == current.shards.length) {
+                return 0;
+            }
+            for (Shard shard : current.shards) {
+                shard.lock.writeLock().lock();
+            }
+            long moved = 0;
+            try {
+                Shard[] next = Arrays.copyOf(current.shards, shards);
+                for (int i = current.shards.length; i < shards; i++) {
+                    next[i] = new Shard(i, singleWriter);
+                    for (Table table : current.shards[0].registry.tables()) {
+                        next[i].store.createTable(table.getName(), table.getConfig());
+                    }
+                }
+                for (int i = 0; i < current.shards.length; i++) {
+                    moved += moveKeys(i, current.shards[i], ring, next);
+                }
+                this.layout = new Layout(ring, next);
+            } finally {
+                for (Shard shard : current.shards) {
+                    shard.lock.writeLock().unlock();
+                }
+            }
+            for (int i = shards; i < current.shards.length; i++) {
+                current.shards[i].close();
+            }
+            return moved;
+        } finally {
+            resizeLock.unlock();
+        }
+    }
+
+    // caller holds every shard's write lock, only the ttl sweeper still removes rows
+    private static long moveKeys(int index, Shard source, HashRing ring, Shard[] targets) {
+        long moved = 0;
+        for (Table table : source.registry.tables()) {
+            String[] columns = table.getAttributesMap().keySet().toArray(new String[0]);
+            ScanCursor cursor = table.scan(null, null, columns, MOVE_PAGE_SIZE);
+            while (cursor.hasNext()) {
+                Row row = cursor.next();
+                int owner = ring.shardOf(row.getKey());
+                if (owner == index) {
+                    continue;
+                }
+                long expiresAtMillis = table.getExpiresAtMillis(row.getKey());
+                if (!table.containsKey(row.getKey()) || (expiresAtMillis > 0 && expiresAtMillis <= System.currentTimeMillis())) {
+                    continue;
+                }
+                List<Entry> entries = row.getEntries().stream()
+                        .filter(entry -> entry.getValue() != null)
+                        .collect(Collectors.toList());
+                targets[owner].registry.find(table.getName()).get().insertRecord(row.getKey(), entries, expiresAtMillis);
+                try {
+                    table.deleteRecord(row.getKey());
+                } catch (KeyDoesNotExistsException e) {
+                    // swept since, the copy expires at the same time
+                }
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    // owning shard of key under its read lock: the layout can not change before it is unlocked
+    private Shard lockShard(String key) {
+        while (true) {
+            Layout current = this.layout;
+            Shard shard = current.shards[current.ring.shardOf(key)];
+            shard.lock.readLock().lock();
+            if (current == this.layout) {
+                return shard;
+            }
+            // resized while waiting, the key may have moved
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    private <T> T read(String key, Function<ColumnKeyStore, T> operation) {
+        Shard shard = lockShard(key);
+        try {
+            return operation.apply(shard.store);
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(String key, Function<ColumnKeyStore, T> operation) {
+        Shard shard = lockShard(key);
+        try {
+            return shard.write(operation);
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    // read locks of every shard in shard order, the order resize takes the write locks in
+    private Layout lockAll() {
+        while (true) {
+            Layout current = this.layout;
+            for (Shard shard : current.shards) {
+                shard.lock.readLock().lock();
+            }
+            if (current == this.layout) {
+                return current;
+            }
+            unlockAll(current);
+        }
+    }
+
+    private static void unlockAll(Layout layout) {
+        for (int i = layout.shards.length - 1; i >= 0; i--) {
+            layout.shards[i].lock.readLock().unlock();
+        }
+    }
+
+    private <T> List<T> scatterAll(Function<ColumnKeyStore, T> operation) {
+        Layout current = lockAll();
+        try {
+            return scatter(current, operation);
+        } finally {
+            unlockAll(current);
+        }
+    }
+
+    // Runs operation on every shard of layout, results in shard order. A shard no row with the attribute the
+    // operation reads was routed to contributes null; the exception only surfaces when no shard knows the attribute
+    private <T> List<T> scatter(Layout layout, Function<ColumnKeyStore, T> operation) {
+        AtomicReference<AttributeDoesNotExistsException> missing = new AtomicReference<>();
+        List<T> results = gather(layout.shards.length, shard -> {
+            try {
+                return operation.apply(layout.shards[shard].store);
+            } catch (AttributeDoesNotExistsException e) {
+                missing.set(e);
+                return null;
+            }
+        });
+        if (missing.get() != null && results.stream().allMatch(Objects::isNull)) {
+            throw missing.get();
+        }
+        return results;
+    }
+
+    // runs task for shards 0..count-1 in parallel and waits for all of them, the first failure is rethrown
+    private <T> List<T> gather(int count, IntFunction<T> task) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(count - 1);
+        for (int i = 0; i < count - 1; i++) {
+            int shard = i;
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(shard), scatterExecutor));
+        }
+        RuntimeException failure = null;
+        T last = null;
+        try {
+            last = task.apply(count - 1);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        List<T> results = new ArrayList<>(count);
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        results.add(last);
+        return results;
+    }
+
+    private ScanCursor mergedScan(Function<ColumnKeyStore, ScanCursor> open, String[] columns, int pageSize) {
+        Layout current = lockAll();
+        try {
+            List<ScanCursor> cursors = new ArrayList<>(current.shards.length);
+            for (Shard shard : current.shards) {
+                cursors.add(open.apply(shard.store));
+            }
+            return new MergedScanCursor(cursors, columns, pageSize);
+        } finally {
+            unlockAll(current);
+        }
+    }
+
+    // keys grouped by owner, owners[i] gets the shard of the i-th key
+    private static List<List<String>> partition(HashRing ring, Collection<String> keys, int[] owners) {
+        List<List<String>> parts = new ArrayList<>(ring.shards());
+        for (int i = 0; i < ring.shards(); i++) {
+            parts.add(new ArrayList<>());
+        }
+        int i = 0;
+        for (String key : keys) {
+            owners[i] = ring.shardOf(key);
+            parts.get(owners[i++]).add(key);
+        }
+        return parts;
+    }
+
+    // puts the per shard results back into the order of the keys
+    private static ResultSet interleave(int[] owners, List<ResultSet> results) {
+        List<Iterator<Row>> rows = results.stream().map(result -> result.getRows().iterator()).collect(Collectors.toList());
+        ResultSet resultSet = new ResultSet();
+        for (int owner : owners) {
+            resultSet.addRow(rows.get(owner).next());
+        }
+        return resultSet;
+    }
+
+    private static List<String> concat(List<List<String>> parts) {
+        List<String> keys = new ArrayList<>();
+        parts.stream().filter(Objects::nonNull).forEach(keys::addAll);
+        return keys;
+    }
+
+    private static ResultSet concatRows(List<ResultSet> parts) {
+        ResultSet resultSet = new ResultSet();
+        parts.stream().filter(Objects::nonNull).forEach(part -> part.getRows().forEach(resultSet::addRow));
+        return resultSet;
+    }
+
+    private static Object valueOf(Row row, String attribute) {
+        for (Entry entry : row.getEntries()) {
+            if (entry.getName().equals(attribute)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static AggregateResult combine(Aggregate function, List<AggregateResult> results) {
+        Object value = null;
+        Map<Object, Object> groups = new LinkedHashMap<>();
+        for (AggregateResult result : results) {
+            if (result == null) {
+                continue;
+            }
+            value = combine(function, value, result.getValue());
+            result.getGroups().forEach((group, partial) -> groups.merge(group, partial, (a, b) -> combine(function, a, b)));
+        }
+        return new AggregateResult(value, ordered(groups));
+    }
+
+    private static Object combine(Aggregate function, Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        Number x = (Number) a;
+        Number y = (Number) b;
+        switch (function) {
+            case MIN:
+                return compareValues(x, y) <= 0 ? x : y;
+            case MAX:
+                return compareValues(x, y) >= 0 ? x : y;
+            default:
+                return x instanceof Double || y instanceof Double ? (Object) (x.doubleValue() + y.doubleValue()) : (Object) (x.longValue() + y.longValue());
+        }
+    }
+
+    private static Double average(Number sum, Number count) {
+        return sum == null || count == null || count.longValue() == 0 ? null : sum.doubleValue() / count.longValue();
+    }
+
+    // groups in value order like a single table returns them, when the group values allow it
+    private static Map<Object, Object> ordered(Map<Object, Object> groups) {
+        Class<?> type = groups.isEmpty() ? null : groups.keySet().iterator().next().getClass();
+        boolean comparable = type != null && Comparable.class.isAssignableFrom(type)
+                && groups.keySet().stream().allMatch(group -> group.getClass() == type);
+        return comparable ? new TreeMap<>(groups) : groups;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number && a.getClass() != b.getClass()) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    // Stops the single writer threads. The shards' tables stay readable through snapshots still open
+    @Override
+    public void close() {
+        for (Shard shard : layout.shards) {
+            shard.close();
+        }
+        scatterExecutor.shutdown();
+    }
+
+    private static final class Layout {
+
+        private final HashRing ring;
+        private final Shard[] shards;
+
+        private Layout(HashRing ring, Shard[] shards) {
+            this.ring = ring;
+            this.shards = shards;
+        }
+    }
+
+    private static final class Shard {
+
+        private final TableRegistry registry = TableRegistry.isolated();
+        private final ColumnKeyStore store = new ColumnKeyStore(registry);
+        // read locked by every operation, write locked by resize
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // runs every write of the shard when single writer, null otherwise
+        private final ExecutorService writer;
+
+        private Shard(int index, boolean singleWriter) {
+            this.writer = !singleWriter ? null : Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "keystore-shard-writer-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private <T> T write(Function<ColumnKeyStore, T> operation) {
+            if (writer == null) {
+                return operation.apply(store);
+            }
+            Future<T> result = writer.submit(() -> operation.apply(store));
+            try {
+                return result.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for the shard writer", e);
+            }
+        }
+
+        private void close() {
+            if (writer != null) {
+                writer.shutdown();
+            }
+        }
+    }
+
+    // k-way merge of the shards' cursors by key
+    private static final class MergedScanCursor extends ScanCursor {
+
+        private final List<ScanCursor> cursors;
+        // next row of every cursor, null when not read yet or exhausted
+        private final Row[] heads;
+        // token of the scan start, resumed after the last key handed out
+        private String startToken;
+        private String lastKey;
+        private boolean started;
+
+        private MergedScanCursor(List<ScanCursor> cursors, String[] columns, int pageSize) {
+            super(columns, pageSize);
+            this.cursors = cursors;
+            this.heads = new Row[cursors.size()];
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!started) {
+                started = true;
+                for (ScanCursor cursor : cursors) {
+                    String token = cursor.getContinuationToken();
+                    if (startToken == null) {
+                        startToken = token;
+                    }
+                }
+            }
+            boolean any = false;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] == null && cursors.get(i).hasNext()) {
+                    heads[i] = cursors.get(i).next();
+                }
+                any |= heads[i] != null;
+            }
+            return any;
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int smallest = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] != null && (smallest < 0 || heads[i].getKey().compareTo(heads[smallest].getKey()) < 0)) {
+                    smallest = i;
+                }
+            }
+            Row row = heads[smallest];
+            heads[smallest] = null;
+            lastKey = row.getKey();
+            return row;
+        }
+
+        @Override
+        public String getContinuationToken() {
+            if (!hasNext()) {
+                return null;
+            }
+            return lastKey == null ? startToken : ScanCursor.resumeAfter(startToken, lastKey);
+        }
+    }
+
+    // per shard snapshots, a key is read from the shard that owned it when the snapshot was opened. Versions are
+    // per shard, getVersion is 0
+    private static final class ShardedSnapshot extends TableSnapshot {
+
+        private final HashRing ring;
+        private final TableSnapshot[] snapshots;
+
+        private ShardedSnapshot(HashRing ring, TableSnapshot[] snapshots) {
+            super(0);
+            this.ring = ring;
+            this.snapshots = snapshots;
+        }
+
+        @Override
+        public ResultSet get(String key, String[] columns) {
+            return snapshots[ring.shardOf(key)].get(key, columns);
+        }
+
+        @Override
+        public ResultSet getAll(Collection<String> keys, String[] columns) {
+            int[] owners = new int[keys.size()];
+            List<List<String>> parts = partition(ring, keys, owners);
+            List<ResultSet> results = new ArrayList<>(snapshots.length);
+            for (int i = 0; i < snapshots.length; i++) {
+                results.add(parts.get(i).isEmpty() ? new ResultSet() : snapshots[i].getAll(parts.get(i), columns));
+            }
+            return interleave(owners, results);
+        }
+
+        @Override
+        public void close() {
+            for (TableSnapshot snapshot : snapshots) {
+                snapshot.close();
+            }
+        }
+    }
+}
@@ -2,13 +2,25 @@ package io.cred.core;
 
 import io.cred.model.Table;
 
+import java.util.Collection;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
+// Name - table map of a store. The static accessors (and TableRegistry.of()) work on the process wide default
+// registry every ColumnKeyStore uses unless it is given its own; isolated registries back the partitions of a
+// ShardedKeyStore, where every partition holds a table of the same name.
 public class TableRegistry {
-    private static ConcurrentHashMap<String, Table> tables = new ConcurrentHashMap<>();
+
+    private static final TableRegistry DEFAULT = new TableRegistry();
+
+    private volatile ConcurrentHashMap<String, Table> tables = new ConcurrentHashMap<>();
 
     public static TableRegistry of() {
+        return DEFAULT;
+    }
+
+    // not visible through the static accessors, so neither in KeyStoreMetrics
+    public static TableRegistry isolated() {
         return new TableRegistry();
     }
 
@@ -16,23 +28,40 @@ public class TableRegistry {
         tables.putIfAbsent(table.getName(), table);
     }
 
+    public Optional<Table> find(String tableName) {
+        return Optional.ofNullable(tables.get(tableName));
+    }
+
+    public boolean contains(String tableName) {
+        return tables.containsKey(tableName);
+    }
+
+    public Collection<Table> tables() {
+        return tables.values();
+    }
+
+    public void reset() {
+        tables = new ConcurrentHashMap<>();
+    }
+
     public static Optional<Table> getTable(String tableName) {
-        if(tables.containsKey(tableName)) {
-            return Optional.of(tables.get(tableName));
-        }
-        return Optional.empty();
+        return DEFAULT.find(tableName);
     }
 
     public static boolean isPresent(String tableName) {
-        return tables.containsKey(tableName);
+        return DEFAULT.contains(tableName);
+    }
+
+    public static Collection<Table> getTables() {
+        return DEFAULT.tables();
     }
 
     public static long tablesCount() {
-        return tables.size();
+        return DEFAULT.tables.size();
     }
 
     public static void clear() {
-        tables = new ConcurrentHashMap<>();
+        DEFAULT.reset();
     }
 
 }
@@ -0,0 +1,7 @@
+package io.cred.exception;
+
+public class OffHeapCapacityExceededException extends RuntimeException {
+    public OffHeapCapacityExceededException(String message) {
+        super(message);
+    }
+}
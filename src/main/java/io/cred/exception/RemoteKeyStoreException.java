@@ -0,0 +1,7 @@
+package io.cred.exception;
+
+public class RemoteKeyStoreException extends RuntimeException {
+    public RemoteKeyStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package io.cred.exception;
+
+public class ReplicationException extends RuntimeException {
+    public ReplicationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,8 @@
+package io.cred.exception;
+
+// the records a replica asked for are no longer retained by the leader, the replica has to bootstrap again
+public class ReplicationLogTruncatedException extends ReplicationException {
+    public ReplicationLogTruncatedException(String message) {
+        super(message, null);
+    }
+}
@@ -0,0 +1,7 @@
+package io.cred.exception;
+
+public class SpillException extends RuntimeException {
+    public SpillException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
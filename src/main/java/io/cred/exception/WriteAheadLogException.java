@@ -0,0 +1,7 @@
+package io.cred.exception;
+
+public class WriteAheadLogException extends RuntimeException {
+    public WriteAheadLogException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,386 @@
+package io.cred.metrics;
+
+import io.cred.IKeyStore;
+import io.cred.model.Aggregate;
+import io.cred.model.AggregateResult;
+import io.cred.model.BatchResult;
+import io.cred.model.Entry;
+import io.cred.model.Predicate;
+import io.cred.model.ResultSet;
+import io.cred.model.ScanCursor;
+import io.cred.model.TableConfig;
+import io.cred.model.TableSnapshot;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Decorator timing every call of the wrapped store. Timing is written out per method instead of going through a
+// lambda so the hot path stays allocation free. Failed calls (any exception) are counted as errors and still timed.
+// Scans are timed up to the cursor creation, pages are read lazily by the caller.
+public class InstrumentedKeyStore implements IKeyStore, AutoCloseable {
+
+    private final IKeyStore delegate;
+    private final KeyStoreMetrics metrics;
+
+    public InstrumentedKeyStore(IKeyStore delegate) {
+        this(delegate, new KeyStoreMetrics());
+    }
+
+    public InstrumentedKeyStore(IKeyStore delegate, KeyStoreMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    public KeyStoreMetrics getMetrics() {
+        return metrics;
+    }
+
+    public MetricsSnapshot snapshot() {
+        return metrics.snapshot();
+    }
+
+    @Override
+    public boolean createTable(String name) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean created = delegate.createTable(name);
+            if (created) {
+                metrics.tableCreated(name);
+            }
+            failed = false;
+            return created;
+        } finally {
+            metrics.record(Operation.CREATE_TABLE, start, failed);
+        }
+    }
+
+    @Override
+    public boolean createTable(String name, TableConfig config) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean created = delegate.createTable(name, config);
+            if (created) {
+                metrics.tableCreated(name);
+            }
+            failed = false;
+            return created;
+        } finally {
+            metrics.record(Operation.CREATE_TABLE, start, failed);
+        }
+    }
+
+    @Override
+    public void put(String tableName, String key, Entry value) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.put(tableName, key, value);
+            failed = false;
+        } finally {
+            metrics.record(Operation.PUT, start, failed);
+        }
+    }
+
+    @Override
+    public void putAll(String tableName, String key, List<Entry> value) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.putAll(tableName, key, value);
+            failed = false;
+        } finally {
+            metrics.record(Operation.PUT_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public void put(String tableName, String key, Entry value, long ttlMillis) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.put(tableName, key, value, ttlMillis);
+            failed = false;
+        } finally {
+            metrics.record(Operation.PUT, start, failed);
+        }
+    }
+
+    @Override
+    public void putAll(String tableName, String key, List<Entry> value, long ttlMillis) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.putAll(tableName, key, value, ttlMillis);
+            failed = false;
+        } finally {
+            metrics.record(Operation.PUT_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public void update(String tableName, String key, List<Entry> value) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.update(tableName, key, value);
+            failed = false;
+        } finally {
+            metrics.record(Operation.UPDATE, start, failed);
+        }
+    }
+
+    @Override
+    public void upsert(String tableName, String key, List<Entry> value) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.upsert(tableName, key, value);
+            failed = false;
+        } finally {
+            metrics.record(Operation.UPSERT, start, failed);
+        }
+    }
+
+    @Override
+    public BatchResult putBatch(String tableName, Map<String, List<Entry>> rows) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            BatchResult result = delegate.putBatch(tableName, rows);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.PUT_BATCH, start, failed);
+        }
+    }
+
+    @Override
+    public BatchResult putBatch(String tableName, Iterator<Map.Entry<String, List<Entry>>> rows, int batchSize) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            BatchResult result = delegate.putBatch(tableName, rows, batchSize);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.PUT_BATCH, start, failed);
+        }
+    }
+
+    @Override
+    public ResultSet get(String tableName, String key, String[] columns) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ResultSet result = delegate.get(tableName, key, columns);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.GET, start, failed);
+        }
+    }
+
+    @Override
+    public ResultSet get(String tableName, String key) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ResultSet result = delegate.get(tableName, key);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.GET, start, failed);
+        }
+    }
+
+    @Override
+    public ResultSet getAll(String tableName, Collection<String> keys, String[] columns) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ResultSet result = delegate.getAll(tableName, keys, columns);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.GET_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public void delete(String tableName, String key) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.delete(tableName, key);
+            failed = false;
+        } finally {
+            metrics.record(Operation.DELETE, start, failed);
+        }
+    }
+
+    // times opening the snapshot, reads through it go straight to the table
+    @Override
+    public TableSnapshot snapshot(String tableName) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            TableSnapshot result = delegate.snapshot(tableName);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.SNAPSHOT, start, failed);
+        }
+    }
+
+    @Override
+    public List<String> search(String tableName, Entry entry) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<String> result = delegate.search(tableName, entry);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.SEARCH, start, failed);
+        }
+    }
+
+    @Override
+    public ResultSet search(String tableName, Entry entry, String[] columns) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ResultSet result = delegate.search(tableName, entry, columns);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.SEARCH, start, failed);
+        }
+    }
+
+    @Override
+    public List<String> search(String tableName, Predicate... predicates) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<String> result = delegate.search(tableName, predicates);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.SEARCH, start, failed);
+        }
+    }
+
+    @Override
+    public ResultSet search(String tableName, String[] columns, Predicate... predicates) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ResultSet result = delegate.search(tableName, columns, predicates);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.SEARCH, start, failed);
+        }
+    }
+
+    @Override
+    public ResultSet searchRange(String tableName, String attribute, Object from, Object to, String[] columns) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ResultSet result = delegate.searchRange(tableName, attribute, from, to, columns);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.SEARCH_RANGE, start, failed);
+        }
+    }
+
+    @Override
+    public ResultSet searchRange(String tableName, String attribute, Object from, Object to, String[] columns, int limit) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ResultSet result = delegate.searchRange(tableName, attribute, from, to, columns, limit);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.SEARCH_RANGE, start, failed);
+        }
+    }
+
+    @Override
+    public AggregateResult aggregate(String tableName, String column, Aggregate function, Predicate filter, String groupBy) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            AggregateResult result = delegate.aggregate(tableName, column, function, filter, groupBy);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.AGGREGATE, start, failed);
+        }
+    }
+
+    @Override
+    public ScanCursor scan(String tableName, String fromKey, String toKey, String[] columns, int pageSize) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ScanCursor result = delegate.scan(tableName, fromKey, toKey, columns, pageSize);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.SCAN, start, failed);
+        }
+    }
+
+    @Override
+    public ScanCursor scanPrefix(String tableName, String prefix, String[] columns, int pageSize) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ScanCursor result = delegate.scanPrefix(tableName, prefix, columns, pageSize);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.SCAN, start, failed);
+        }
+    }
+
+    @Override
+    public ScanCursor resumeScan(String tableName, String continuationToken, String[] columns, int pageSize) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ScanCursor result = delegate.resumeScan(tableName, continuationToken, columns, pageSize);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(Operation.SCAN, start, failed);
+        }
+    }
+
+    // An interrupt while the wrapped store closes is passed on through the interrupt flag, so the store works in
+    // try with resources without a checked InterruptedException
+    @Override
+    public void close() {
+        metrics.unregisterMBeans();
+        if (delegate instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) delegate).close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to close " + delegate, e);
+            }
+        }
+    }
+}
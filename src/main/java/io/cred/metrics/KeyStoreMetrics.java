@@ -0,0 +1,113 @@
+package io.cred.metrics;
+
+import io.cred.core.TableRegistry;
+import io.cred.model.Table;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Per operation metrics of a key store plus table gauges read on demand. Optionally published over JMX as
+// <domain>:type=Operation,name=<operation> and <domain>:type=Table,name=<table>.
+public class KeyStoreMetrics {
+
+    public static final String DEFAULT_DOMAIN = "io.cred";
+
+    private final OperationMetrics[] operations;
+    private final Set<ObjectName> registered = ConcurrentHashMap.newKeySet();
+    private volatile String jmxDomain;
+
+    public KeyStoreMetrics() {
+        Operation[] values = Operation.values();
+        this.operations = new OperationMetrics[values.length];
+        for (Operation operation : values) {
+            operations[operation.ordinal()] = new OperationMetrics(operation);
+        }
+    }
+
+    public void record(Operation operation, long startNanos, boolean failed) {
+        operations[operation.ordinal()].record(System.nanoTime() - startNanos, failed);
+    }
+
+    public OperationMetrics getOperation(Operation operation) {
+        return operations[operation.ordinal()];
+    }
+
+    public MetricsSnapshot snapshot() {
+        EnumMap<Operation, HistogramSnapshot> latencies = new EnumMap<>(Operation.class);
+        EnumMap<Operation, Long> errors = new EnumMap<>(Operation.class);
+        for (OperationMetrics metrics : operations) {
+            latencies.put(metrics.getOperation(), metrics.getLatency());
+            errors.put(metrics.getOperation(), metrics.getErrors());
+        }
+        Map<String, TableStats> tables = new LinkedHashMap<>();
+        for (Table table : TableRegistry.getTables()) {
+            tables.put(table.getName(), table.stats());
+        }
+        return new MetricsSnapshot(latencies, errors, tables);
+    }
+
+    public void registerMBeans() {
+        registerMBeans(DEFAULT_DOMAIN);
+    }
+
+    // registers the operation beans and a bean per existing table, tables created later are added by tableCreated
+    public void registerMBeans(String domain) {
+        this.jmxDomain = domain;
+        for (OperationMetrics metrics : operations) {
+            register(name(domain, "Operation", metrics.getOperation().name().toLowerCase()), metrics);
+        }
+        for (Table table : TableRegistry.getTables()) {
+            tableCreated(table.getName());
+        }
+    }
+
+    void tableCreated(String tableName) {
+        String domain = this.jmxDomain;
+        if (domain != null) {
+            register(name(domain, "Table", tableName), new TableMetrics(tableName));
+        }
+    }
+
+    public void unregisterMBeans() {
+        this.jmxDomain = null;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (InstanceNotFoundException e) {
+                // already gone
+            } catch (JMException e) {
+                throw new IllegalStateException("Unable to unregister " + name, e);
+            }
+        }
+        registered.clear();
+    }
+
+    private void register(ObjectName name, Object bean) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name);
+            registered.add(name);
+        } catch (InstanceAlreadyExistsException e) {
+            // another store of this process published it first
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register " + name, e);
+        }
+    }
+
+    private static ObjectName name(String domain, String type, String name) {
+        try {
+            return new ObjectName(domain + ":type=" + type + ",name=" + ObjectName.quote(name));
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.cred.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class MetricsSnapshot {
+
+    private final Map<Operation, HistogramSnapshot> latencies;
+    private final Map<Operation, Long> errors;
+    private final Map<String, TableStats> tables;
+
+    MetricsSnapshot(EnumMap<Operation, HistogramSnapshot> latencies, EnumMap<Operation, Long> errors,
+                    Map<String, TableStats> tables) {
+        this.latencies = Collections.unmodifiableMap(latencies);
+        this.errors = Collections.unmodifiableMap(errors);
+        this.tables = Collections.unmodifiableMap(tables);
+    }
+
+    // latencies in nanoseconds, the count of the histogram is the number of calls
+    public HistogramSnapshot getLatency(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    public long getErrors(Operation operation) {
+        return errors.get(operation);
+    }
+
+    public Map<Operation, HistogramSnapshot> getLatencies() {
+        return latencies;
+    }
+
+    public Map<String, TableStats> getTables() {
+        return tables;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("MetricsSnapshot{");
+        latencies.forEach((operation, latency) -> {
+            if (latency.getCount() > 0) {
+                builder.append('\n').append(operation).append(": ").append(latency).append(", errors=").append(errors.get(operation));
+            }
+        });
+        tables.values().forEach(table -> builder.append('\n').append(table));
+        return builder.append('}').toString();
+    }
+}
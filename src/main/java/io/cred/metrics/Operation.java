@@ -0,0 +1,19 @@
+package io.cred.metrics;
+
+// IKeyStore entry points tracked by InstrumentedKeyStore
+public enum Operation {
+    CREATE_TABLE,
+    PUT,
+    PUT_ALL,
+    PUT_BATCH,
+    UPDATE,
+    UPSERT,
+    GET,
+    GET_ALL,
+    DELETE,
+    SNAPSHOT,
+    SEARCH,
+    SEARCH_RANGE,
+    AGGREGATE,
+    SCAN
+}
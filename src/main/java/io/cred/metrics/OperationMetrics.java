@@ -0,0 +1,68 @@
+package io.cred.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Calls, failures and latency of one operation. Registered as a standard MBean when JMX is enabled, every getter
+// then takes its own snapshot.
+public class OperationMetrics implements OperationMetricsMBean {
+
+    private final Operation operation;
+    // nanoseconds
+    private final Histogram latency = new Histogram();
+    private final LongAdder errors = new LongAdder();
+
+    OperationMetrics(Operation operation) {
+        this.operation = operation;
+    }
+
+    void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    // latencies in nanoseconds
+    public HistogramSnapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    @Override
+    public long getCount() {
+        return latency.snapshot().getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.snapshot().getMean() / 1_000d;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.snapshot().getP50() / 1_000d;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.snapshot().getP99() / 1_000d;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latency.snapshot().getP999() / 1_000d;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.snapshot().getMax() / 1_000d;
+    }
+}
@@ -0,0 +1,64 @@
+package io.cred.metrics;
+
+import io.cred.core.TableRegistry;
+import io.cred.model.Table;
+
+// JMX view of one table, the table is looked up on every read so the bean reports zeros once it is dropped
+public class TableMetrics implements TableMetricsMBean {
+
+    private final String tableName;
+
+    TableMetrics(String tableName) {
+        this.tableName = tableName;
+    }
+
+    private TableStats stats() {
+        return TableRegistry.getTable(tableName).map(Table::stats)
+                .orElseGet(() -> new TableStats(tableName, 0, 0, new Histogram().snapshot(), 0, 0, 0, 0, 0, 0, 0));
+    }
+
+    @Override
+    public long getRowCount() {
+        return stats().getRowCount();
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return stats().getAttributeCount();
+    }
+
+    @Override
+    public long getPostingListCount() {
+        return stats().getPostingListCount();
+    }
+
+    @Override
+    public long getMaxPostingListSize() {
+        return stats().getPostingListSizes().getMax();
+    }
+
+    @Override
+    public long getEstimatedHeapBytes() {
+        return stats().getEstimatedHeapBytes();
+    }
+
+    @Override
+    public long getOffHeapUsedBytes() {
+        return stats().getOffHeapUsedBytes();
+    }
+
+    @Override
+    public double getLockWaitMillis() {
+        return stats().getLockWaitNanos() / 1_000_000d;
+    }
+
+    @Override
+    public long getContendedLocks() {
+        return stats().getContendedLocks();
+    }
+
+    @Override
+    public long getEvictedRows() {
+        return stats().getEvictedRows();
+    }
+}
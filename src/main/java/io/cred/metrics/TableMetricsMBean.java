@@ -0,0 +1,22 @@
+package io.cred.metrics;
+
+public interface TableMetricsMBean {
+
+    long getRowCount();
+
+    int getAttributeCount();
+
+    long getPostingListCount();
+
+    long getMaxPostingListSize();
+
+    long getEstimatedHeapBytes();
+
+    long getOffHeapUsedBytes();
+
+    double getLockWaitMillis();
+
+    long getContendedLocks();
+
+    long getEvictedRows();
+}
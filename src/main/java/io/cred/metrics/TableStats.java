@@ -0,0 +1,103 @@
+package io.cred.metrics;
+
+// Point in time gauges of one table
+public class TableStats {
+
+    private final String name;
+    private final long rowCount;
+    private final int attributeCount;
+    private final long postingListCount;
+    // rows per posting list, over every attribute of the table
+    private final HistogramSnapshot postingListSizes;
+    private final long estimatedHeapBytes;
+    // direct memory of off heap tables: bytes held by live values and bytes reserved in slabs
+    private final long offHeapUsedBytes;
+    private final long offHeapReservedBytes;
+    private final long lockWaitNanos;
+    private final long contendedLocks;
+    // memory bounded tables: rows whose values are in the spill file and the size of that file
+    private final long evictedRows;
+    private final long spillFileBytes;
+
+    public TableStats(String name, long rowCount, int attributeCount, HistogramSnapshot postingListSizes,
+                      long estimatedHeapBytes, long offHeapUsedBytes, long offHeapReservedBytes, long lockWaitNanos,
+                      long contendedLocks, long evictedRows, long spillFileBytes) {
+        this.name = name;
+        this.rowCount = rowCount;
+        this.attributeCount = attributeCount;
+        this.postingListCount = postingListSizes.getCount();
+        this.postingListSizes = postingListSizes;
+        this.estimatedHeapBytes = estimatedHeapBytes;
+        this.offHeapUsedBytes = offHeapUsedBytes;
+        this.offHeapReservedBytes = offHeapReservedBytes;
+        this.lockWaitNanos = lockWaitNanos;
+        this.contendedLocks = contendedLocks;
+        this.evictedRows = evictedRows;
+        this.spillFileBytes = spillFileBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getAttributeCount() {
+        return attributeCount;
+    }
+
+    public long getPostingListCount() {
+        return postingListCount;
+    }
+
+    public HistogramSnapshot getPostingListSizes() {
+        return postingListSizes;
+    }
+
+    public long getEstimatedHeapBytes() {
+        return estimatedHeapBytes;
+    }
+
+    public long getOffHeapUsedBytes() {
+        return offHeapUsedBytes;
+    }
+
+    public long getOffHeapReservedBytes() {
+        return offHeapReservedBytes;
+    }
+
+    public long getLockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    public long getContendedLocks() {
+        return contendedLocks;
+    }
+
+    public long getEvictedRows() {
+        return evictedRows;
+    }
+
+    public long getSpillFileBytes() {
+        return spillFileBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TableStats{" +
+                "name='" + name + '\'' +
+                ", rowCount=" + rowCount +
+                ", attributeCount=" + attributeCount +
+                ", postingListSizes={" + postingListSizes + '}' +
+                ", estimatedHeapBytes=" + estimatedHeapBytes +
+                ", offHeapUsedBytes=" + offHeapUsedBytes +
+                ", offHeapReservedBytes=" + offHeapReservedBytes +
+                ", lockWaitNanos=" + lockWaitNanos +
+                ", contendedLocks=" + contendedLocks +
+                ", evictedRows=" + evictedRows +
+                ", spillFileBytes=" + spillFileBytes +
+                '}';
+    }
+}
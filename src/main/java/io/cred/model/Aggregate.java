@@ -0,0 +1,28 @@
+package io.cred.model;
+
+import io.cred.storage.ColumnSummary;
+
+// Aggregate functions evaluated by Table.aggregate. COUNT works on any attribute, the others need a numeric one;
+// SUM, MIN and MAX keep the integral or floating type of the column, AVG is a double
+public enum Aggregate {
+    COUNT,
+    SUM,
+    MIN,
+    MAX,
+    AVG;
+
+    Object resultOf(ColumnSummary summary) {
+        switch (this) {
+            case COUNT:
+                return summary.getCount();
+            case SUM:
+                return summary.getSum();
+            case MIN:
+                return summary.getMin();
+            case MAX:
+                return summary.getMax();
+            default:
+                return summary.getAverage();
+        }
+    }
+}
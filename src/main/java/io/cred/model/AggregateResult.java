@@ -0,0 +1,30 @@
+package io.cred.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class AggregateResult {
+
+    // aggregate over the whole selection, null when grouped or when nothing was selected (except for COUNT)
+    private final Object value;
+    // group value - aggregate, in group value order for comparable datatypes. Empty when not grouped
+    private final Map<Object, Object> groups;
+
+    public AggregateResult(Object value, Map<Object, Object> groups) {
+        this.value = value;
+        this.groups = groups;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public Map<Object, Object> getGroups() {
+        return Collections.unmodifiableMap(groups);
+    }
+
+    @Override
+    public String toString() {
+        return "AggregateResult{" + (groups.isEmpty() ? value : groups) + '}';
+    }
+}
@@ -1,22 +1,54 @@
 package io.cred.model;
 
-import java.util.List;
+import io.cred.exception.InvalidDatatypeException;
+import io.cred.storage.ColumnVector;
+import io.cred.storage.PostingList;
+import io.cred.storage.RoaringBitmap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 public class Attribute {
+    private static final String DOUBLE = Double.class.getName();
+    private static final String LONG = Long.class.getName();
+    private static final String INTEGER = Integer.class.getName();
+    private static final String BOOLEAN = Boolean.class.getName();
+
     private final String name;
     private final String datatype;
-    // key - values {can store values only for disk storage. }
-    private ConcurrentHashMap<String, Object> idValueMap;
+    // row id - value, slots are addressed by the row id the table assigned to the key.
+    // Storage is picked from the datatype fixed on first insert, numeric and boolean values are kept unboxed
+    private final ColumnVector values;
+
+    // secondary index: value - row ids mapping, postings are compressed bitmaps and dropped once empty
+    private ConcurrentHashMap<Object, PostingList> valueIdMap;
+
+    // optional ordered index: value - row ids, shares the PostingList instances of valueIdMap
+    private volatile ConcurrentSkipListMap<Object, PostingList> rangeIndex;
 
-    // secondary index: value - keys mapping
-    private ConcurrentHashMap<Object, List<String>> valueIdMap;
+    // position of the attribute in the table's row presence bitsets, assigned when the table takes it in
+    private int ordinal = -1;
 
     public Attribute(String name, Object value) {
+        this(name, value, false);
+    }
+
+    public Attribute(String name, Object value, boolean rangeIndexed) {
+        this(name, value.getClass().getName(), rangeIndexed, ColumnVector.forDatatype(value.getClass().getName()));
+    }
+
+    // used when reopening a checkpoint, values is then backed by the mapped segment of the attribute
+    public Attribute(String name, String datatype, boolean rangeIndexed, ColumnVector values) {
         this.name = name;
-        this.datatype = value.getClass().getName();
-        this.idValueMap = new ConcurrentHashMap<>();
+        this.datatype = datatype;
+        this.values = values;
         this.valueIdMap = new ConcurrentHashMap<>();
+        if (rangeIndexed) {
+            enableRangeIndex();
+        }
     }
 
     public String getName() {
@@ -27,13 +59,178 @@ public class Attribute {
         return datatype;
     }
 
-    public ConcurrentHashMap<String, Object> getIdValueMap() {
-        return idValueMap;
+    public ColumnVector getValues() {
+        return values;
+    }
+
+    public int getOrdinal() {
+        return ordinal;
     }
 
+    void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
 
-    public ConcurrentHashMap<Object, List<String>> getValueIdMap() {
+    public ConcurrentHashMap<Object, PostingList> getValueIdMap() {
         return valueIdMap;
     }
 
+    public boolean isRangeIndexed() {
+        return rangeIndex != null;
+    }
+
+    // Builds the ordered index on demand. The map is published before the backfill so concurrent writers
+    // already maintain it, and every backfilled value goes through computeIfPresent to stay atomic with removals.
+    public synchronized void enableRangeIndex() {
+        if (rangeIndex != null) {
+            return;
+        }
+        if (!isComparable()) {
+            throw new InvalidDatatypeException("Range index not supported for datatype {} of " + name + " " + datatype);
+        }
+        ConcurrentSkipListMap<Object, PostingList> index = new ConcurrentSkipListMap<>();
+        this.rangeIndex = index;
+        for (Object value : valueIdMap.keySet()) {
+            valueIdMap.computeIfPresent(value, (v, postingList) -> {
+                index.putIfAbsent(v, postingList);
+                return postingList;
+            });
+        }
+    }
+
+    boolean isComparable() {
+        return Comparable.class.isAssignableFrom(typeOf(datatype));
+    }
+
+    // values between from and to (inclusive, null means unbounded) in ascending order
+    public NavigableMap<Object, PostingList> range(Object from, Object to) {
+        return range(from, true, to, true);
+    }
+
+    public NavigableMap<Object, PostingList> range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        ConcurrentSkipListMap<Object, PostingList> index = this.rangeIndex;
+        if (index == null) {
+            enableRangeIndex();
+            index = this.rangeIndex;
+        }
+        checkComparable(from);
+        checkComparable(to);
+        if (from != null && to != null) {
+            return index.subMap(from, fromInclusive, to, toInclusive);
+        } else if (from != null) {
+            return index.tailMap(from, fromInclusive);
+        } else if (to != null) {
+            return index.headMap(to, toInclusive);
+        }
+        return index;
+    }
+
+    void checkComparable(Object bound) {
+        if (bound != null && !bound.getClass().getName().equals(datatype)) {
+            throw new InvalidDatatypeException("Invalid Datatype {} for " + name);
+        }
+    }
+
+    private static Class<?> typeOf(String datatype) {
+        try {
+            return Class.forName(datatype);
+        } catch (ClassNotFoundException e) {
+            return Object.class;
+        }
+    }
+
+    // bulk load of the postings stored in a checkpoint, the attribute is not visible to writers yet
+    public void restorePostings(Map<Object, RoaringBitmap> postings) {
+        postings.forEach(this::index);
+    }
+
+    public Object get(int rowId) {
+        return values.get(rowId);
+    }
+
+    public double getDouble(int rowId, double defaultValue) {
+        checkDatatype(DOUBLE);
+        return values.getDouble(rowId, defaultValue);
+    }
+
+    public long getLong(int rowId, long defaultValue) {
+        if (!INTEGER.equals(datatype)) {
+            checkDatatype(LONG);
+        }
+        return values.getLong(rowId, defaultValue);
+    }
+
+    public int getInt(int rowId, int defaultValue) {
+        checkDatatype(INTEGER);
+        return values.getInt(rowId, defaultValue);
+    }
+
+    public boolean getBoolean(int rowId, boolean defaultValue) {
+        checkDatatype(BOOLEAN);
+        return values.getBoolean(rowId, defaultValue);
+    }
+
+    private void checkDatatype(String expected) {
+        if (!expected.equals(datatype)) {
+            throw new InvalidDatatypeException("Attribute {} is not of type " + expected + " " + name);
+        }
+    }
+
+    public void put(int rowId, Object value) {
+        values.set(rowId, value);
+        valueIdMap.compute(value, (v, postingList) -> {
+            postingList = postingList == null ? newPostingList(v) : postingList;
+            postingList.add(rowId);
+            return postingList;
+        });
+    }
+
+    // Batch append: the column is written first, then every distinct value of the batch gets a single posting update
+    public void putAll(int[] rowIds, Object[] batchValues, int count) {
+        Map<Object, RoaringBitmap> postings = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            values.set(rowIds[i], batchValues[i]);
+            postings.computeIfAbsent(batchValues[i], v -> new RoaringBitmap()).add(rowIds[i]);
+        }
+        postings.forEach(this::index);
+    }
+
+    private void index(Object value, RoaringBitmap rowIds) {
+        valueIdMap.compute(value, (v, postingList) -> {
+            postingList = postingList == null ? newPostingList(v) : postingList;
+            postingList.addAll(rowIds);
+            return postingList;
+        });
+    }
+
+    // called inside valueIdMap.compute, so publishing to the range index is atomic with the hash index
+    private PostingList newPostingList(Object value) {
+        PostingList postingList = new PostingList();
+        ConcurrentSkipListMap<Object, PostingList> index = this.rangeIndex;
+        if (index != null) {
+            index.put(value, postingList);
+        }
+        return postingList;
+    }
+
+    public void remove(int rowId) {
+        Object value = values.get(rowId);
+        if (value == null) {
+            return;
+        }
+        values.clear(rowId);
+        // compute keeps the removal of an empty posting atomic with a concurrent add of the same value
+        valueIdMap.computeIfPresent(value, (v, postingList) -> {
+            postingList.remove(rowId);
+            if (!postingList.isEmpty()) {
+                return postingList;
+            }
+            ConcurrentSkipListMap<Object, PostingList> index = this.rangeIndex;
+            if (index != null) {
+                index.remove(v, postingList);
+            }
+            return null;
+        });
+    }
+
 }
@@ -0,0 +1,48 @@
+package io.cred.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Outcome of a putBatch: rows that could not be inserted are reported per key instead of aborting the batch
+public class BatchResult {
+
+    private long insertedCount;
+    private final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+    // journal sequence of the last row written, 0 for tables without journal
+    private long sequence;
+
+    public long getInsertedCount() {
+        return insertedCount;
+    }
+
+    public Map<String, RuntimeException> getFailures() {
+        return failures;
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void addInserted(long count, long sequence) {
+        this.insertedCount += count;
+        this.sequence = Math.max(this.sequence, sequence);
+    }
+
+    public void addFailure(String key, RuntimeException exception) {
+        failures.put(key, exception);
+    }
+
+    public void merge(BatchResult other) {
+        addInserted(other.insertedCount, other.sequence);
+        failures.putAll(other.failures);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{inserted=" + insertedCount + ", failures=" + failures.keySet() + '}';
+    }
+}
@@ -0,0 +1,63 @@
+package io.cred.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+// Single daemon thread removing expired rows of every table that has rows with a ttl, see Table.expire.
+// A pass removes at most BATCH rows per table; while some table has a backlog the next pass follows right
+// away, so an expiry storm is worked off in small steps between foreground writes. Tables are held weakly, and a
+// table failing a pass does not stop the thread sweeping the others.
+final class ExpirySweeper {
+
+    private static final int BATCH = 1024;
+    private static final long INTERVAL_MILLIS = 100;
+    private static final Set<Table> TABLES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static Thread thread;
+
+    private ExpirySweeper() {
+    }
+
+    static void register(Table table) {
+        TABLES.add(table);
+        start();
+    }
+
+    private static synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(ExpirySweeper::run, "expiry-sweeper");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void run() {
+        boolean backlog = false;
+        while (true) {
+            try {
+                if (backlog) {
+                    Thread.yield();
+                } else {
+                    Thread.sleep(INTERVAL_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<Table> tables;
+            synchronized (TABLES) {
+                tables = new ArrayList<>(TABLES);
+            }
+            backlog = false;
+            for (Table table : tables) {
+                try {
+                    backlog |= table.expire(BATCH) == BATCH;
+                } catch (RuntimeException e) {
+                    // the keys the table could not remove are back on its wheel, they are retried next pass
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package io.cred.model;
+
+import io.cred.exception.AttributeDoesNotExistsException;
+import io.cred.exception.InvalidDatatypeException;
+import io.cred.storage.ColumnVector;
+import io.cred.storage.PostingList;
+import io.cred.storage.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.function.IntConsumer;
+
+// Predicate tree for secondary index searches, e.g.
+//     and(eq("status", "ACTIVE"), lt("latitude", 0.0), like("name", "ja%"))
+// Every leaf resolves to a row id bitmap and the tree is combined bitmap to bitmap, rows are only read once the
+// final row id set is known. An AND is planned per table: its cheapest child drives, i.e. produces the first row
+// set from its postings, and the others only narrow that set, either through their own postings or by reading
+// their column for the candidate rows when that is fewer rows than their index would produce.
+public abstract class Predicate {
+
+    // distinct values a leaf walks in the value index to serve a range or pattern; past that its column is scanned
+    private static final int INDEX_WALK_LIMIT = 1024;
+
+    public static Predicate eq(String attribute, Object value) {
+        return new Eq(attribute, value);
+    }
+
+    public static Predicate lt(String attribute, Object value) {
+        return new Range(attribute, null, false, value, false);
+    }
+
+    public static Predicate le(String attribute, Object value) {
+        return new Range(attribute, null, false, value, true);
+    }
+
+    public static Predicate gt(String attribute, Object value) {
+        return new Range(attribute, value, false, null, false);
+    }
+
+    public static Predicate ge(String attribute, Object value) {
+        return new Range(attribute, value, true, null, false);
+    }
+
+    // from and to inclusive
+    public static Predicate between(String attribute, Object from, Object to) {
+        return new Range(attribute, from, true, to, true);
+    }
+
+    // null bounds are open
+    public static Predicate range(String attribute, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        return new Range(attribute, from, fromInclusive, to, toInclusive);
+    }
+
+    // SQL like pattern over a string attribute, % matches any run of characters and _ a single one
+    public static Predicate like(String attribute, String pattern) {
+        return new Like(attribute, pattern);
+    }
+
+    public static Predicate and(Predicate... predicates) {
+        return new And(Arrays.asList(predicates));
+    }
+
+    public static Predicate or(Predicate... predicates) {
+        return new Or(Arrays.asList(predicates));
+    }
+
+    abstract RoaringBitmap evaluate(Table table);
+
+    // narrows an already computed row id set, leaves override it when they can avoid copying their posting
+    RoaringBitmap intersect(Table table, RoaringBitmap rowIds) {
+        return rowIds.and(evaluate(table));
+    }
+
+    // Rows the predicate is expected to produce, what the planner orders the children of an AND by. Predicates no
+    // index serves cost a scan, one more than the table has rows
+    abstract long cost(Table table);
+
+    // the order the predicate is evaluated in with the cost of every step, for tests and troubleshooting
+    String explain(Table table) {
+        return this + " [" + cost(table) + "]";
+    }
+
+    static long scanCost(Table table) {
+        return table.size() + 1;
+    }
+
+    static Attribute attributeOf(Table table, String name) {
+        Attribute attribute = table.getAttributesMap().get(name);
+        if (attribute == null) {
+            throw new AttributeDoesNotExistsException("Attribute {} does not exists in table {}" + name + " " + table.getName());
+        }
+        return attribute;
+    }
+
+    private static String join(List<Predicate> predicates, String separator) {
+        StringBuilder builder = new StringBuilder("(");
+        for (Predicate predicate : predicates) {
+            if (builder.length() > 1) builder.append(separator);
+            builder.append(predicate);
+        }
+        return builder.append(")").toString();
+    }
+
+    public static class Eq extends Predicate {
+        private final String attribute;
+        private final Object value;
+
+        Eq(String attribute, Object value) {
+            this.attribute = attribute;
+            this.value = value;
+        }
+
+        public String getAttribute() {
+            return attribute;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Table table) {
+            PostingList postingList = postingList(table);
+            return postingList == null ? new RoaringBitmap() : postingList.snapshot();
+        }
+
+        @Override
+        RoaringBitmap intersect(Table table, RoaringBitmap rowIds) {
+            PostingList postingList = postingList(table);
+            return postingList == null ? new RoaringBitmap() : postingList.and(rowIds);
+        }
+
+        @Override
+        long cost(Table table) {
+            PostingList postingList = postingList(table);
+            return postingList == null ? 0 : postingList.cardinality();
+        }
+
+        private PostingList postingList(Table table) {
+            return attributeOf(table, attribute).getValueIdMap().get(value);
+        }
+
+        @Override
+        public String toString() {
+            return attribute + " = " + value;
+        }
+    }
+
+    // Leaf matching value by value. Its index rows are the postings of the matching values, found in the range
+    // index or, for columns with few distinct values, by testing every value of the hash index. Otherwise, and
+    // when narrowing fewer rows than the index would give, the column is read for the rows in question.
+    public abstract static class ColumnPredicate extends Predicate {
+        final String attribute;
+
+        ColumnPredicate(String attribute) {
+            this.attribute = attribute;
+        }
+
+        public String getAttribute() {
+            return attribute;
+        }
+
+        abstract boolean test(Object value);
+
+        // unboxed test of a slot, numeric predicates override it for the primitive columns
+        boolean test(ColumnVector values, int rowId, String datatype) {
+            Object value = values.get(rowId);
+            return value != null && test(value);
+        }
+
+        // values of the range index worth testing, null when the predicate can not narrow it down
+        abstract NavigableMap<Object, PostingList> candidates(Attribute attribute);
+
+        abstract void check(Attribute attribute);
+
+        @Override
+        RoaringBitmap evaluate(Table table) {
+            Attribute attribute = attributeOf(table, this.attribute);
+            check(attribute);
+            List<PostingList> postings = postings(attribute);
+            return postings == null ? scan(table, attribute, null) : union(postings);
+        }
+
+        @Override
+        RoaringBitmap intersect(Table table, RoaringBitmap rowIds) {
+            Attribute attribute = attributeOf(table, this.attribute);
+            check(attribute);
+            List<PostingList> postings = postings(attribute);
+            if (postings == null || cardinality(postings) > rowIds.cardinality()) {
+                return scan(table, attribute, rowIds);
+            }
+            return union(postings).and(rowIds);
+        }
+
+        @Override
+        long cost(Table table) {
+            Attribute attribute = attributeOf(table, this.attribute);
+            check(attribute);
+            List<PostingList> postings = postings(attribute);
+            return postings == null ? scanCost(table) : cardinality(postings);
+        }
+
+        // postings of the matching values, null when finding them would walk more than INDEX_WALK_LIMIT values
+        private List<PostingList> postings(Attribute attribute) {
+            Map<Object, PostingList> values = attribute.isRangeIndexed() ? candidates(attribute) : null;
+            if (values == null) {
+                if (attribute.getValueIdMap().size() > INDEX_WALK_LIMIT) {
+                    return null;
+                }
+                values = attribute.getValueIdMap();
+            }
+            List<PostingList> postings = new ArrayList<>();
+            int walked = 0;
+            for (Map.Entry<Object, PostingList> value : values.entrySet()) {
+                if (++walked > INDEX_WALK_LIMIT) {
+                    return null;
+                }
+                if (test(value.getKey())) {
+                    postings.add(value.getValue());
+                }
+            }
+            return postings;
+        }
+
+        private static long cardinality(List<PostingList> postings) {
+            long cardinality = 0;
+            for (PostingList postingList : postings) {
+                cardinality += postingList.cardinality();
+            }
+            return cardinality;
+        }
+
+        private static RoaringBitmap union(List<PostingList> postings) {
+            RoaringBitmap result = new RoaringBitmap();
+            for (PostingList postingList : postings) {
+                result = postingList.or(result);
+            }
+            return result;
+        }
+
+        // Reads the column for rowIds, every slot when null. Slots are read without locks like postings are, in
+        // the column's own representation unless evicted rows or off heap slots have to be read through the table,
+        // which reads them under their stripe
+        private RoaringBitmap scan(Table table, Attribute attribute, RoaringBitmap rowIds) {
+            ColumnVector values = table.scanColumn(attribute);
+            String datatype = values == attribute.getValues() ? attribute.getDatatype() : null;
+            RoaringBitmap result = new RoaringBitmap();
+            IntConsumer test = rowId -> {
+                if (test(values, rowId, datatype)) {
+                    result.add(rowId);
+                }
+            };
+            if (rowIds != null) {
+                rowIds.forEach(test);
+            } else {
+                int limit = Math.min(table.rowIdLimit(), values.capacity());
+                for (int rowId = 0; rowId < limit; rowId++) {
+                    test.accept(rowId);
+                }
+            }
+            return result;
+        }
+    }
+
+    public static class Range extends ColumnPredicate {
+        private final Object from;
+        private final boolean fromInclusive;
+        private final Object to;
+        private final boolean toInclusive;
+
+        Range(String attribute, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+            super(attribute);
+            if (from == null && to == null) {
+                throw new IllegalArgumentException("Range over " + attribute + " needs a bound");
+            }
+            if (from != null && to != null && from.getClass() != to.getClass()) {
+                throw new IllegalArgumentException("Bounds of the range over " + attribute + " differ in type");
+            }
+            this.from = from;
+            this.fromInclusive = fromInclusive;
+            this.to = to;
+            this.toInclusive = toInclusive;
+        }
+
+        public Object getFrom() {
+            return from;
+        }
+
+        public boolean isFromInclusive() {
+            return fromInclusive;
+        }
+
+        public Object getTo() {
+            return to;
+        }
+
+        public boolean isToInclusive() {
+            return toInclusive;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        boolean test(Object value) {
+            return within(from == null ? 1 : ((Comparable<Object>) value).compareTo(from),
+                    to == null ? -1 : ((Comparable<Object>) value).compareTo(to));
+        }
+
+        @Override
+        boolean test(ColumnVector values, int rowId, String datatype) {
+            if (datatype == null) {
+                return super.test(values, rowId, null);
+            }
+            if (values.isNull(rowId)) {
+                return false;
+            }
+            switch (datatype) {
+                case "java.lang.Double": {
+                    double value = values.getDouble(rowId, 0d);
+                    return within(from == null ? 1 : Double.compare(value, (Double) from), to == null ? -1 : Double.compare(value, (Double) to));
+                }
+                case "java.lang.Long": {
+                    long value = values.getLong(rowId, 0L);
+                    return within(from == null ? 1 : Long.compare(value, (Long) from), to == null ? -1 : Long.compare(value, (Long) to));
+                }
+                case "java.lang.Integer": {
+                    int value = values.getInt(rowId, 0);
+                    return within(from == null ? 1 : Integer.compare(value, (Integer) from), to == null ? -1 : Integer.compare(value, (Integer) to));
+                }
+                default:
+                    return super.test(values, rowId, datatype);
+            }
+        }
+
+        private boolean within(int fromComparison, int toComparison) {
+            return (fromComparison > 0 || fromComparison == 0 && fromInclusive)
+                    && (toComparison < 0 || toComparison == 0 && toInclusive);
+        }
+
+        @Override
+        void check(Attribute attribute) {
+            if (!attribute.isComparable()) {
+                throw new InvalidDatatypeException("Range not supported for datatype {} of " + attribute.getName() + " " + attribute.getDatatype());
+            }
+            attribute.checkComparable(from);
+            attribute.checkComparable(to);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        NavigableMap<Object, PostingList> candidates(Attribute attribute) {
+            // an empty range, the skip list rejects a sub map with from above to
+            if (from != null && to != null && ((Comparable<Object>) from).compareTo(to) > 0) {
+                return attribute.range(from, true, from, false);
+            }
+            return attribute.range(from, fromInclusive, to, toInclusive);
+        }
+
+        @Override
+        public String toString() {
+            if (from != null && to != null) {
+                return attribute + (fromInclusive ? " >= " : " > ") + from + " AND " + attribute + (toInclusive ? " <= " : " < ") + to;
+            }
+            return from != null ? attribute + (fromInclusive ? " >= " : " > ") + from : attribute + (toInclusive ? " <= " : " < ") + to;
+        }
+    }
+
+    public static class Like extends ColumnPredicate {
+        private static final String STRING = String.class.getName();
+
+        private final String pattern;
+        // literal characters up to the first wildcard, every match starts with them
+        private final String prefix;
+
+        Like(String attribute, String pattern) {
+            super(attribute);
+            if (pattern == null) {
+                throw new IllegalArgumentException("Like over " + attribute + " needs a pattern");
+            }
+            this.pattern = pattern;
+            int wildcard = 0;
+            while (wildcard < pattern.length() && pattern.charAt(wildcard) != '%' && pattern.charAt(wildcard) != '_') {
+                wildcard++;
+            }
+            this.prefix = pattern.substring(0, wildcard);
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        @Override
+        boolean test(Object value) {
+            return value instanceof String && ((String) value).startsWith(prefix) && matches((String) value, prefix.length(), prefix.length());
+        }
+
+        // Greedy wildcard match that backtracks to the last %, linear for the usual patterns
+        private boolean matches(String value, int v, int p) {
+            int starPattern = -1;
+            int starValue = 0;
+            while (v < value.length()) {
+                if (p < pattern.length() && (pattern.charAt(p) == '_' || pattern.charAt(p) == value.charAt(v))) {
+                    v++;
+                    p++;
+                } else if (p < pattern.length() && pattern.charAt(p) == '%') {
+                    starPattern = p++;
+                    starValue = v;
+                } else if (starPattern >= 0) {
+                    p = starPattern + 1;
+                    v = ++starValue;
+                } else {
+                    return false;
+                }
+            }
+            while (p < pattern.length() && pattern.charAt(p) == '%') {
+                p++;
+            }
+            return p == pattern.length();
+        }
+
+        @Override
+        void check(Attribute attribute) {
+            if (!STRING.equals(attribute.getDatatype())) {
+                throw new InvalidDatatypeException("Like needs a string attribute {} " + attribute.getName());
+            }
+        }
+
+        // strings starting with the prefix sort from the prefix up to the prefix with its last character bumped
+        @Override
+        NavigableMap<Object, PostingList> candidates(Attribute attribute) {
+            if (prefix.isEmpty()) {
+                return null;
+            }
+            char last = prefix.charAt(prefix.length() - 1);
+            if (last == Character.MAX_VALUE) {
+                return attribute.range(prefix, true, null, false);
+            }
+            return attribute.range(prefix, true, prefix.substring(0, prefix.length() - 1) + (char) (last + 1), false);
+        }
+
+        @Override
+        public String toString() {
+            return attribute + " LIKE " + pattern;
+        }
+    }
+
+    public static class And extends Predicate {
+        private final List<Predicate> predicates;
+
+        And(List<Predicate> predicates) {
+            this.predicates = predicates;
+        }
+
+        public List<Predicate> getPredicates() {
+            return predicates;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Table table) {
+            RoaringBitmap result = null;
+            for (Predicate predicate : plan(table)) {
+                result = result == null ? predicate.evaluate(table) : predicate.intersect(table, result);
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result == null ? new RoaringBitmap() : result;
+        }
+
+        @Override
+        RoaringBitmap intersect(Table table, RoaringBitmap rowIds) {
+            RoaringBitmap result = rowIds;
+            for (Predicate predicate : plan(table)) {
+                if (result.isEmpty()) {
+                    break;
+                }
+                result = predicate.intersect(table, result);
+            }
+            return result;
+        }
+
+        @Override
+        long cost(Table table) {
+            long cost = predicates.isEmpty() ? 0 : Long.MAX_VALUE;
+            for (Predicate predicate : predicates) {
+                cost = Math.min(cost, predicate.cost(table));
+            }
+            return cost;
+        }
+
+        // cheapest child first, it drives and the others narrow its rows
+        private List<Predicate> plan(Table table) {
+            if (predicates.size() < 2) {
+                return predicates;
+            }
+            Map<Predicate, Long> costs = new IdentityHashMap<>();
+            for (Predicate predicate : predicates) {
+                costs.put(predicate, predicate.cost(table));
+            }
+            List<Predicate> plan = new ArrayList<>(predicates);
+            plan.sort(Comparator.comparingLong(costs::get));
+            return plan;
+        }
+
+        @Override
+        String explain(Table table) {
+            StringBuilder builder = new StringBuilder("(");
+            for (Predicate predicate : plan(table)) {
+                if (builder.length() > 1) builder.append(" THEN ");
+                builder.append(predicate.explain(table));
+            }
+            return builder.append(")").toString();
+        }
+
+        @Override
+        public String toString() {
+            return join(predicates, " AND ");
+        }
+    }
+
+    public static class Or extends Predicate {
+        private final List<Predicate> predicates;
+
+        Or(List<Predicate> predicates) {
+            this.predicates = predicates;
+        }
+
+        public List<Predicate> getPredicates() {
+            return predicates;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Table table) {
+            RoaringBitmap result = new RoaringBitmap();
+            for (Predicate predicate : predicates) {
+                result = result.or(predicate.evaluate(table));
+            }
+            return result;
+        }
+
+        // every branch narrows the candidates on its own, a branch without index never scans the whole column
+        @Override
+        RoaringBitmap intersect(Table table, RoaringBitmap rowIds) {
+            RoaringBitmap result = new RoaringBitmap();
+            for (Predicate predicate : predicates) {
+                result = result.or(predicate.intersect(table, rowIds));
+            }
+            return result;
+        }
+
+        @Override
+        long cost(Table table) {
+            long cost = 0;
+            for (Predicate predicate : predicates) {
+                cost = Math.min(scanCost(table), cost + predicate.cost(table));
+            }
+            return cost;
+        }
+
+        @Override
+        public String toString() {
+            return join(predicates, " OR ");
+        }
+    }
+}
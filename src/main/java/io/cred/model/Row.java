@@ -6,7 +6,8 @@ public class Row {
     private String key;
     private List<Entry> entries;
     private long createdAtMillis;
-//    private Metadata metadata;   We can save row related metadata here, like available column map for given row.
+    // version of the write that produced these values, 0 for rows read without a snapshot
+    private long version;
 
     public Row(String key, List<Entry> entries) {
         this.key = key;
@@ -14,6 +15,23 @@ public class Row {
         this.createdAtMillis = System.currentTimeMillis();
     }
 
+    public Row(String key, List<Entry> entries, long version) {
+        this(key, entries);
+        this.version = version;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
     @Override
     public String toString() {
         return "\nRow : " +
@@ -0,0 +1,50 @@
+package io.cred.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Undo record of one key: the row as it was before the write with the given version. Records are immutable and
+// linked newest first, so a reader holding a chain keeps seeing all of it while the collector trims the map entry.
+final class RowVersion {
+
+    // version of the write that replaced this image
+    final long version;
+    // version of the write that produced this image
+    final long previousVersion;
+    // false when the key did not exist before the write, image is null then
+    final boolean existed;
+    final Map<String, Object> image;
+    final RowVersion older;
+
+    RowVersion(long version, long previousVersion, boolean existed, Map<String, Object> image, RowVersion older) {
+        this.version = version;
+        this.previousVersion = previousVersion;
+        this.existed = existed;
+        this.image = image;
+        this.older = older;
+    }
+
+    // The chain without the records no snapshot at or after horizon can reach: a walk for such a snapshot stops at
+    // the newest record whose previousVersion is visible, everything older than that is dead
+    RowVersion trim(long horizon) {
+        List<RowVersion> kept = new ArrayList<>();
+        RowVersion record = this;
+        while (record != null) {
+            kept.add(record);
+            if (record.previousVersion <= horizon) {
+                break;
+            }
+            record = record.older;
+        }
+        if (record == null || record.older == null) {
+            return this;
+        }
+        RowVersion trimmed = null;
+        for (int i = kept.size() - 1; i >= 0; i--) {
+            RowVersion r = kept.get(i);
+            trimmed = new RowVersion(r.version, r.previousVersion, r.existed, r.image, trimmed);
+        }
+        return trimmed;
+    }
+}
@@ -0,0 +1,143 @@
+package io.cred.model;
+
+import io.cred.util.BinaryCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Lazy, resumable iteration over the keys of a table in key order. Rows are read one page at a time, so a full
+// table export only ever holds pageSize rows. The continuation token is opaque to clients and encodes the last
+// key handed out plus the scan bounds; resuming with it continues right after that key.
+// Iteration is weakly consistent: keys inserted or deleted during the scan may or may not be seen.
+public class ScanCursor implements Iterator<Row> {
+
+    private static final byte TOKEN_VERSION = 1;
+
+    private final Table table;
+    private final String[] columns;
+    private final int pageSize;
+    // exclusive upper bound, null for none
+    private final String toKey;
+    // only keys starting with prefix, null for none
+    private final String prefix;
+
+    // where the next page is read from, runs ahead of resumeKey by the buffered page
+    private String position;
+    private boolean positionInclusive;
+    // where a resumed cursor starts: right after the last row handed out
+    private String resumeKey;
+    private boolean resumeInclusive;
+    private Iterator<Row> page = Collections.emptyIterator();
+    private boolean exhausted;
+
+    ScanCursor(Table table, String fromKey, boolean fromInclusive, String toKey, String prefix, String[] columns, int pageSize) {
+        this.table = table;
+        this.position = fromKey;
+        this.positionInclusive = fromInclusive;
+        this.resumeKey = fromKey;
+        this.resumeInclusive = fromInclusive;
+        this.toKey = toKey;
+        this.prefix = prefix;
+        this.columns = columns;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    // for cursors whose pages come from elsewhere, e.g. a remote store; they override hasNext, next and
+    // getContinuationToken
+    protected ScanCursor(String[] columns, int pageSize) {
+        this(null, null, true, null, null, columns, pageSize);
+    }
+
+    public static ScanCursor resume(Table table, String continuationToken, String[] columns, int pageSize) {
+        ByteBuffer in = decode(continuationToken);
+        String position = (String) BinaryCodec.readValue(in);
+        boolean inclusive = in.get() != 0;
+        String toKey = (String) BinaryCodec.readValue(in);
+        String prefix = (String) BinaryCodec.readValue(in);
+        return new ScanCursor(table, position, inclusive, toKey, prefix, columns, pageSize);
+    }
+
+    // token continuing the scan of continuationToken right after key, the bounds are kept
+    public static String resumeAfter(String continuationToken, String key) {
+        ByteBuffer in = decode(continuationToken);
+        BinaryCodec.readValue(in);
+        in.get();
+        String toKey = (String) BinaryCodec.readValue(in);
+        String prefix = (String) BinaryCodec.readValue(in);
+        return encode(key, false, toKey, prefix);
+    }
+
+    private static ByteBuffer decode(String continuationToken) {
+        ByteBuffer in = ByteBuffer.wrap(Base64.getUrlDecoder().decode(continuationToken));
+        if (in.get() != TOKEN_VERSION) {
+            throw new IllegalArgumentException("Unsupported continuation token " + continuationToken);
+        }
+        return in;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext() && !exhausted) {
+            List<String> keys = table.keyRange(position, positionInclusive, toKey, prefix, pageSize);
+            exhausted = keys.size() < pageSize;
+            if (!keys.isEmpty()) {
+                // keys deleted since keyRange are dropped by fetchExisting, the position still moves past them
+                position = keys.get(keys.size() - 1);
+                positionInclusive = false;
+                page = table.fetchExisting(keys, columns).iterator();
+            }
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public Row next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Row row = page.next();
+        resumeKey = row.getKey();
+        resumeInclusive = false;
+        return row;
+    }
+
+    // up to pageSize rows, an empty result set means the scan is complete
+    public ResultSet nextPage() {
+        ResultSet resultSet = new ResultSet();
+        for (int i = 0; i < pageSize && hasNext(); i++) {
+            resultSet.addRow(next());
+        }
+        return resultSet;
+    }
+
+    // token to resume after the last row returned so far, null once the scan is complete
+    public String getContinuationToken() {
+        if (!hasNext()) {
+            return null;
+        }
+        return encode(resumeKey, resumeInclusive, toKey, prefix);
+    }
+
+    private static String encode(String resumeKey, boolean resumeInclusive, String toKey, String prefix) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(TOKEN_VERSION);
+            BinaryCodec.writeValue(out, resumeKey);
+            out.writeBoolean(resumeInclusive);
+            BinaryCodec.writeValue(out, toKey);
+            BinaryCodec.writeValue(out, prefix);
+            out.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
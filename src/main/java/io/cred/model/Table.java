@@ -1,62 +1,1192 @@
 package io.cred.model;
 
+import io.cred.cdc.ChangeEvent;
+import io.cred.cdc.ChangeRing;
 import io.cred.exception.AttributeDoesNotExistsException;
+import io.cred.exception.CheckpointException;
+import io.cred.exception.InvalidDatatypeException;
 import io.cred.exception.KeyAlreadyExistsException;
 import io.cred.exception.KeyDoesNotExistsException;
+import io.cred.exception.OffHeapCapacityExceededException;
+import io.cred.exception.SpillException;
+import io.cred.metrics.Histogram;
+import io.cred.metrics.TableStats;
+import io.cred.storage.AccessCounters;
+import io.cred.storage.Chunk;
+import io.cred.storage.ColumnSegment;
+import io.cred.storage.ColumnSummary;
+import io.cred.storage.ColumnVector;
+import io.cred.storage.LongColumnVector;
+import io.cred.storage.ObjectColumnVector;
+import io.cred.storage.OffHeapArena;
+import io.cred.storage.OffHeapColumnVector;
+import io.cred.storage.PostingList;
+import io.cred.storage.RoaringBitmap;
+import io.cred.storage.RowIdAllocator;
+import io.cred.storage.RowPresence;
+import io.cred.storage.SpillStore;
+import io.cred.util.BinaryCodec;
+import io.cred.util.FileSync;
+import io.cred.util.StripedLockManager;
+import io.cred.util.TimerWheel;
 import io.cred.util.ValidationUtil;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class Table {
 
+    private static final String DICTIONARY_FILE = "table.seg";
+    private static final String COLUMN_SUFFIX = ".col";
+    // "TBL" and the layout of the dictionary: 1 has the range indexed attributes as config, 2 adds the off heap
+    // capacity, 3 the expiry section after the keys, 4 the memory budget
+    private static final int DICTIONARY_MAGIC = 0x54424C30;
+    private static final int DICTIONARY_LAYOUT = 4;
+    // rows applied per lock acquisition in insertBatch, bounds how long one batch holds its stripes
+    private static final int BATCH_CHUNK = 4096;
+    // multi gets larger than this are split in slices materialized in parallel on the common ForkJoin pool
+    private static final int PARALLEL_FETCH_THRESHOLD = 2048;
+    // skip list node with its index levels, boxed row id and a short key string
+    private static final long ESTIMATED_KEY_BYTES = 96;
+    // optimistic attempts of a versioned read before it falls back to the read lock of the stripe
+    private static final int OPTIMISTIC_READS = 3;
+    // encodings of a chunk thrown away because writes hit it meanwhile, before the chunk is left as it is
+    private static final int SEAL_ATTEMPTS = 3;
+    // resolution of the expiry wheel, rows are hidden from reads on the millisecond but swept per tick
+    private static final long EXPIRY_TICK_MILLIS = 100;
+    // a spill file is rewritten with its live records only once it is this large and mostly garbage
+    private static final long SPILL_COMPACTION_BYTES = 16 << 20;
+    // rows the eviction hand moves past on one write at most, so a put taking the table far over budget is not
+    // the one that pays for all of it
+    private static final int EVICTION_STEPS = 1024;
+
     private String name;
-    private ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<>();
+    private final TableConfig config;
+    // key - row id, every attribute stores its values at the row id of the key
+    private ConcurrentSkipListMap<String, Integer> keys = new ConcurrentSkipListMap<>();
+    // row id - key, used to turn secondary index postings back into keys
+    private final ObjectColumnVector rowKeys = new ObjectColumnVector();
+    private final RowIdAllocator rowIdAllocator;
     private ConcurrentHashMap<String, Attribute> attributesMap = new ConcurrentHashMap<>();
-    private static final Map<String, Object> keyLocks = new ConcurrentHashMap<>();
-    private final static String READLOCK = "readLock-";
-    private final static String WRITELOCK = "writeLock-";
+    // ordinal - attribute, every attribute gets the next ordinal when it enters attributesMap. Grown under
+    // ordinalLock and republished, readers index the array they see
+    private volatile Attribute[] attributesByOrdinal = new Attribute[16];
+    private int attributeCount;
+    private final ReentrantLock ordinalLock = new ReentrantLock();
+    // row id - ordinals of the row's populated columns, so full row reads and deletes skip the absent columns of
+    // wide sparse tables. Evicted rows keep their bits, the values are in the spill file
+    private final RowPresence rowPresence = new RowPresence();
+    // per table striped locks, readers of the same key share a stripe instead of serializing on it
+    private final StripedLockManager lockManager = new StripedLockManager();
+    // write ahead journal, null for purely in memory tables
+    private volatile TableJournal journal;
+    // change stream subscribers follow, null until change capture is enabled
+    private volatile ChangeRing changes;
+    // direct memory of the column values, null unless the table is configured off heap
+    private final OffHeapArena arena;
+    // column chunks below this index have been offered to ColumnVector.seal
+    private final AtomicInteger sealedChunks = new AtomicInteger();
+    private final AtomicBoolean sealing = new AtomicBoolean();
+
+    // MVCC: every write takes the next version under its stripe lock and publishes it in version order once the
+    // stripe is released, a snapshot reads the table as of the last published version
+    private final AtomicLong nextVersion = new AtomicLong();
+    private final AtomicLong visibleVersion = new AtomicLong();
+    // row id - version of the write that produced the current values of the row
+    private final LongColumnVector rowVersions = new LongColumnVector();
+    // key - undo records newest first, only kept while a snapshot may still need them, see collectVersions
+    private final ConcurrentHashMap<String, RowVersion> versions = new ConcurrentHashMap<>();
+    // snapshot version - number of open snapshots at that version, guarded by snapshotLock
+    private final TreeMap<Long, Integer> openSnapshots = new TreeMap<>();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private volatile boolean versionsCollected;
+    // version that removed the row, row id: ids of removed rows in the order they were removed. A search that read
+    // a posting before the removal may still map the id to a key, so ids only go back to the allocator once every
+    // search and snapshot open at the removal is done, see collectVersions
+    private final ConcurrentLinkedQueue<long[]> retiredRowIds = new ConcurrentLinkedQueue<>();
 
+    // row id - epoch millis the row expires at, only rows written with a ttl have a slot set
+    private final LongColumnVector rowExpiry = new LongColumnVector();
+    // key by expiry, entries are checked against rowExpiry when they come due so stale ones are harmless
+    private final TimerWheel<String> expiries = new TimerWheel<>(EXPIRY_TICK_MILLIS, System.currentTimeMillis());
+    // set once the first row with a ttl is written, tables without ttl skip every expiry check
+    private volatile boolean expiring;
+
+    // Cold tier of memory bounded tables, null otherwise. An evicted row keeps its key, row id and postings, only
+    // its column values move to the spill file; spillOffsets holds where by row id
+    private volatile SpillStore spill;
+    private final LongColumnVector spillOffsets = new LongColumnVector();
+    private final AccessCounters accessCounters = new AccessCounters();
+    // estimated bytes of the column values held in memory, only tracked for memory bounded tables
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicInteger evictedRows = new AtomicInteger();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    // guarded by evicting
+    private int clockHand;
 
     public Table(String name) {
+        this(name, TableConfig.defaults());
+    }
+
+    public Table(String name, TableConfig config) {
+        this(name, config, new RowIdAllocator());
+    }
+
+    private Table(String name, TableConfig config, RowIdAllocator rowIdAllocator) {
         this.name = name;
+        this.config = config;
+        this.rowIdAllocator = rowIdAllocator;
+        this.arena = config.isOffHeap() ? new OffHeapArena(config.getOffHeapCapacity()) : null;
+        this.spill = config.isMemoryBounded() ? newSpillStore() : null;
+    }
+
+    private SpillStore newSpillStore() {
+        try {
+            Path directory = config.getSpillDirectory();
+            Path file;
+            if (directory == null) {
+                file = Files.createTempFile(name + "-", ".spill");
+            } else {
+                Files.createDirectories(directory);
+                file = Files.createTempFile(directory, name + "-", ".spill");
+            }
+            file.toFile().deleteOnExit();
+            return new SpillStore(file);
+        } catch (IOException e) {
+            throw new SpillException("Unable to create spill file of table " + name, e);
+        }
     }
 
     public long size() {
         return keys.size();
     }
 
-    public void insertRecord(String key, List<Entry> entries) {
-        if (this.keys.contains(key))
+    // Gauges for monitoring. Walks every posting list, meant for periodic scraping rather than the request path
+    public TableStats stats() {
+        Histogram postingSizes = new Histogram();
+        long rows = keys.size();
+        long bytes = rows * ESTIMATED_KEY_BYTES + rowKeys.sizeInBytes() + rowPresence.sizeInBytes();
+        for (Attribute attribute : attributesMap.values()) {
+            bytes += attribute.getValues().sizeInBytes();
+            for (PostingList postingList : attribute.getValueIdMap().values()) {
+                postingSizes.record(postingList.cardinality());
+                bytes += postingList.sizeInBytes();
+            }
+        }
+        return new TableStats(name, rows, attributesMap.size(), postingSizes.snapshot(), bytes,
+                arena == null ? 0 : arena.getUsedBytes(), arena == null ? 0 : arena.getReservedBytes(),
+                lockManager.getWaitNanos(), lockManager.getContendedCount(), evictedRows.get(),
+                spill == null ? 0 : spill.size());
+    }
+
+    // returns the journal sequence of the write (0 without journal) for the caller to wait on after the stripe is released
+    public long insertRecord(String key, List<Entry> entries) {
+        return insertRecord(key, entries, 0);
+    }
+
+    // Row hidden from reads from expiresAtMillis (epoch millis, 0 for never) on and removed by the background
+    // sweeper soon after. An expired key that was not swept yet can be inserted again
+    public long insertRecord(String key, List<Entry> entries, long expiresAtMillis) {
+        long sequence = insert(key, entries, expiresAtMillis);
+        sealFullChunks();
+        evictIfOverBudget(EVICTION_STEPS);
+        return sequence;
+    }
+
+    // Changes the given columns of an existing key, columns not listed keep their values and the row its expiry
+    public long updateRecord(String key, List<Entry> entries) {
+        Integer rowId = this.keys.get(key);
+        if (rowId == null || isExpired(rowId, System.currentTimeMillis())) {
+            throw new KeyDoesNotExistsException("Key {}  does not exists" + key);
+        }
+        return write(key, entries, false);
+    }
+
+    // update of the key when it exists, insert otherwise
+    public long upsertRecord(String key, List<Entry> entries) {
+        long sequence = write(key, entries, true);
+        sealFullChunks();
+        evictIfOverBudget(EVICTION_STEPS);
+        return sequence;
+    }
+
+    private long insert(String key, List<Entry> entries, long expiresAtMillis) {
+        Integer existing = this.keys.get(key);
+        if (existing != null && !isExpired(existing, System.currentTimeMillis()))
             throw new KeyAlreadyExistsException("Key {} already exists " + key);
 
-        String lockKey = WRITELOCK + key;
-        synchronized (keyLocks.computeIfAbsent(lockKey, (k) -> new Object())) {
-            if (this.keys.contains(key))
+        int stripe = lockManager.stripeOf(key);
+        long stamp = lockManager.writeLock(stripe);
+        long version = 0;
+        try {
+            existing = this.keys.get(key);
+            if (existing != null && !isExpired(existing, System.currentTimeMillis()))
                 throw new KeyAlreadyExistsException("Key {} already exists " + key);
-            try {
-                if (ValidationUtil.validate(this, entries)) {
-                    entries.forEach(e -> {
-                        keys.add(key);
-                        Attribute attribute = this.attributesMap.get(e.getName());
-                        if (attribute == null) {
-                            attribute = new Attribute(e.getName(), e.getValue());
-                            this.attributesMap.putIfAbsent(e.getName(), attribute);
+            if (ValidationUtil.validate(this, entries)) {
+                resolveAttributes(entries);
+                checkOffHeapRoom(estimateOffHeapBytes(entries));
+                TableJournal journal = this.journal;
+                // the expired row and the new one share a version, publish can only wait for one per write
+                version = nextVersion.incrementAndGet();
+                if (existing != null) {
+                    removeRow(key, existing, version, journal);
+                }
+                long sequence = journal == null ? 0 : journal.logInsert(this, key, entries, expiresAtMillis);
+                applyInsert(key, entries, version, expiresAtMillis, journal);
+                return sequence;
+            }
+            return 0;
+        } finally {
+            lockManager.unlockWrite(stripe, stamp);
+            publish(version);
+        }
+    }
+
+    private long write(String key, List<Entry> entries, boolean insertIfAbsent) {
+        int stripe = lockManager.stripeOf(key);
+        long stamp = lockManager.writeLock(stripe);
+        long version = 0;
+        try {
+            Integer rowId = this.keys.get(key);
+            boolean expired = rowId != null && isExpired(rowId, System.currentTimeMillis());
+            if ((rowId == null || expired) && !insertIfAbsent) {
+                throw new KeyDoesNotExistsException("Key {}  does not exists" + key);
+            }
+            if (ValidationUtil.validate(this, entries)) {
+                resolveAttributes(entries);
+                checkOffHeapRoom(estimateOffHeapBytes(entries));
+                TableJournal journal = this.journal;
+                if (rowId == null || expired) {
+                    version = nextVersion.incrementAndGet();
+                    if (expired) {
+                        removeRow(key, rowId, version, journal);
+                    }
+                    long sequence = journal == null ? 0 : journal.logInsert(this, key, entries);
+                    applyInsert(key, entries, version, 0, journal);
+                    return sequence;
+                }
+                // the journal has no partial update, the merged row is logged as a put replacing the whole row
+                ensureResident(rowId);
+                Map<String, Object> image = readRow(rowId);
+                Map<String, Object> merged = new LinkedHashMap<>(image);
+                entries.forEach(e -> merged.put(e.getName(), e.getValue()));
+                long expiresAtMillis = rowExpiry.getLong(rowId, 0L);
+                long sequence = journal == null ? 0 : journal.logInsert(this, key, toEntries(merged), expiresAtMillis);
+                version = nextVersion.incrementAndGet();
+                pushVersion(key, new RowVersion(version, rowVersions.getLong(rowId, 0L), true, image, versions.get(key)));
+                try {
+                    applyUpdate(rowId, entries);
+                } catch (RuntimeException e) {
+                    restore(key, rowId, entries, image, expiresAtMillis, journal);
+                    throw e;
+                }
+                charge(heapBytes(merged.values()) - heapBytes(image.values()));
+                rowVersions.setLong(rowId, version);
+                publishChange(ChangeEvent.Type.UPDATE, key, entries, version);
+                return sequence;
+            }
+            return 0;
+        } finally {
+            lockManager.unlockWrite(stripe, stamp);
+            publish(version);
+        }
+    }
+
+    // Creates the columns the entries introduce and checks every entry against the datatype of its column. Called
+    // under the key stripe before the write is journaled: the entries were validated before a writer of another
+    // stripe may have created one of their columns with another datatype
+    private void resolveAttributes(List<Entry> entries) {
+        for (Entry e : entries) {
+            attributeFor(e);
+        }
+    }
+
+    private Attribute attributeFor(Entry e) {
+        Attribute attribute = this.attributesMap.get(e.getName());
+        if (attribute == null) {
+            attribute = this.attributesMap.computeIfAbsent(e.getName(), attributeName -> newAttribute(attributeName, e.getValue()));
+        }
+        if (!attribute.getDatatype().equals(e.getValue().getClass().getName())) {
+            throw new InvalidDatatypeException("Invalid Datatype {} for " + e.getName());
+        }
+        return attribute;
+    }
+
+    // caller holds the key stripe, has resolved the attributes of the entries and journaled the row
+    private void applyInsert(String key, List<Entry> entries, long version, long expiresAtMillis, TableJournal journal) {
+        int rowId = rowIdAllocator.allocate();
+        rowKeys.set(rowId, key);
+        try {
+            for (Entry e : entries) {
+                Attribute attribute = this.attributesMap.get(e.getName());
+                rowPresence.set(rowId, attribute.getOrdinal());
+                attribute.put(rowId, e.getValue());
+            }
+        } catch (RuntimeException e) {
+            rollback(key, rowId, version, journal);
+            throw e;
+        }
+        admit(rowId, entries);
+        rowVersions.setLong(rowId, version);
+        if (expiresAtMillis > 0) {
+            scheduleExpiry(key, rowId, expiresAtMillis);
+        }
+        // a key inserted again after a delete a snapshot can still see needs a record of its absence
+        RowVersion head = versions.get(key);
+        if (head != null) {
+            pushVersion(key, new RowVersion(version, head.version, false, null, head));
+        }
+        keys.put(key, rowId);
+        publishChange(ChangeEvent.Type.INSERT, key, entries, version);
+    }
+
+    // the old value leaves its posting before the new one is indexed, unchanged columns are left alone. Caller has
+    // resolved the attributes of the entries
+    private void applyUpdate(int rowId, List<Entry> entries) {
+        for (Entry e : entries) {
+            Attribute attribute = this.attributesMap.get(e.getName());
+            if (e.getValue().equals(attribute.get(rowId))) {
+                continue;
+            }
+            attribute.remove(rowId);
+            rowPresence.set(rowId, attribute.getOrdinal());
+            attribute.put(rowId, e.getValue());
+        }
+    }
+
+    // Puts back the columns of an update that failed half way, e.g. because the arena ran out of room. The values
+    // fit, they held the room before the update; the merged row already in the journal is followed by the restored one
+    private void restore(String key, int rowId, List<Entry> entries, Map<String, Object> image, long expiresAtMillis,
+                         TableJournal journal) {
+        for (Entry e : entries) {
+            Attribute attribute = this.attributesMap.get(e.getName());
+            if (attribute != null) {
+                attribute.remove(rowId);
+                Object value = image.get(e.getName());
+                if (value != null) {
+                    attribute.put(rowId, value);
+                } else {
+                    rowPresence.clear(rowId, attribute.getOrdinal());
+                }
+            }
+        }
+        versions.computeIfPresent(key, (k, head) -> head.older);
+        if (journal != null) {
+            journal.logInsert(this, key, toEntries(image), expiresAtMillis);
+        }
+    }
+
+    // column - value of every populated column of the row, caller holds the key stripe
+    private Map<String, Object> readRow(int rowId) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        Attribute[] byOrdinal = this.attributesByOrdinal;
+        rowPresence.forEach(rowId, ordinal -> {
+            Object value = byOrdinal[ordinal].get(rowId);
+            if (value != null) {
+                row.put(byOrdinal[ordinal].getName(), value);
+            }
+        });
+        return row;
+    }
+
+    // drops the row from the postings of its populated columns only, caller holds the key stripe
+    private void removeColumns(int rowId) {
+        Attribute[] byOrdinal = this.attributesByOrdinal;
+        rowPresence.forEach(rowId, ordinal -> byOrdinal[ordinal].remove(rowId));
+        rowPresence.clear(rowId);
+    }
+
+    private static List<Entry> toEntries(Map<String, Object> row) {
+        List<Entry> entries = new ArrayList<>(row.size());
+        row.forEach((column, value) -> entries.add(new Entry(column, value)));
+        return entries;
+    }
+
+    private void pushVersion(String key, RowVersion record) {
+        versions.put(key, record);
+        collectInBackground();
+    }
+
+    private void retireRowId(int rowId, long version) {
+        retiredRowIds.offer(new long[]{version, rowId});
+        collectInBackground();
+    }
+
+    private void collectInBackground() {
+        if (!versionsCollected) {
+            versionsCollected = true;
+            VersionCollector.register(this);
+        }
+    }
+
+    // Commits become visible in version order: a write waits for every earlier version to be published, so a
+    // snapshot at version v sees all writes up to v and none after. Called with no stripe held; 0 means no write
+    private void publish(long version) {
+        if (version == 0) {
+            return;
+        }
+        int spins = 0;
+        while (visibleVersion.get() != version - 1) {
+            if (++spins < 64) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        visibleVersion.set(version);
+    }
+
+    public TableSnapshot openSnapshot() {
+        return new TableSnapshot(this, pinVersion());
+    }
+
+    // Holds the version horizon at the visible version until closeSnapshot. Searches pin it while they turn
+    // posting row ids into keys, so no id they read is handed to another key meanwhile
+    private long pinVersion() {
+        snapshotLock.lock();
+        try {
+            long version = visibleVersion.get();
+            openSnapshots.merge(version, 1, Integer::sum);
+            return version;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    void closeSnapshot(long version) {
+        snapshotLock.lock();
+        try {
+            openSnapshots.computeIfPresent(version, (v, count) -> count == 1 ? null : count - 1);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    // Oldest version a snapshot may read at. Taken under the same lock snapshots open with, a snapshot opened
+    // later reads at the then visible version, which is never below this
+    private long versionHorizon() {
+        snapshotLock.lock();
+        try {
+            long visible = visibleVersion.get();
+            return openSnapshots.isEmpty() ? visible : Math.min(visible, openSnapshots.firstKey());
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    // Drops the undo records no open or future snapshot can reach and releases the row ids retired before the
+    // horizon, returns the number of keys still carrying records. Chains are swapped with remove/replace against
+    // the head they were built from, a write racing with the collector keeps its newer head and the chain is
+    // trimmed on the next run
+    public int collectVersions() {
+        long horizon = versionHorizon();
+        for (long[] retired; (retired = retiredRowIds.peek()) != null && retired[0] <= horizon; ) {
+            if (retiredRowIds.remove(retired)) {
+                rowIdAllocator.release((int) retired[1]);
+            }
+        }
+        for (Map.Entry<String, RowVersion> chain : versions.entrySet()) {
+            RowVersion head = chain.getValue();
+            if (head.version <= horizon) {
+                versions.remove(chain.getKey(), head);
+            } else {
+                RowVersion trimmed = head.trim(horizon);
+                if (trimmed != head) {
+                    versions.replace(chain.getKey(), head, trimmed);
+                }
+            }
+        }
+        return versions.size();
+    }
+
+    // rough heap bytes of column values, unboxed slots count 8
+    private static long heapBytes(Collection<Object> values) {
+        long bytes = 0;
+        for (Object value : values) {
+            bytes += heapBytes(value);
+        }
+        return bytes;
+    }
+
+    private static long heapBytes(Object value) {
+        return value instanceof String ? 40 + ((String) value).length() : 8;
+    }
+
+    private void charge(long bytes) {
+        if (spill != null) {
+            residentBytes.addAndGet(bytes);
+        }
+    }
+
+    // a new row starts with one use, so it survives one pass of the clock hand
+    private void admit(int rowId, List<Entry> entries) {
+        if (spill != null) {
+            long bytes = 0;
+            for (Entry e : entries) {
+                bytes += heapBytes(e.getValue());
+            }
+            residentBytes.addAndGet(bytes);
+            accessCounters.set(rowId, 1);
+        }
+    }
+
+    private boolean isEvicted(int rowId) {
+        return spill != null && !spillOffsets.isNull(rowId);
+    }
+
+    // column - value of an evicted row, null when the row is in memory. Caller holds the key stripe
+    private Map<String, Object> spilledRow(int rowId) {
+        if (!isEvicted(rowId)) {
+            return null;
+        }
+        Map<String, Object> row = new HashMap<>();
+        for (Entry e : BinaryCodec.readEntries(ByteBuffer.wrap(spill.read(spillOffsets.getLong(rowId, 0L))))) {
+            row.put(e.getName(), e.getValue());
+        }
+        return row;
+    }
+
+    private Object spilledValue(int rowId, String column) {
+        Map<String, Object> row = spilledRow(rowId);
+        return row == null ? null : row.get(column);
+    }
+
+    // Moves an evicted row back into the columns, its postings never left. Caller holds the key stripe for writing
+    private void ensureResident(int rowId) {
+        if (!isEvicted(rowId)) {
+            return;
+        }
+        byte[] record = spill.read(spillOffsets.getLong(rowId, 0L));
+        List<Entry> entries = BinaryCodec.readEntries(ByteBuffer.wrap(record));
+        for (Entry e : entries) {
+            this.attributesMap.get(e.getName()).getValues().set(rowId, e.getValue());
+        }
+        spillOffsets.clear(rowId);
+        spill.release(record.length);
+        evictedRows.decrementAndGet();
+        admit(rowId, entries);
+    }
+
+    private void faultIn(String key) {
+        int stripe = lockManager.stripeOf(key);
+        long stamp = lockManager.writeLock(stripe);
+        try {
+            Integer rowId = this.keys.get(key);
+            if (rowId != null) {
+                ensureResident(rowId);
+            }
+        } finally {
+            lockManager.unlockWrite(stripe, stamp);
+        }
+        evictIfOverBudget(EVICTION_STEPS);
+    }
+
+    // Generalized CLOCK: the hand walks the row ids, decrementing use counters, and evicts the rows it finds at zero
+    // until the table is a tenth below its budget. Runs on the thread that took the table over budget once it holds
+    // no stripe, each row is evicted under its own stripe; other threads finding an eviction in progress go on.
+    // A call moves the hand at most steps rows, the next write over budget goes on from there
+    private void evictIfOverBudget(long steps) {
+        if (spill == null || residentBytes.get() <= config.getMemoryBudget() || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long target = config.getMemoryBudget() - config.getMemoryBudget() / 10;
+            int rows = rowIdAllocator.highWaterMark();
+            for (long step = 0; step < steps && residentBytes.get() > target; step++) {
+                int rowId = clockHand = clockHand + 1 < rows ? clockHand + 1 : 0;
+                Object key = rowKeys.get(rowId);
+                if (key == null || isEvicted(rowId) || accessCounters.decay(rowId) > 0) {
+                    continue;
+                }
+                int stripe = lockManager.stripeOf(key);
+                long stamp = lockManager.writeLock(stripe);
+                try {
+                    Integer current = this.keys.get(key);
+                    if (current != null && current == rowId && !isEvicted(rowId)) {
+                        evict(rowId);
+                    }
+                } finally {
+                    lockManager.unlockWrite(stripe, stamp);
+                }
+            }
+            SpillStore spill = this.spill;
+            if (spill.size() > SPILL_COMPACTION_BYTES && spill.size() > 2 * spill.liveBytes()) {
+                compactSpill();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    // caller holds the key stripe for writing
+    private void evict(int rowId) {
+        Map<String, Object> image = readRow(rowId);
+        if (image.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            BinaryCodec.writeEntries(out, toEntries(image));
+            out.flush();
+        } catch (IOException e) {
+            // in memory stream, can not happen
+            throw new IllegalStateException(e);
+        }
+        spillOffsets.setLong(rowId, spill.append(bytes.toByteArray()));
+        for (String column : image.keySet()) {
+            this.attributesMap.get(column).getValues().clear(rowId);
+        }
+        evictedRows.incrementAndGet();
+        charge(-heapBytes(image.values()));
+    }
+
+    // Copies the live records to a fresh file. Every stripe is write locked, readers of evicted rows hold theirs
+    private void compactSpill() {
+        long[] stamps = new long[lockManager.stripes()];
+        for (int stripe = 0; stripe < stamps.length; stripe++) {
+            stamps[stripe] = lockManager.writeLock(stripe);
+        }
+        try {
+            SpillStore previous = this.spill;
+            SpillStore compacted = newSpillStore();
+            int rows = rowIdAllocator.highWaterMark();
+            for (int rowId = 0; rowId < rows; rowId++) {
+                if (!spillOffsets.isNull(rowId)) {
+                    spillOffsets.setLong(rowId, compacted.append(previous.read(spillOffsets.getLong(rowId, 0L))));
+                }
+            }
+            this.spill = compacted;
+            previous.close();
+        } finally {
+            for (int stripe = stamps.length - 1; stripe >= 0; stripe--) {
+                lockManager.unlockWrite(stripe, stamps[stripe]);
+            }
+        }
+    }
+
+    // Row of the key as of the given version, Long.MAX_VALUE reads the latest. The stripe is read optimistically
+    // and the read retried on a concurrent write; after a few failed attempts, and always for off heap columns
+    // whose bytes may be reused under an optimistic reader, the stripe is read locked
+    Row readVersion(String key, String[] columns, long version) {
+        if (spill != null) {
+            Integer rowId = this.keys.get(key);
+            if (rowId != null && isEvicted(rowId)) {
+                faultIn(key);
+            }
+        }
+        int stripe = lockManager.stripeOf(key);
+        if (arena == null) {
+            for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+                long stamp = lockManager.tryOptimisticRead(stripe);
+                if (stamp == 0L) {
+                    continue;
+                }
+                try {
+                    Row row = resolveVersion(key, columns, version);
+                    if (lockManager.validate(stripe, stamp)) {
+                        return row;
+                    }
+                } catch (RuntimeException e) {
+                    // inconsistent state seen mid write, only an error when nothing was written meanwhile
+                    if (lockManager.validate(stripe, stamp)) {
+                        throw e;
+                    }
+                }
+            }
+        }
+        long stamp = lockManager.readLock(stripe);
+        try {
+            return resolveVersion(key, columns, version);
+        } finally {
+            lockManager.unlockRead(stripe, stamp);
+        }
+    }
+
+    private Row resolveVersion(String key, String[] columns, long version) {
+        Integer rowId = this.keys.get(key);
+        RowVersion head = versions.get(key);
+        if (rowId != null && isExpired(rowId, System.currentTimeMillis())) {
+            return absentRow(key, columns);
+        }
+        if (rowId != null) {
+            long rowVersion = rowVersions.getLong(rowId, 0L);
+            if (rowVersion <= version) {
+                // evicted again since it was faulted in, read through
+                Map<String, Object> spilled = spilledRow(rowId);
+                List<Entry> entries;
+                if (columns == null) {
+                    entries = populatedEntries(rowId, spilled);
+                } else {
+                    entries = new ArrayList<>(columns.length);
+                    for (String column : columns) {
+                        Attribute attribute = this.attributesMap.get(column);
+                        if (attribute != null) {
+                            entries.add(new Entry(column, spilled == null ? attribute.get(rowId) : spilled.get(column)));
                         }
-                        attribute.getIdValueMap().putIfAbsent(key, e.getValue());
-                        if (attribute.getValueIdMap().get(e.getValue()) == null) {
-                            attribute.getValueIdMap().get(e.getValue());
-                            attribute.getValueIdMap().putIfAbsent(e.getValue(), new ArrayList<>());
+                    }
+                }
+                if (spill != null) {
+                    accessCounters.touch(rowId);
+                }
+                return new Row(key, entries, rowVersion);
+            }
+        } else if (head == null || head.version <= version) {
+            return absentRow(key, columns);
+        }
+        // the row changed after the snapshot, the first record whose image the snapshot already saw is the answer
+        for (RowVersion record = head; record != null; record = record.older) {
+            if (record.previousVersion <= version) {
+                if (!record.existed) {
+                    return absentRow(key, columns);
+                }
+                if (columns == null) {
+                    return new Row(key, toEntries(record.image), record.previousVersion);
+                }
+                List<Entry> entries = new ArrayList<>(columns.length);
+                for (String column : columns) {
+                    if (this.attributesMap.containsKey(column)) {
+                        entries.add(new Entry(column, record.image.get(column)));
+                    }
+                }
+                return new Row(key, entries, record.previousVersion);
+            }
+        }
+        return absentRow(key, columns);
+    }
+
+    // every populated column of the row in ordinal order, the order the table first saw the columns in
+    private List<Entry> populatedEntries(int rowId, Map<String, Object> spilled) {
+        List<Entry> entries = new ArrayList<>(rowPresence.count(rowId));
+        Attribute[] byOrdinal = this.attributesByOrdinal;
+        rowPresence.forEach(rowId, ordinal -> {
+            Attribute attribute = byOrdinal[ordinal];
+            Object value = spilled == null ? attribute.get(rowId) : spilled.get(attribute.getName());
+            if (value != null) {
+                entries.add(new Entry(attribute.getName(), value));
+            }
+        });
+        return entries;
+    }
+
+    private Row absentRow(String key, String[] columns) {
+        if (columns == null) {
+            return new Row(key, new ArrayList<>());
+        }
+        List<Entry> entries = new ArrayList<>(columns.length);
+        for (String column : columns) {
+            if (this.attributesMap.containsKey(column)) {
+                entries.add(new Entry(column, null));
+            }
+        }
+        return new Row(key, entries);
+    }
+
+    // Bulk insert: validated once per column, row ids reserved per chunk, columns appended column at a time and one
+    // posting update per distinct value and chunk. Existing keys and invalid rows are reported, not thrown.
+    public BatchResult insertBatch(Map<String, List<Entry>> rows) {
+        BatchResult result = new BatchResult();
+        Map<String, List<Entry>> valid = ValidationUtil.validate(this, rows, result);
+        List<String> batchKeys = new ArrayList<>(valid.keySet());
+        for (int from = 0; from < batchKeys.size(); from += BATCH_CHUNK) {
+            insertChunk(batchKeys.subList(from, Math.min(batchKeys.size(), from + BATCH_CHUNK)), valid, result);
+            // the hand moves with the rows the batch added, not with the size of the table
+            evictIfOverBudget(EVICTION_STEPS + 4L * BATCH_CHUNK);
+        }
+        sealFullChunks();
+        return result;
+    }
+
+    // Seals the column chunks whose rows have all been handed out. Runs on the writer that moved the row id frontier
+    // past a chunk once its own stripes are released; other writers finding a seal in progress just go on
+    private void sealFullChunks() {
+        int full = rowIdAllocator.highWaterMark() >>> ColumnVector.CHUNK_SHIFT;
+        if (full <= sealedChunks.get() || !sealing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int from = sealedChunks.get();
+            if (full > from) {
+                seal(from, full);
+                sealedChunks.set(full);
+            }
+        } finally {
+            sealing.set(false);
+        }
+    }
+
+    // Offers every full chunk to seal again, so chunks rewritten a lot since they were sealed get re-encoded
+    public void compact() {
+        while (!sealing.compareAndSet(false, true)) {
+            Thread.onSpinWait();
+        }
+        try {
+            int full = rowIdAllocator.highWaterMark() >>> ColumnVector.CHUNK_SHIFT;
+            seal(0, full);
+            sealedChunks.set(Math.max(sealedChunks.get(), full));
+        } finally {
+            sealing.set(false);
+        }
+    }
+
+    // The rows of a chunk hash all over the stripes, so writers are kept out by read locking every stripe in ascending
+    // order, but only to read the write counts of the chunks and later to swap the encodings in. The encoding runs
+    // without locks; a chunk written meanwhile is encoded again, up to SEAL_ATTEMPTS times, then left for compact()
+    private void seal(int fromChunk, int toChunk) {
+        List<ChunkSeal> pending = new ArrayList<>();
+        for (Attribute attribute : attributesMap.values()) {
+            for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+                pending.add(new ChunkSeal(attribute.getValues(), chunk));
+            }
+        }
+        for (int attempt = 0; attempt < SEAL_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            long[] stamps = readLockStripes();
+            try {
+                for (ChunkSeal seal : pending) {
+                    seal.writes = seal.values.chunkWrites(seal.chunk);
+                }
+            } finally {
+                unlockStripes(stamps);
+            }
+            List<ChunkSeal> encoded = new ArrayList<>();
+            for (ChunkSeal seal : pending) {
+                try {
+                    seal.encoded = seal.values.encodeChunk(seal.chunk);
+                } catch (RuntimeException e) {
+                    // slots read mid write, the write count has moved too and the chunk is encoded again
+                    seal.encoded = null;
+                    encoded.add(seal);
+                    continue;
+                }
+                if (seal.encoded != null) {
+                    encoded.add(seal);
+                }
+            }
+            if (encoded.isEmpty()) {
+                return;
+            }
+            List<ChunkSeal> stale = new ArrayList<>();
+            stamps = readLockStripes();
+            try {
+                for (ChunkSeal seal : encoded) {
+                    if (seal.encoded == null || !seal.values.installSeal(seal.chunk, seal.encoded, seal.writes)) {
+                        stale.add(seal);
+                    }
+                }
+            } finally {
+                unlockStripes(stamps);
+            }
+            pending = stale;
+        }
+    }
+
+    private long[] readLockStripes() {
+        long[] stamps = new long[lockManager.stripes()];
+        for (int stripe = 0; stripe < stamps.length; stripe++) {
+            stamps[stripe] = lockManager.readLock(stripe);
+        }
+        return stamps;
+    }
+
+    private void unlockStripes(long[] stamps) {
+        for (int stripe = stamps.length - 1; stripe >= 0; stripe--) {
+            lockManager.unlockRead(stripe, stamps[stripe]);
+        }
+    }
+
+    // one chunk of one column on its way to be sealed
+    private static class ChunkSeal {
+        final ColumnVector values;
+        final int chunk;
+        int writes;
+        Chunk encoded;
+
+        ChunkSeal(ColumnVector values, int chunk) {
+            this.values = values;
+            this.chunk = chunk;
+        }
+    }
+
+    private void insertChunk(List<String> chunkKeys, Map<String, List<Entry>> rows, BatchResult result) {
+        // stripes are taken in ascending order and only once each, StampedLock is not reentrant
+        int[] stripes = chunkKeys.stream().mapToInt(lockManager::stripeOf).distinct().sorted().toArray();
+        long[] stamps = new long[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            stamps[i] = lockManager.writeLock(stripes[i]);
+        }
+        // the rows of a chunk share one version
+        long version = nextVersion.incrementAndGet();
+        try {
+            List<String> accepted = new ArrayList<>(chunkKeys.size());
+            long now = System.currentTimeMillis();
+            for (String key : chunkKeys) {
+                Integer rowId = this.keys.get(key);
+                if (rowId == null) {
+                    accepted.add(key);
+                } else if (isExpired(rowId, now)) {
+                    removeRow(key, rowId, version, this.journal);
+                    accepted.add(key);
+                } else {
+                    result.addFailure(key, new KeyAlreadyExistsException("Key {} already exists " + key));
+                }
+            }
+
+            // columns are resolved before the rows are journaled, a row clashing with the datatype another writer
+            // created its column with since validation is reported like an invalid row
+            Map<String, Attribute> attributes = new HashMap<>();
+            for (Iterator<String> it = accepted.iterator(); it.hasNext(); ) {
+                String key = it.next();
+                try {
+                    for (Entry e : rows.get(key)) {
+                        if (!attributes.containsKey(e.getName())) {
+                            attributes.put(e.getName(), attributeFor(e));
                         }
-                        attribute.getValueIdMap().get(e.getValue()).add(key);
-                    });
+                    }
+                } catch (InvalidDatatypeException e) {
+                    result.addFailure(key, e);
+                    it.remove();
                 }
+            }
+
+            if (arena != null && !accepted.isEmpty()) {
+                long needed = 0;
+                for (String key : accepted) {
+                    needed += estimateOffHeapBytes(rows.get(key));
+                }
+                if (!arena.hasRoomFor(needed)) {
+                    OffHeapCapacityExceededException failure = new OffHeapCapacityExceededException("Off heap capacity of table "
+                            + name + " exceeded, " + needed + " bytes needed");
+                    accepted.forEach(key -> result.addFailure(key, failure));
+                    return;
+                }
+            }
+
+            TableJournal journal = this.journal;
+            long sequence = journal == null ? 0 : journal.logInserts(this, accepted, rows);
+            int[] rowIds = rowIdAllocator.allocate(accepted.size());
+            Map<String, ColumnBatch> columns = new LinkedHashMap<>();
+            for (int i = 0; i < accepted.size(); i++) {
+                String key = accepted.get(i);
+                List<Entry> entries = rows.get(key);
+                rowKeys.set(rowIds[i], key);
+                for (Entry e : entries) {
+                    columns.computeIfAbsent(e.getName(), name -> new ColumnBatch(accepted.size()))
+                            .add(rowIds[i], e.getValue());
+                }
+            }
+            try {
+                columns.forEach((name, batch) -> {
+                    Attribute attribute = attributes.get(name);
+                    for (int i = 0; i < batch.count; i++) {
+                        rowPresence.set(batch.rowIds[i], attribute.getOrdinal());
+                    }
+                    attribute.putAll(batch.rowIds, batch.values, batch.count);
+                });
+            } catch (RuntimeException e) {
+                for (int i = 0; i < accepted.size(); i++) {
+                    rollback(accepted.get(i), rowIds[i], version, journal);
+                    result.addFailure(accepted.get(i), e);
+                }
+                return;
+            }
+            for (int i = 0; i < accepted.size(); i++) {
+                String key = accepted.get(i);
+                admit(rowIds[i], rows.get(key));
+                rowVersions.setLong(rowIds[i], version);
+                RowVersion head = versions.get(key);
+                if (head != null) {
+                    pushVersion(key, new RowVersion(version, head.version, false, null, head));
+                }
+                this.keys.put(key, rowIds[i]);
+                publishChange(ChangeEvent.Type.INSERT, key, rows.get(key), version);
+            }
+            result.addInserted(accepted.size(), sequence);
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                lockManager.unlockWrite(stripes[i], stamps[i]);
+            }
+            publish(version);
+        }
+    }
+
+    private Attribute newAttribute(String attributeName, Object value) {
+        String datatype = value.getClass().getName();
+        return register(new Attribute(attributeName, datatype, config.getRangeIndexedAttributes().contains(attributeName), newColumnVector(datatype)));
+    }
+
+    // off heap tables keep every column in their arena, the overlays of reopened segments too
+    private ColumnVector newColumnVector(String datatype) {
+        return arena == null ? ColumnVector.forDatatype(datatype) : new OffHeapColumnVector(arena, datatype);
+    }
+
+    // gives the attribute the next ordinal, called once for every attribute put into attributesMap
+    private Attribute register(Attribute attribute) {
+        ordinalLock.lock();
+        try {
+            Attribute[] byOrdinal = this.attributesByOrdinal;
+            if (attributeCount == byOrdinal.length) {
+                byOrdinal = Arrays.copyOf(byOrdinal, byOrdinal.length * 2);
+            }
+            attribute.setOrdinal(attributeCount);
+            byOrdinal[attributeCount++] = attribute;
+            this.attributesByOrdinal = byOrdinal;
+            return attribute;
+        } finally {
+            ordinalLock.unlock();
+        }
+    }
+
+    // Rough size of the blocks a row takes in the arena. Checked before the row is journaled so a full table
+    // normally rejects the insert up front; a concurrent insert can still take the room first, see rollback
+    private long estimateOffHeapBytes(List<Entry> entries) {
+        if (arena == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (Entry e : entries) {
+            bytes += e.getValue() instanceof String ? 16 + 3L * ((String) e.getValue()).length() : 8;
+        }
+        return bytes;
+    }
+
+    private void checkOffHeapRoom(long bytes) {
+        if (arena != null && !arena.hasRoomFor(bytes)) {
+            throw new OffHeapCapacityExceededException("Off heap capacity of table " + name + " exceeded, " + bytes + " bytes needed");
+        }
+    }
+
+    // Undoes a row that failed half way, e.g. because the arena ran out of room. The key was never published; the
+    // journal already holds the insert, so a delete is logged after it and replay ends without the row too. Caller
+    // holds the key stripe
+    private void rollback(String key, int rowId, long version, TableJournal journal) {
+        removeColumns(rowId);
+        rowKeys.clear(rowId);
+        retireRowId(rowId, version);
+        if (journal != null) {
+            journal.logDelete(this, key);
+        }
+    }
+
+    // A column as the checkpoint, scans and aggregates read it without holding stripes. Evicted rows are read back
+    // from the spill file under their stripe, and so are off heap slots: a write may free the block of a value and
+    // reuse it meanwhile
+    private class ReadThroughColumn extends ColumnVector {
+        private final Attribute attribute;
+
+        ReadThroughColumn(Attribute attribute) {
+            this.attribute = attribute;
+        }
+
+        @Override
+        public Object get(int rowId) {
+            Object key = rowKeys.get(rowId);
+            if (arena == null) {
+                Object value = attribute.get(rowId);
+                if (value != null || key == null || !isEvicted(rowId)) {
+                    return value;
+                }
+            } else if (key == null) {
+                return null;
+            }
+            int stripe = lockManager.stripeOf(key);
+            long stamp = lockManager.readLock(stripe);
+            try {
+                // removed since, the slot may already hold a row of another stripe
+                if (!key.equals(rowKeys.get(rowId))) {
+                    return null;
+                }
+                Object spilled = spilledValue(rowId, attribute.getName());
+                return spilled == null ? attribute.get(rowId) : spilled;
             } finally {
-                keyLocks.remove(lockKey);
+                lockManager.unlockRead(stripe, stamp);
+            }
+        }
+
+        @Override
+        public void set(int rowId, Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear(int rowId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int capacity() {
+            return attribute.getValues().capacity();
+        }
+
+        @Override
+        public long sizeInBytes() {
+            return attribute.getValues().sizeInBytes();
+        }
+    }
+
+    // values of one column within a batch chunk
+    private static class ColumnBatch {
+        final int[] rowIds;
+        final Object[] values;
+        int count;
+
+        ColumnBatch(int capacity) {
+            this.rowIds = new int[capacity];
+            this.values = new Object[capacity];
+        }
+
+        void add(int rowId, Object value) {
+            rowIds[count] = rowId;
+            values[count++] = value;
+        }
+    }
+
+    // keys between fromKey (inclusive) and toKey (exclusive) in key order, null bounds are open
+    public ScanCursor scan(String fromKey, String toKey, String[] columns, int pageSize) {
+        return new ScanCursor(this, fromKey, true, toKey, null, columns, pageSize);
+    }
+
+    public ScanCursor scanPrefix(String prefix, String[] columns, int pageSize) {
+        return new ScanCursor(this, prefix, true, null, prefix, columns, pageSize);
+    }
+
+    // Up to limit keys following from in key order. The skip list iterates without locks, deletes racing with
+    // the walk are caught when the rows are fetched.
+    List<String> keyRange(String from, boolean inclusive, String toKey, String prefix, int limit) {
+        NavigableMap<String, Integer> range = from == null ? this.keys : this.keys.tailMap(from, inclusive);
+        if (toKey != null) {
+            range = range.headMap(toKey, false);
+        }
+        List<String> result = new ArrayList<>(Math.min(limit, 1024));
+        for (String key : range.keySet()) {
+            if (prefix != null && !key.startsWith(prefix)) {
+                break;
+            }
+            result.add(key);
+            if (result.size() == limit) {
+                break;
             }
         }
+        return result;
     }
 
     public ResultSet fetchRecord(List<String> keys, String[] columns) {
@@ -64,73 +1194,307 @@ public class Table {
             return new ResultSet();
         }
 
-        String lockKey = READLOCK + keys.stream().toString();
-        synchronized (keyLocks.computeIfAbsent(lockKey, (k) -> new Object())) {
-            ResultSet resultSet = new ResultSet();
+        ResultSet resultSet = new ResultSet();
+        for (String key : keys) {
+            resultSet.addRow(readVersion(key, columns, Long.MAX_VALUE));
+        }
+        return resultSet;
+    }
 
-            try {
-                keys.stream().forEach(key -> {
-                    this.getAttributesMap().get(key);
-                    List<Entry> entries = new ArrayList<>();
-                    Arrays.stream(columns).forEach(column -> {
-                                if (this.attributesMap.containsKey(column)) {
-                                    Object o = this.attributesMap.get(column).getIdValueMap().get(key);
-                                    entries.add(new Entry(column, o));
-//                                    resultSet.addRow(new Row(key, entries));
-                                }
-                            }
-                    );
-                    resultSet.addRow(new Row(key, entries));
-
-
-//                    this.attributesMap.forEach((attributeName, attribute) -> {
-//                        Object o = attribute.getIdValueMap().get(key);
-//                        entries.add(new Entry(attributeName, o));
-//                    });
-                });
-//
-                return resultSet;
-            } finally {
-                keyLocks.remove(lockKey);
+    // Every populated column of the key's row, found through its presence bits so the cost follows the columns
+    // the row has rather than the columns of the table. A missing key gives a row without entries
+    public ResultSet fetchRow(String key) {
+        ResultSet resultSet = new ResultSet();
+        resultSet.addRow(readVersion(key, null, Long.MAX_VALUE));
+        return resultSet;
+    }
+
+    // Multi get: the stripes of all keys are read locked once, then every requested column is walked once for the
+    // whole key set. Rows come back in the order of keys.
+    public ResultSet fetchRecords(Collection<String> keys, String[] columns) {
+        List<String> keyList = keys instanceof List ? (List<String>) keys : new ArrayList<>(keys);
+        ResultSet resultSet = new ResultSet();
+        if (keyList.size() < PARALLEL_FETCH_THRESHOLD) {
+            fetchSlice(keyList, columns, false).forEach(resultSet::addRow);
+            return resultSet;
+        }
+        int slices = (keyList.size() + PARALLEL_FETCH_THRESHOLD - 1) / PARALLEL_FETCH_THRESHOLD;
+        List<List<Row>> rows = IntStream.range(0, slices).parallel()
+                .mapToObj(slice -> fetchSlice(keyList.subList(slice * PARALLEL_FETCH_THRESHOLD,
+                        Math.min(keyList.size(), (slice + 1) * PARALLEL_FETCH_THRESHOLD)), columns, false))
+                .collect(Collectors.toList());
+        rows.forEach(slice -> slice.forEach(resultSet::addRow));
+        return resultSet;
+    }
+
+    // rows of the keys still present, used by scans where a key may be deleted between listing and fetching
+    List<Row> fetchExisting(List<String> keys, String[] columns) {
+        return fetchSlice(keys, columns, true);
+    }
+
+    private List<Row> fetchSlice(List<String> keys, String[] columns, boolean skipMissing) {
+        List<Attribute> attributes = new ArrayList<>(columns.length);
+        for (String column : columns) {
+            Attribute attribute = this.attributesMap.get(column);
+            if (attribute != null) {
+                attributes.add(attribute);
             }
         }
+        int size = keys.size();
+        Object[][] values = new Object[attributes.size()][size];
+        int[] rowIds = new int[size];
+
+        int[] stripes = keys.stream().mapToInt(lockManager::stripeOf).distinct().sorted().toArray();
+        long[] stamps = new long[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            stamps[i] = lockManager.readLock(stripes[i]);
+        }
+        try {
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < size; i++) {
+                Integer rowId = this.keys.get(keys.get(i));
+                rowIds[i] = rowId == null || isExpired(rowId, now) ? -1 : rowId;
+            }
+            // evicted rows are read through without being faulted in, a scan does not flush the hot rows
+            List<Map<String, Object>> spilled = null;
+            if (spill != null) {
+                spilled = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    spilled.add(rowIds[i] >= 0 ? spilledRow(rowIds[i]) : null);
+                }
+            }
+            for (int a = 0; a < attributes.size(); a++) {
+                Attribute attribute = attributes.get(a);
+                Object[] column = values[a];
+                for (int i = 0; i < size; i++) {
+                    Map<String, Object> row = spilled == null ? null : spilled.get(i);
+                    if (row != null) {
+                        column[i] = row.get(attribute.getName());
+                    } else if (rowIds[i] >= 0) {
+                        column[i] = attribute.get(rowIds[i]);
+                    }
+                }
+            }
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                lockManager.unlockRead(stripes[i], stamps[i]);
+            }
+        }
+
+        List<Row> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (skipMissing && rowIds[i] < 0) {
+                continue;
+            }
+            List<Entry> entries = new ArrayList<>(attributes.size());
+            for (int a = 0; a < attributes.size(); a++) {
+                entries.add(new Entry(attributes.get(a).getName(), values[a][i]));
+            }
+            rows.add(new Row(keys.get(i), entries));
+        }
+        return rows;
     }
 
-    public void deleteRecord(String key) {
-        if (!this.keys.contains(key)) {
+    // Unboxed single cell reads for numeric and boolean columns, a missing key or cell yields defaultValue.
+    // Nothing is allocated on this path, unlike fetchRecord which has to box values into entries.
+    public double getDouble(String key, String column, double defaultValue) {
+        Attribute attribute = this.attributesMap.get(column);
+        if (attribute == null) {
+            throw new AttributeDoesNotExistsException("Attribute {} does not exists in table {}" + column + " " + this.getName());
+        }
+        int stripe = lockManager.stripeOf(key);
+        long stamp = lockManager.readLock(stripe);
+        try {
+            Integer rowId = this.keys.get(key);
+            if (rowId == null || isExpired(rowId, System.currentTimeMillis())) {
+                return defaultValue;
+            }
+            double value = attribute.getDouble(rowId, defaultValue);
+            Object spilled = spilledValue(rowId, column);
+            return spilled == null ? value : (Double) spilled;
+        } finally {
+            lockManager.unlockRead(stripe, stamp);
+        }
+    }
+
+    public long getLong(String key, String column, long defaultValue) {
+        Attribute attribute = this.attributesMap.get(column);
+        if (attribute == null) {
+            throw new AttributeDoesNotExistsException("Attribute {} does not exists in table {}" + column + " " + this.getName());
+        }
+        int stripe = lockManager.stripeOf(key);
+        long stamp = lockManager.readLock(stripe);
+        try {
+            Integer rowId = this.keys.get(key);
+            if (rowId == null || isExpired(rowId, System.currentTimeMillis())) {
+                return defaultValue;
+            }
+            long value = attribute.getLong(rowId, defaultValue);
+            Object spilled = spilledValue(rowId, column);
+            return spilled == null ? value : ((Number) spilled).longValue();
+        } finally {
+            lockManager.unlockRead(stripe, stamp);
+        }
+    }
+
+    public int getInt(String key, String column, int defaultValue) {
+        Attribute attribute = this.attributesMap.get(column);
+        if (attribute == null) {
+            throw new AttributeDoesNotExistsException("Attribute {} does not exists in table {}" + column + " " + this.getName());
+        }
+        int stripe = lockManager.stripeOf(key);
+        long stamp = lockManager.readLock(stripe);
+        try {
+            Integer rowId = this.keys.get(key);
+            if (rowId == null || isExpired(rowId, System.currentTimeMillis())) {
+                return defaultValue;
+            }
+            int value = attribute.getInt(rowId, defaultValue);
+            Object spilled = spilledValue(rowId, column);
+            return spilled == null ? value : (Integer) spilled;
+        } finally {
+            lockManager.unlockRead(stripe, stamp);
+        }
+    }
+
+    public boolean getBoolean(String key, String column, boolean defaultValue) {
+        Attribute attribute = this.attributesMap.get(column);
+        if (attribute == null) {
+            throw new AttributeDoesNotExistsException("Attribute {} does not exists in table {}" + column + " " + this.getName());
+        }
+        int stripe = lockManager.stripeOf(key);
+        long stamp = lockManager.readLock(stripe);
+        try {
+            Integer rowId = this.keys.get(key);
+            if (rowId == null || isExpired(rowId, System.currentTimeMillis())) {
+                return defaultValue;
+            }
+            boolean value = attribute.getBoolean(rowId, defaultValue);
+            Object spilled = spilledValue(rowId, column);
+            return spilled == null ? value : (Boolean) spilled;
+        } finally {
+            lockManager.unlockRead(stripe, stamp);
+        }
+    }
+
+    public long deleteRecord(String key) {
+        if (!this.keys.containsKey(key)) {
             throw new KeyDoesNotExistsException("Key {}  does not exists" + key);
         }
 
-        String lockKey = WRITELOCK + key;
-        synchronized (keyLocks.computeIfAbsent(lockKey, (k) -> new Object())) {
-            try {
-                this.attributesMap.forEach((attributeName, attribute) -> {
-                    attribute.getIdValueMap().remove(key);
-                });
-                this.keys.remove(key);
-            } finally {
-                keyLocks.remove(lockKey);
+        int stripe = lockManager.stripeOf(key);
+        long stamp = lockManager.writeLock(stripe);
+        long version = 0;
+        try {
+            if (!this.keys.containsKey(key)) {
+                throw new KeyDoesNotExistsException("Key {}  does not exists" + key);
+            }
+            version = nextVersion.incrementAndGet();
+            return removeRow(key, this.keys.get(key), version, this.journal);
+        } finally {
+            lockManager.unlockWrite(stripe, stamp);
+            publish(version);
+        }
+    }
+
+    // caller holds the key stripe and has taken the version of the write
+    private long removeRow(String key, int rowId, long version, TableJournal journal) {
+        long sequence = journal == null ? 0 : journal.logDelete(this, key);
+        // postings are found through the values, an evicted row is read back before it is removed
+        ensureResident(rowId);
+        Map<String, Object> image = readRow(rowId);
+        pushVersion(key, new RowVersion(version, rowVersions.getLong(rowId, 0L), true, image, versions.get(key)));
+        this.keys.remove(key);
+        removeColumns(rowId);
+        charge(-heapBytes(image.values()));
+        rowVersions.clear(rowId);
+        rowExpiry.clear(rowId);
+        rowKeys.clear(rowId);
+        retireRowId(rowId, version);
+        publishChange(ChangeEvent.Type.DELETE, key, Collections.emptyList(), version);
+        return sequence;
+    }
+
+    // caller holds the key stripe and has applied the write
+    private void publishChange(ChangeEvent.Type type, String key, List<Entry> entries, long version) {
+        ChangeRing changes = this.changes;
+        if (changes != null) {
+            changes.publish(type, key, entries, version);
+        }
+    }
+
+    private void scheduleExpiry(String key, int rowId, long expiresAtMillis) {
+        rowExpiry.setLong(rowId, expiresAtMillis);
+        expiries.schedule(key, expiresAtMillis);
+        if (!expiring) {
+            expiring = true;
+            ExpirySweeper.register(this);
+        }
+    }
+
+    // epoch millis the row of key expires at, 0 for a row without ttl or a missing key
+    public long getExpiresAtMillis(String key) {
+        Integer rowId = this.keys.get(key);
+        return rowId == null ? 0 : rowExpiry.getLong(rowId, 0L);
+    }
+
+    private boolean isExpired(int rowId, long nowMillis) {
+        if (!expiring) {
+            return false;
+        }
+        long expiresAtMillis = rowExpiry.getLong(rowId, 0L);
+        return expiresAtMillis > 0 && expiresAtMillis <= nowMillis;
+    }
+
+    // Removes up to max keys that came due on the expiry wheel, returns the number of wheel entries consumed.
+    // Every key is removed under its own stripe, so a large expiry backlog never holds more than one stripe and
+    // the sweeper can spread it over several calls. Keys rewritten since they were scheduled are skipped. When a
+    // removal fails, e.g. on a journal that was closed, the key and the ones after it go back on the wheel
+    public int expire(int max) {
+        long now = System.currentTimeMillis();
+        List<String> due = new ArrayList<>(Math.min(max, 1024));
+        int polled = expiries.poll(now, max, due);
+        int swept = 0;
+        try {
+            for (; swept < due.size(); swept++) {
+                String key = due.get(swept);
+                int stripe = lockManager.stripeOf(key);
+                long stamp = lockManager.writeLock(stripe);
+                long version = 0;
+                try {
+                    Integer rowId = this.keys.get(key);
+                    if (rowId != null && isExpired(rowId, now)) {
+                        version = nextVersion.incrementAndGet();
+                        removeRow(key, rowId, version, this.journal);
+                    }
+                } finally {
+                    lockManager.unlockWrite(stripe, stamp);
+                    publish(version);
+                }
+            }
+        } catch (RuntimeException e) {
+            for (int i = swept; i < due.size(); i++) {
+                expiries.schedule(due.get(i), now);
             }
+            throw e;
         }
+        return polled;
     }
 
+    // index lookups go straight to the concurrent maps, row materialization takes the per key read stripes
     public List<String> searchBySecondaryIndex(Entry entry) {
         if (!this.getAttributesMap().containsKey(entry.getName())) {
             throw new AttributeDoesNotExistsException("Attribute {} does not exists in table {}" + entry.getName() + " " + this.getName());
         }
 
-        String lockKey = READLOCK + entry.getName() + entry.getValue();
-        synchronized (keyLocks.computeIfAbsent(lockKey, (k) -> new Object())) {
-
-            try {
-                Attribute attribute = this.getAttributesMap().get(entry.getName());
-                List<String> keys = attribute.getValueIdMap().get(entry.getValue());
-                return keys;
-            } catch (RuntimeException e) {
-                System.out.println(e.getMessage());
-            } finally {
-                keyLocks.remove(lockKey);
-            }
+        long pinned = pinVersion();
+        try {
+            Attribute attribute = this.getAttributesMap().get(entry.getName());
+            return toKeys(attribute.getValueIdMap().get(entry.getValue()));
+        } catch (RuntimeException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            closeSnapshot(pinned);
         }
         return new ArrayList<>();
     }
@@ -140,20 +1504,263 @@ public class Table {
             throw new AttributeDoesNotExistsException("Attribute {} does not exists in table {}" + entry.getName() + " " + this.getName());
         }
 
-        String lockKey = READLOCK + entry.getName() + entry.getValue();
-        synchronized (keyLocks.computeIfAbsent(lockKey, (k) -> new Object())) {
+        try {
+            return this.fetchRecord(searchBySecondaryIndex(entry), columns);
+        } catch (RuntimeException e) {
+            System.out.println(e.getMessage());
+        }
+        return new ResultSet();
+    }
 
-            try {
-                Attribute attribute = this.getAttributesMap().get(entry.getName());
-                List<String> keys = attribute.getValueIdMap().get(entry.getValue());
-                return this.fetchRecord(keys, columns);
-            } catch (RuntimeException e) {
-                System.out.println(e.getMessage());
-            } finally {
-                keyLocks.remove(lockKey);
+    // predicates are AND-ed and planned as one, see Predicate. Row ids are combined before a single row is read
+    public List<String> searchByPredicates(Predicate... predicates) {
+        long pinned = pinVersion();
+        try {
+            return toKeys(Predicate.and(predicates).evaluate(this));
+        } finally {
+            closeSnapshot(pinned);
+        }
+    }
+
+    // only the projected columns of the surviving rows are read, column at a time; rows deleted since they
+    // matched are left out
+    public ResultSet searchByPredicates(String[] columns, Predicate... predicates) {
+        ResultSet resultSet = new ResultSet();
+        fetchExisting(searchByPredicates(predicates), columns).forEach(resultSet::addRow);
+        return resultSet;
+    }
+
+    // the order the predicates would be evaluated in with the estimated rows of each step, e.g.
+    //     (status = ACTIVE [120] THEN latitude < 0.0 [5001] THEN name LIKE ja% [5001])
+    public String explain(Predicate... predicates) {
+        return Predicate.and(predicates).explain(this);
+    }
+
+    // column as a predicate scans it, evicted rows and off heap slots are read through under their stripe
+    ColumnVector scanColumn(Attribute attribute) {
+        return spill == null && arena == null ? attribute.getValues() : new ReadThroughColumn(attribute);
+    }
+
+    // row ids handed out so far are below this
+    int rowIdLimit() {
+        return rowIdAllocator.highWaterMark();
+    }
+
+    // Keys whose attribute value lies in [from, to] (null bound is open), in value order and at most limit keys.
+    // The ordered index is built the first time an attribute that was not declared range indexed is queried.
+    public List<String> searchRange(String attributeName, Object from, Object to, int limit) {
+        Attribute attribute = this.attributesMap.get(attributeName);
+        if (attribute == null) {
+            throw new AttributeDoesNotExistsException("Attribute {} does not exists in table {}" + attributeName + " " + this.getName());
+        }
+        List<String> keys = new ArrayList<>();
+        long pinned = pinVersion();
+        try {
+            for (PostingList postingList : attribute.range(from, to).values()) {
+                List<String> valueKeys = toKeys(postingList);
+                if (keys.size() + valueKeys.size() >= limit) {
+                    keys.addAll(valueKeys.subList(0, limit - keys.size()));
+                    break;
+                }
+                keys.addAll(valueKeys);
             }
+        } finally {
+            closeSnapshot(pinned);
         }
-        return new ResultSet();
+        return keys;
+    }
+
+    public ResultSet searchRange(String attributeName, Object from, Object to, String[] columns, int limit) {
+        return this.fetchRecord(searchRange(attributeName, from, to, limit), columns);
+    }
+
+    // Aggregates the column over the rows matching filter (every row when null), per value of the groupBy attribute
+    // when given. Values are summed straight from the column storage, groups are the postings of the groupBy
+    // attribute intersected with the filter; groups without a value in the column are left out.
+    // Runs without stripe locks, like searches, so writes racing with it may or may not be counted.
+    public AggregateResult aggregate(String column, Aggregate function, Predicate filter, String groupBy) {
+        Attribute attribute = this.attributesMap.get(column);
+        if (attribute == null) {
+            throw new AttributeDoesNotExistsException("Attribute {} does not exists in table {}" + column + " " + this.getName());
+        }
+        boolean floating = Double.class.getName().equals(attribute.getDatatype());
+        boolean integral = Long.class.getName().equals(attribute.getDatatype()) || Integer.class.getName().equals(attribute.getDatatype());
+        if (function != Aggregate.COUNT && !floating && !integral) {
+            throw new InvalidDatatypeException("Aggregate " + function + " needs a numeric attribute {} " + column);
+        }
+        Attribute group = groupBy == null ? null : this.attributesMap.get(groupBy);
+        if (groupBy != null && group == null) {
+            throw new AttributeDoesNotExistsException("Attribute {} does not exists in table {}" + groupBy + " " + this.getName());
+        }
+        long pinned = pinVersion();
+        try {
+            return aggregate(attribute, function, filter, group, floating);
+        } finally {
+            closeSnapshot(pinned);
+        }
+    }
+
+    private AggregateResult aggregate(Attribute attribute, Aggregate function, Predicate filter, Attribute group, boolean floating) {
+        RoaringBitmap selection = filter == null ? null : filter.evaluate(this);
+        if (group == null) {
+            return new AggregateResult(function.resultOf(summarize(attribute, selection, floating)), Collections.emptyMap());
+        }
+        Map<Object, Object> groups = group.isComparable() ? new TreeMap<>() : new LinkedHashMap<>();
+        group.getValueIdMap().forEach((value, postingList) -> {
+            RoaringBitmap rows = selection == null ? postingList.snapshot() : postingList.and(selection);
+            if (!rows.isEmpty()) {
+                ColumnSummary summary = summarize(attribute, rows, floating);
+                if (summary.getCount() > 0) {
+                    groups.put(value, function.resultOf(summary));
+                }
+            }
+        });
+        return new AggregateResult(null, groups);
+    }
+
+    // Rows past their ttl or held in the spill file are not in the column slots as they read, and off heap slots
+    // can only be read under their stripe; such tables take the row at a time path
+    private ColumnSummary summarize(Attribute attribute, RoaringBitmap rows, boolean floating) {
+        ColumnSummary summary = new ColumnSummary(floating);
+        if (!expiring && evictedRows.get() == 0 && arena == null) {
+            attribute.getValues().summarize(rows, summary);
+            return summary;
+        }
+        long now = System.currentTimeMillis();
+        ColumnVector values = scanColumn(attribute);
+        IntConsumer add = rowId -> {
+            if (rowKeys.get(rowId) != null && !isExpired(rowId, now)) {
+                summary.add(values.get(rowId));
+            }
+        };
+        if (rows != null) {
+            rows.forEach(add);
+        } else {
+            int highWaterMark = rowIdAllocator.highWaterMark();
+            for (int rowId = 0; rowId < highWaterMark; rowId++) {
+                add.accept(rowId);
+            }
+        }
+        return summary;
+    }
+
+    private List<String> toKeys(PostingList postingList) {
+        return postingList == null ? new ArrayList<>() : toKeys(postingList.snapshot());
+    }
+
+    private List<String> toKeys(RoaringBitmap rowIds) {
+        List<String> keys = new ArrayList<>(rowIds.cardinality());
+        long now = System.currentTimeMillis();
+        rowIds.forEach(rowId -> {
+            // a row deleted after the posting was read has no key anymore
+            Object key = rowKeys.get(rowId);
+            if (key != null && !isExpired(rowId, now)) {
+                keys.add((String) key);
+            }
+        });
+        return keys;
+    }
+
+    // Takes and releases every read stripe once. Writers that were inside a stripe when this started have applied
+    // their change (and journaled it) when this returns, later writers are covered by the journal.
+    public void awaitInFlightWrites() {
+        for (int stripe = 0; stripe < lockManager.stripes(); stripe++) {
+            lockManager.unlockRead(stripe, lockManager.readLock(stripe));
+        }
+    }
+
+    // Dumps the table as one dictionary file (row id - key) plus one immutable segment per attribute, every file and
+    // the directory are on disk when this returns.
+    // Columns are read a slot at a time, off heap and evicted ones under the stripe of their row, so a row written
+    // during the dump may be captured half way; the dump is meant to be paired with a journal replay from the
+    // point awaitInFlightWrites() returned.
+    public void checkpoint(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            int rows = rowIdAllocator.highWaterMark();
+            String[] keysByRow = new String[rows];
+            for (int rowId = 0; rowId < rows; rowId++) {
+                keysByRow[rowId] = (String) rowKeys.get(rowId);
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(FileSync.newOutputStream(directory.resolve(DICTIONARY_FILE))))) {
+                out.writeInt(DICTIONARY_MAGIC + DICTIONARY_LAYOUT);
+                BinaryCodec.writeString(out, name);
+                config.write(out);
+                out.writeInt(rows);
+                for (int rowId = 0; rowId < rows; rowId++) {
+                    if (keysByRow[rowId] != null) {
+                        out.writeInt(rowId);
+                        BinaryCodec.writeString(out, keysByRow[rowId]);
+                    }
+                }
+                out.writeInt(-1);
+                for (int rowId = 0; rowId < rows; rowId++) {
+                    long expiresAtMillis = keysByRow[rowId] == null ? 0 : rowExpiry.getLong(rowId, 0L);
+                    if (expiresAtMillis > 0) {
+                        out.writeInt(rowId);
+                        out.writeLong(expiresAtMillis);
+                    }
+                }
+                out.writeInt(-1);
+            }
+
+            int ordinal = 0;
+            for (Attribute attribute : attributesMap.values()) {
+                ColumnSegment.write(directory.resolve(ordinal++ + COLUMN_SUFFIX), attribute.getName(), attribute.getDatatype(),
+                        attribute.isRangeIndexed(), scanColumn(attribute), keysByRow);
+            }
+            FileSync.syncDirectory(directory);
+        } catch (IOException e) {
+            throw new CheckpointException("Unable to checkpoint table {} " + name, e);
+        }
+    }
+
+    // Reopens a checkpoint written by checkpoint(). Keys and postings are loaded, column values stay in the
+    // mapped segment files until a row is read.
+    public static Table open(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory.resolve(DICTIONARY_FILE), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int layout = buffer.getInt() - DICTIONARY_MAGIC;
+            if (layout < 1 || layout > DICTIONARY_LAYOUT) {
+                throw new CheckpointException("Corrupt table dictionary " + directory, null);
+            }
+            String name = BinaryCodec.readString(buffer);
+            TableConfig config = layout == 1 ? TableConfig.readRangeIndexed(buffer)
+                    : layout < 4 ? TableConfig.readOffHeap(buffer) : TableConfig.read(buffer);
+            int rows = buffer.getInt();
+            ConcurrentSkipListMap<String, Integer> keys = new ConcurrentSkipListMap<>();
+            RoaringBitmap used = new RoaringBitmap();
+            for (int rowId = buffer.getInt(); rowId >= 0; rowId = buffer.getInt()) {
+                keys.put(BinaryCodec.readString(buffer), rowId);
+                used.add(rowId);
+            }
+
+            Table table = new Table(name, config, new RowIdAllocator(rows, used));
+            table.keys = keys;
+            keys.forEach((key, rowId) -> table.rowKeys.set(rowId, key));
+            if (layout >= 3) {
+                for (int rowId = buffer.getInt(); rowId >= 0; rowId = buffer.getInt()) {
+                    table.scheduleExpiry((String) table.rowKeys.get(rowId), rowId, buffer.getLong());
+                }
+            }
+            try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "*" + COLUMN_SUFFIX)) {
+                for (Path file : segments) {
+                    ColumnSegment segment = ColumnSegment.open(file, table::newColumnVector);
+                    Attribute attribute = new Attribute(segment.getName(), segment.getDatatype(), segment.isRangeIndexed(), segment.getValues());
+                    attribute.restorePostings(segment.getPostings());
+                    table.attributesMap.put(attribute.getName(), table.register(attribute));
+                    segment.getPostings().values().forEach(rowIds -> rowIds.forEach(rowId -> table.rowPresence.set(rowId, attribute.getOrdinal())));
+                }
+            }
+            return table;
+        } catch (IOException e) {
+            throw new CheckpointException("Unable to open table checkpoint " + directory, e);
+        }
+    }
+
+    public boolean containsKey(String key) {
+        return keys.containsKey(key);
     }
 
     public String getDataTypeIfAttributeExists(String attributeName) {
@@ -168,11 +1775,40 @@ public class Table {
     }
 
     public void addAttribute(Attribute attribute) {
-        this.attributesMap.putIfAbsent(attribute.getName(), attribute);
+        this.attributesMap.computeIfAbsent(attribute.getName(), attributeName -> register(attribute));
     }
 
     public String getName() {
         return name;
     }
 
+    public TableConfig getConfig() {
+        return config;
+    }
+
+    public void setJournal(TableJournal journal) {
+        this.journal = journal;
+    }
+
+    // Drops the journal if it is the given one, e.g. once the store owning it closed it. The table then keeps
+    // working in memory, background sweeps included
+    public void detachJournal(TableJournal journal) {
+        if (this.journal == journal) {
+            this.journal = null;
+        }
+    }
+
+    // Starts publishing every applied insert, update and delete into a ring of the given capacity, returns the
+    // ring already running when called again
+    public synchronized ChangeRing enableChangeCapture(int capacity) {
+        if (changes == null) {
+            changes = new ChangeRing(name, capacity);
+        }
+        return changes;
+    }
+
+    public ChangeRing getChangeRing() {
+        return changes;
+    }
+
 }
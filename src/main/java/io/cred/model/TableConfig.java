@@ -0,0 +1,128 @@
+package io.cred.model;
+
+import io.cred.util.BinaryCodec;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+// Per table options passed to createTable, everything defaults to the plain in memory behaviour
+public class TableConfig {
+
+    private final Set<String> rangeIndexedAttributes = new HashSet<>();
+    // 0 keeps column values on the heap
+    private long offHeapCapacity;
+    // 0 keeps every row in memory
+    private long memoryBudget;
+    // null spills to a temporary file
+    private Path spillDirectory;
+
+    public static TableConfig defaults() {
+        return new TableConfig();
+    }
+
+    // attributes that keep an ordered index next to the hash index, so range searches on them are logarithmic
+    public TableConfig withRangeIndex(String... attributes) {
+        Collections.addAll(this.rangeIndexedAttributes, attributes);
+        return this;
+    }
+
+    // Column values are kept in direct memory, at most capacityBytes of it. Keys and secondary indexes stay on the
+    // heap. Inserts that do not fit fail with OffHeapCapacityExceededException
+    public TableConfig withOffHeapStorage(long capacityBytes) {
+        if (capacityBytes <= 0) {
+            throw new IllegalArgumentException("Off heap capacity must be positive " + capacityBytes);
+        }
+        this.offHeapCapacity = capacityBytes;
+        return this;
+    }
+
+    // Column values of the table are kept within about budgetBytes of memory: beyond it the coldest rows are moved
+    // to a spill file and read back on access. Keys and secondary indexes always stay in memory
+    public TableConfig withMemoryBudget(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive " + budgetBytes);
+        }
+        this.memoryBudget = budgetBytes;
+        return this;
+    }
+
+    public TableConfig withMemoryBudget(long budgetBytes, Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+        return withMemoryBudget(budgetBytes);
+    }
+
+    public Set<String> getRangeIndexedAttributes() {
+        return rangeIndexedAttributes;
+    }
+
+    public boolean isOffHeap() {
+        return offHeapCapacity > 0;
+    }
+
+    public long getOffHeapCapacity() {
+        return offHeapCapacity;
+    }
+
+    public boolean isMemoryBounded() {
+        return memoryBudget > 0;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    // shared by the journal and the checkpoint dictionary
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(rangeIndexedAttributes.size());
+        for (String attribute : rangeIndexedAttributes) {
+            BinaryCodec.writeString(out, attribute);
+        }
+        out.writeLong(offHeapCapacity);
+        out.writeLong(memoryBudget);
+        BinaryCodec.writeString(out, spillDirectory == null ? "" : spillDirectory.toString());
+    }
+
+    public static TableConfig read(ByteBuffer in) {
+        TableConfig config = readOffHeap(in);
+        readMemoryBudget(config, in);
+        return config;
+    }
+
+    // layout written before memory budgets existed: range indexed attributes and off heap capacity
+    public static TableConfig readOffHeap(ByteBuffer in) {
+        TableConfig config = readRangeIndexed(in);
+        long offHeapCapacity = in.getLong();
+        if (offHeapCapacity > 0) {
+            config.withOffHeapStorage(offHeapCapacity);
+        }
+        return config;
+    }
+
+    public static void readMemoryBudget(TableConfig config, ByteBuffer in) {
+        long memoryBudget = in.getLong();
+        String spillDirectory = BinaryCodec.readString(in);
+        if (memoryBudget > 0) {
+            config.withMemoryBudget(memoryBudget, spillDirectory.isEmpty() ? null : Paths.get(spillDirectory));
+        }
+    }
+
+    // layout written before off heap storage existed: the range indexed attributes only
+    public static TableConfig readRangeIndexed(ByteBuffer in) {
+        TableConfig config = defaults();
+        int rangeIndexed = in.getInt();
+        for (int i = 0; i < rangeIndexed; i++) {
+            config.withRangeIndex(BinaryCodec.readString(in));
+        }
+        return config;
+    }
+}
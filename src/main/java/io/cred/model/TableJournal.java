@@ -0,0 +1,29 @@
+package io.cred.model;
+
+import java.util.List;
+import java.util.Map;
+
+// Receives every mutation of a table before it is applied, while the key's write stripe is still held,
+// so the journal sees writes to one key in the same order they are applied.
+// Returns a sequence the caller can wait on once the stripe has been released.
+public interface TableJournal {
+
+    default long logInsert(Table table, String key, List<Entry> entries) {
+        return logInsert(table, key, entries, 0);
+    }
+
+    // expiresAtMillis is 0 for rows without expiry
+    long logInsert(Table table, String key, List<Entry> entries, long expiresAtMillis);
+
+    // Inserts of a batch in key order, a journal able to append them as a group does so. Returns the sequence of
+    // the last one
+    default long logInserts(Table table, List<String> keys, Map<String, List<Entry>> rows) {
+        long sequence = 0;
+        for (String key : keys) {
+            sequence = logInsert(table, key, rows.get(key));
+        }
+        return sequence;
+    }
+
+    long logDelete(Table table, String key);
+}
@@ -0,0 +1,50 @@
+package io.cred.model;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Consistent read view of a table: every get sees the table as of the version the snapshot was opened at,
+// whatever was written since. Reads never take a stripe lock on the common path. Open snapshots hold back the
+// collection of old row versions, so a snapshot is meant to be closed once the reads are done.
+public class TableSnapshot implements AutoCloseable {
+
+    private final Table table;
+    private final long version;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    TableSnapshot(Table table, long version) {
+        this.table = table;
+        this.version = version;
+    }
+
+    // for snapshots held elsewhere, e.g. by a remote store; they override get, getAll and close
+    protected TableSnapshot(long version) {
+        this(null, version);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public ResultSet get(String key, String[] columns) {
+        ResultSet resultSet = new ResultSet();
+        resultSet.addRow(table.readVersion(key, columns, version));
+        return resultSet;
+    }
+
+    // rows come back in the order of keys
+    public ResultSet getAll(Collection<String> keys, String[] columns) {
+        ResultSet resultSet = new ResultSet();
+        for (String key : keys) {
+            resultSet.addRow(table.readVersion(key, columns, version));
+        }
+        return resultSet;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            table.closeSnapshot(version);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.cred.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+// Single daemon thread trimming the undo records of every table that wrote some, see Table.collectVersions.
+// Tables are held weakly, a dropped table goes away with its records.
+final class VersionCollector {
+
+    private static final long INTERVAL_MILLIS = 200;
+    private static final Set<Table> TABLES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static Thread thread;
+
+    private VersionCollector() {
+    }
+
+    static void register(Table table) {
+        TABLES.add(table);
+        start();
+    }
+
+    private static synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(VersionCollector::run, "version-collector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void run() {
+        while (true) {
+            try {
+                Thread.sleep(INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<Table> tables;
+            synchronized (TABLES) {
+                tables = new ArrayList<>(TABLES);
+            }
+            for (Table table : tables) {
+                try {
+                    table.collectVersions();
+                } catch (RuntimeException e) {
+                    // left for the next run, the thread serves every other table too
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package io.cred.replication;
+
+import io.cred.IKeyStore;
+import io.cred.core.ColumnKeyStore;
+import io.cred.core.TableRegistry;
+import io.cred.exception.ReplicationException;
+import io.cred.exception.ReplicationLogTruncatedException;
+import io.cred.model.Aggregate;
+import io.cred.model.AggregateResult;
+import io.cred.model.BatchResult;
+import io.cred.model.Entry;
+import io.cred.model.Predicate;
+import io.cred.model.ResultSet;
+import io.cred.model.ScanCursor;
+import io.cred.model.TableConfig;
+import io.cred.model.TableSnapshot;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Read replica following a leader through a ReplicationSource. The constructor loads a snapshot of the leader,
+// then a background thread polls the log in batches of up to maxBatch records and applies them to tables of its
+// own, so reads never touch the leader's locks. Replicas are eventually consistent; a caller that needs to see a
+// write it made on the leader waits for the write's sequence first:
+//
+//     leader.put(...);
+//     replica.awaitSequence(replicationLog.getLastSequenceOfThread(), 100);
+//
+// A replica that fell behind the records the leader retains loads a new snapshot, reads keep going to the old
+// tables until it is complete. Writes are rejected.
+public class ReplicaKeyStore implements IKeyStore, AutoCloseable {
+
+    public static final int DEFAULT_MAX_BATCH = 1024;
+    private static final long POLL_WAIT_MILLIS = 100;
+    private static final long RETRY_MILLIS = 200;
+
+    private final ReplicationSource source;
+    private final int maxBatch;
+    private final Thread applier;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition applied = lock.newCondition();
+    private volatile ColumnKeyStore store;
+    private volatile long appliedSequence;
+    private volatile long leaderSequence;
+    // leader time of the last record applied, the replica shows the leader as of then
+    private volatile long appliedAtLeaderMillis;
+    // why the applier stopped, null while it runs
+    private volatile RuntimeException failure;
+    private volatile boolean closed;
+
+    public ReplicaKeyStore(ReplicationSource source) {
+        this(source, DEFAULT_MAX_BATCH);
+    }
+
+    public ReplicaKeyStore(ReplicationSource source, int maxBatch) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive " + maxBatch);
+        }
+        this.source = source;
+        this.maxBatch = maxBatch;
+        bootstrap();
+        this.applier = new Thread(this::run, "keystore-replica-applier");
+        this.applier.setDaemon(true);
+        this.applier.start();
+    }
+
+    private void bootstrap() {
+        ColumnKeyStore fresh = new ColumnKeyStore(TableRegistry.isolated());
+        long from = source.snapshot(fresh::apply);
+        this.store = fresh;
+        this.appliedAtLeaderMillis = System.currentTimeMillis();
+        this.leaderSequence = Math.max(leaderSequence, from);
+        advance(from);
+    }
+
+    private void run() {
+        boolean truncated = false;
+        while (!closed) {
+            try {
+                if (truncated) {
+                    bootstrap();
+                    truncated = false;
+                }
+                ReplicationBatch batch = source.poll(appliedSequence, maxBatch, POLL_WAIT_MILLIS);
+                ColumnKeyStore current = this.store;
+                for (ReplicationRecord record : batch.getRecords()) {
+                    current.apply(record.getRecord());
+                    appliedAtLeaderMillis = record.getAppendedAtMillis();
+                }
+                leaderSequence = batch.getLeaderSequence();
+                if (!batch.getRecords().isEmpty()) {
+                    advance(batch.getRecords().get(batch.getRecords().size() - 1).getSequence());
+                }
+            } catch (ReplicationLogTruncatedException e) {
+                truncated = true;
+            } catch (ReplicationException e) {
+                // leader unreachable, polled again after a pause
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+                advance(appliedSequence);
+                return;
+            }
+        }
+    }
+
+    private void advance(long sequence) {
+        lock.lock();
+        try {
+            appliedSequence = sequence;
+            applied.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits until every leader record up to sequence is applied, false when timeoutMillis passed first
+    public boolean awaitSequence(long sequence, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            long left;
+            while (appliedSequence < sequence) {
+                if (failure != null) {
+                    throw new ReplicationException("Replica stopped applying the leader's log", failure);
+                }
+                if ((left = deadline - System.nanoTime()) <= 0) {
+                    return false;
+                }
+                applied.awaitNanos(left);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    // records the leader had logged at the last poll that are not applied yet
+    public long getLagRecords() {
+        return Math.max(0, leaderSequence - appliedSequence);
+    }
+
+    // how far behind the leader's clock the replica's data is, 0 when caught up with the last poll
+    public long getLagMillis() {
+        if (appliedSequence >= leaderSequence) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - appliedAtLeaderMillis);
+    }
+
+    @Override
+    public boolean createTable(String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean createTable(String name, TableConfig config) {
+        throw readOnly();
+    }
+
+    @Override
+    public void put(String tableName, String key, Entry value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void putAll(String tableName, String key, List<Entry> value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void put(String tableName, String key, Entry value, long ttlMillis) {
+        throw readOnly();
+    }
+
+    @Override
+    public void putAll(String tableName, String key, List<Entry> value, long ttlMillis) {
+        throw readOnly();
+    }
+
+    @Override
+    public void update(String tableName, String key, List<Entry> value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void upsert(String tableName, String key, List<Entry> value) {
+        throw readOnly();
+    }
+
+    @Override
+    public BatchResult putBatch(String tableName, Map<String, List<Entry>> rows) {
+        throw readOnly();
+    }
+
+    @Override
+    public BatchResult putBatch(String tableName, Iterator<Map.Entry<String, List<Entry>>> rows, int batchSize) {
+        throw readOnly();
+    }
+
+    @Override
+    public void delete(String tableName, String key) {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Replicas are read only, write to the leader");
+    }
+
+    @Override
+    public ResultSet get(String tableName, String key, String[] columns) {
+        return store.get(tableName, key, columns);
+    }
+
+    @Override
+    public ResultSet get(String tableName, String key) {
+        return store.get(tableName, key);
+    }
+
+    @Override
+    public ResultSet getAll(String tableName, Collection<String> keys, String[] columns) {
+        return store.getAll(tableName, keys, columns);
+    }
+
+    @Override
+    public TableSnapshot snapshot(String tableName) {
+        return store.snapshot(tableName);
+    }
+
+    @Override
+    public List<String> search(String tableName, Entry entry) {
+        return store.search(tableName, entry);
+    }
+
+    @Override
+    public ResultSet search(String tableName, Entry entry, String[] columns) {
+        return store.search(tableName, entry, columns);
+    }
+
+    @Override
+    public List<String> search(String tableName, Predicate... predicates) {
+        return store.search(tableName, predicates);
+    }
+
+    @Override
+    public ResultSet search(String tableName, String[] columns, Predicate... predicates) {
+        return store.search(tableName, columns, predicates);
+    }
+
+    @Override
+    public ResultSet searchRange(String tableName, String attribute, Object from, Object to, String[] columns) {
+        return store.searchRange(tableName, attribute, from, to, columns);
+    }
+
+    @Override
+    public ResultSet searchRange(String tableName, String attribute, Object from, Object to, String[] columns, int limit) {
+        return store.searchRange(tableName, attribute, from, to, columns, limit);
+    }
+
+    @Override
+    public AggregateResult aggregate(String tableName, String column, Aggregate function, Predicate filter, String groupBy) {
+        return store.aggregate(tableName, column, function, filter, groupBy);
+    }
+
+    @Override
+    public ScanCursor scan(String tableName, String fromKey, String toKey, String[] columns, int pageSize) {
+        return store.scan(tableName, fromKey, toKey, columns, pageSize);
+    }
+
+    @Override
+    public ScanCursor scanPrefix(String tableName, String prefix, String[] columns, int pageSize) {
+        return store.scanPrefix(tableName, prefix, columns, pageSize);
+    }
+
+    @Override
+    public ScanCursor resumeScan(String tableName, String continuationToken, String[] columns, int pageSize) {
+        return store.resumeScan(tableName, continuationToken, columns, pageSize);
+    }
+
+    // Stops following the leader, the source is left open. An interrupt stops waiting for the applier, the
+    // interrupt flag is set again on return
+    @Override
+    public void close() {
+        closed = true;
+        applier.interrupt();
+        try {
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.cred.replication;
+
+import java.util.List;
+
+// Consecutive records shipped together, plus where the leader's log stood when they were read
+public class ReplicationBatch {
+
+    private final List<ReplicationRecord> records;
+    private final long leaderSequence;
+
+    public ReplicationBatch(List<ReplicationRecord> records, long leaderSequence) {
+        this.records = records;
+        this.leaderSequence = leaderSequence;
+    }
+
+    public List<ReplicationRecord> getRecords() {
+        return records;
+    }
+
+    public long getLeaderSequence() {
+        return leaderSequence;
+    }
+}
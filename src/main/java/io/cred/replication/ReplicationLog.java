@@ -0,0 +1,163 @@
+package io.cred.replication;
+
+import io.cred.exception.ReplicationLogTruncatedException;
+import io.cred.model.Entry;
+import io.cred.model.Row;
+import io.cred.model.ScanCursor;
+import io.cred.model.Table;
+import io.cred.model.TableConfig;
+import io.cred.model.TableJournal;
+import io.cred.wal.WalRecord;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Leader side of replication, installed as the journal of every table by ColumnKeyStore.enableReplication. Every
+// mutation gets the next sequence number while the key's stripe is held, so records of one key are in the order
+// they were applied; the record is then passed on to the write ahead log, if any.
+//
+// The last capacity records are kept in memory for replicas to poll. A replica falling further behind gets a
+// ReplicationLogTruncatedException and bootstraps again from a snapshot, so capacity should cover the writes
+// arriving while a snapshot is taken and shipped.
+public class ReplicationLog implements TableJournal, ReplicationSource {
+
+    private static final int SNAPSHOT_PAGE_SIZE = 1024;
+
+    private final ReplicationRecord[] ring;
+    private final Supplier<Collection<Table>> tables;
+    // write ahead log the records are passed on to, null without one
+    private final TableJournal delegate;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final ThreadLocal<long[]> threadSequence = ThreadLocal.withInitial(() -> new long[1]);
+    // written under lock
+    private volatile long sequence;
+    private int waiting;
+
+    public ReplicationLog(int capacity, Supplier<Collection<Table>> tables, TableJournal delegate) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive " + capacity);
+        }
+        this.ring = new ReplicationRecord[capacity];
+        this.tables = tables;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public long logInsert(Table table, String key, List<Entry> entries, long expiresAtMillis) {
+        append(Collections.singletonList(WalRecord.put(table.getName(), key, entries, expiresAtMillis)));
+        return delegate == null ? 0 : delegate.logInsert(table, key, entries, expiresAtMillis);
+    }
+
+    @Override
+    public long logInserts(Table table, List<String> keys, Map<String, List<Entry>> rows) {
+        List<WalRecord> records = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            records.add(WalRecord.put(table.getName(), key, rows.get(key)));
+        }
+        append(records);
+        return delegate == null ? 0 : delegate.logInserts(table, keys, rows);
+    }
+
+    @Override
+    public long logDelete(Table table, String key) {
+        append(Collections.singletonList(WalRecord.delete(table.getName(), key)));
+        return delegate == null ? 0 : delegate.logDelete(table, key);
+    }
+
+    public void logCreateTable(String tableName, TableConfig config) {
+        append(Collections.singletonList(WalRecord.createTable(tableName, config)));
+    }
+
+    private void append(List<WalRecord> records) {
+        long now = System.currentTimeMillis();
+        long last;
+        lock.lock();
+        try {
+            last = sequence;
+            for (WalRecord record : records) {
+                last++;
+                ring[(int) (last % ring.length)] = new ReplicationRecord(last, now, record);
+            }
+            sequence = last;
+            if (waiting > 0) {
+                appended.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        threadSequence.get()[0] = last;
+    }
+
+    public long getLastSequence() {
+        return sequence;
+    }
+
+    // Sequence of the last record appended by the calling thread: a replica that reached it shows the thread its
+    // own writes, see ReplicaKeyStore#awaitSequence
+    public long getLastSequenceOfThread() {
+        return threadSequence.get()[0];
+    }
+
+    @Override
+    public ReplicationBatch poll(long afterSequence, int maxRecords, long waitMillis) {
+        lock.lock();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+            waiting++;
+            try {
+                long left;
+                while (sequence <= afterSequence && (left = deadline - System.nanoTime()) > 0) {
+                    appended.awaitNanos(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiting--;
+            }
+            // a replica ahead of the log followed an earlier leader process
+            if (afterSequence < sequence - ring.length || afterSequence > sequence) {
+                throw new ReplicationLogTruncatedException("Replication log at " + sequence + " no longer holds the records after " + afterSequence);
+            }
+            int count = (int) Math.min(maxRecords, sequence - afterSequence);
+            List<ReplicationRecord> records = new ArrayList<>(count);
+            for (long next = afterSequence + 1; next <= afterSequence + count; next++) {
+                records.add(ring[(int) (next % ring.length)]);
+            }
+            return new ReplicationBatch(records, sequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Dumps the tables while writers keep going. The sequence is taken first and each table's writes in flight at
+    // that point are waited for, so every record up to it is in the dump; later ones may be too and are applied
+    // again by the replica, which is harmless as applying a record is idempotent
+    @Override
+    public long snapshot(Consumer<WalRecord> consumer) {
+        long from = sequence;
+        for (Table table : tables.get()) {
+            consumer.accept(WalRecord.createTable(table.getName(), table.getConfig()));
+            table.awaitInFlightWrites();
+            String[] columns = table.getAttributesMap().keySet().toArray(new String[0]);
+            ScanCursor cursor = table.scan(null, null, columns, SNAPSHOT_PAGE_SIZE);
+            while (cursor.hasNext()) {
+                Row row = cursor.next();
+                List<Entry> entries = row.getEntries().stream()
+                        .filter(entry -> entry.getValue() != null)
+                        .collect(Collectors.toList());
+                consumer.accept(WalRecord.put(table.getName(), row.getKey(), entries, table.getExpiresAtMillis(row.getKey())));
+            }
+        }
+        return from;
+    }
+}
@@ -0,0 +1,56 @@
+package io.cred.replication;
+
+import io.cred.wal.WalRecord;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// One mutation of the leader: the logged record, its position in the leader's replication log and the time it
+// was appended. On the wire: [long sequence][long appended at][int length][WalRecord body]
+public class ReplicationRecord {
+
+    private final long sequence;
+    private final long appendedAtMillis;
+    private final WalRecord record;
+
+    public ReplicationRecord(long sequence, long appendedAtMillis, WalRecord record) {
+        this.sequence = sequence;
+        this.appendedAtMillis = appendedAtMillis;
+        this.record = record;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getAppendedAtMillis() {
+        return appendedAtMillis;
+    }
+
+    public WalRecord getRecord() {
+        return record;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(sequence);
+        out.writeLong(appendedAtMillis);
+        byte[] body = record.encode();
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    static ReplicationRecord read(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        long appendedAtMillis = in.readLong();
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new ReplicationRecord(sequence, appendedAtMillis, WalRecord.decode(ByteBuffer.wrap(body)));
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationRecord{" + sequence + " " + record + '}';
+    }
+}
@@ -0,0 +1,146 @@
+package io.cred.replication;
+
+import io.cred.exception.ReplicationException;
+import io.cred.exception.ReplicationLogTruncatedException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Ships a ReplicationSource to replicas over TCP, see SocketReplicationSource. A replica only ever has one request
+// outstanding and there are few of them, so every replica connection gets a blocking thread.
+//
+// Requests:  POLL [long after sequence][int max records][long wait millis] | SNAPSHOT
+// Responses: [byte status], then for POLL [long leader sequence][int count][record]*, for SNAPSHOT
+//            ([int length][WalRecord body])* [int -1][long sequence to follow from]; TRUNCATED and ERROR carry a
+//            message instead
+public class ReplicationServer implements AutoCloseable {
+
+    static final byte POLL = 1;
+    static final byte SNAPSHOT = 2;
+    static final byte OK = 0;
+    static final byte TRUNCATED = 1;
+    static final byte ERROR = 2;
+
+    private final ReplicationSource source;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> replicas = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    private ReplicationServer(ReplicationSource source, ServerSocket serverSocket) {
+        this.source = source;
+        this.serverSocket = serverSocket;
+    }
+
+    public static ReplicationServer start(ReplicationSource source, int port) {
+        ServerSocket serverSocket;
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            throw new ReplicationException("Unable to bind replication port " + port, e);
+        }
+        ReplicationServer server = new ReplicationServer(source, serverSocket);
+        Thread acceptor = new Thread(server::accept, "keystore-replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                replicas.add(socket);
+                Thread thread = new Thread(() -> serve(socket), "keystore-replication-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                // closed, or a failed accept the replica retries
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            while (!closed) {
+                byte request = in.readByte();
+                try {
+                    if (request == POLL) {
+                        ReplicationBatch batch = source.poll(in.readLong(), in.readInt(), in.readLong());
+                        out.writeByte(OK);
+                        out.writeLong(batch.getLeaderSequence());
+                        out.writeInt(batch.getRecords().size());
+                        for (ReplicationRecord record : batch.getRecords()) {
+                            record.write(out);
+                        }
+                    } else if (request == SNAPSHOT) {
+                        out.writeByte(OK);
+                        long from = source.snapshot(record -> {
+                            try {
+                                byte[] body = record.encode();
+                                out.writeInt(body.length);
+                                out.write(body);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                        out.writeInt(-1);
+                        out.writeLong(from);
+                    } else {
+                        throw new IllegalArgumentException("Unknown replication request " + request);
+                    }
+                } catch (ReplicationLogTruncatedException e) {
+                    out.writeByte(TRUNCATED);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } catch (RuntimeException e) {
+                    // a snapshot failing half way can not be answered within the stream, the replica reconnects
+                    if (request == SNAPSHOT) {
+                        return;
+                    }
+                    out.writeByte(ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // replica went away
+        } finally {
+            replicas.remove(socket);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+        for (Socket socket : replicas) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+    }
+}
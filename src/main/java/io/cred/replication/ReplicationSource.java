@@ -0,0 +1,18 @@
+package io.cred.replication;
+
+import io.cred.wal.WalRecord;
+
+import java.util.function.Consumer;
+
+// Where a replica reads the leader's changes from: the leader's ReplicationLog in process, or a
+// SocketReplicationSource talking to a ReplicationServer
+public interface ReplicationSource {
+
+    // Up to maxRecords records following afterSequence, waiting up to waitMillis for the first one. Throws
+    // ReplicationLogTruncatedException once the records after afterSequence are no longer retained
+    ReplicationBatch poll(long afterSequence, int maxRecords, long waitMillis);
+
+    // Fuzzy dump of every table as CREATE_TABLE and PUT records. Returns the sequence the log has to be followed
+    // from: applying the dump and then every record after that sequence (idempotently) gives the leader's tables
+    long snapshot(Consumer<WalRecord> consumer);
+}
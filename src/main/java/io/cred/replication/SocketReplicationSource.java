@@ -0,0 +1,115 @@
+package io.cred.replication;
+
+import io.cred.exception.ReplicationException;
+import io.cred.exception.ReplicationLogTruncatedException;
+import io.cred.wal.WalRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Replica side of a ReplicationServer. Connects on first use and again after a failure, which surfaces as a
+// ReplicationException. Used by one replica thread at a time
+public class SocketReplicationSource implements ReplicationSource, AutoCloseable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+
+    private final String host;
+    private final int port;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    public SocketReplicationSource(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public ReplicationBatch poll(long afterSequence, int maxRecords, long waitMillis) {
+        try {
+            connect();
+            out.writeByte(ReplicationServer.POLL);
+            out.writeLong(afterSequence);
+            out.writeInt(maxRecords);
+            out.writeLong(waitMillis);
+            out.flush();
+            readStatus();
+            long leaderSequence = in.readLong();
+            int count = in.readInt();
+            List<ReplicationRecord> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                records.add(ReplicationRecord.read(in));
+            }
+            return new ReplicationBatch(records, leaderSequence);
+        } catch (IOException e) {
+            disconnect();
+            throw new ReplicationException("Replication from " + host + ":" + port + " failed", e);
+        }
+    }
+
+    @Override
+    public long snapshot(Consumer<WalRecord> consumer) {
+        try {
+            connect();
+            out.writeByte(ReplicationServer.SNAPSHOT);
+            out.flush();
+            readStatus();
+            for (int length; (length = in.readInt()) >= 0; ) {
+                byte[] body = new byte[length];
+                in.readFully(body);
+                consumer.accept(WalRecord.decode(ByteBuffer.wrap(body)));
+            }
+            return in.readLong();
+        } catch (IOException e) {
+            disconnect();
+            throw new ReplicationException("Snapshot from " + host + ":" + port + " failed", e);
+        }
+    }
+
+    private void readStatus() throws IOException {
+        byte status = in.readByte();
+        if (status == ReplicationServer.TRUNCATED) {
+            throw new ReplicationLogTruncatedException(in.readUTF());
+        }
+        if (status != ReplicationServer.OK) {
+            throw new ReplicationException(in.readUTF(), null);
+        }
+    }
+
+    private void connect() throws IOException {
+        if (socket != null) {
+            return;
+        }
+        Socket connected = new Socket();
+        connected.setTcpNoDelay(true);
+        connected.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+        socket = connected;
+        in = new DataInputStream(new BufferedInputStream(connected.getInputStream(), 64 * 1024));
+        out = new DataOutputStream(new BufferedOutputStream(connected.getOutputStream()));
+    }
+
+    private void disconnect() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // reconnected on the next call
+            }
+            socket = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        disconnect();
+    }
+}
@@ -0,0 +1,188 @@
+package io.cred.server;
+
+import io.cred.model.TableSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One client connection. The event loop reads frames off the socket and queues them; a single worker at a time
+// executes the queue in order and queues the responses, which the event loop writes back with one gathering write
+// per wakeup. A client pipelining requests therefore gets its responses in order and pays one syscall per burst
+// instead of per request.
+//
+// While responses can not be written (the client does not read) the connection stops reading new requests.
+class Connection {
+
+    private static final int READ_BUFFER_BYTES = 16 * 1024;
+    private static final int MAX_GATHER = 64;
+
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final RequestHandler handler;
+    private final Executor workers;
+    private final int maxFrameBytes;
+    private SelectionKey key;
+
+    // event loop only
+    private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+    private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>();
+
+    private final ConcurrentLinkedQueue<ByteBuffer> requests = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean processing = new AtomicBoolean();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    private final Map<Long, TableSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final AtomicLong snapshotIds = new AtomicLong();
+
+    Connection(SocketChannel channel, EventLoop loop, RequestHandler handler, Executor workers, int maxFrameBytes) {
+        this.channel = channel;
+        this.loop = loop;
+        this.handler = handler;
+        this.workers = workers;
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    void register() throws IOException {
+        key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+    }
+
+    // event loop: reads whatever arrived and queues every complete frame
+    void read() {
+        try {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        in.flip();
+        boolean queued = false;
+        while (in.remaining() >= Integer.BYTES) {
+            int length = in.getInt(in.position());
+            if (length < Protocol.HEADER_BYTES || length > maxFrameBytes) {
+                close();
+                return;
+            }
+            if (in.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            in.position(in.position() + Integer.BYTES);
+            byte[] frame = new byte[length];
+            in.get(frame);
+            requests.add(ByteBuffer.wrap(frame));
+            queued = true;
+        }
+        in.compact();
+        if (!in.hasRemaining()) {
+            // a frame larger than the buffer is under way
+            ByteBuffer grown = ByteBuffer.allocate(in.capacity() * 2);
+            in.flip();
+            grown.put(in);
+            in = grown;
+        }
+        if (queued && processing.compareAndSet(false, true)) {
+            workers.execute(this::process);
+        }
+    }
+
+    // worker: runs the queued requests in order, the responses are flushed once the queue is empty
+    private void process() {
+        try {
+            for (ByteBuffer request; !closed && (request = requests.poll()) != null; ) {
+                responses.add(handler.handle(this, request));
+            }
+        } finally {
+            processing.set(false);
+            requestFlush();
+            // a frame queued after the last poll saw processing still set
+            if (!requests.isEmpty() && !closed && processing.compareAndSet(false, true)) {
+                workers.execute(this::process);
+            }
+        }
+    }
+
+    private void requestFlush() {
+        if (!responses.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+    }
+
+    // event loop
+    void flush() {
+        flushScheduled.set(false);
+        if (closed) {
+            return;
+        }
+        for (ByteBuffer response; (response = responses.poll()) != null; ) {
+            writing.add(response);
+        }
+        try {
+            while (!writing.isEmpty()) {
+                ByteBuffer[] batch = writing.stream().limit(MAX_GATHER).toArray(ByteBuffer[]::new);
+                channel.write(batch);
+                while (!writing.isEmpty() && !writing.peek().hasRemaining()) {
+                    writing.poll();
+                }
+                if (batch[batch.length - 1].hasRemaining()) {
+                    // socket buffer is full
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        key.interestOps(writing.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+    }
+
+    long addSnapshot(TableSnapshot snapshot) {
+        long id = snapshotIds.incrementAndGet();
+        snapshots.put(id, snapshot);
+        return id;
+    }
+
+    TableSnapshot getSnapshot(long id) {
+        TableSnapshot snapshot = snapshots.get(id);
+        if (snapshot == null) {
+            throw new IllegalArgumentException("Snapshot " + id + " is not open on this connection");
+        }
+        return snapshot;
+    }
+
+    void closeSnapshot(long id) {
+        TableSnapshot snapshot = snapshots.remove(id);
+        if (snapshot != null) {
+            snapshot.close();
+        }
+    }
+
+    // snapshots left open by the client are closed with its connection, they would hold back version collection
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+        snapshots.keySet().forEach(this::closeSnapshot);
+    }
+}
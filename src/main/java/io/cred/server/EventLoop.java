@@ -0,0 +1,93 @@
+package io.cred.server;
+
+import io.cred.exception.RemoteKeyStoreException;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Selector thread owning a set of connections. Other threads hand it work through execute, which wakes the
+// selector; everything touching a selection key runs on the loop.
+class EventLoop implements Runnable {
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private final KeyStoreServer server;
+    private volatile boolean closed;
+
+    EventLoop(KeyStoreServer server, String name) {
+        this.server = server;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new RemoteKeyStoreException("Unable to open selector", e);
+        }
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                break;
+            }
+            for (Runnable task; (task = tasks.poll()) != null; ) {
+                task.run();
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    server.accept();
+                    continue;
+                }
+                Connection connection = (Connection) key.attachment();
+                if (key.isReadable()) {
+                    connection.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // the loop is gone either way
+        }
+    }
+
+    void close() throws InterruptedException {
+        closed = true;
+        selector.wakeup();
+        thread.join();
+    }
+}
@@ -0,0 +1,154 @@
+package io.cred.server;
+
+import io.cred.IKeyStore;
+import io.cred.core.ColumnKeyStore;
+import io.cred.exception.RemoteKeyStoreException;
+import io.cred.wal.WalConfig;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Serves an IKeyStore over TCP with the Protocol framing. A few selector threads (event loops) do all socket I/O
+// without blocking, the first one also accepts; requests run on a worker pool, one connection at a time per worker
+// so a connection's requests keep their order. See Connection for the per connection pipeline.
+//
+// Standalone: java io.cred.server.KeyStoreServer <port> [wal directory]
+public class KeyStoreServer implements AutoCloseable {
+
+    private final RequestHandler handler;
+    private final ServerConfig config;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private final ExecutorService workers;
+    private int nextLoop;
+
+    private KeyStoreServer(IKeyStore store, ServerConfig config) throws IOException {
+        this.handler = new RequestHandler(store);
+        this.config = config;
+        AtomicInteger workerThreads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(config.getWorkerThreads(), task -> {
+            Thread thread = new Thread(task, "keystore-worker-" + workerThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loops = new EventLoop[Math.max(1, config.getEventLoops())];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(this, "keystore-event-loop-" + i);
+        }
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.bind(config.getAddress());
+    }
+
+    public static KeyStoreServer start(IKeyStore store, ServerConfig config) {
+        KeyStoreServer server;
+        try {
+            server = new KeyStoreServer(store, config);
+        } catch (IOException e) {
+            throw new RemoteKeyStoreException("Unable to bind " + config.getAddress(), e);
+        }
+        server.loops[0].execute(() -> {
+            try {
+                server.serverChannel.register(server.loops[0].selector(), SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                throw new RemoteKeyStoreException("Unable to accept on " + config.getAddress(), e);
+            }
+        });
+        for (EventLoop loop : server.loops) {
+            loop.start();
+        }
+        return server;
+    }
+
+    // the bound port, resolves port 0 of the config
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new RemoteKeyStoreException("Server socket is closed", e);
+        }
+    }
+
+    // first event loop, connections are handed to the loops round robin
+    void accept() {
+        try {
+            for (SocketChannel channel; (channel = serverChannel.accept()) != null; ) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                EventLoop loop = loops[nextLoop++ % loops.length];
+                Connection connection = new Connection(channel, loop, handler, workers, config.getMaxFrameBytes());
+                loop.execute(() -> {
+                    try {
+                        connection.register();
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            // the server channel was closed or the accept failed, the client sees a reset and reconnects
+        }
+    }
+
+    // Stops accepting, closes every connection and waits for running requests. The store is left open. An
+    // interrupt stops the waiting but every loop is still closed, the interrupt flag is set again on return
+    @Override
+    public void close() {
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+        boolean interrupted = false;
+        for (EventLoop loop : loops) {
+            try {
+                loop.close();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        workers.shutdown();
+        try {
+            if (!interrupted) {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: KeyStoreServer <port> [wal directory]");
+            System.exit(1);
+        }
+        ColumnKeyStore store = args.length > 1 ? new ColumnKeyStore(WalConfig.of(Paths.get(args[1]))) : new ColumnKeyStore();
+        KeyStoreServer server = start(store, ServerConfig.of(Integer.parseInt(args[0])));
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                store.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                stopped.countDown();
+            }
+        }));
+        System.out.println("KeyStoreServer listening on port " + server.getPort());
+        stopped.await();
+    }
+}
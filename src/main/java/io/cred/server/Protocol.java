@@ -0,0 +1,321 @@
+package io.cred.server;
+
+import io.cred.exception.AttributeDoesNotExistsException;
+import io.cred.exception.InvalidDatatypeException;
+import io.cred.exception.KeyAlreadyExistsException;
+import io.cred.exception.KeyDoesNotExistsException;
+import io.cred.exception.OffHeapCapacityExceededException;
+import io.cred.exception.RemoteKeyStoreException;
+import io.cred.exception.TableDoesNotExistsException;
+import io.cred.model.AggregateResult;
+import io.cred.model.BatchResult;
+import io.cred.model.Entry;
+import io.cred.model.Predicate;
+import io.cred.model.ResultSet;
+import io.cred.model.Row;
+import io.cred.util.BinaryCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Wire format shared by KeyStoreServer and RemoteKeyStore. Every message is one frame
+//     [int length][long request id][byte opcode | status][payload]
+// where length counts the bytes after itself. A response carries the id of its request, so a client can keep any
+// number of requests in flight on one connection and match the responses as they arrive. The server executes the
+// requests of a connection in the order they were sent.
+//
+// Keys, values and entries are written with BinaryCodec, nullable strings as values, string arrays as
+// [int count, -1 for null][strings]. An ERROR response holds the exception class name and message, the client
+// raises the same exception type for the ones of this store.
+public final class Protocol {
+
+    // request id and opcode / status following the length
+    public static final int HEADER_BYTES = Long.BYTES + 1;
+
+    public static final byte CREATE_TABLE = 1;
+    public static final byte PUT = 2;
+    public static final byte UPDATE = 3;
+    public static final byte UPSERT = 4;
+    public static final byte PUT_BATCH = 5;
+    public static final byte GET = 6;
+    public static final byte GET_ALL = 7;
+    public static final byte DELETE = 8;
+    public static final byte SEARCH_ENTRY = 9;
+    public static final byte SEARCH = 10;
+    public static final byte SEARCH_RANGE = 11;
+    public static final byte SCAN = 12;
+    public static final byte SCAN_PREFIX = 13;
+    public static final byte RESUME_SCAN = 14;
+    public static final byte SNAPSHOT = 15;
+    public static final byte SNAPSHOT_GET = 16;
+    public static final byte SNAPSHOT_CLOSE = 17;
+    public static final byte AGGREGATE = 18;
+
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+
+    private static final byte EQ = 0;
+    private static final byte AND = 1;
+    private static final byte OR = 2;
+    private static final byte RANGE = 3;
+    private static final byte LIKE = 4;
+
+    private static final Map<String, Function<String, RuntimeException>> ERRORS = new HashMap<>();
+
+    static {
+        ERRORS.put(TableDoesNotExistsException.class.getName(), TableDoesNotExistsException::new);
+        ERRORS.put(KeyAlreadyExistsException.class.getName(), KeyAlreadyExistsException::new);
+        ERRORS.put(KeyDoesNotExistsException.class.getName(), KeyDoesNotExistsException::new);
+        ERRORS.put(AttributeDoesNotExistsException.class.getName(), AttributeDoesNotExistsException::new);
+        ERRORS.put(InvalidDatatypeException.class.getName(), InvalidDatatypeException::new);
+        ERRORS.put(OffHeapCapacityExceededException.class.getName(), OffHeapCapacityExceededException::new);
+        ERRORS.put(IllegalArgumentException.class.getName(), IllegalArgumentException::new);
+        ERRORS.put(IllegalStateException.class.getName(), IllegalStateException::new);
+        ERRORS.put(UnsupportedOperationException.class.getName(), UnsupportedOperationException::new);
+    }
+
+    private Protocol() {
+    }
+
+    @FunctionalInterface
+    public interface Payload {
+        void write(DataOutput out) throws IOException;
+    }
+
+    // one complete frame ready to be written, the length is filled in once the payload is known
+    public static ByteBuffer frame(long requestId, byte code, Payload payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0);
+            out.writeLong(requestId);
+            out.writeByte(code);
+            payload.write(out);
+            out.flush();
+        } catch (IOException e) {
+            // in memory stream
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.remaining() - Integer.BYTES);
+        return frame;
+    }
+
+    public static void writeNullableString(DataOutput out, String value) throws IOException {
+        BinaryCodec.writeValue(out, value);
+    }
+
+    public static String readNullableString(ByteBuffer in) {
+        return (String) BinaryCodec.readValue(in);
+    }
+
+    public static void writeStrings(DataOutput out, String[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (String value : values) {
+            BinaryCodec.writeString(out, value);
+        }
+    }
+
+    public static String[] readStrings(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0) {
+            return null;
+        }
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = BinaryCodec.readString(in);
+        }
+        return values;
+    }
+
+    public static void writeKeys(DataOutput out, List<String> keys) throws IOException {
+        out.writeInt(keys.size());
+        for (String key : keys) {
+            BinaryCodec.writeString(out, key);
+        }
+    }
+
+    public static List<String> readKeys(ByteBuffer in) {
+        int count = in.getInt();
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(BinaryCodec.readString(in));
+        }
+        return keys;
+    }
+
+    public static void writeRows(DataOutput out, Map<String, List<Entry>> rows) throws IOException {
+        out.writeInt(rows.size());
+        for (Map.Entry<String, List<Entry>> row : rows.entrySet()) {
+            BinaryCodec.writeString(out, row.getKey());
+            BinaryCodec.writeEntries(out, row.getValue());
+        }
+    }
+
+    public static Map<String, List<Entry>> readRows(ByteBuffer in) {
+        int count = in.getInt();
+        Map<String, List<Entry>> rows = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            rows.put(BinaryCodec.readString(in), BinaryCodec.readEntries(in));
+        }
+        return rows;
+    }
+
+    public static void writePredicate(DataOutput out, Predicate predicate) throws IOException {
+        if (predicate instanceof Predicate.Eq) {
+            Predicate.Eq eq = (Predicate.Eq) predicate;
+            out.writeByte(EQ);
+            BinaryCodec.writeString(out, eq.getAttribute());
+            BinaryCodec.writeValue(out, eq.getValue());
+        } else if (predicate instanceof Predicate.Range) {
+            Predicate.Range range = (Predicate.Range) predicate;
+            out.writeByte(RANGE);
+            BinaryCodec.writeString(out, range.getAttribute());
+            BinaryCodec.writeValue(out, range.getFrom());
+            out.writeBoolean(range.isFromInclusive());
+            BinaryCodec.writeValue(out, range.getTo());
+            out.writeBoolean(range.isToInclusive());
+        } else if (predicate instanceof Predicate.Like) {
+            Predicate.Like like = (Predicate.Like) predicate;
+            out.writeByte(LIKE);
+            BinaryCodec.writeString(out, like.getAttribute());
+            BinaryCodec.writeString(out, like.getPattern());
+        } else if (predicate instanceof Predicate.And) {
+            out.writeByte(AND);
+            writePredicates(out, ((Predicate.And) predicate).getPredicates().toArray(new Predicate[0]));
+        } else if (predicate instanceof Predicate.Or) {
+            out.writeByte(OR);
+            writePredicates(out, ((Predicate.Or) predicate).getPredicates().toArray(new Predicate[0]));
+        } else {
+            throw new IllegalArgumentException("Predicate can not be sent to a remote store " + predicate);
+        }
+    }
+
+    public static Predicate readPredicate(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+            case EQ:
+                String attribute = BinaryCodec.readString(in);
+                return Predicate.eq(attribute, BinaryCodec.readValue(in));
+            case RANGE: {
+                String name = BinaryCodec.readString(in);
+                Object from = BinaryCodec.readValue(in);
+                boolean fromInclusive = in.get() != 0;
+                Object to = BinaryCodec.readValue(in);
+                return Predicate.range(name, from, fromInclusive, to, in.get() != 0);
+            }
+            case LIKE: {
+                String name = BinaryCodec.readString(in);
+                return Predicate.like(name, BinaryCodec.readString(in));
+            }
+            case AND:
+                return Predicate.and(readPredicates(in));
+            case OR:
+                return Predicate.or(readPredicates(in));
+            default:
+                throw new IllegalArgumentException("Unknown predicate type " + type);
+        }
+    }
+
+    public static void writePredicates(DataOutput out, Predicate[] predicates) throws IOException {
+        out.writeInt(predicates.length);
+        for (Predicate predicate : predicates) {
+            writePredicate(out, predicate);
+        }
+    }
+
+    public static Predicate[] readPredicates(ByteBuffer in) {
+        Predicate[] predicates = new Predicate[in.getInt()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = readPredicate(in);
+        }
+        return predicates;
+    }
+
+    public static void writeResultSet(DataOutput out, ResultSet resultSet) throws IOException {
+        out.writeInt(resultSet.getRows().size());
+        for (Row row : resultSet.getRows()) {
+            BinaryCodec.writeString(out, row.getKey());
+            out.writeLong(row.getVersion());
+            BinaryCodec.writeEntries(out, row.getEntries());
+        }
+    }
+
+    public static ResultSet readResultSet(ByteBuffer in) {
+        ResultSet resultSet = new ResultSet();
+        int rows = in.getInt();
+        for (int i = 0; i < rows; i++) {
+            String key = BinaryCodec.readString(in);
+            long version = in.getLong();
+            resultSet.addRow(new Row(key, BinaryCodec.readEntries(in), version));
+        }
+        return resultSet;
+    }
+
+    // the journal sequence is local to the server and not sent
+    public static void writeBatchResult(DataOutput out, BatchResult result) throws IOException {
+        out.writeLong(result.getInsertedCount());
+        out.writeInt(result.getFailures().size());
+        for (Map.Entry<String, RuntimeException> failure : result.getFailures().entrySet()) {
+            BinaryCodec.writeString(out, failure.getKey());
+            writeError(out, failure.getValue());
+        }
+    }
+
+    public static BatchResult readBatchResult(ByteBuffer in) {
+        BatchResult result = new BatchResult();
+        result.addInserted(in.getLong(), 0);
+        int failures = in.getInt();
+        for (int i = 0; i < failures; i++) {
+            String key = BinaryCodec.readString(in);
+            result.addFailure(key, readError(in));
+        }
+        return result;
+    }
+
+    public static void writeAggregateResult(DataOutput out, AggregateResult result) throws IOException {
+        BinaryCodec.writeValue(out, result.getValue());
+        out.writeInt(result.getGroups().size());
+        for (Map.Entry<Object, Object> group : result.getGroups().entrySet()) {
+            BinaryCodec.writeValue(out, group.getKey());
+            BinaryCodec.writeValue(out, group.getValue());
+        }
+    }
+
+    public static AggregateResult readAggregateResult(ByteBuffer in) {
+        Object value = BinaryCodec.readValue(in);
+        int count = in.getInt();
+        // groups arrive in the order the server built them
+        Map<Object, Object> groups = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            Object group = BinaryCodec.readValue(in);
+            groups.put(group, BinaryCodec.readValue(in));
+        }
+        return new AggregateResult(value, groups);
+    }
+
+    public static void writeError(DataOutput out, RuntimeException error) throws IOException {
+        BinaryCodec.writeString(out, error.getClass().getName());
+        writeNullableString(out, error.getMessage());
+    }
+
+    public static RuntimeException readError(ByteBuffer in) {
+        String type = BinaryCodec.readString(in);
+        String message = readNullableString(in);
+        Function<String, RuntimeException> error = ERRORS.get(type);
+        return error == null ? new RemoteKeyStoreException(type + ": " + message, null) : error.apply(message);
+    }
+}
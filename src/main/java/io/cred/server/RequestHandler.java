@@ -0,0 +1,188 @@
+package io.cred.server;
+
+import io.cred.IKeyStore;
+import io.cred.model.Aggregate;
+import io.cred.model.AggregateResult;
+import io.cred.model.BatchResult;
+import io.cred.model.Entry;
+import io.cred.model.Predicate;
+import io.cred.model.ResultSet;
+import io.cred.model.ScanCursor;
+import io.cred.model.TableConfig;
+import io.cred.model.TableSnapshot;
+import io.cred.util.BinaryCodec;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Decodes one request frame, runs it against the store and encodes the response. Any RuntimeException of the store
+// or of encoding its result becomes an ERROR response, the connection stays usable.
+class RequestHandler {
+
+    private static final Protocol.Payload EMPTY = out -> {
+    };
+
+    private final IKeyStore store;
+
+    RequestHandler(IKeyStore store) {
+        this.store = store;
+    }
+
+    // frame is positioned after the length
+    ByteBuffer handle(Connection connection, ByteBuffer frame) {
+        long requestId = frame.getLong();
+        byte opcode = frame.get();
+        try {
+            // encoded here too: a value the codec can not write fails this request only, it still gets its reply
+            return Protocol.frame(requestId, Protocol.OK, execute(connection, opcode, frame));
+        } catch (RuntimeException e) {
+            return Protocol.frame(requestId, Protocol.ERROR, out -> Protocol.writeError(out, e));
+        }
+    }
+
+    private Protocol.Payload execute(Connection connection, byte opcode, ByteBuffer in) {
+        switch (opcode) {
+            case Protocol.CREATE_TABLE: {
+                String name = BinaryCodec.readString(in);
+                boolean created = in.get() != 0 ? store.createTable(name, TableConfig.read(in)) : store.createTable(name);
+                return out -> out.writeBoolean(created);
+            }
+            case Protocol.PUT: {
+                String table = BinaryCodec.readString(in);
+                String key = BinaryCodec.readString(in);
+                List<Entry> entries = BinaryCodec.readEntries(in);
+                long ttlMillis = in.getLong();
+                if (ttlMillis == 0) {
+                    store.putAll(table, key, entries);
+                } else {
+                    store.putAll(table, key, entries, ttlMillis);
+                }
+                return EMPTY;
+            }
+            case Protocol.UPDATE: {
+                String table = BinaryCodec.readString(in);
+                String key = BinaryCodec.readString(in);
+                store.update(table, key, BinaryCodec.readEntries(in));
+                return EMPTY;
+            }
+            case Protocol.UPSERT: {
+                String table = BinaryCodec.readString(in);
+                String key = BinaryCodec.readString(in);
+                store.upsert(table, key, BinaryCodec.readEntries(in));
+                return EMPTY;
+            }
+            case Protocol.PUT_BATCH: {
+                String table = BinaryCodec.readString(in);
+                BatchResult result = store.putBatch(table, Protocol.readRows(in));
+                return out -> Protocol.writeBatchResult(out, result);
+            }
+            case Protocol.GET: {
+                String table = BinaryCodec.readString(in);
+                String key = BinaryCodec.readString(in);
+                String[] columns = Protocol.readStrings(in);
+                return resultSet(columns == null ? store.get(table, key) : store.get(table, key, columns));
+            }
+            case Protocol.GET_ALL: {
+                String table = BinaryCodec.readString(in);
+                List<String> keys = Protocol.readKeys(in);
+                return resultSet(store.getAll(table, keys, Protocol.readStrings(in)));
+            }
+            case Protocol.DELETE: {
+                String table = BinaryCodec.readString(in);
+                store.delete(table, BinaryCodec.readString(in));
+                return EMPTY;
+            }
+            case Protocol.SEARCH_ENTRY: {
+                String table = BinaryCodec.readString(in);
+                String name = BinaryCodec.readString(in);
+                Entry entry = new Entry(name, BinaryCodec.readValue(in));
+                String[] columns = Protocol.readStrings(in);
+                return columns == null ? keys(store.search(table, entry)) : resultSet(store.search(table, entry, columns));
+            }
+            case Protocol.SEARCH: {
+                String table = BinaryCodec.readString(in);
+                Predicate[] predicates = Protocol.readPredicates(in);
+                String[] columns = Protocol.readStrings(in);
+                return columns == null ? keys(store.search(table, predicates)) : resultSet(store.search(table, columns, predicates));
+            }
+            case Protocol.SEARCH_RANGE: {
+                String table = BinaryCodec.readString(in);
+                String attribute = BinaryCodec.readString(in);
+                Object from = BinaryCodec.readValue(in);
+                Object to = BinaryCodec.readValue(in);
+                String[] columns = Protocol.readStrings(in);
+                int limit = in.getInt();
+                return resultSet(limit < 0 ? store.searchRange(table, attribute, from, to, columns)
+                        : store.searchRange(table, attribute, from, to, columns, limit));
+            }
+            case Protocol.SCAN: {
+                String table = BinaryCodec.readString(in);
+                String fromKey = Protocol.readNullableString(in);
+                String toKey = Protocol.readNullableString(in);
+                String[] columns = Protocol.readStrings(in);
+                return page(store.scan(table, fromKey, toKey, columns, in.getInt()));
+            }
+            case Protocol.SCAN_PREFIX: {
+                String table = BinaryCodec.readString(in);
+                String prefix = BinaryCodec.readString(in);
+                String[] columns = Protocol.readStrings(in);
+                return page(store.scanPrefix(table, prefix, columns, in.getInt()));
+            }
+            case Protocol.RESUME_SCAN: {
+                String table = BinaryCodec.readString(in);
+                String token = BinaryCodec.readString(in);
+                String[] columns = Protocol.readStrings(in);
+                return page(store.resumeScan(table, token, columns, in.getInt()));
+            }
+            case Protocol.SNAPSHOT: {
+                TableSnapshot snapshot = store.snapshot(BinaryCodec.readString(in));
+                long snapshotId = connection.addSnapshot(snapshot);
+                return out -> {
+                    out.writeLong(snapshotId);
+                    out.writeLong(snapshot.getVersion());
+                };
+            }
+            case Protocol.SNAPSHOT_GET: {
+                TableSnapshot snapshot = connection.getSnapshot(in.getLong());
+                List<String> keys = Protocol.readKeys(in);
+                return resultSet(snapshot.getAll(keys, Protocol.readStrings(in)));
+            }
+            case Protocol.SNAPSHOT_CLOSE: {
+                connection.closeSnapshot(in.getLong());
+                return EMPTY;
+            }
+            case Protocol.AGGREGATE: {
+                String table = BinaryCodec.readString(in);
+                String column = BinaryCodec.readString(in);
+                Aggregate function = Aggregate.values()[in.get()];
+                Predicate filter = in.get() != 0 ? Protocol.readPredicate(in) : null;
+                String groupBy = Protocol.readNullableString(in);
+                AggregateResult result = store.aggregate(table, column, function, filter, groupBy);
+                return out -> Protocol.writeAggregateResult(out, result);
+            }
+            default:
+                throw new UnsupportedOperationException("Unknown opcode " + opcode);
+        }
+    }
+
+    private static Protocol.Payload resultSet(ResultSet resultSet) {
+        return out -> Protocol.writeResultSet(out, resultSet);
+    }
+
+    private static Protocol.Payload keys(List<String> keys) {
+        return out -> Protocol.writeKeys(out, keys);
+    }
+
+    // [token resuming at the start of the page][rows][token after the page, null once the scan is complete]
+    // A client holding part of a page rebuilds its own token from the first one, see ScanCursor#resumeAfter
+    private static Protocol.Payload page(ScanCursor cursor) {
+        String start = cursor.getContinuationToken();
+        ResultSet rows = start == null ? new ResultSet() : cursor.nextPage();
+        String next = cursor.getContinuationToken();
+        return out -> {
+            Protocol.writeNullableString(out, start);
+            Protocol.writeResultSet(out, rows);
+            Protocol.writeNullableString(out, next);
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package io.cred.server;
+
+import java.net.InetSocketAddress;
+
+public class ServerConfig {
+
+    private final InetSocketAddress address;
+    private int eventLoops = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    private int maxFrameBytes = 64 * 1024 * 1024;
+
+    public ServerConfig(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    // port 0 binds an ephemeral port, see KeyStoreServer#getPort
+    public static ServerConfig of(int port) {
+        return new ServerConfig(new InetSocketAddress(port));
+    }
+
+    // selector threads, connections are spread over them round robin
+    public ServerConfig withEventLoops(int eventLoops) {
+        this.eventLoops = eventLoops;
+        return this;
+    }
+
+    // threads executing requests, store calls may block (stripe locks, log fsync) so they never run on a selector
+    public ServerConfig withWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    // a connection sending a larger frame is closed
+    public ServerConfig withMaxFrameBytes(int maxFrameBytes) {
+        this.maxFrameBytes = maxFrameBytes;
+        return this;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public int getEventLoops() {
+        return eventLoops;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public int getMaxFrameBytes() {
+        return maxFrameBytes;
+    }
+}
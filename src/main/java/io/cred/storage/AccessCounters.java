@@ -0,0 +1,70 @@
+package io.cred.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Saturating use counter per row id for a CLOCK style eviction: reads bump the counter of their row, the clock
+// hand decrements it and evicts rows it finds at zero, so a row needs several sweeps without a read to go.
+// Counters are plain bytes written without synchronization, a racing update loses a touch at worst.
+public class AccessCounters {
+
+    private static final int MAX = 3;
+
+    private volatile byte[][] chunks = new byte[0][];
+    private final ReentrantLock growLock = new ReentrantLock();
+
+    public void touch(int rowId) {
+        byte[] chunk = chunk(rowId);
+        int offset = rowId & ColumnVector.CHUNK_MASK;
+        if (chunk != null && chunk[offset] < MAX) {
+            chunk[offset]++;
+        }
+    }
+
+    public void set(int rowId, int count) {
+        int index = rowId >>> ColumnVector.CHUNK_SHIFT;
+        byte[][] chunks = this.chunks;
+        if (index >= chunks.length) {
+            chunks = grow(index + 1);
+        }
+        chunks[index][rowId & ColumnVector.CHUNK_MASK] = (byte) Math.min(count, MAX);
+    }
+
+    // count before the hand passed, 0 means the row is due for eviction
+    public int decay(int rowId) {
+        byte[] chunk = chunk(rowId);
+        int offset = rowId & ColumnVector.CHUNK_MASK;
+        if (chunk == null) {
+            return 0;
+        }
+        int count = chunk[offset];
+        if (count > 0) {
+            chunk[offset] = (byte) (count - 1);
+        }
+        return count;
+    }
+
+    private byte[] chunk(int rowId) {
+        byte[][] chunks = this.chunks;
+        int index = rowId >>> ColumnVector.CHUNK_SHIFT;
+        return index < chunks.length ? chunks[index] : null;
+    }
+
+    private byte[][] grow(int size) {
+        growLock.lock();
+        try {
+            byte[][] chunks = this.chunks;
+            if (size <= chunks.length) {
+                return chunks;
+            }
+            byte[][] grown = Arrays.copyOf(chunks, Math.max(size, chunks.length * 2));
+            for (int i = chunks.length; i < grown.length; i++) {
+                grown[i] = new byte[ColumnVector.CHUNK_SIZE];
+            }
+            this.chunks = grown;
+            return grown;
+        } finally {
+            growLock.unlock();
+        }
+    }
+}
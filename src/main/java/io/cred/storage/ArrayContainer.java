@@ -0,0 +1,167 @@
+package io.cred.storage;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// sorted array of values, used while the container is sparse
+final class ArrayContainer extends Container {
+
+    char[] content;
+    int cardinality;
+
+    ArrayContainer() {
+        this(new char[4], 0);
+    }
+
+    ArrayContainer(char[] content, int cardinality) {
+        this.content = content;
+        this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char value) {
+        int index = Arrays.binarySearch(content, 0, cardinality, value);
+        if (index >= 0) {
+            return this;
+        }
+        if (cardinality >= ARRAY_MAX_SIZE) {
+            return toBitmap().add(value);
+        }
+        index = -index - 1;
+        if (cardinality == content.length) {
+            content = Arrays.copyOf(content, Math.min(ARRAY_MAX_SIZE, Math.max(4, content.length * 2)));
+        }
+        System.arraycopy(content, index, content, index + 1, cardinality - index);
+        content[index] = value;
+        cardinality++;
+        return this;
+    }
+
+    @Override
+    Container remove(char value) {
+        int index = Arrays.binarySearch(content, 0, cardinality, value);
+        if (index >= 0) {
+            System.arraycopy(content, index + 1, content, index, cardinality - index - 1);
+            cardinality--;
+        }
+        return this;
+    }
+
+    @Override
+    boolean contains(char value) {
+        return Arrays.binarySearch(content, 0, cardinality, value) >= 0;
+    }
+
+    @Override
+    int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    Container and(Container other) {
+        char[] result = new char[Math.min(cardinality, other.cardinality())];
+        int size = 0;
+        if (other instanceof ArrayContainer) {
+            ArrayContainer that = (ArrayContainer) other;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < that.cardinality) {
+                char a = content[i];
+                char b = that.content[j];
+                if (a == b) {
+                    result[size++] = a;
+                    i++;
+                    j++;
+                } else if (a < b) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+        } else {
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(content[i])) {
+                    result[size++] = content[i];
+                }
+            }
+        }
+        return new ArrayContainer(result, size);
+    }
+
+    @Override
+    Container or(Container other) {
+        if (!(other instanceof ArrayContainer)) {
+            return other.or(this);
+        }
+        ArrayContainer that = (ArrayContainer) other;
+        char[] result = new char[cardinality + that.cardinality];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < cardinality && j < that.cardinality) {
+            char a = content[i];
+            char b = that.content[j];
+            if (a == b) {
+                result[size++] = a;
+                i++;
+                j++;
+            } else if (a < b) {
+                result[size++] = a;
+                i++;
+            } else {
+                result[size++] = b;
+                j++;
+            }
+        }
+        while (i < cardinality) {
+            result[size++] = content[i++];
+        }
+        while (j < that.cardinality) {
+            result[size++] = that.content[j++];
+        }
+        ArrayContainer merged = new ArrayContainer(result, size);
+        return size > ARRAY_MAX_SIZE ? merged.toBitmap() : merged;
+    }
+
+    @Override
+    Container andNot(Container other) {
+        char[] result = new char[cardinality];
+        int size = 0;
+        for (int i = 0; i < cardinality; i++) {
+            if (!other.contains(content[i])) {
+                result[size++] = content[i];
+            }
+        }
+        return new ArrayContainer(result, size);
+    }
+
+    @Override
+    Container copy() {
+        return new ArrayContainer(Arrays.copyOf(content, Math.max(cardinality, 1)), cardinality);
+    }
+
+    @Override
+    void forEach(int high, IntConsumer consumer) {
+        for (int i = 0; i < cardinality; i++) {
+            consumer.accept(high | content[i]);
+        }
+    }
+
+    @Override
+    int first() {
+        return content[0];
+    }
+
+    @Override
+    int sizeInBytes() {
+        return cardinality * Character.BYTES;
+    }
+
+    BitmapContainer toBitmap() {
+        BitmapContainer bitmap = new BitmapContainer();
+        for (int i = 0; i < cardinality; i++) {
+            bitmap.set(content[i]);
+        }
+        return bitmap;
+    }
+}
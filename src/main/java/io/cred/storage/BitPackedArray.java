@@ -0,0 +1,51 @@
+package io.cred.storage;
+
+// Fixed width unsigned integers packed back to back in longs, a value may straddle two words
+final class BitPackedArray {
+
+    private final long[] words;
+    private final int width;
+    private final long mask;
+
+    BitPackedArray(long[] values, int width) {
+        this.width = width;
+        this.mask = width == 64 ? -1L : (1L << width) - 1;
+        this.words = new long[(int) (((long) values.length * width + 63) >>> 6)];
+        for (int i = 0; width > 0 && i < values.length; i++) {
+            long bit = (long) i * width;
+            int word = (int) (bit >>> 6);
+            int shift = (int) (bit & 63);
+            long value = values[i] & mask;
+            words[word] |= value << shift;
+            if (shift + width > 64) {
+                words[word + 1] |= value >>> (64 - shift);
+            }
+        }
+    }
+
+    long get(int index) {
+        if (width == 0) {
+            return 0;
+        }
+        long bit = (long) index * width;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        long value = words[word] >>> shift;
+        if (shift + width > 64) {
+            value |= words[word + 1] << (64 - shift);
+        }
+        return value & mask;
+    }
+
+    static int bitsFor(long maxValue) {
+        return 64 - Long.numberOfLeadingZeros(maxValue);
+    }
+
+    static long sizeInBytes(int values, int width) {
+        return 16 + ((((long) values * width + 63) >>> 6) << 3);
+    }
+
+    long sizeInBytes() {
+        return 16 + ((long) words.length << 3);
+    }
+}
@@ -0,0 +1,167 @@
+package io.cred.storage;
+
+import java.util.function.IntConsumer;
+
+// 2^16 bits, used once the container holds more than ARRAY_MAX_SIZE values
+final class BitmapContainer extends Container {
+
+    static final int WORDS = 1 << 10;
+
+    final long[] words;
+    int cardinality;
+
+    BitmapContainer() {
+        this(new long[WORDS], 0);
+    }
+
+    BitmapContainer(long[] words, int cardinality) {
+        this.words = words;
+        this.cardinality = cardinality;
+    }
+
+    void set(char value) {
+        long before = words[value >>> 6];
+        long after = before | (1L << value);
+        words[value >>> 6] = after;
+        if (before != after) {
+            cardinality++;
+        }
+    }
+
+    @Override
+    Container add(char value) {
+        set(value);
+        return this;
+    }
+
+    @Override
+    Container remove(char value) {
+        long before = words[value >>> 6];
+        long after = before & ~(1L << value);
+        words[value >>> 6] = after;
+        if (before != after) {
+            cardinality--;
+            if (cardinality <= ARRAY_MAX_SIZE) {
+                return toArray();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    boolean contains(char value) {
+        return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    Container and(Container other) {
+        if (other instanceof ArrayContainer) {
+            return other.and(this);
+        }
+        BitmapContainer that = (BitmapContainer) other;
+        long[] result = new long[WORDS];
+        int size = 0;
+        for (int i = 0; i < WORDS; i++) {
+            result[i] = words[i] & that.words[i];
+            size += Long.bitCount(result[i]);
+        }
+        return shrink(result, size);
+    }
+
+    @Override
+    Container or(Container other) {
+        long[] result = words.clone();
+        int size = 0;
+        if (other instanceof BitmapContainer) {
+            BitmapContainer that = (BitmapContainer) other;
+            for (int i = 0; i < WORDS; i++) {
+                result[i] |= that.words[i];
+                size += Long.bitCount(result[i]);
+            }
+            return new BitmapContainer(result, size);
+        }
+        BitmapContainer merged = new BitmapContainer(result, cardinality);
+        ArrayContainer that = (ArrayContainer) other;
+        for (int i = 0; i < that.cardinality; i++) {
+            merged.set(that.content[i]);
+        }
+        return merged;
+    }
+
+    @Override
+    Container andNot(Container other) {
+        long[] result = words.clone();
+        int size = 0;
+        if (other instanceof BitmapContainer) {
+            BitmapContainer that = (BitmapContainer) other;
+            for (int i = 0; i < WORDS; i++) {
+                result[i] &= ~that.words[i];
+                size += Long.bitCount(result[i]);
+            }
+        } else {
+            ArrayContainer that = (ArrayContainer) other;
+            for (int i = 0; i < that.cardinality; i++) {
+                char value = that.content[i];
+                result[value >>> 6] &= ~(1L << value);
+            }
+            for (long word : result) {
+                size += Long.bitCount(word);
+            }
+        }
+        return shrink(result, size);
+    }
+
+    @Override
+    Container copy() {
+        return new BitmapContainer(words.clone(), cardinality);
+    }
+
+    @Override
+    void forEach(int high, IntConsumer consumer) {
+        for (int i = 0; i < WORDS; i++) {
+            long word = words[i];
+            while (word != 0) {
+                consumer.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    @Override
+    int first() {
+        for (int i = 0; i < WORDS; i++) {
+            if (words[i] != 0) {
+                return (i << 6) | Long.numberOfTrailingZeros(words[i]);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    int sizeInBytes() {
+        return WORDS * Long.BYTES;
+    }
+
+    ArrayContainer toArray() {
+        char[] content = new char[cardinality];
+        int size = 0;
+        for (int i = 0; i < WORDS; i++) {
+            long word = words[i];
+            while (word != 0) {
+                content[size++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return new ArrayContainer(content, size);
+    }
+
+    private static Container shrink(long[] words, int cardinality) {
+        BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+        return cardinality <= ARRAY_MAX_SIZE ? bitmap.toArray() : bitmap;
+    }
+}
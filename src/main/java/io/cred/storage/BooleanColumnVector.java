@@ -0,0 +1,68 @@
+package io.cred.storage;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// booleans are a second bitset next to the presence bits, one bit per cell
+public class BooleanColumnVector extends ChunkedColumnVector<BooleanColumnVector.BooleanChunk> {
+
+    @Override
+    protected BooleanChunk newChunk() {
+        return new BooleanChunk();
+    }
+
+    @Override
+    protected int slotBits() {
+        return 1;
+    }
+
+    @Override
+    public boolean getBoolean(int rowId, boolean defaultValue) {
+        BooleanChunk chunk = (BooleanChunk) chunkForRead(rowId);
+        int offset = chunkOffset(rowId);
+        return chunk != null && chunk.isPresent(offset) ? chunk.isSet(offset) : defaultValue;
+    }
+
+    public void setBoolean(int rowId, boolean value) {
+        BooleanChunk chunk = chunkForWrite(rowId);
+        int offset = chunkOffset(rowId);
+        chunk.assign(offset, value);
+        chunk.markPresent(offset);
+    }
+
+    @Override
+    public Object get(int rowId) {
+        return isNull(rowId) ? null : getBoolean(rowId, false);
+    }
+
+    @Override
+    public void set(int rowId, Object value) {
+        setBoolean(rowId, (Boolean) value);
+    }
+
+    @Override
+    public void clear(int rowId) {
+        BooleanChunk chunk = chunkForClear(rowId);
+        if (chunk != null) {
+            chunk.markAbsent(chunkOffset(rowId));
+        }
+    }
+
+    static class BooleanChunk extends Chunk {
+        private final AtomicLongArray bits = new AtomicLongArray(CHUNK_SIZE >>> 6);
+
+        boolean isSet(int offset) {
+            return (bits.get(offset >>> 6) & (1L << offset)) != 0;
+        }
+
+        void assign(int offset, boolean value) {
+            int word = offset >>> 6;
+            long bit = 1L << offset;
+            long current;
+            long updated;
+            do {
+                current = bits.get(word);
+                updated = value ? current | bit : current & ~bit;
+            } while (current != updated && !bits.compareAndSet(word, current, updated));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.cred.storage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// One CHUNK_SIZE slice of a column. Presence bits are shared between rows written under different lock
+// stripes, so they are updated atomically; the value slots themselves are only ever touched by the owner of the row.
+public abstract class Chunk {
+
+    private final AtomicLongArray present = new AtomicLongArray(ColumnVector.CHUNK_SIZE >>> 6);
+    // writes and clears of the chunk's rows so far, an encoding read meanwhile is stale
+    private final AtomicInteger writes = new AtomicInteger();
+
+    public boolean isPresent(int offset) {
+        return isSet(present, offset);
+    }
+
+    protected void markPresent(int offset) {
+        set(present, offset);
+    }
+
+    protected void markAbsent(int offset) {
+        unset(present, offset);
+    }
+
+    // presence of the 64 slots starting at word * 64
+    long presenceWord(int word) {
+        return present.get(word);
+    }
+
+    void touch() {
+        writes.incrementAndGet();
+    }
+
+    int writes() {
+        return writes.get();
+    }
+
+    public int presentCount() {
+        return count(present);
+    }
+
+    static boolean isSet(AtomicLongArray bits, int offset) {
+        return (bits.get(offset >>> 6) & (1L << offset)) != 0;
+    }
+
+    static void set(AtomicLongArray bits, int offset) {
+        int word = offset >>> 6;
+        long bit = 1L << offset;
+        long current;
+        do {
+            current = bits.get(word);
+        } while ((current & bit) == 0 && !bits.compareAndSet(word, current, current | bit));
+    }
+
+    static void unset(AtomicLongArray bits, int offset) {
+        int word = offset >>> 6;
+        long bit = 1L << offset;
+        long current;
+        do {
+            current = bits.get(word);
+        } while ((current & bit) != 0 && !bits.compareAndSet(word, current, current & ~bit));
+    }
+
+    static int count(AtomicLongArray bits) {
+        int count = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            count += Long.bitCount(bits.get(i));
+        }
+        return count;
+    }
+}
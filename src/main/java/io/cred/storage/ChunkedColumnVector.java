@@ -0,0 +1,229 @@
+package io.cred.storage;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+// Chunk directory shared by every column vector type. The directory is copied on growth but the chunks are not,
+// so a slot written through an old directory reference stays visible through the new one.
+//
+// Chunks the table has moved past can be sealed: their slots are re-encoded (dictionary, run length or frame of
+// reference) when that is clearly smaller, later writes to the chunk go to a plain delta chunk, see SealedChunk.
+public abstract class ChunkedColumnVector<C extends Chunk> extends ColumnVector {
+
+    // a sealed chunk is re-encoded with its delta folded in once this many of its rows were rewritten
+    private static final int RESEAL_SHADOWED = CHUNK_SIZE >>> 2;
+
+    private volatile Chunk[] chunks = new Chunk[0];
+    // serializes directory changes; a lock rather than a monitor so virtual threads growing a column do not pin
+    private final ReentrantLock directoryLock = new ReentrantLock();
+
+    protected abstract C newChunk();
+
+    // width of one slot, the presence bit of the chunk comes on top
+    protected abstract int slotBits();
+
+    // encoding of the chunk as it reads now, null when the type is not encoded or nothing beats the plain slots
+    protected SealedChunk encode(int chunkIndex) {
+        return null;
+    }
+
+    // Chunk serving reads of the row: a plain chunk of this vector, a SealedChunk when its encoded base holds the
+    // slot, or null when the row was never written
+    protected Chunk chunkForRead(int rowId) {
+        Chunk[] chunks = this.chunks;
+        int index = chunkIndex(rowId);
+        Chunk chunk = index < chunks.length ? chunks[index] : null;
+        if (chunk instanceof SealedChunk) {
+            SealedChunk sealed = (SealedChunk) chunk;
+            return sealed.isShadowed(chunkOffset(rowId)) ? sealed.delta() : sealed;
+        }
+        return chunk;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected C chunkForWrite(int rowId) {
+        int index = chunkIndex(rowId);
+        Chunk[] chunks = this.chunks;
+        if (index >= chunks.length) {
+            chunks = grow(index + 1);
+        }
+        Chunk chunk = chunks[index];
+        chunk.touch();
+        if (chunk instanceof SealedChunk) {
+            return (C) ((SealedChunk) chunk).deltaForWrite(chunkOffset(rowId), this::newChunk);
+        }
+        return (C) chunk;
+    }
+
+    // plain chunk a clear of the row has to update, null when nothing is left to clear. A slot of a sealed base
+    // is shadowed, so it reads as absent from now on
+    @SuppressWarnings("unchecked")
+    protected C chunkForClear(int rowId) {
+        Chunk[] chunks = this.chunks;
+        int index = chunkIndex(rowId);
+        Chunk chunk = index < chunks.length ? chunks[index] : null;
+        if (chunk != null) {
+            chunk.touch();
+        }
+        if (chunk instanceof SealedChunk) {
+            SealedChunk sealed = (SealedChunk) chunk;
+            sealed.shadow(chunkOffset(rowId));
+            return (C) sealed.delta();
+        }
+        return (C) chunk;
+    }
+
+    @Override
+    public boolean isNull(int rowId) {
+        Chunk chunk = chunkForRead(rowId);
+        return chunk == null || !chunk.isPresent(chunkOffset(rowId));
+    }
+
+    @Override
+    public int capacity() {
+        return chunks.length << CHUNK_SHIFT;
+    }
+
+    // Plain chunks go through the bulk loop of the vector type, sealed chunks and row selections row by row
+    @Override
+    public void summarize(RoaringBitmap rows, ColumnSummary summary) {
+        if (rows != null) {
+            rows.forEach(rowId -> summary.add(get(rowId)));
+            return;
+        }
+        Chunk[] chunks = this.chunks;
+        for (int index = 0; index < chunks.length; index++) {
+            Chunk chunk = chunks[index];
+            if (chunk instanceof SealedChunk || !summarizeChunk(asChunk(chunk), summary)) {
+                int first = index << CHUNK_SHIFT;
+                for (int rowId = first; rowId < first + CHUNK_SIZE; rowId++) {
+                    summary.add(get(rowId));
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private C asChunk(Chunk chunk) {
+        return (C) chunk;
+    }
+
+    // Adds the present slots of a plain chunk to the summary, false when the type has no bulk loop
+    protected boolean summarizeChunk(C chunk, ColumnSummary summary) {
+        return false;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        long plainChunk = (CHUNK_SIZE * (long) (slotBits() + 1)) >>> 3;
+        long bytes = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk instanceof SealedChunk) {
+                SealedChunk sealed = (SealedChunk) chunk;
+                bytes += sealed.encodedSizeInBytes() + (sealed.delta() == null ? 0 : plainChunk);
+            } else {
+                bytes += plainChunk;
+            }
+        }
+        return bytes;
+    }
+
+    // The caller keeps every writer of the chunk's rows out while it reads the count
+    @Override
+    public int chunkWrites(int chunkIndex) {
+        Chunk[] chunks = this.chunks;
+        return chunkIndex < chunks.length ? chunks[chunkIndex].writes() : 0;
+    }
+
+    // Encoding of the chunk, or a re-encoding of a sealed chunk that collected many rewritten rows. Reads the slots
+    // while writers may change them, installSeal only takes the result if none did
+    @Override
+    public Chunk encodeChunk(int chunkIndex) {
+        Chunk[] chunks = this.chunks;
+        if (chunkIndex >= chunks.length) {
+            return null;
+        }
+        Chunk chunk = chunks[chunkIndex];
+        if (chunk instanceof SealedChunk && ((SealedChunk) chunk).shadowedCount() < RESEAL_SHADOWED) {
+            return null;
+        }
+        return encode(chunkIndex);
+    }
+
+    // The caller keeps every writer of the chunk's rows out while it runs. Replacing the chunk is a single publish of
+    // the directory, readers see either the plain slots or the encoding of the same values
+    @Override
+    public boolean installSeal(int chunkIndex, Chunk encoded, int writes) {
+        if (chunkWrites(chunkIndex) != writes) {
+            return false;
+        }
+        replace(chunkIndex, encoded);
+        return true;
+    }
+
+    // Helpers for encode: the chunk is read through the regular getters so a delta is folded in. Absent slots
+    // repeat the previous value, they cost nothing in a run or a dictionary
+    protected SealedChunk encodeLongs(int chunkIndex, IntToLongFunction valueOf) {
+        int first = chunkIndex << CHUNK_SHIFT;
+        long[] present = new long[CHUNK_SIZE >>> 6];
+        long[] values = new long[CHUNK_SIZE];
+        long last = 0;
+        for (int offset = 0; offset < CHUNK_SIZE; offset++) {
+            if (!isNull(first + offset)) {
+                present[offset >>> 6] |= 1L << offset;
+                last = valueOf.applyAsLong(first + offset);
+            }
+            values[offset] = last;
+        }
+        EncodedLongs encoded = EncodedLongs.encode(values, (CHUNK_SIZE * (long) slotBits()) >>> 3);
+        return encoded == null ? null : new SealedChunk(present, encoded);
+    }
+
+    protected SealedChunk encodeObjects(int chunkIndex, IntFunction<Object> valueOf) {
+        int first = chunkIndex << CHUNK_SHIFT;
+        long[] present = new long[CHUNK_SIZE >>> 6];
+        Object[] values = new Object[CHUNK_SIZE];
+        Object last = null;
+        for (int offset = 0; offset < CHUNK_SIZE; offset++) {
+            if (!isNull(first + offset)) {
+                present[offset >>> 6] |= 1L << offset;
+                last = valueOf.apply(first + offset);
+            }
+            values[offset] = last;
+        }
+        EncodedObjects encoded = EncodedObjects.encode(values, (CHUNK_SIZE * (long) slotBits()) >>> 3);
+        return encoded == null ? null : new SealedChunk(present, encoded);
+    }
+
+    private void replace(int chunkIndex, Chunk chunk) {
+        directoryLock.lock();
+        try {
+            Chunk[] current = this.chunks;
+            current[chunkIndex] = chunk;
+            // republish, readers pick the slot up through the volatile read of the directory
+            this.chunks = current;
+        } finally {
+            directoryLock.unlock();
+        }
+    }
+
+    private Chunk[] grow(int required) {
+        directoryLock.lock();
+        try {
+            Chunk[] current = this.chunks;
+            if (required <= current.length) {
+                return current;
+            }
+            Chunk[] grown = new Chunk[required];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < required; i++) {
+                grown[i] = newChunk();
+            }
+            this.chunks = grown;
+            return grown;
+        } finally {
+            directoryLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package io.cred.storage;
+
+import io.cred.exception.CheckpointException;
+import io.cred.util.BinaryCodec;
+import io.cred.util.FileSync;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+// Immutable checkpoint file of one attribute:
+//     header   magic, name, datatype, range indexed flag, rows, encoding
+//     values   fixed width slots (double/long/int/boolean) or length prefixed values for everything else
+//     presence one bit per row id
+//     offsets  variable encoding only: int offset of every row inside the values section
+//     index    distinct values with the row ids holding them
+//     footer   int offsets of presence, values, offsets and index sections, magic
+// Sections are addressed with int offsets, a segment is limited to 2GB (the size of one MappedByteBuffer) and
+// writing a larger one fails. Presence and index are derived from the values written, never from the live
+// postings, so the sections agree even though the dump runs while writers keep going.
+public class ColumnSegment {
+
+    static final int MAGIC = 0x434F4C31;
+    static final byte DOUBLE = 1;
+    static final byte LONG = 2;
+    static final byte INT = 3;
+    static final byte BOOLEAN = 4;
+    static final byte VARIABLE = 5;
+    private static final int FOOTER = 5 * 4;
+
+    private final String name;
+    private final String datatype;
+    private final boolean rangeIndexed;
+    private final MappedColumnVector values;
+    private final Map<Object, RoaringBitmap> postings;
+
+    private ColumnSegment(String name, String datatype, boolean rangeIndexed, MappedColumnVector values,
+                          Map<Object, RoaringBitmap> postings) {
+        this.name = name;
+        this.datatype = datatype;
+        this.rangeIndexed = rangeIndexed;
+        this.values = values;
+        this.postings = postings;
+    }
+
+    // rowKeys[rowId] is null for rows that are not part of the checkpoint, their slots are written as absent.
+    // The column is read once, presence and index are collected while the values are streamed out
+    public static void write(Path file, String name, String datatype, boolean rangeIndexed, ColumnVector column,
+                             String[] rowKeys) throws IOException {
+        int rows = rowKeys.length;
+        byte encoding = encodingOf(datatype);
+        Map<Object, RoaringBitmap> postings = new HashMap<>();
+        long[] presence = new long[(rows + 63) >>> 6];
+
+        try (CountingOutputStream counter = new CountingOutputStream(FileSync.newOutputStream(file));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(counter))) {
+            out.writeInt(MAGIC);
+            BinaryCodec.writeString(out, name);
+            BinaryCodec.writeString(out, datatype);
+            out.writeBoolean(rangeIndexed);
+            out.writeInt(rows);
+            out.writeByte(encoding);
+            out.flush();
+
+            int valuesOffset = offsetOf(counter, file);
+            int[] offsets = encoding == VARIABLE ? new int[rows] : null;
+            for (int rowId = 0; rowId < rows; rowId++) {
+                Object value = rowKeys[rowId] == null ? null : column.get(rowId);
+                if (value != null) {
+                    presence[rowId >>> 6] |= 1L << rowId;
+                    postings.computeIfAbsent(value, v -> new RoaringBitmap()).add(rowId);
+                }
+                switch (encoding) {
+                    case DOUBLE:
+                        out.writeDouble(value == null ? 0d : (Double) value);
+                        break;
+                    case LONG:
+                        out.writeLong(value == null ? 0L : (Long) value);
+                        break;
+                    case INT:
+                        out.writeInt(value == null ? 0 : (Integer) value);
+                        break;
+                    case BOOLEAN:
+                        out.writeBoolean(value != null && (Boolean) value);
+                        break;
+                    default:
+                        out.flush();
+                        offsets[rowId] = offsetOf(counter, file) - valuesOffset;
+                        BinaryCodec.writeValue(out, value);
+                }
+            }
+            out.flush();
+
+            int presenceOffset = offsetOf(counter, file);
+            for (long word : presence) {
+                out.writeLong(word);
+            }
+            out.flush();
+
+            int offsetsOffset = offsetOf(counter, file);
+            if (offsets != null) {
+                for (int offset : offsets) {
+                    out.writeInt(offset);
+                }
+            }
+            out.flush();
+
+            int indexOffset = offsetOf(counter, file);
+            out.writeInt(postings.size());
+            for (Map.Entry<Object, RoaringBitmap> posting : postings.entrySet()) {
+                BinaryCodec.writeValue(out, posting.getKey());
+                out.writeInt(posting.getValue().cardinality());
+                for (int rowId : posting.getValue().toArray()) {
+                    out.writeInt(rowId);
+                }
+            }
+
+            out.writeInt(presenceOffset);
+            out.writeInt(valuesOffset);
+            out.writeInt(offsetsOffset);
+            out.writeInt(indexOffset);
+            out.writeInt(MAGIC);
+            out.flush();
+            // the whole file is mapped as one buffer when the checkpoint is opened
+            offsetOf(counter, file);
+        }
+    }
+
+    private static int offsetOf(CountingOutputStream counter, Path file) {
+        if (counter.count > Integer.MAX_VALUE) {
+            throw new CheckpointException("Column segment " + file + " exceeds the 2GB a segment is limited to", null);
+        }
+        return (int) counter.count;
+    }
+
+    // overlays builds the column that takes the writes made after the reopen, from the datatype of the segment
+    public static ColumnSegment open(Path file, Function<String, ColumnVector> overlays) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int footer = buffer.limit() - FOOTER;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(footer + 16) != MAGIC) {
+            throw new CheckpointException("Corrupt column segment " + file, null);
+        }
+        String name = BinaryCodec.readString(buffer.position(4));
+        String datatype = BinaryCodec.readString(buffer);
+        boolean rangeIndexed = buffer.get() != 0;
+        int rows = buffer.getInt();
+        byte encoding = buffer.get();
+
+        int presenceOffset = buffer.getInt(footer);
+        int valuesOffset = buffer.getInt(footer + 4);
+        int offsetsOffset = buffer.getInt(footer + 8);
+        int indexOffset = buffer.getInt(footer + 12);
+
+        Map<Object, RoaringBitmap> postings = new HashMap<>();
+        buffer.position(indexOffset);
+        int distinct = buffer.getInt();
+        for (int i = 0; i < distinct; i++) {
+            Object value = BinaryCodec.readValue(buffer);
+            int count = buffer.getInt();
+            RoaringBitmap rowIds = new RoaringBitmap();
+            for (int j = 0; j < count; j++) {
+                rowIds.add(buffer.getInt());
+            }
+            postings.put(value, rowIds);
+        }
+        buffer.position(0);
+
+        MappedColumnVector values = new MappedColumnVector(buffer, encoding, rows, presenceOffset, valuesOffset,
+                offsetsOffset, overlays.apply(datatype));
+        return new ColumnSegment(name, datatype, rangeIndexed, values, postings);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDatatype() {
+        return datatype;
+    }
+
+    public boolean isRangeIndexed() {
+        return rangeIndexed;
+    }
+
+    public MappedColumnVector getValues() {
+        return values;
+    }
+
+    public Map<Object, RoaringBitmap> getPostings() {
+        return postings;
+    }
+
+    private static byte encodingOf(String datatype) {
+        switch (datatype) {
+            case "java.lang.Double":
+                return DOUBLE;
+            case "java.lang.Long":
+                return LONG;
+            case "java.lang.Integer":
+                return INT;
+            case "java.lang.Boolean":
+                return BOOLEAN;
+            default:
+                return VARIABLE;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
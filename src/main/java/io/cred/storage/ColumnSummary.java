@@ -0,0 +1,127 @@
+package io.cred.storage;
+
+// Count, sum, min and max of the values of a column selection. Integral columns accumulate in long so their sums
+// stay exact, double columns in double; values of other types are only counted.
+//
+// The bulk adders run over a dense run of present slots without branches on presence, which is what lets the
+// JIT unroll and vectorize them.
+public class ColumnSummary {
+
+    private final boolean floating;
+    private long count;
+    private long longSum;
+    private long longMin = Long.MAX_VALUE;
+    private long longMax = Long.MIN_VALUE;
+    private double doubleSum;
+    private double doubleMin = Double.POSITIVE_INFINITY;
+    private double doubleMax = Double.NEGATIVE_INFINITY;
+
+    public ColumnSummary(boolean floating) {
+        this.floating = floating;
+    }
+
+    public void add(Object value) {
+        if (value instanceof Double) {
+            add((double) (Double) value);
+        } else if (value instanceof Number) {
+            add(((Number) value).longValue());
+        } else if (value != null) {
+            count++;
+        }
+    }
+
+    public void add(long value) {
+        count++;
+        longSum += value;
+        longMin = Math.min(longMin, value);
+        longMax = Math.max(longMax, value);
+    }
+
+    public void add(double value) {
+        count++;
+        doubleSum += value;
+        doubleMin = Math.min(doubleMin, value);
+        doubleMax = Math.max(doubleMax, value);
+    }
+
+    void addLongs(long[] values, int from, int to) {
+        long sum = 0;
+        long min = longMin;
+        long max = longMax;
+        for (int i = from; i < to; i++) {
+            long value = values[i];
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        count += to - from;
+        longSum += sum;
+        longMin = min;
+        longMax = max;
+    }
+
+    void addInts(int[] values, int from, int to) {
+        long sum = 0;
+        int min = longMin < Integer.MAX_VALUE ? (int) longMin : Integer.MAX_VALUE;
+        int max = longMax > Integer.MIN_VALUE ? (int) longMax : Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            int value = values[i];
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        count += to - from;
+        longSum += sum;
+        longMin = min;
+        longMax = max;
+    }
+
+    void addDoubles(double[] values, int from, int to) {
+        double sum = 0;
+        double min = doubleMin;
+        double max = doubleMax;
+        for (int i = from; i < to; i++) {
+            double value = values[i];
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        count += to - from;
+        doubleSum += sum;
+        doubleMin = min;
+        doubleMax = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // null for an empty selection, like min, max and average
+    public Number getSum() {
+        if (count == 0) {
+            return null;
+        }
+        return floating ? (Number) doubleSum : (Number) longSum;
+    }
+
+    public Number getMin() {
+        if (count == 0) {
+            return null;
+        }
+        return floating ? (Number) doubleMin : (Number) longMin;
+    }
+
+    public Number getMax() {
+        if (count == 0) {
+            return null;
+        }
+        return floating ? (Number) doubleMax : (Number) longMax;
+    }
+
+    public Double getAverage() {
+        if (count == 0) {
+            return null;
+        }
+        return (floating ? doubleSum : (double) longSum) / count;
+    }
+}
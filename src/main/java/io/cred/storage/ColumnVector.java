@@ -0,0 +1,107 @@
+package io.cred.storage;
+
+import io.cred.exception.InvalidDatatypeException;
+
+import java.util.function.IntConsumer;
+
+// Column values addressed by the dense row id the owning table hands out on insert.
+// Storage is split in fixed size chunks so growing a column only appends a chunk and never copies
+// (or races with) slots other writers are filling in.
+public abstract class ColumnVector {
+
+    public static final int CHUNK_SHIFT = 10;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    public static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    public abstract Object get(int rowId);
+
+    public abstract void set(int rowId, Object value);
+
+    public abstract void clear(int rowId);
+
+    // number of row slots currently backed by storage
+    public abstract int capacity();
+
+    public boolean isNull(int rowId) {
+        return get(rowId) == null;
+    }
+
+    // Sealing re-encodes a chunk the table no longer appends to in a compressed form, in three steps so writers are
+    // only kept out while counts are read and encodings swapped in: chunkWrites with the writers kept out,
+    // encodeChunk without any lock, then installSeal with the writers kept out again. Vectors without an encoding
+    // keep their slots as they are
+    public int chunkWrites(int chunkIndex) {
+        return 0;
+    }
+
+    // null when the chunk stays as it is
+    public Chunk encodeChunk(int chunkIndex) {
+        return null;
+    }
+
+    // swaps the encoding in unless a row of the chunk was written or cleared since writes was read
+    public boolean installSeal(int chunkIndex, Chunk encoded, int writes) {
+        return false;
+    }
+
+    // estimated heap footprint of the slots, objects referenced from an object column are not counted
+    public abstract long sizeInBytes();
+
+    // Adds the present values of the selected rows (every row when rows is null) to the summary. Read without
+    // locks, a write racing with the call may or may not be counted
+    public void summarize(RoaringBitmap rows, ColumnSummary summary) {
+        IntConsumer add = rowId -> summary.add(get(rowId));
+        if (rows != null) {
+            rows.forEach(add);
+        } else {
+            for (int rowId = 0; rowId < capacity(); rowId++) {
+                add.accept(rowId);
+            }
+        }
+    }
+
+    // Unboxed reads, only the vectors storing that primitive override them
+    public double getDouble(int rowId, double defaultValue) {
+        throw new InvalidDatatypeException("Column is not of type double");
+    }
+
+    public long getLong(int rowId, long defaultValue) {
+        throw new InvalidDatatypeException("Column is not of type long");
+    }
+
+    public int getInt(int rowId, int defaultValue) {
+        throw new InvalidDatatypeException("Column is not of type int");
+    }
+
+    public boolean getBoolean(int rowId, boolean defaultValue) {
+        throw new InvalidDatatypeException("Column is not of type boolean");
+    }
+
+    // numeric and boolean columns are stored unboxed, everything else keeps the object reference
+    public static ColumnVector forDatatype(String datatype) {
+        switch (datatype) {
+            case "java.lang.Double":
+                return new DoubleColumnVector();
+            case "java.lang.Long":
+                return new LongColumnVector();
+            case "java.lang.Integer":
+                return new IntColumnVector();
+            case "java.lang.Boolean":
+                return new BooleanColumnVector();
+            default:
+                return new ObjectColumnVector();
+        }
+    }
+
+    protected static int chunkIndex(int rowId) {
+        return rowId >>> CHUNK_SHIFT;
+    }
+
+    protected static int chunkOffset(int rowId) {
+        return rowId & CHUNK_MASK;
+    }
+
+    protected static int chunksFor(int rowId) {
+        return chunkIndex(rowId) + 1;
+    }
+}
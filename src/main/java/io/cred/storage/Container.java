@@ -0,0 +1,34 @@
+package io.cred.storage;
+
+import java.util.function.IntConsumer;
+
+// Holds the low 16 bits of every row id sharing the same high 16 bits. Mutators return the container to keep,
+// which lets an array container turn itself into a bitmap (and back) once it crosses the density threshold.
+abstract class Container {
+
+    static final int ARRAY_MAX_SIZE = 4096;
+
+    abstract Container add(char value);
+
+    abstract Container remove(char value);
+
+    abstract boolean contains(char value);
+
+    abstract int cardinality();
+
+    abstract Container and(Container other);
+
+    abstract Container or(Container other);
+
+    abstract Container andNot(Container other);
+
+    abstract Container copy();
+
+    // calls consumer with (high | value) in ascending order
+    abstract void forEach(int high, IntConsumer consumer);
+
+    abstract int first();
+
+    // serialized size in bytes, not counting the container header
+    abstract int sizeInBytes();
+}
@@ -0,0 +1,75 @@
+package io.cred.storage;
+
+public class DoubleColumnVector extends ChunkedColumnVector<DoubleColumnVector.DoubleChunk> {
+
+    @Override
+    protected DoubleChunk newChunk() {
+        return new DoubleChunk();
+    }
+
+    @Override
+    protected int slotBits() {
+        return 64;
+    }
+
+    @Override
+    public double getDouble(int rowId, double defaultValue) {
+        Chunk chunk = chunkForRead(rowId);
+        int offset = chunkOffset(rowId);
+        if (chunk == null || !chunk.isPresent(offset)) {
+            return defaultValue;
+        }
+        return chunk instanceof SealedChunk ? Double.longBitsToDouble(((SealedChunk) chunk).getLong(offset))
+                : ((DoubleChunk) chunk).values[offset];
+    }
+
+    public void setDouble(int rowId, double value) {
+        DoubleChunk chunk = chunkForWrite(rowId);
+        int offset = chunkOffset(rowId);
+        chunk.values[offset] = value;
+        chunk.markPresent(offset);
+    }
+
+    @Override
+    public Object get(int rowId) {
+        return isNull(rowId) ? null : getDouble(rowId, 0d);
+    }
+
+    @Override
+    public void set(int rowId, Object value) {
+        setDouble(rowId, (Double) value);
+    }
+
+    @Override
+    public void clear(int rowId) {
+        DoubleChunk chunk = chunkForClear(rowId);
+        if (chunk != null) {
+            chunk.markAbsent(chunkOffset(rowId));
+        }
+    }
+
+    @Override
+    protected boolean summarizeChunk(DoubleChunk chunk, ColumnSummary summary) {
+        for (int word = 0; word < CHUNK_SIZE >>> 6; word++) {
+            long present = chunk.presenceWord(word);
+            int base = word << 6;
+            if (present == -1L) {
+                summary.addDoubles(chunk.values, base, base + 64);
+            } else {
+                for (; present != 0; present &= present - 1) {
+                    summary.add(chunk.values[base + Long.numberOfTrailingZeros(present)]);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected SealedChunk encode(int chunkIndex) {
+        return encodeLongs(chunkIndex, rowId -> Double.doubleToRawLongBits(getDouble(rowId, 0d)));
+    }
+
+    static class DoubleChunk extends Chunk {
+        final double[] values = new double[CHUNK_SIZE];
+    }
+}
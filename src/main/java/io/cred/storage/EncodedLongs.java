@@ -0,0 +1,134 @@
+package io.cred.storage;
+
+import java.util.Arrays;
+
+// Immutable encodings of the slots of a sealed chunk for the primitive columns (doubles by their raw bits).
+// Values are read straight from the encoded form, nothing is decoded up front.
+abstract class EncodedLongs {
+
+    abstract long get(int offset);
+
+    abstract long sizeInBytes();
+
+    // the cheapest of dictionary, run length and frame of reference, null unless it saves a quarter of plainBytes
+    static EncodedLongs encode(long[] values, long plainBytes) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int distinct = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[i - 1]) {
+                distinct++;
+            }
+        }
+        int runs = 1;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] != values[i - 1]) {
+                runs++;
+            }
+        }
+        long min = sorted[0];
+        long span = sorted[sorted.length - 1] - min;
+        // a span overflowing into the sign bit needs all 64 bits, frame of reference saves nothing then
+        int forWidth = span < 0 ? 64 : BitPackedArray.bitsFor(span);
+
+        long dictionaryBytes = 16 + distinct * 8L + BitPackedArray.sizeInBytes(values.length, BitPackedArray.bitsFor(distinct - 1));
+        long runLengthBytes = 32 + runs * 12L;
+        long frameOfReferenceBytes = 8 + BitPackedArray.sizeInBytes(values.length, forWidth);
+        long best = Math.min(dictionaryBytes, Math.min(runLengthBytes, frameOfReferenceBytes));
+        if (best > plainBytes * 3 / 4) {
+            return null;
+        }
+        if (best == runLengthBytes) {
+            return new RunLength(values, runs);
+        } else if (best == frameOfReferenceBytes) {
+            return new FrameOfReference(values, min, forWidth);
+        }
+        long[] dictionary = new long[distinct];
+        dictionary[0] = sorted[0];
+        for (int i = 1, d = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[i - 1]) {
+                dictionary[d++] = sorted[i];
+            }
+        }
+        return new Dictionary(values, dictionary);
+    }
+
+    // distinct values sorted, slots hold the bit packed position in the dictionary
+    static final class Dictionary extends EncodedLongs {
+        private final long[] dictionary;
+        private final BitPackedArray codes;
+
+        Dictionary(long[] values, long[] dictionary) {
+            this.dictionary = dictionary;
+            long[] codes = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                codes[i] = Arrays.binarySearch(dictionary, values[i]);
+            }
+            this.codes = new BitPackedArray(codes, BitPackedArray.bitsFor(dictionary.length - 1));
+        }
+
+        @Override
+        long get(int offset) {
+            return dictionary[(int) codes.get(offset)];
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 16 + dictionary.length * 8L + codes.sizeInBytes();
+        }
+    }
+
+    // one value per run of equal slots, runEnds holds the exclusive end offset of every run
+    static final class RunLength extends EncodedLongs {
+        private final long[] runValues;
+        private final int[] runEnds;
+
+        RunLength(long[] values, int runs) {
+            this.runValues = new long[runs];
+            this.runEnds = new int[runs];
+            int run = 0;
+            for (int i = 1; i <= values.length; i++) {
+                if (i == values.length || values[i] != values[i - 1]) {
+                    runValues[run] = values[i - 1];
+                    runEnds[run++] = i;
+                }
+            }
+        }
+
+        @Override
+        long get(int offset) {
+            int run = Arrays.binarySearch(runEnds, offset + 1);
+            return runValues[run >= 0 ? run : -run - 1];
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 32 + runValues.length * 12L;
+        }
+    }
+
+    // slots hold their distance to the smallest value, bit packed to the width of the largest distance
+    static final class FrameOfReference extends EncodedLongs {
+        private final long min;
+        private final BitPackedArray deltas;
+
+        FrameOfReference(long[] values, long min, int width) {
+            this.min = min;
+            long[] deltas = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                deltas[i] = values[i] - min;
+            }
+            this.deltas = new BitPackedArray(deltas, width);
+        }
+
+        @Override
+        long get(int offset) {
+            return min + deltas.get(offset);
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 8 + deltas.sizeInBytes();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package io.cred.storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// Immutable encodings of the slots of a sealed object chunk. Low cardinality columns (status, country ...) keep
+// a handful of references plus a few bits per row instead of one reference per row.
+abstract class EncodedObjects {
+
+    abstract Object get(int offset);
+
+    abstract long sizeInBytes();
+
+    // dictionary or run length, whichever is smaller, null unless it saves a quarter of plainBytes
+    static EncodedObjects encode(Object[] values, long plainBytes) {
+        Map<Object, Integer> codes = new HashMap<>();
+        int runs = 1;
+        for (int i = 0; i < values.length; i++) {
+            codes.putIfAbsent(values[i], codes.size());
+            if (i > 0 && !Objects.equals(values[i], values[i - 1])) {
+                runs++;
+            }
+        }
+        int width = BitPackedArray.bitsFor(codes.size() - 1);
+        long dictionaryBytes = 16 + codes.size() * 4L + BitPackedArray.sizeInBytes(values.length, width);
+        long runLengthBytes = 32 + runs * 8L;
+        if (Math.min(dictionaryBytes, runLengthBytes) > plainBytes * 3 / 4) {
+            return null;
+        }
+        return runLengthBytes <= dictionaryBytes ? new RunLength(values, runs) : new Dictionary(values, codes, width);
+    }
+
+    static final class Dictionary extends EncodedObjects {
+        private final Object[] dictionary;
+        private final BitPackedArray codes;
+
+        Dictionary(Object[] values, Map<Object, Integer> codes, int width) {
+            this.dictionary = new Object[codes.size()];
+            codes.forEach((value, code) -> dictionary[code] = value);
+            long[] slots = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                slots[i] = codes.get(values[i]);
+            }
+            this.codes = new BitPackedArray(slots, width);
+        }
+
+        @Override
+        Object get(int offset) {
+            return dictionary[(int) codes.get(offset)];
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 16 + dictionary.length * 4L + codes.sizeInBytes();
+        }
+    }
+
+    static final class RunLength extends EncodedObjects {
+        private final Object[] runValues;
+        private final int[] runEnds;
+
+        RunLength(Object[] values, int runs) {
+            this.runValues = new Object[runs];
+            this.runEnds = new int[runs];
+            int run = 0;
+            for (int i = 1; i <= values.length; i++) {
+                if (i == values.length || !Objects.equals(values[i], values[i - 1])) {
+                    runValues[run] = values[i - 1];
+                    runEnds[run++] = i;
+                }
+            }
+        }
+
+        @Override
+        Object get(int offset) {
+            int run = Arrays.binarySearch(runEnds, offset + 1);
+            return runValues[run >= 0 ? run : -run - 1];
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 32 + runValues.length * 8L;
+        }
+    }
+}
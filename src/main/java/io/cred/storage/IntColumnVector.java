@@ -0,0 +1,84 @@
+package io.cred.storage;
+
+public class IntColumnVector extends ChunkedColumnVector<IntColumnVector.IntChunk> {
+
+    @Override
+    protected IntChunk newChunk() {
+        return new IntChunk();
+    }
+
+    @Override
+    protected int slotBits() {
+        return 32;
+    }
+
+    @Override
+    public int getInt(int rowId, int defaultValue) {
+        Chunk chunk = chunkForRead(rowId);
+        int offset = chunkOffset(rowId);
+        if (chunk == null || !chunk.isPresent(offset)) {
+            return defaultValue;
+        }
+        return chunk instanceof SealedChunk ? (int) ((SealedChunk) chunk).getLong(offset) : ((IntChunk) chunk).values[offset];
+    }
+
+    @Override
+    public long getLong(int rowId, long defaultValue) {
+        Chunk chunk = chunkForRead(rowId);
+        int offset = chunkOffset(rowId);
+        if (chunk == null || !chunk.isPresent(offset)) {
+            return defaultValue;
+        }
+        return chunk instanceof SealedChunk ? (int) ((SealedChunk) chunk).getLong(offset) : ((IntChunk) chunk).values[offset];
+    }
+
+    public void setInt(int rowId, int value) {
+        IntChunk chunk = chunkForWrite(rowId);
+        int offset = chunkOffset(rowId);
+        chunk.values[offset] = value;
+        chunk.markPresent(offset);
+    }
+
+    @Override
+    public Object get(int rowId) {
+        return isNull(rowId) ? null : getInt(rowId, 0);
+    }
+
+    @Override
+    public void set(int rowId, Object value) {
+        setInt(rowId, (Integer) value);
+    }
+
+    @Override
+    public void clear(int rowId) {
+        IntChunk chunk = chunkForClear(rowId);
+        if (chunk != null) {
+            chunk.markAbsent(chunkOffset(rowId));
+        }
+    }
+
+    @Override
+    protected boolean summarizeChunk(IntChunk chunk, ColumnSummary summary) {
+        for (int word = 0; word < CHUNK_SIZE >>> 6; word++) {
+            long present = chunk.presenceWord(word);
+            int base = word << 6;
+            if (present == -1L) {
+                summary.addInts(chunk.values, base, base + 64);
+            } else {
+                for (; present != 0; present &= present - 1) {
+                    summary.add(chunk.values[base + Long.numberOfTrailingZeros(present)]);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected SealedChunk encode(int chunkIndex) {
+        return encodeLongs(chunkIndex, rowId -> getInt(rowId, 0));
+    }
+
+    static class IntChunk extends Chunk {
+        final int[] values = new int[CHUNK_SIZE];
+    }
+}
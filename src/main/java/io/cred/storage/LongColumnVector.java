@@ -0,0 +1,76 @@
+package io.cred.storage;
+
+public class LongColumnVector extends ChunkedColumnVector<LongColumnVector.LongChunk> {
+
+    @Override
+    protected LongChunk newChunk() {
+        return new LongChunk();
+    }
+
+    @Override
+    protected int slotBits() {
+        return 64;
+    }
+
+    @Override
+    public long getLong(int rowId, long defaultValue) {
+        Chunk chunk = chunkForRead(rowId);
+        int offset = chunkOffset(rowId);
+        if (chunk == null || !chunk.isPresent(offset)) {
+            return defaultValue;
+        }
+        return chunk instanceof SealedChunk ? ((SealedChunk) chunk).getLong(offset) : ((LongChunk) chunk).values[offset];
+    }
+
+    public void setLong(int rowId, long value) {
+        LongChunk chunk = chunkForWrite(rowId);
+        int offset = chunkOffset(rowId);
+        chunk.values[offset] = value;
+        chunk.markPresent(offset);
+    }
+
+    @Override
+    public Object get(int rowId) {
+        return isNull(rowId) ? null : getLong(rowId, 0L);
+    }
+
+    @Override
+    public void set(int rowId, Object value) {
+        setLong(rowId, (Long) value);
+    }
+
+    @Override
+    public void clear(int rowId) {
+        LongChunk chunk = chunkForClear(rowId);
+        if (chunk != null) {
+            chunk.markAbsent(chunkOffset(rowId));
+        }
+    }
+
+    // a word with all 64 slots present is added as one run, other words slot by slot
+    @Override
+    protected boolean summarizeChunk(LongChunk chunk, ColumnSummary summary) {
+        for (int word = 0; word < CHUNK_SIZE >>> 6; word++) {
+            long present = chunk.presenceWord(word);
+            int base = word << 6;
+            if (present == -1L) {
+                summary.addLongs(chunk.values, base, base + 64);
+            } else {
+                for (; present != 0; present &= present - 1) {
+                    summary.add(chunk.values[base + Long.numberOfTrailingZeros(present)]);
+                }
+            }
+        }
+        return true;
+    }
+
+    // timestamps and counters usually fit a frame of reference with a few bits per row
+    @Override
+    protected SealedChunk encode(int chunkIndex) {
+        return encodeLongs(chunkIndex, rowId -> getLong(rowId, 0L));
+    }
+
+    static class LongChunk extends Chunk {
+        final long[] values = new long[CHUNK_SIZE];
+    }
+}
@@ -0,0 +1,127 @@
+package io.cred.storage;
+
+import io.cred.util.BinaryCodec;
+
+import java.nio.ByteBuffer;
+
+// Column reopened from a checkpoint segment. Base values are read straight from the mapped file, so pages are
+// only loaded when a row is touched. Writes after the reopen go to an overlay column built by the table, on or off
+// heap like its other columns, and shadow the base slot.
+public class MappedColumnVector extends ColumnVector {
+
+    private final ByteBuffer buffer;
+    private final byte encoding;
+    private final int rows;
+    private final int presenceOffset;
+    private final int valuesOffset;
+    private final int offsetsOffset;
+    private final ColumnVector overlay;
+    // a set bit means the base slot was overwritten or cleared, the overlay is authoritative for that row
+    private final BooleanColumnVector shadowed = new BooleanColumnVector();
+
+    MappedColumnVector(ByteBuffer buffer, byte encoding, int rows, int presenceOffset, int valuesOffset, int offsetsOffset,
+                       ColumnVector overlay) {
+        this.buffer = buffer;
+        this.encoding = encoding;
+        this.rows = rows;
+        this.presenceOffset = presenceOffset;
+        this.valuesOffset = valuesOffset;
+        this.offsetsOffset = offsetsOffset;
+        this.overlay = overlay;
+    }
+
+    @Override
+    public Object get(int rowId) {
+        if (!inBase(rowId)) {
+            return overlay.get(rowId);
+        }
+        if (!basePresent(rowId)) {
+            return null;
+        }
+        switch (encoding) {
+            case ColumnSegment.DOUBLE:
+                return buffer.getDouble(valuesOffset + rowId * 8);
+            case ColumnSegment.LONG:
+                return buffer.getLong(valuesOffset + rowId * 8);
+            case ColumnSegment.INT:
+                return buffer.getInt(valuesOffset + rowId * 4);
+            case ColumnSegment.BOOLEAN:
+                return buffer.get(valuesOffset + rowId) != 0;
+            default:
+                ByteBuffer value = buffer.duplicate();
+                value.position(valuesOffset + buffer.getInt(offsetsOffset + rowId * 4));
+                return BinaryCodec.readValue(value);
+        }
+    }
+
+    @Override
+    public void set(int rowId, Object value) {
+        overlay.set(rowId, value);
+        shadowed.setBoolean(rowId, true);
+    }
+
+    @Override
+    public void clear(int rowId) {
+        overlay.clear(rowId);
+        shadowed.setBoolean(rowId, true);
+    }
+
+    @Override
+    public int capacity() {
+        return Math.max(rows, overlay.capacity());
+    }
+
+    // the mapped base lives in the page cache, only the overlay and the shadow bits are on the heap
+    @Override
+    public long sizeInBytes() {
+        return overlay.sizeInBytes() + shadowed.sizeInBytes();
+    }
+
+    @Override
+    public boolean isNull(int rowId) {
+        return inBase(rowId) ? !basePresent(rowId) : overlay.isNull(rowId);
+    }
+
+    @Override
+    public double getDouble(int rowId, double defaultValue) {
+        if (!inBase(rowId)) {
+            return overlay.getDouble(rowId, defaultValue);
+        }
+        return basePresent(rowId) ? buffer.getDouble(valuesOffset + rowId * 8) : defaultValue;
+    }
+
+    @Override
+    public long getLong(int rowId, long defaultValue) {
+        if (!inBase(rowId)) {
+            return overlay.getLong(rowId, defaultValue);
+        }
+        if (!basePresent(rowId)) {
+            return defaultValue;
+        }
+        return encoding == ColumnSegment.INT ? buffer.getInt(valuesOffset + rowId * 4) : buffer.getLong(valuesOffset + rowId * 8);
+    }
+
+    @Override
+    public int getInt(int rowId, int defaultValue) {
+        if (!inBase(rowId)) {
+            return overlay.getInt(rowId, defaultValue);
+        }
+        return basePresent(rowId) ? buffer.getInt(valuesOffset + rowId * 4) : defaultValue;
+    }
+
+    @Override
+    public boolean getBoolean(int rowId, boolean defaultValue) {
+        if (!inBase(rowId)) {
+            return overlay.getBoolean(rowId, defaultValue);
+        }
+        return basePresent(rowId) ? buffer.get(valuesOffset + rowId) != 0 : defaultValue;
+    }
+
+    private boolean inBase(int rowId) {
+        return rowId < rows && !shadowed.getBoolean(rowId, false);
+    }
+
+    private boolean basePresent(int rowId) {
+        return (buffer.getLong(presenceOffset + (rowId >>> 6) * 8) & (1L << rowId)) != 0;
+    }
+}
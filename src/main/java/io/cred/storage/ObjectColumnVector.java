@@ -0,0 +1,53 @@
+package io.cred.storage;
+
+public class ObjectColumnVector extends ChunkedColumnVector<ObjectColumnVector.ObjectChunk> {
+
+    @Override
+    protected ObjectChunk newChunk() {
+        return new ObjectChunk();
+    }
+
+    @Override
+    // compressed references, the referenced values are shared with the secondary index
+    protected int slotBits() {
+        return 32;
+    }
+
+    @Override
+    public Object get(int rowId) {
+        Chunk chunk = chunkForRead(rowId);
+        int offset = chunkOffset(rowId);
+        if (chunk instanceof SealedChunk) {
+            return chunk.isPresent(offset) ? ((SealedChunk) chunk).getObject(offset) : null;
+        }
+        return chunk == null ? null : ((ObjectChunk) chunk).values[offset];
+    }
+
+    @Override
+    public void set(int rowId, Object value) {
+        ObjectChunk chunk = chunkForWrite(rowId);
+        int offset = chunkOffset(rowId);
+        chunk.values[offset] = value;
+        chunk.markPresent(offset);
+    }
+
+    @Override
+    public void clear(int rowId) {
+        ObjectChunk chunk = chunkForClear(rowId);
+        if (chunk != null) {
+            int offset = chunkOffset(rowId);
+            chunk.markAbsent(offset);
+            chunk.values[offset] = null;
+        }
+    }
+
+    // status, country ... columns with a few distinct values end up dictionary encoded
+    @Override
+    protected SealedChunk encode(int chunkIndex) {
+        return encodeObjects(chunkIndex, this::get);
+    }
+
+    static class ObjectChunk extends Chunk {
+        final Object[] values = new Object[CHUNK_SIZE];
+    }
+}
@@ -0,0 +1,194 @@
+package io.cred.storage;
+
+import io.cred.exception.OffHeapCapacityExceededException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Direct memory of one table. Blocks are handed out in power of two size classes (16 bytes up to half a slab),
+// every class carves its own 1 MB direct slabs and keeps a free list, so a block freed by a delete is reused by the
+// next insert of a similar size. Larger blocks get a dedicated buffer that is dropped again on free, its slab
+// index is handed to the next slab created.
+//
+// An address is (slab index << 32 | offset). Allocations are accounted against the capacity of the arena, slab
+// memory itself is only returned once the arena becomes unreachable (direct buffers are released by the GC).
+public class OffHeapArena {
+
+    public static final int SLAB_SIZE = 1 << 20;
+    private static final int MIN_SHIFT = 4;
+    private static final int MAX_SHIFT = 19;
+
+    private final long capacity;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final SizeClass[] classes = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+    // readers index the published array without locking, slabs are appended under slabLock
+    private volatile ByteBuffer[] slabs = new ByteBuffer[16];
+    private final ReentrantLock slabLock = new ReentrantLock();
+    private int slabCount;
+    // indexes of dropped large blocks, guarded by slabLock
+    private int[] freeSlabs = new int[16];
+    private int freeSlabCount;
+
+    public OffHeapArena(long capacity) {
+        this.capacity = capacity;
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SizeClass(1 << (i + MIN_SHIFT));
+        }
+    }
+
+    // blocks are accounted with their rounded up size, the capacity bounds what the table really holds
+    public long allocate(int size) {
+        int charged = blockSize(size);
+        long used = usedBytes.addAndGet(charged);
+        if (used > capacity) {
+            usedBytes.addAndGet(-charged);
+            throw new OffHeapCapacityExceededException("Off heap capacity of " + capacity + " bytes exceeded, " + (used - charged)
+                    + " bytes in use, " + charged + " requested");
+        }
+        try {
+            if (size > SLAB_SIZE >>> 1) {
+                return address(newSlab(size), 0);
+            }
+            return classes[classOf(size)].allocate();
+        } catch (RuntimeException | OutOfMemoryError e) {
+            usedBytes.addAndGet(-charged);
+            throw e;
+        }
+    }
+
+    // whether size more bytes fit, a hint only: concurrent allocations may still take them first
+    public boolean hasRoomFor(long size) {
+        return usedBytes.get() + size <= capacity;
+    }
+
+    // size must be the one passed to allocate
+    public void free(long address, int size) {
+        if (size > SLAB_SIZE >>> 1) {
+            slabLock.lock();
+            try {
+                int slab = slabOf(address);
+                slabs[slab] = null;
+                if (freeSlabCount == freeSlabs.length) {
+                    freeSlabs = Arrays.copyOf(freeSlabs, freeSlabCount * 2);
+                }
+                freeSlabs[freeSlabCount++] = slab;
+            } finally {
+                slabLock.unlock();
+            }
+            reservedBytes.addAndGet(-size);
+        } else {
+            classes[classOf(size)].free(address);
+        }
+        usedBytes.addAndGet(-blockSize(size));
+    }
+
+    // the slab holding the block, absolute reads and writes at offset(address) only
+    public ByteBuffer buffer(long address) {
+        return slabs[slabOf(address)];
+    }
+
+    public static int offset(long address) {
+        return (int) address;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    // direct memory held by the slabs, used bytes plus free blocks and the unused tail of the slabs
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    private int newSlab(int size) {
+        ByteBuffer slab = ByteBuffer.allocateDirect(size);
+        slabLock.lock();
+        try {
+            int index;
+            if (freeSlabCount > 0) {
+                index = freeSlabs[--freeSlabCount];
+            } else {
+                if (slabCount == slabs.length) {
+                    slabs = Arrays.copyOf(slabs, slabCount * 2);
+                }
+                index = slabCount++;
+            }
+            ByteBuffer[] current = slabs;
+            current[index] = slab;
+            // republish so readers holding an address of the new slab see it through the volatile read
+            slabs = current;
+            reservedBytes.addAndGet(size);
+            return index;
+        } finally {
+            slabLock.unlock();
+        }
+    }
+
+    private static int blockSize(int size) {
+        return size > SLAB_SIZE >>> 1 ? size : 1 << (classOf(size) + MIN_SHIFT);
+    }
+
+    private static int classOf(int size) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1 << MIN_SHIFT) - 1);
+        return shift - MIN_SHIFT;
+    }
+
+    private static long address(int slab, int offset) {
+        return ((long) slab << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int slabOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    // blocks of one size: a free stack first, then bump allocation in the current slab of the class
+    private class SizeClass {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int blockSize;
+        private long[] free = new long[16];
+        private int freeCount;
+        private int slab = -1;
+        private int next = SLAB_SIZE;
+
+        SizeClass(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        long allocate() {
+            lock.lock();
+            try {
+                if (freeCount > 0) {
+                    return free[--freeCount];
+                }
+                if (next + blockSize > SLAB_SIZE) {
+                    slab = newSlab(SLAB_SIZE);
+                    next = 0;
+                }
+                long address = address(slab, next);
+                next += blockSize;
+                return address;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void free(long address) {
+            lock.lock();
+            try {
+                if (freeCount == free.length) {
+                    free = Arrays.copyOf(free, freeCount * 2);
+                }
+                free[freeCount++] = address;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
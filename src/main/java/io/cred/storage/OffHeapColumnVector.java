@@ -0,0 +1,212 @@
+package io.cred.storage;
+
+import io.cred.util.BinaryCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Column whose slots live in the direct memory of the table's arena, only the chunk directory and the presence
+// bits stay on the heap. Numbers and booleans are stored inline in the chunk block, any other value is encoded
+// with BinaryCodec into its own [length][bytes] block and the slot keeps its address. Clearing a slot frees that
+// block right away.
+public class OffHeapColumnVector extends ChunkedColumnVector<OffHeapColumnVector.OffHeapChunk> {
+
+    private static final int LENGTH_BYTES = 4;
+
+    private final OffHeapArena arena;
+    private final Encoding encoding;
+
+    public OffHeapColumnVector(OffHeapArena arena, String datatype) {
+        this.arena = arena;
+        this.encoding = Encoding.of(datatype);
+    }
+
+    @Override
+    protected OffHeapChunk newChunk() {
+        return new OffHeapChunk(arena.allocate(CHUNK_SIZE * encoding.width));
+    }
+
+    // the slots are off heap, only the presence bits are counted
+    @Override
+    protected int slotBits() {
+        return 0;
+    }
+
+    @Override
+    public Object get(int rowId) {
+        OffHeapChunk chunk = (OffHeapChunk) chunkForRead(rowId);
+        int offset = chunkOffset(rowId);
+        if (chunk == null || !chunk.isPresent(offset)) {
+            return null;
+        }
+        ByteBuffer buffer = arena.buffer(chunk.address);
+        int slot = slotOf(chunk, offset);
+        switch (encoding) {
+            case DOUBLE:
+                return buffer.getDouble(slot);
+            case LONG:
+                return buffer.getLong(slot);
+            case INT:
+                return buffer.getInt(slot);
+            case BOOLEAN:
+                return buffer.get(slot) != 0;
+            default:
+                long address = buffer.getLong(slot);
+                ByteBuffer value = arena.buffer(address).duplicate();
+                value.position(OffHeapArena.offset(address) + LENGTH_BYTES);
+                return BinaryCodec.readValue(value);
+        }
+    }
+
+    @Override
+    public void set(int rowId, Object value) {
+        OffHeapChunk chunk = chunkForWrite(rowId);
+        int offset = chunkOffset(rowId);
+        ByteBuffer buffer = arena.buffer(chunk.address);
+        int slot = slotOf(chunk, offset);
+        switch (encoding) {
+            case DOUBLE:
+                buffer.putDouble(slot, (Double) value);
+                break;
+            case LONG:
+                buffer.putLong(slot, (Long) value);
+                break;
+            case INT:
+                buffer.putInt(slot, (Integer) value);
+                break;
+            case BOOLEAN:
+                buffer.put(slot, (byte) ((Boolean) value ? 1 : 0));
+                break;
+            default:
+                long address = store(value);
+                if (chunk.isPresent(offset)) {
+                    release(buffer.getLong(slot));
+                }
+                buffer.putLong(slot, address);
+        }
+        chunk.markPresent(offset);
+    }
+
+    @Override
+    public void clear(int rowId) {
+        OffHeapChunk chunk = chunkForClear(rowId);
+        int offset = chunkOffset(rowId);
+        if (chunk == null || !chunk.isPresent(offset)) {
+            return;
+        }
+        chunk.markAbsent(offset);
+        if (encoding == Encoding.VARIABLE) {
+            release(arena.buffer(chunk.address).getLong(slotOf(chunk, offset)));
+        }
+    }
+
+    @Override
+    public double getDouble(int rowId, double defaultValue) {
+        if (encoding != Encoding.DOUBLE) {
+            return super.getDouble(rowId, defaultValue);
+        }
+        OffHeapChunk chunk = (OffHeapChunk) chunkForRead(rowId);
+        int offset = chunkOffset(rowId);
+        return chunk != null && chunk.isPresent(offset) ? arena.buffer(chunk.address).getDouble(slotOf(chunk, offset)) : defaultValue;
+    }
+
+    @Override
+    public long getLong(int rowId, long defaultValue) {
+        if (encoding != Encoding.LONG && encoding != Encoding.INT) {
+            return super.getLong(rowId, defaultValue);
+        }
+        OffHeapChunk chunk = (OffHeapChunk) chunkForRead(rowId);
+        int offset = chunkOffset(rowId);
+        if (chunk == null || !chunk.isPresent(offset)) {
+            return defaultValue;
+        }
+        ByteBuffer buffer = arena.buffer(chunk.address);
+        return encoding == Encoding.LONG ? buffer.getLong(slotOf(chunk, offset)) : buffer.getInt(slotOf(chunk, offset));
+    }
+
+    @Override
+    public int getInt(int rowId, int defaultValue) {
+        if (encoding != Encoding.INT) {
+            return super.getInt(rowId, defaultValue);
+        }
+        OffHeapChunk chunk = (OffHeapChunk) chunkForRead(rowId);
+        int offset = chunkOffset(rowId);
+        return chunk != null && chunk.isPresent(offset) ? arena.buffer(chunk.address).getInt(slotOf(chunk, offset)) : defaultValue;
+    }
+
+    @Override
+    public boolean getBoolean(int rowId, boolean defaultValue) {
+        if (encoding != Encoding.BOOLEAN) {
+            return super.getBoolean(rowId, defaultValue);
+        }
+        OffHeapChunk chunk = (OffHeapChunk) chunkForRead(rowId);
+        int offset = chunkOffset(rowId);
+        return chunk != null && chunk.isPresent(offset) ? arena.buffer(chunk.address).get(slotOf(chunk, offset)) != 0 : defaultValue;
+    }
+
+    private int slotOf(OffHeapChunk chunk, int offset) {
+        return OffHeapArena.offset(chunk.address) + offset * encoding.width;
+    }
+
+    private long store(Object value) {
+        byte[] bytes = encode(value);
+        long address = arena.allocate(LENGTH_BYTES + bytes.length);
+        ByteBuffer block = arena.buffer(address).duplicate();
+        block.position(OffHeapArena.offset(address));
+        block.putInt(bytes.length);
+        block.put(bytes);
+        return address;
+    }
+
+    private void release(long address) {
+        int length = arena.buffer(address).getInt(OffHeapArena.offset(address));
+        arena.free(address, LENGTH_BYTES + length);
+    }
+
+    private static byte[] encode(Object value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            BinaryCodec.writeValue(new DataOutputStream(bytes), value);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // in memory stream, can not happen
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private enum Encoding {
+        DOUBLE(8), LONG(8), INT(4), BOOLEAN(1), VARIABLE(8);
+
+        final int width;
+
+        Encoding(int width) {
+            this.width = width;
+        }
+
+        static Encoding of(String datatype) {
+            switch (datatype) {
+                case "java.lang.Double":
+                    return DOUBLE;
+                case "java.lang.Long":
+                    return LONG;
+                case "java.lang.Integer":
+                    return INT;
+                case "java.lang.Boolean":
+                    return BOOLEAN;
+                default:
+                    return VARIABLE;
+            }
+        }
+    }
+
+    static class OffHeapChunk extends Chunk {
+        // block of CHUNK_SIZE slots in the arena
+        final long address;
+
+        OffHeapChunk(long address) {
+            this.address = address;
+        }
+    }
+}
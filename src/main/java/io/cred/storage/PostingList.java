@@ -0,0 +1,92 @@
+package io.cred.storage;
+
+import java.util.concurrent.locks.StampedLock;
+
+// Row ids of the rows holding one value of an attribute. Writers on different key stripes can hit the same
+// posting, so every access goes through the posting's own lock; readers work on a copy or a combined result.
+public class PostingList {
+
+    private final RoaringBitmap rowIds = new RoaringBitmap();
+    private final StampedLock lock = new StampedLock();
+
+    public void add(int rowId) {
+        long stamp = lock.writeLock();
+        try {
+            rowIds.add(rowId);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void addAll(RoaringBitmap values) {
+        long stamp = lock.writeLock();
+        try {
+            values.forEach(rowIds::add);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(int rowId) {
+        long stamp = lock.writeLock();
+        try {
+            rowIds.remove(rowId);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean isEmpty() {
+        long stamp = lock.readLock();
+        try {
+            return rowIds.isEmpty();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int cardinality() {
+        long stamp = lock.readLock();
+        try {
+            return rowIds.cardinality();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public long sizeInBytes() {
+        long stamp = lock.readLock();
+        try {
+            return rowIds.sizeInBytes();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public RoaringBitmap snapshot() {
+        long stamp = lock.readLock();
+        try {
+            return rowIds.copy();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public RoaringBitmap and(RoaringBitmap other) {
+        long stamp = lock.readLock();
+        try {
+            return rowIds.and(other);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public RoaringBitmap or(RoaringBitmap other) {
+        long stamp = lock.readLock();
+        try {
+            return rowIds.or(other);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
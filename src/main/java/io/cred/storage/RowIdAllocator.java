@@ -0,0 +1,55 @@
+package io.cred.storage;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hands out dense row ids, ids of deleted rows are recycled first to keep the column chunks filled.
+public class RowIdAllocator {
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Integer> released = new ConcurrentLinkedQueue<>();
+
+    public RowIdAllocator() {
+    }
+
+    // resumes allocation after a checkpoint: ids below highWaterMark that are not in use become free
+    public RowIdAllocator(int highWaterMark, RoaringBitmap used) {
+        this.next.set(highWaterMark);
+        for (int rowId = 0; rowId < highWaterMark; rowId++) {
+            if (!used.contains(rowId)) {
+                released.offer(rowId);
+            }
+        }
+    }
+
+    public int allocate() {
+        Integer rowId = released.poll();
+        return rowId != null ? rowId : next.getAndIncrement();
+    }
+
+    // bulk reservation: recycled ids first, the rest as one contiguous range
+    public int[] allocate(int count) {
+        int[] rowIds = new int[count];
+        int filled = 0;
+        Integer rowId;
+        while (filled < count && (rowId = released.poll()) != null) {
+            rowIds[filled++] = rowId;
+        }
+        if (filled < count) {
+            int start = next.getAndAdd(count - filled);
+            while (filled < count) {
+                rowIds[filled++] = start++;
+            }
+        }
+        return rowIds;
+    }
+
+    public void release(int rowId) {
+        released.offer(rowId);
+    }
+
+    // upper bound (exclusive) of every row id handed out so far
+    public int highWaterMark() {
+        return next.get();
+    }
+}
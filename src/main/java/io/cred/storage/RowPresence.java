@@ -0,0 +1,95 @@
+package io.cred.storage;
+
+import java.util.function.IntConsumer;
+
+// Which columns each row has, a bitset over the ordinals a table gives its attributes. The first 64 ordinals are
+// one unboxed word per row; only rows that have a column past those carry a long[] with the further words, so a
+// narrow table pays 8 bytes a row and a wide sparse one a word per 64 columns. Written under the row's stripe
+// like the column values, and read under it or with an optimistic stamp that is validated afterwards.
+public class RowPresence {
+
+    private final LongColumnVector first = new LongColumnVector();
+    // row id - long[] of the words for ordinals 64 and up, absent while the row has none of those columns
+    private final ObjectColumnVector rest = new ObjectColumnVector();
+
+    public void set(int rowId, int ordinal) {
+        if (ordinal < 64) {
+            first.setLong(rowId, first.getLong(rowId, 0L) | 1L << ordinal);
+            return;
+        }
+        int word = (ordinal >>> 6) - 1;
+        long[] words = (long[]) rest.get(rowId);
+        if (words == null || words.length <= word) {
+            long[] grown = new long[word + 1];
+            if (words != null) {
+                System.arraycopy(words, 0, grown, 0, words.length);
+            }
+            grown[word] = 1L << ordinal;
+            rest.set(rowId, grown);
+        } else {
+            words[word] |= 1L << ordinal;
+        }
+    }
+
+    public void clear(int rowId, int ordinal) {
+        if (ordinal < 64) {
+            long word = first.getLong(rowId, 0L);
+            if ((word & 1L << ordinal) != 0) {
+                first.setLong(rowId, word & ~(1L << ordinal));
+            }
+            return;
+        }
+        long[] words = (long[]) rest.get(rowId);
+        int word = (ordinal >>> 6) - 1;
+        if (words != null && word < words.length) {
+            words[word] &= ~(1L << ordinal);
+        }
+    }
+
+    // forgets the row, its id may be handed to another key
+    public void clear(int rowId) {
+        first.clear(rowId);
+        rest.clear(rowId);
+    }
+
+    public boolean contains(int rowId, int ordinal) {
+        if (ordinal < 64) {
+            return (first.getLong(rowId, 0L) & 1L << ordinal) != 0;
+        }
+        long[] words = (long[]) rest.get(rowId);
+        int word = (ordinal >>> 6) - 1;
+        return words != null && word < words.length && (words[word] & 1L << ordinal) != 0;
+    }
+
+    // ordinals of the row's columns in ascending order
+    public void forEach(int rowId, IntConsumer consumer) {
+        forEachBit(first.getLong(rowId, 0L), 0, consumer);
+        long[] words = (long[]) rest.get(rowId);
+        if (words != null) {
+            for (int word = 0; word < words.length; word++) {
+                forEachBit(words[word], (word + 1) << 6, consumer);
+            }
+        }
+    }
+
+    private static void forEachBit(long word, int base, IntConsumer consumer) {
+        for (; word != 0; word &= word - 1) {
+            consumer.accept(base + Long.numberOfTrailingZeros(word));
+        }
+    }
+
+    public int count(int rowId) {
+        int count = Long.bitCount(first.getLong(rowId, 0L));
+        long[] words = (long[]) rest.get(rowId);
+        if (words != null) {
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+        }
+        return count;
+    }
+
+    public long sizeInBytes() {
+        return first.sizeInBytes() + rest.sizeInBytes();
+    }
+}
@@ -0,0 +1,73 @@
+package io.cred.storage;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Chunk whose slots were encoded once every row of it had been written (see ChunkedColumnVector#encodeChunk). The
+// encoded base is immutable: a row written or cleared afterwards is shadowed and from then on served by a plain
+// delta chunk, created on the first such write. The presence bits inherited from Chunk describe the base.
+final class SealedChunk extends Chunk {
+
+    private final EncodedLongs longs;
+    private final EncodedObjects objects;
+    private final AtomicLongArray shadowed = new AtomicLongArray(ColumnVector.CHUNK_SIZE >>> 6);
+    private final AtomicReference<Chunk> delta = new AtomicReference<>();
+
+    SealedChunk(long[] present, EncodedLongs longs) {
+        this(present, longs, null);
+    }
+
+    SealedChunk(long[] present, EncodedObjects objects) {
+        this(present, null, objects);
+    }
+
+    private SealedChunk(long[] present, EncodedLongs longs, EncodedObjects objects) {
+        this.longs = longs;
+        this.objects = objects;
+        for (int offset = 0; offset < ColumnVector.CHUNK_SIZE; offset++) {
+            if ((present[offset >>> 6] & (1L << offset)) != 0) {
+                markPresent(offset);
+            }
+        }
+    }
+
+    long getLong(int offset) {
+        return longs.get(offset);
+    }
+
+    Object getObject(int offset) {
+        return objects.get(offset);
+    }
+
+    boolean isShadowed(int offset) {
+        return isSet(shadowed, offset);
+    }
+
+    int shadowedCount() {
+        return count(shadowed);
+    }
+
+    Chunk delta() {
+        return delta.get();
+    }
+
+    // the delta chunk a write of the slot goes to, the slot reads from the delta from now on
+    Chunk deltaForWrite(int offset, Supplier<? extends Chunk> newChunk) {
+        Chunk chunk = delta.get();
+        if (chunk == null) {
+            Chunk created = newChunk.get();
+            chunk = delta.compareAndSet(null, created) ? created : delta.get();
+        }
+        set(shadowed, offset);
+        return chunk;
+    }
+
+    void shadow(int offset) {
+        set(shadowed, offset);
+    }
+
+    long encodedSizeInBytes() {
+        return 64 + (longs != null ? longs.sizeInBytes() : objects.sizeInBytes());
+    }
+}
@@ -0,0 +1,99 @@
+package io.cred.storage;
+
+import io.cred.exception.SpillException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Append only file of length prefixed records, the cold tier of a memory bounded table. A record is never
+// rewritten in place: releasing one only lowers the live byte count, the owner rewrites the live records into a
+// fresh store once enough of the file is garbage. The content is a cache of rows the journal already holds, the
+// file is truncated when opened.
+public class SpillStore implements AutoCloseable {
+
+    private final Path file;
+    private final FileChannel channel;
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final AtomicLong size = new AtomicLong();
+
+    public SpillStore(Path file) {
+        this.file = file;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new SpillException("Unable to open spill file " + file, e);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // returns the offset to read the record back with
+    public long append(byte[] record) {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + record.length);
+        buffer.putInt(record.length).put(record).flip();
+        long offset = size.getAndAdd(buffer.remaining());
+        try {
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new SpillException("Unable to write spill file " + file, e);
+        }
+        liveBytes.addAndGet(Integer.BYTES + record.length);
+        return offset;
+    }
+
+    public byte[] read(long offset) {
+        try {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            readFully(length, offset);
+            ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+            readFully(record, offset + Integer.BYTES);
+            return record.array();
+        } catch (IOException e) {
+            throw new SpillException("Unable to read spill file " + file, e);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of spill file at " + position);
+            }
+            position += read;
+        }
+    }
+
+    // the record of the given length is no longer referenced
+    public void release(int recordLength) {
+        liveBytes.addAndGet(-(Integer.BYTES + recordLength));
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    public long liveBytes() {
+        return liveBytes.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new SpillException("Unable to close spill file " + file, e);
+        }
+    }
+}
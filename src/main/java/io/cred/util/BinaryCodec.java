@@ -0,0 +1,121 @@
+package io.cred.util;
+
+import io.cred.exception.InvalidDatatypeException;
+import io.cred.model.Entry;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compact binary form of keys and cell values shared by everything that leaves the heap (log, snapshots, wire).
+// A value is a one byte type tag followed by its fixed width or length prefixed payload.
+public class BinaryCodec {
+
+    public static final byte NULL = 0;
+    public static final byte STRING = 1;
+    public static final byte DOUBLE = 2;
+    public static final byte LONG = 3;
+    public static final byte INTEGER = 4;
+    public static final byte BOOLEAN = 5;
+    public static final byte FLOAT = 6;
+    public static final byte SHORT = 7;
+    public static final byte BYTE = 8;
+    public static final byte CHARACTER = 9;
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) value);
+        } else {
+            throw new InvalidDatatypeException("Datatype {} can not be serialized " + value.getClass().getName());
+        }
+    }
+
+    public static Object readValue(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case DOUBLE:
+                return in.getDouble();
+            case LONG:
+                return in.getLong();
+            case INTEGER:
+                return in.getInt();
+            case BOOLEAN:
+                return in.get() != 0;
+            case FLOAT:
+                return in.getFloat();
+            case SHORT:
+                return in.getShort();
+            case BYTE:
+                return in.get();
+            case CHARACTER:
+                return in.getChar();
+            default:
+                throw new InvalidDatatypeException("Unknown value tag {} " + tag);
+        }
+    }
+
+    public static void writeEntries(DataOutput out, List<Entry> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            writeString(out, entry.getName());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    public static List<Entry> readEntries(ByteBuffer in) {
+        int size = in.getInt();
+        List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = readString(in);
+            entries.add(new Entry(name, readValue(in)));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,64 @@
+package io.cred.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Durable writes of files that replace the log, e.g. checkpoints: a file is forced to disk when its stream closes,
+// and the directory a file was created in or renamed into is forced afterwards so the entry survives a power
+// loss as well.
+public class FileSync {
+
+    // creates or truncates file, close() returns once the contents and metadata are on disk
+    public static OutputStream newOutputStream(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new ForcedOutputStream(channel);
+    }
+
+    public static void syncDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (AccessDeniedException e) {
+            // directories can not be opened on Windows, its file systems make the entries durable with the file
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private static class ForcedOutputStream extends FilterOutputStream {
+        private final FileChannel channel;
+
+        ForcedOutputStream(FileChannel channel) {
+            super(Channels.newOutputStream(channel));
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // streams stacked on this one may each close it
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                out.flush();
+                channel.force(true);
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.cred.util;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+// Fixed pool of read/write locks owned by a single table. A key is mapped to a stripe by its hash, so two keys
+// share a lock only when they collide on the stripe index. Nothing is allocated per call: callers resolve the
+// stripe once and hand the stamp back on unlock.
+//
+// StampedLock is not reentrant, a thread must never take the same stripe twice.
+//
+// Every acquisition first tries the lock without blocking, only acquisitions that had to wait are timed, so the
+// uncontended path does not read the clock.
+public class StripedLockManager {
+
+    public static final int DEFAULT_STRIPES = 256;
+
+    private final StampedLock[] locks;
+    private final int mask;
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+
+    public StripedLockManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public StripedLockManager(int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.locks = new StampedLock[size];
+        for (int i = 0; i < size; i++) {
+            this.locks[i] = new StampedLock();
+        }
+        this.mask = size - 1;
+    }
+
+    public int stripes() {
+        return locks.length;
+    }
+
+    public int stripeOf(Object key) {
+        int h = key.hashCode();
+        // spread higher bits so keys differing only in the upper half do not pile up on one stripe
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+
+    public long readLock(int stripe) {
+        StampedLock lock = locks[stripe];
+        long stamp = lock.tryReadLock();
+        if (stamp != 0L) {
+            return stamp;
+        }
+        long start = System.nanoTime();
+        stamp = lock.readLock();
+        recordWait(start);
+        return stamp;
+    }
+
+    // 0 while the stripe is write locked, see StampedLock#tryOptimisticRead
+    public long tryOptimisticRead(int stripe) {
+        return locks[stripe].tryOptimisticRead();
+    }
+
+    public boolean validate(int stripe, long stamp) {
+        return locks[stripe].validate(stamp);
+    }
+
+    public void unlockRead(int stripe, long stamp) {
+        locks[stripe].unlockRead(stamp);
+    }
+
+    public long writeLock(int stripe) {
+        StampedLock lock = locks[stripe];
+        long stamp = lock.tryWriteLock();
+        if (stamp != 0L) {
+            return stamp;
+        }
+        long start = System.nanoTime();
+        stamp = lock.writeLock();
+        recordWait(start);
+        return stamp;
+    }
+
+    public void unlockWrite(int stripe, long stamp) {
+        locks[stripe].unlockWrite(stamp);
+    }
+
+    private void recordWait(long start) {
+        waitNanos.add(System.nanoTime() - start);
+        contended.increment();
+    }
+
+    // total time threads spent blocked on a stripe
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    // acquisitions that found their stripe taken
+    public long getContendedCount() {
+        return contended.sum();
+    }
+}
@@ -0,0 +1,137 @@
+package io.cred.util;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Hierarchical timer wheel: LEVELS wheels of WHEEL_SIZE slots, a slot of level n spans WHEEL_SIZE^n ticks.
+// Scheduling is O(1); advancing the clock empties the level 0 slot it passes and cascades the slot of a coarser
+// level down once the clock enters its span. Deadlines beyond the top level are parked in the top wheel and
+// re-placed every time their slot comes round, so they never fire early.
+//
+// Items that came due are queued and handed out at most max per poll, a caller draining a large backlog does so
+// in bounded steps. All methods hold the wheel lock, a ReentrantLock so virtual threads scheduling a ttl do not pin.
+public class TimerWheel<T> {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<Timer<T>>[][] slots = new ArrayDeque[LEVELS][WHEEL_SIZE];
+    private final ArrayDeque<T> due = new ArrayDeque<>();
+    // start of the tick the wheel is in, everything before it has been moved to due
+    private long currentTick;
+    private int size;
+
+    public TimerWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    public void schedule(T item, long deadlineMillis) {
+        lock.lock();
+        try {
+            place(new Timer<>(item, deadlineMillis / tickMillis));
+            size++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // items scheduled and not polled yet, including the ones already due
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Moves the clock to now and adds up to max due items to out, returns the number added
+    public int poll(long nowMillis, int max, List<T> out) {
+        lock.lock();
+        try {
+            long nowTick = nowMillis / tickMillis;
+            if (size == due.size()) {
+                // nothing left in the wheels, an idle wheel is not walked tick by tick
+                currentTick = Math.max(currentTick, nowTick);
+            }
+            while (currentTick < nowTick) {
+                expire(slots[0][(int) (currentTick & WHEEL_MASK)]);
+                currentTick++;
+                cascade();
+            }
+            int polled = 0;
+            while (polled < max && !due.isEmpty()) {
+                out.add(due.poll());
+                polled++;
+            }
+            size -= polled;
+            return polled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void place(Timer<T> timer) {
+        long ticks = timer.deadlineTick - currentTick;
+        if (ticks < 0) {
+            due.add(timer.item);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * WHEEL_BITS;
+            if (ticks < (long) WHEEL_SIZE << shift || level == LEVELS - 1) {
+                add(level, (int) ((timer.deadlineTick >>> shift) & WHEEL_MASK), timer);
+                return;
+            }
+        }
+    }
+
+    private void add(int level, int slot, Timer<T> timer) {
+        ArrayDeque<Timer<T>> timers = slots[level][slot];
+        if (timers == null) {
+            timers = slots[level][slot] = new ArrayDeque<>();
+        }
+        timers.add(timer);
+    }
+
+    // a level 0 slot only holds deadlines within the tick being left
+    private void expire(ArrayDeque<Timer<T>> timers) {
+        if (timers != null) {
+            for (Timer<T> timer; (timer = timers.poll()) != null; ) {
+                due.add(timer.item);
+            }
+        }
+    }
+
+    // coarsest level first, a timer cascaded from level 2 may land in the level 1 slot cascaded next
+    private void cascade() {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            int shift = level * WHEEL_BITS;
+            if ((currentTick & ((1L << shift) - 1)) == 0) {
+                ArrayDeque<Timer<T>> timers = slots[level][(int) ((currentTick >>> shift) & WHEEL_MASK)];
+                if (timers != null && !timers.isEmpty()) {
+                    ArrayDeque<Timer<T>> cascading = new ArrayDeque<>(timers);
+                    timers.clear();
+                    cascading.forEach(this::place);
+                }
+            }
+        }
+    }
+
+    private static class Timer<T> {
+        final T item;
+        final long deadlineTick;
+
+        Timer(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -2,19 +2,49 @@ package io.cred.util;
 
 import io.cred.exception.InvalidDatatypeException;
 import io.cred.model.Attribute;
+import io.cred.model.BatchResult;
 import io.cred.model.Entry;
 import io.cred.model.Table;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ValidationUtil {
     public static boolean validate(Table table, List<Entry> entries) {
         for (Entry e : entries) {
             Attribute attribute = table.getAttributesMap().get(e.getName());
             if (attribute == null) continue;
-            if (attribute.getDatatype() != e.getValue().getClass().getName())
+            if (!attribute.getDatatype().equals(e.getValue().getClass().getName()))
                 throw new InvalidDatatypeException("Invalid Datatype {} for " + e.getName());
         }
         return true;
     }
+
+    // Batch variant: the datatype of every column is resolved once (existing attribute, else first value in the
+    // batch) and each row is checked against it. Invalid rows are reported in result and left out of the returned map
+    public static Map<String, List<Entry>> validate(Table table, Map<String, List<Entry>> rows, BatchResult result) {
+        Map<String, String> datatypes = new HashMap<>();
+        Map<String, List<Entry>> valid = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Entry>> row : rows.entrySet()) {
+            RuntimeException failure = null;
+            for (Entry e : row.getValue()) {
+                String datatype = datatypes.computeIfAbsent(e.getName(), name -> {
+                    Attribute attribute = table.getAttributesMap().get(name);
+                    return attribute != null ? attribute.getDatatype() : e.getValue().getClass().getName();
+                });
+                if (!datatype.equals(e.getValue().getClass().getName())) {
+                    failure = new InvalidDatatypeException("Invalid Datatype {} for " + e.getName());
+                    break;
+                }
+            }
+            if (failure == null) {
+                valid.put(row.getKey(), row.getValue());
+            } else {
+                result.addFailure(row.getKey(), failure);
+            }
+        }
+        return valid;
+    }
 }
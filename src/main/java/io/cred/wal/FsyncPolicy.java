@@ -0,0 +1,10 @@
+package io.cred.wal;
+
+public enum FsyncPolicy {
+    // every operation is forced to disk before it returns, safest and slowest
+    PER_OPERATION,
+    // operations wait for a shared fsync issued every N millis or M records, whichever comes first
+    GROUP_COMMIT,
+    // records are written to the page cache only, the OS decides when they reach the disk
+    OS_MANAGED
+}
@@ -0,0 +1,46 @@
+package io.cred.wal;
+
+import java.nio.file.Path;
+
+public class WalConfig {
+
+    private final Path directory;
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.GROUP_COMMIT;
+    private long groupCommitIntervalMillis = 2;
+    private int groupCommitMaxRecords = 1024;
+
+    public WalConfig(Path directory) {
+        this.directory = directory;
+    }
+
+    public static WalConfig of(Path directory) {
+        return new WalConfig(directory);
+    }
+
+    public WalConfig withFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+        return this;
+    }
+
+    public WalConfig withGroupCommit(long intervalMillis, int maxRecords) {
+        this.groupCommitIntervalMillis = intervalMillis;
+        this.groupCommitMaxRecords = maxRecords;
+        return this;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public long getGroupCommitIntervalMillis() {
+        return groupCommitIntervalMillis;
+    }
+
+    public int getGroupCommitMaxRecords() {
+        return groupCommitMaxRecords;
+    }
+}
@@ -0,0 +1,140 @@
+package io.cred.wal;
+
+import io.cred.model.Entry;
+import io.cred.model.TableConfig;
+import io.cred.util.BinaryCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+public class WalRecord {
+
+    public enum Type {
+        CREATE_TABLE, PUT, DELETE
+    }
+
+    private final Type type;
+    private final String tableName;
+    private final String key;
+    private final List<Entry> entries;
+    // CREATE_TABLE only
+    private final TableConfig config;
+    // PUT only, epoch millis the row expires at, 0 when it does not
+    private final long expiresAtMillis;
+
+    private WalRecord(Type type, String tableName, String key, List<Entry> entries, TableConfig config, long expiresAtMillis) {
+        this.type = type;
+        this.tableName = tableName;
+        this.key = key;
+        this.entries = entries;
+        this.config = config;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public static WalRecord createTable(String tableName, TableConfig config) {
+        return new WalRecord(Type.CREATE_TABLE, tableName, null, Collections.emptyList(), config, 0);
+    }
+
+    public static WalRecord put(String tableName, String key, List<Entry> entries) {
+        return put(tableName, key, entries, 0);
+    }
+
+    public static WalRecord put(String tableName, String key, List<Entry> entries, long expiresAtMillis) {
+        return new WalRecord(Type.PUT, tableName, key, entries, null, expiresAtMillis);
+    }
+
+    public static WalRecord delete(String tableName, String key) {
+        return new WalRecord(Type.DELETE, tableName, key, Collections.emptyList(), null, 0);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public TableConfig getConfig() {
+        return config;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    // body only, framing (length + checksum) is added by the log
+    public byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type.ordinal());
+            BinaryCodec.writeString(out, tableName);
+            switch (type) {
+                case CREATE_TABLE:
+                    config.write(out);
+                    break;
+                case PUT:
+                    BinaryCodec.writeString(out, key);
+                    BinaryCodec.writeEntries(out, entries);
+                    if (expiresAtMillis > 0) {
+                        out.writeLong(expiresAtMillis);
+                    }
+                    break;
+                case DELETE:
+                    BinaryCodec.writeString(out, key);
+                    break;
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // in memory stream, can not happen
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static WalRecord decode(ByteBuffer in) {
+        Type type = Type.values()[in.get()];
+        String tableName = BinaryCodec.readString(in);
+        switch (type) {
+            case CREATE_TABLE:
+                // records logged before off heap storage end after the range indexed attributes, the ones logged
+                // before memory budgets after the off heap capacity
+                TableConfig config = TableConfig.readRangeIndexed(in);
+                if (in.remaining() >= Long.BYTES) {
+                    long offHeapCapacity = in.getLong();
+                    if (offHeapCapacity > 0) {
+                        config.withOffHeapStorage(offHeapCapacity);
+                    }
+                }
+                if (in.remaining() >= Long.BYTES) {
+                    TableConfig.readMemoryBudget(config, in);
+                }
+                return createTable(tableName, config);
+            case PUT:
+                String key = BinaryCodec.readString(in);
+                List<Entry> entries = BinaryCodec.readEntries(in);
+                // the expiry is only written for rows that have one
+                return put(tableName, key, entries, in.remaining() >= Long.BYTES ? in.getLong() : 0);
+            default:
+                return delete(tableName, BinaryCodec.readString(in));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WalRecord{" + type + " " + tableName + " " + key + " " + entries + '}';
+    }
+}
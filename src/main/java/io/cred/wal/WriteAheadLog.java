@@ -0,0 +1,410 @@
+package io.cred.wal;
+
+import io.cred.exception.WriteAheadLogException;
+import io.cred.model.Entry;
+import io.cred.model.Table;
+import io.cred.model.TableJournal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append only log of createTable/put/putAll/delete, one file per segment (wal-<id>.log).
+// Every record is framed as [int length][int crc32][body] so a torn tail left by a crash is detected and ignored
+// on replay. Each process start appends to a fresh segment, older segments are only read.
+//
+// With GROUP_COMMIT appends only copy the record into a shared buffer. A single flusher thread writes and forces
+// the whole buffer every groupCommitIntervalMillis or groupCommitMaxRecords and wakes every writer it covered,
+// so one fsync is amortized over all writers that arrived in the window.
+public class WriteAheadLog implements TableJournal, AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int FRAME_HEADER = 8;
+
+    private final WalConfig config;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushRequested = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+
+    private FileChannel channel;
+    private long segmentId;
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private int pendingRecords;
+    private long firstPendingNanos;
+    private long appendedSequence;
+    private long durableSequence;
+    private IOException failure;
+    private volatile boolean closed;
+    // set while the flusher writes a batch outside the lock, the segment must not be swapped meanwhile
+    private boolean flushing;
+    private Thread flusher;
+
+    private WriteAheadLog(WalConfig config) {
+        this.config = config;
+    }
+
+    public static WriteAheadLog open(WalConfig config) {
+        WriteAheadLog log = new WriteAheadLog(config);
+        try {
+            Files.createDirectories(config.getDirectory());
+            List<Long> segments = log.segmentIds();
+            log.segmentId = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+            log.channel = openSegment(log.segmentPath(log.segmentId));
+        } catch (IOException e) {
+            throw new WriteAheadLogException("Unable to open write ahead log {} " + config.getDirectory(), e);
+        }
+        if (config.getFsyncPolicy() == FsyncPolicy.GROUP_COMMIT) {
+            log.flusher = new Thread(log::runFlusher, "wal-group-commit");
+            log.flusher.setDaemon(true);
+            log.flusher.start();
+        }
+        return log;
+    }
+
+    // replays every sealed segment in order, stops at the first torn or corrupt record of a segment
+    public void replay(Consumer<WalRecord> consumer) {
+        replay(0, consumer);
+    }
+
+    // replays sealed segments with an id >= fromSegment, e.g. the segment a checkpoint started at
+    public void replay(long fromSegment, Consumer<WalRecord> consumer) {
+        try {
+            for (Long id : segmentIds()) {
+                if (id >= segmentId || id < fromSegment) {
+                    continue;
+                }
+                replaySegment(segmentPath(id), consumer);
+            }
+        } catch (IOException e) {
+            throw new WriteAheadLogException("Unable to replay write ahead log {} " + config.getDirectory(), e);
+        }
+    }
+
+    @Override
+    public long logInsert(Table table, String key, List<Entry> entries, long expiresAtMillis) {
+        return append(WalRecord.put(table.getName(), key, entries, expiresAtMillis));
+    }
+
+    @Override
+    public long logInserts(Table table, List<String> keys, Map<String, List<Entry>> rows) {
+        List<WalRecord> records = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            records.add(WalRecord.put(table.getName(), key, rows.get(key), 0));
+        }
+        return append(records);
+    }
+
+    @Override
+    public long logDelete(Table table, String key) {
+        return append(WalRecord.delete(table.getName(), key));
+    }
+
+    public long append(WalRecord record) {
+        return append(Collections.singletonList(record));
+    }
+
+    // Appends the records as one group: they are framed outside the lock, copied or written under a single
+    // acquisition and, with PER_OPERATION, forced once. Returns the sequence of the last record
+    public long append(List<WalRecord> records) {
+        if (records.isEmpty()) {
+            return 0;
+        }
+        ByteBuffer frames = frame(records);
+        lock.lock();
+        try {
+            checkOpen();
+            appendedSequence += records.size();
+            switch (config.getFsyncPolicy()) {
+                case GROUP_COMMIT:
+                    ensurePending(frames.remaining());
+                    pending.put(frames);
+                    if (pendingRecords == 0) {
+                        firstPendingNanos = System.nanoTime();
+                    }
+                    pendingRecords += records.size();
+                    if (pendingRecords >= config.getGroupCommitMaxRecords()) {
+                        flushRequested.signal();
+                    }
+                    break;
+                case PER_OPERATION:
+                    writeFully(frames);
+                    channel.force(false);
+                    durableSequence = appendedSequence;
+                    break;
+                default:
+                    writeFully(frames);
+                    durableSequence = appendedSequence;
+            }
+            return appendedSequence;
+        } catch (IOException e) {
+            failure = e;
+            throw new WriteAheadLogException("Unable to append to write ahead log {} " + config.getDirectory(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // blocks until the record with the given sequence (and everything before it) is durable per the fsync policy
+    public void awaitDurable(long sequence) {
+        if (sequence <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw new WriteAheadLogException("Write ahead log flush failed {} " + config.getDirectory(), failure);
+                }
+                if (closed && flusher == null) {
+                    throw new WriteAheadLogException("Write ahead log is closed " + config.getDirectory(), null);
+                }
+                durable.await(config.getGroupCommitIntervalMillis() * 2 + 1, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WriteAheadLogException("Interrupted while waiting for write ahead log flush", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Seals the current segment (everything appended so far is made durable) and continues in a new one.
+    // Returns the id of the new segment: a checkpoint taken after the roll only needs it and its successors.
+    public long roll() {
+        lock.lock();
+        try {
+            checkOpen();
+            while (flushing) {
+                durable.awaitUninterruptibly();
+            }
+            if (pending.position() > 0) {
+                pending.flip();
+                while (pending.hasRemaining()) {
+                    channel.write(pending);
+                }
+                pending.clear();
+                pendingRecords = 0;
+            }
+            channel.force(false);
+            durableSequence = appendedSequence;
+            durable.signalAll();
+            channel.close();
+            segmentId++;
+            channel = openSegment(segmentPath(segmentId));
+            return segmentId;
+        } catch (IOException e) {
+            failure = e;
+            throw new WriteAheadLogException("Unable to roll write ahead log {} " + config.getDirectory(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // truncation after a successful checkpoint
+    public void deleteSegmentsBefore(long segment) {
+        try {
+            for (Long id : segmentIds()) {
+                if (id < segment) {
+                    Files.deleteIfExists(segmentPath(id));
+                }
+            }
+        } catch (IOException e) {
+            throw new WriteAheadLogException("Unable to truncate write ahead log {} " + config.getDirectory(), e);
+        }
+    }
+
+    public long getAppendedSequence() {
+        lock.lock();
+        try {
+            return appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flushRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (flusher != null) {
+                flusher.join();
+                flusher = null;
+            }
+            lock.lock();
+            try {
+                channel.force(false);
+                channel.close();
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new WriteAheadLogException("Unable to close write ahead log {} " + config.getDirectory(), e);
+        }
+    }
+
+    private void runFlusher() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getGroupCommitIntervalMillis());
+        lock.lock();
+        try {
+            while (true) {
+                if (pendingRecords == 0) {
+                    if (closed) {
+                        return;
+                    }
+                    flushRequested.await(config.getGroupCommitIntervalMillis(), TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                long remaining = intervalNanos - (System.nanoTime() - firstPendingNanos);
+                if (!closed && pendingRecords < config.getGroupCommitMaxRecords() && remaining > 0) {
+                    flushRequested.awaitNanos(remaining);
+                    continue;
+                }
+                ByteBuffer batch = pending;
+                pending = spare;
+                long batchSequence = appendedSequence;
+                FileChannel target = channel;
+                pendingRecords = 0;
+                flushing = true;
+                lock.unlock();
+                try {
+                    batch.flip();
+                    while (batch.hasRemaining()) {
+                        target.write(batch);
+                    }
+                    target.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    lock.lock();
+                    batch.clear();
+                    spare = batch;
+                    flushing = false;
+                }
+                if (failure == null) {
+                    durableSequence = batchSequence;
+                }
+                durable.signalAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            durable.signalAll();
+            lock.unlock();
+        }
+    }
+
+    private static ByteBuffer frame(List<WalRecord> records) {
+        List<byte[]> bodies = new ArrayList<>(records.size());
+        int bytes = 0;
+        for (WalRecord record : records) {
+            byte[] body = record.encode();
+            bodies.add(body);
+            bytes += FRAME_HEADER + body.length;
+        }
+        ByteBuffer frames = ByteBuffer.allocate(bytes);
+        CRC32 crc = new CRC32();
+        for (byte[] body : bodies) {
+            crc.reset();
+            crc.update(body);
+            frames.putInt(body.length).putInt((int) crc.getValue()).put(body);
+        }
+        return frames.flip();
+    }
+
+    private void writeFully(ByteBuffer frames) throws IOException {
+        while (frames.hasRemaining()) {
+            channel.write(frames);
+        }
+    }
+
+    private void ensurePending(int bytes) {
+        if (pending.remaining() >= bytes) {
+            return;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+        pending.flip();
+        grown.put(pending);
+        pending = grown;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new WriteAheadLogException("Write ahead log is closed " + config.getDirectory(), null);
+        }
+        if (failure != null) {
+            throw new WriteAheadLogException("Write ahead log flush failed {} " + config.getDirectory(), failure);
+        }
+    }
+
+    private static void replaySegment(Path path, Consumer<WalRecord> consumer) throws IOException {
+        try (FileChannel segment = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (segment.size() == 0) {
+                return;
+            }
+            MappedByteBuffer buffer = segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size());
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= FRAME_HEADER) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    return;
+                }
+                ByteBuffer body = buffer.slice();
+                body.limit(length);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    return;
+                }
+                consumer.accept(WalRecord.decode(body));
+                buffer.position(buffer.position() + length);
+            }
+        }
+    }
+
+    private static FileChannel openSegment(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(long id) {
+        return config.getDirectory().resolve(String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private List<Long> segmentIds() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(config.getDirectory())) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        ids.sort(Long::compare);
+        return ids;
+    }
+}
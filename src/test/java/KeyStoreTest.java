@@ -1,22 +1,79 @@
 import helper.Task;
 import io.cred.IKeyStore;
+import io.cred.cdc.Backpressure;
+import io.cred.cdc.ChangeEvent;
+import io.cred.cdc.ChangeRing;
+import io.cred.cdc.Subscription;
+import io.cred.cdc.SubscriptionConfig;
+import io.cred.client.RemoteKeyStore;
+import io.cred.core.AsyncKeyStore;
 import io.cred.core.ColumnKeyStore;
+import io.cred.core.ShardedKeyStore;
 import io.cred.core.TableRegistry;
 import io.cred.exception.AttributeDoesNotExistsException;
 import io.cred.exception.InvalidDatatypeException;
+import io.cred.exception.KeyAlreadyExistsException;
+import io.cred.exception.KeyDoesNotExistsException;
+import io.cred.exception.OffHeapCapacityExceededException;
+import io.cred.exception.ReplicationLogTruncatedException;
 import io.cred.exception.TableDoesNotExistsException;
+import io.cred.metrics.HistogramSnapshot;
+import io.cred.metrics.InstrumentedKeyStore;
+import io.cred.metrics.MetricsSnapshot;
+import io.cred.metrics.Operation;
+import io.cred.metrics.TableStats;
+import io.cred.model.Aggregate;
+import io.cred.model.AggregateResult;
+import io.cred.model.BatchResult;
 import io.cred.model.Entry;
+import io.cred.model.Predicate;
+import io.cred.model.ResultSet;
+import io.cred.model.ScanCursor;
+import io.cred.model.Table;
+import io.cred.model.TableConfig;
+import io.cred.model.TableJournal;
+import io.cred.model.TableSnapshot;
+import io.cred.replication.ReplicaKeyStore;
+import io.cred.replication.ReplicationLog;
+import io.cred.replication.ReplicationServer;
+import io.cred.replication.SocketReplicationSource;
+import io.cred.server.KeyStoreServer;
+import io.cred.server.ServerConfig;
+import io.cred.storage.DoubleColumnVector;
+import io.cred.storage.LongColumnVector;
+import io.cred.storage.ObjectColumnVector;
+import io.cred.storage.RoaringBitmap;
+import io.cred.wal.FsyncPolicy;
+import io.cred.wal.WalConfig;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import static io.cred.model.Predicate.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class KeyStoreTest {
@@ -115,6 +172,44 @@ public class KeyStoreTest {
         assertTrue(TableRegistry.tablesCount() == 1);
     }
 
+    @Test
+    public void itShouldRejectTheLoserOfConcurrentFirstWritesOfAColumn() throws Exception {
+        IKeyStore keyStore = new ColumnKeyStore();
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        for (int round = 0; round < 200; round++) {
+            String table = "cities_" + round;
+            keyStore.createTable(table);
+            CountDownLatch start = new CountDownLatch(1);
+            Future<Boolean> numeric = executorService.submit(() -> {
+                awaitLatch(start);
+                try {
+                    keyStore.put(table, "jakarta", new Entry("population", 10_000_000L));
+                    return true;
+                } catch (InvalidDatatypeException e) {
+                    return false;
+                }
+            });
+            Future<Boolean> text = executorService.submit(() -> {
+                awaitLatch(start);
+                try {
+                    keyStore.put(table, "bali", new Entry("population", "4 million"));
+                    return true;
+                } catch (InvalidDatatypeException e) {
+                    return false;
+                }
+            });
+            start.countDown();
+            // exactly one datatype wins the column and the other row is not left half written
+            assertTrue(numeric.get() ^ text.get());
+            Table cities = TableRegistry.getTable(table).get();
+            assertEquals(1, cities.size());
+            String winner = numeric.get() ? "jakarta" : "bali";
+            assertEquals(Arrays.asList(winner), keyStore.search(table, new Entry("population", numeric.get() ? (Object) 10_000_000L : "4 million")));
+            assertTrue(keyStore.get(table, numeric.get() ? "bali" : "jakarta").getRows().get(0).getEntries().isEmpty());
+        }
+        executorService.shutdown();
+    }
+
 
 
     @Test
@@ -233,4 +328,1237 @@ public class KeyStoreTest {
 
     }
 
+    @Test
+    public void itShouldReadSameKeyConcurrentlyWhileOtherKeysAreWritten() throws InterruptedException {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities");
+        keyStore.putAll("cities", "jakarta", Arrays.asList(new Entry("latitude", -6.0), new Entry("longitude", 106.0)));
+
+        CountDownLatch latch = new CountDownLatch(2000);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        IntStream.range(0, 1000).forEach(i -> {
+            executorService.submit(() -> {
+                try {
+                    assertTrue(keyStore.get("cities", "jakarta", new String[]{"latitude"}).getRows().size() == 1);
+                } finally {
+                    latch.countDown();
+                }
+            });
+            executorService.submit(new Task(keyStore, latch, "city_" + i, Arrays.asList(new Entry("latitude", (double) i))));
+        });
+
+        latch.await();
+        executorService.shutdown();
+        assertTrue(TableRegistry.getTable("cities").get().size() == 1001);
+    }
+
+    @Test
+    public void itShouldNotReturnDeletedKeyFromSecondaryIndexWhenRowIdIsReused() {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities");
+        keyStore.putAll("cities", "jakarta", Arrays.asList(new Entry("latitude", -6.0), new Entry("longitude", 106.0)));
+        keyStore.delete("cities", "jakarta");
+        keyStore.putAll("cities", "bali", Arrays.asList(new Entry("latitude", -8.0)));
+
+        assertTrue(keyStore.search("cities", new Entry("latitude", -6.0)).isEmpty());
+        assertEquals(Arrays.asList("bali"), keyStore.search("cities", new Entry("latitude", -8.0)));
+        ResultSet resultSet = keyStore.get("cities", "bali", new String[]{"latitude", "longitude"});
+        assertEquals(-8.0, resultSet.getRows().get(0).getEntries().get(0).getValue());
+        assertNull(resultSet.getRows().get(0).getEntries().get(1).getValue());
+    }
+
+    @Test
+    public void itShouldStorePrimitiveColumnsUnboxed() {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities");
+        keyStore.putAll("cities", "jakarta", Arrays.asList(new Entry("latitude", -6.0), new Entry("population", 10_000_000L),
+                new Entry("radiations", 1), new Entry("coastal", true)));
+        keyStore.putAll("cities", "delhi", Arrays.asList(new Entry("latitude", 28.7), new Entry("coastal", false)));
+
+        Table table = TableRegistry.getTable("cities").get();
+        assertTrue(table.getAttributesMap().get("latitude").getValues() instanceof DoubleColumnVector);
+        assertEquals(-6.0, table.getDouble("jakarta", "latitude", Double.NaN));
+        assertEquals(10_000_000L, table.getLong("jakarta", "population", -1L));
+        assertEquals(-1L, table.getLong("delhi", "population", -1L));
+        assertEquals(1, table.getInt("jakarta", "radiations", 0));
+        assertFalse(table.getBoolean("delhi", "coastal", true));
+        assertTrue(table.getBoolean("jakarta", "coastal", false));
+
+        ResultSet resultSet = keyStore.get("cities", "delhi", new String[]{"latitude", "population", "coastal"});
+        assertEquals(28.7, resultSet.getRows().get(0).getEntries().get(0).getValue());
+        assertNull(resultSet.getRows().get(0).getEntries().get(1).getValue());
+        assertEquals(false, resultSet.getRows().get(0).getEntries().get(2).getValue());
+        assertEquals(Arrays.asList("delhi"), keyStore.search("cities", new Entry("coastal", false)));
+    }
+
+    @Test
+    public void itShouldSearchWithMultiplePredicates() {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities");
+        keyStore.putAll("cities", "jakarta", Arrays.asList(new Entry("latitude", -6.0), new Entry("pollution_level", "high")));
+        keyStore.putAll("cities", "maldives", Arrays.asList(new Entry("latitude", -6.0), new Entry("pollution_level", "low")));
+        keyStore.putAll("cities", "bangalore", Arrays.asList(new Entry("latitude", -12.3), new Entry("pollution_level", "moderate")));
+        keyStore.putAll("cities", "delhi", Arrays.asList(new Entry("latitude", 28.7), new Entry("pollution_level", "high")));
+
+        assertEquals(Arrays.asList("jakarta"), keyStore.search("cities", eq("latitude", -6.0), eq("pollution_level", "high")));
+        assertEquals(2, keyStore.search("cities", or(eq("pollution_level", "low"), eq("pollution_level", "moderate"))).size());
+        assertEquals(3, keyStore.search("cities", or(eq("latitude", -6.0), and(eq("pollution_level", "high"), eq("latitude", 28.7)))).size());
+        assertTrue(keyStore.search("cities", eq("latitude", -12.3), eq("pollution_level", "high")).isEmpty());
+
+        ResultSet resultSet = keyStore.search("cities", new String[]{"latitude"}, eq("pollution_level", "high"), eq("latitude", 28.7));
+        assertEquals("delhi", resultSet.getRows().get(0).getKey());
+
+        keyStore.delete("cities", "jakarta");
+        assertEquals(Arrays.asList("delhi"), keyStore.search("cities", eq("pollution_level", "high")));
+        assertThrows(AttributeDoesNotExistsException.class, () -> keyStore.search("cities", eq("radiations", 1)));
+    }
+
+    @Test
+    public void itShouldCombineRoaringBitmapsAcrossContainers() {
+        RoaringBitmap evens = new RoaringBitmap();
+        RoaringBitmap threes = new RoaringBitmap();
+        for (int i = 0; i < 200_000; i++) {
+            if (i % 2 == 0) evens.add(i);
+            if (i % 3 == 0) threes.add(i);
+        }
+        assertEquals(100_000, evens.cardinality());
+        assertEquals(33_334, evens.and(threes).cardinality());
+        assertEquals(133_333, evens.or(threes).cardinality());
+        assertEquals(66_666, evens.andNot(threes).cardinality());
+        for (int i = 0; i < 200_000; i += 2) {
+            evens.remove(i);
+        }
+        assertTrue(evens.isEmpty());
+    }
+
+    @Test
+    public void itShouldSearchRangeInValueOrder() {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities", TableConfig.defaults().withRangeIndex("latitude"));
+        keyStore.putAll("cities", "jakarta", Arrays.asList(new Entry("latitude", -6.0), new Entry("radiations", 3)));
+        keyStore.putAll("cities", "maldives", Arrays.asList(new Entry("latitude", -3.2), new Entry("radiations", 1)));
+        keyStore.putAll("cities", "bangalore", Arrays.asList(new Entry("latitude", 12.9), new Entry("radiations", 2)));
+        keyStore.putAll("cities", "perth", Arrays.asList(new Entry("latitude", -31.9)));
+
+        ResultSet resultSet = keyStore.searchRange("cities", "latitude", -10.0, 0.0, new String[]{"latitude"});
+        assertEquals(2, resultSet.getRows().size());
+        assertEquals("jakarta", resultSet.getRows().get(0).getKey());
+        assertEquals("maldives", resultSet.getRows().get(1).getKey());
+
+        assertEquals("perth", keyStore.searchRange("cities", "latitude", null, 0.0, new String[]{"latitude"}, 1).getRows().get(0).getKey());
+
+        // radiations was not declared, its ordered index is built on first use
+        ResultSet byRadiation = keyStore.searchRange("cities", "radiations", 2, null, new String[]{"radiations"});
+        assertEquals("bangalore", byRadiation.getRows().get(0).getKey());
+        assertEquals("jakarta", byRadiation.getRows().get(1).getKey());
+
+        keyStore.delete("cities", "jakarta");
+        assertEquals(1, keyStore.searchRange("cities", "latitude", -10.0, 0.0, new String[]{"latitude"}).getRows().size());
+        assertThrows(InvalidDatatypeException.class, () -> keyStore.searchRange("cities", "latitude", -10, 0, new String[]{"latitude"}));
+    }
+
+    @Test
+    public void itShouldRecoverTablesFromWriteAheadLog() throws Exception {
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            TableRegistry.clear();
+            Path directory = Files.createTempDirectory("wal");
+            try (ColumnKeyStore keyStore = new ColumnKeyStore(WalConfig.of(directory).withFsyncPolicy(policy).withGroupCommit(2, 64))) {
+                keyStore.createTable("cities", TableConfig.defaults().withRangeIndex("latitude"));
+                keyStore.putAll("cities", "jakarta", Arrays.asList(new Entry("latitude", -6.0), new Entry("name", "Jakarta")));
+                keyStore.put("cities", "delhi", new Entry("latitude", 28.7));
+                keyStore.put("cities", "maldives", new Entry("latitude", -3.2));
+                keyStore.delete("cities", "maldives");
+            }
+
+            TableRegistry.clear();
+            try (ColumnKeyStore keyStore = new ColumnKeyStore(WalConfig.of(directory).withFsyncPolicy(policy))) {
+                assertEquals(2L, TableRegistry.getTable("cities").get().size());
+                assertEquals("Jakarta", keyStore.get("cities", "jakarta", new String[]{"name"}).getRows().get(0).getEntries().get(0).getValue());
+                assertTrue(TableRegistry.getTable("cities").get().getAttributesMap().get("latitude").isRangeIndexed());
+                keyStore.put("cities", "perth", new Entry("latitude", -31.9));
+            }
+
+            TableRegistry.clear();
+            try (ColumnKeyStore keyStore = new ColumnKeyStore(WalConfig.of(directory).withFsyncPolicy(policy))) {
+                assertEquals(3L, TableRegistry.getTable("cities").get().size());
+                assertEquals(Arrays.asList("perth"), keyStore.search("cities", new Entry("latitude", -31.9)));
+            }
+        }
+    }
+
+    @Test
+    public void itShouldKeepTheLogOfAStoreToItsOwnTables() throws Exception {
+        Path directory = Files.createTempDirectory("wal");
+        try (ColumnKeyStore keyStore = new ColumnKeyStore(WalConfig.of(directory))) {
+            keyStore.createTable("cities");
+            keyStore.put("cities", "delhi", new Entry("latitude", 28.7));
+        }
+
+        TableRegistry.clear();
+        ColumnKeyStore inMemory = new ColumnKeyStore();
+        inMemory.createTable("towns");
+        try (ColumnKeyStore keyStore = new ColumnKeyStore(WalConfig.of(directory))) {
+            assertEquals(28.7, TableRegistry.getTable("cities").get().getDouble("delhi", "latitude", Double.NaN));
+            // a table of another store is not journaled by this log
+            inMemory.put("towns", "ely", new Entry("latitude", 52.4));
+        }
+
+        TableRegistry.clear();
+        try (ColumnKeyStore keyStore = new ColumnKeyStore(WalConfig.of(directory))) {
+            assertFalse(TableRegistry.isPresent("towns"));
+            // the name is taken now, recovering the log would have to drop one of the two tables
+            assertThrows(IllegalStateException.class, () -> new ColumnKeyStore(WalConfig.of(directory)));
+            assertEquals(1L, TableRegistry.getTable("cities").get().size());
+        }
+    }
+
+    @Test
+    public void itShouldRestartFromCheckpointAndLogTail() throws Exception {
+        Path directory = Files.createTempDirectory("checkpoint");
+        try (ColumnKeyStore keyStore = new ColumnKeyStore(WalConfig.of(directory))) {
+            keyStore.createTable("cities", TableConfig.defaults().withRangeIndex("latitude"));
+            for (int i = 0; i < 5000; i++) {
+                keyStore.putAll("cities", "city_" + i, Arrays.asList(new Entry("latitude", (double) (i % 90)),
+                        new Entry("name", "City " + i), new Entry("radiations", i), new Entry("coastal", i % 2 == 0)));
+            }
+            keyStore.delete("cities", "city_7");
+            keyStore.checkpoint();
+            keyStore.put("cities", "city_7", new Entry("name", "Reborn"));
+            keyStore.delete("cities", "city_8");
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            // the segment sealed by the checkpoint is gone, only the tail written after it is left
+            assertEquals(1L, files.filter(file -> file.getFileName().toString().startsWith("wal-")).count());
+        }
+
+        TableRegistry.clear();
+        try (ColumnKeyStore keyStore = new ColumnKeyStore(WalConfig.of(directory))) {
+            Table table = TableRegistry.getTable("cities").get();
+            assertEquals(4999L, table.size());
+            assertEquals("Reborn", keyStore.get("cities", "city_7", new String[]{"name"}).getRows().get(0).getEntries().get(0).getValue());
+            assertEquals(42.0, table.getDouble("city_42", "latitude", Double.NaN));
+            assertEquals(42, table.getInt("city_42", "radiations", -1));
+            assertTrue(table.getBoolean("city_42", "coastal", false));
+            assertEquals(56, keyStore.search("cities", new Entry("latitude", 3.0)).size());
+            assertEquals(Arrays.asList("city_4999"), keyStore.search("cities", eq("name", "City 4999")));
+            assertEquals(56, keyStore.searchRange("cities", "latitude", 3.0, 3.0, new String[]{"name"}).getRows().size());
+
+            // writes on top of the mapped segments
+            keyStore.delete("cities", "city_42");
+            keyStore.putAll("cities", "city_42", Arrays.asList(new Entry("latitude", -1.0)));
+            assertEquals(-1.0, table.getDouble("city_42", "latitude", Double.NaN));
+            assertNull(keyStore.get("cities", "city_42", new String[]{"name"}).getRows().get(0).getEntries().get(0).getValue());
+            keyStore.checkpoint();
+        }
+
+        TableRegistry.clear();
+        try (ColumnKeyStore keyStore = new ColumnKeyStore(WalConfig.of(directory))) {
+            assertEquals(Arrays.asList("city_42"), keyStore.search("cities", new Entry("latitude", -1.0)));
+            assertEquals(4999L, TableRegistry.getTable("cities").get().size());
+        }
+    }
+
+    @Test
+    public void itShouldKeepWritesToARestoredOffHeapTableWithinCapacity() throws Exception {
+        Path directory = Files.createTempDirectory("checkpoint");
+        try (ColumnKeyStore keyStore = new ColumnKeyStore(WalConfig.of(directory))) {
+            keyStore.createTable("cities", TableConfig.defaults().withOffHeapStorage(256 * 1024));
+            for (int i = 0; i < 1_000; i++) {
+                keyStore.putAll("cities", "city_" + i, Arrays.asList(new Entry("latitude", (double) i), new Entry("name", "City " + i)));
+            }
+            keyStore.checkpoint();
+        }
+
+        TableRegistry.clear();
+        try (ColumnKeyStore keyStore = new ColumnKeyStore(WalConfig.of(directory))) {
+            Table table = TableRegistry.getTable("cities").get();
+            assertEquals(1_000L, table.size());
+            assertEquals("City 7", keyStore.get("cities", "city_7", new String[]{"name"}).getRows().get(0).getEntries().get(0).getValue());
+
+            // the restored rows are read from the mapped segments, the writes on top of them go to the arena
+            long used = table.stats().getOffHeapUsedBytes();
+            keyStore.update("cities", "city_7", Collections.singletonList(new Entry("name", "Seven")));
+            assertTrue(table.stats().getOffHeapUsedBytes() > used);
+            assertEquals("Seven", keyStore.get("cities", "city_7", new String[]{"name"}).getRows().get(0).getEntries().get(0).getValue());
+
+            String large = String.join("", Collections.nCopies(64 * 1024, "x"));
+            assertThrows(OffHeapCapacityExceededException.class, () -> {
+                for (int i = 0; i < 100; i++) {
+                    keyStore.update("cities", "city_" + i, Collections.singletonList(new Entry("name", large)));
+                }
+            });
+            assertTrue(table.stats().getOffHeapUsedBytes() <= 256 * 1024);
+        }
+    }
+
+    @Test
+    public void itShouldInsertBatchAndReportFailedRows() {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities");
+        keyStore.put("cities", "jakarta", new Entry("latitude", -6.0));
+
+        Map<String, List<Entry>> rows = new LinkedHashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            rows.put("city_" + i, Arrays.asList(new Entry("latitude", (double) (i % 10)), new Entry("country", "country_" + (i % 3))));
+        }
+        rows.put("jakarta", Arrays.asList(new Entry("latitude", -6.0)));
+        rows.put("maldives", Arrays.asList(new Entry("latitude", "-3.2")));
+
+        BatchResult result = keyStore.putBatch("cities", rows);
+        assertEquals(10_000L, result.getInsertedCount());
+        assertTrue(result.getFailures().get("jakarta") instanceof KeyAlreadyExistsException);
+        assertTrue(result.getFailures().get("maldives") instanceof InvalidDatatypeException);
+        assertEquals(10_001L, TableRegistry.getTable("cities").get().size());
+        assertEquals(1_000, keyStore.search("cities", eq("latitude", 3.0)).size());
+        assertEquals(334, keyStore.search("cities", eq("latitude", 3.0), eq("country", "country_0")).size());
+
+        Iterator<Map.Entry<String, List<Entry>>> stream = IntStream.range(0, 2_500)
+                .mapToObj(i -> Map.entry("stream_" + i, Arrays.asList(new Entry("latitude", -1.0))))
+                .iterator();
+        BatchResult streamed = keyStore.putBatch("cities", stream, 1_000);
+        assertTrue(streamed.isSuccessful());
+        assertEquals(2_500, keyStore.search("cities", new Entry("latitude", -1.0)).size());
+    }
+
+    @Test
+    public void itShouldGetManyKeysInOneCall() {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities");
+        Map<String, List<Entry>> rows = new LinkedHashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            rows.put("city_" + i, Arrays.asList(new Entry("latitude", (double) i), new Entry("name", "City " + i)));
+        }
+        keyStore.putBatch("cities", rows);
+
+        ResultSet small = keyStore.getAll("cities", Arrays.asList("city_3", "unknown", "city_1"), new String[]{"name", "latitude"});
+        assertEquals("city_3", small.getRows().get(0).getKey());
+        assertEquals("City 3", small.getRows().get(0).getEntries().get(0).getValue());
+        assertNull(small.getRows().get(1).getEntries().get(0).getValue());
+        assertEquals(1.0, small.getRows().get(2).getEntries().get(1).getValue());
+
+        List<String> keys = new ArrayList<>();
+        for (int i = 4_999; i >= 0; i--) {
+            keys.add("city_" + i);
+        }
+        ResultSet large = keyStore.getAll("cities", keys, new String[]{"latitude"});
+        assertEquals(5_000, large.getRows().size());
+        for (int i = 0; i < 5_000; i++) {
+            assertEquals((double) (4_999 - i), large.getRows().get(i).getEntries().get(0).getValue());
+        }
+    }
+
+    @Test
+    public void itShouldScanKeysPageByPage() {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities");
+        Map<String, List<Entry>> rows = new LinkedHashMap<>();
+        for (int i = 0; i < 250; i++) {
+            rows.put(String.format("city_%03d", i), Arrays.asList(new Entry("latitude", (double) i)));
+            rows.put(String.format("town_%03d", i), Arrays.asList(new Entry("latitude", (double) -i)));
+        }
+        keyStore.putBatch("cities", rows);
+        String[] columns = new String[]{"latitude"};
+
+        ScanCursor cursor = keyStore.scan("cities", "city_100", "city_200", columns, 30);
+        ResultSet first = cursor.nextPage();
+        assertEquals(30, first.getRows().size());
+        assertEquals("city_100", first.getRows().get(0).getKey());
+        String token = cursor.getContinuationToken();
+
+        keyStore.delete("cities", "city_130");
+        ScanCursor resumed = keyStore.resumeScan("cities", token, columns, 30);
+        List<String> keys = new ArrayList<>();
+        resumed.forEachRemaining(row -> keys.add(row.getKey()));
+        assertEquals(69, keys.size());
+        assertEquals("city_131", keys.get(0));
+        assertEquals("city_199", keys.get(68));
+        assertNull(resumed.getContinuationToken());
+
+        ScanCursor towns = keyStore.scanPrefix("cities", "town_", columns, 100);
+        int count = 0;
+        for (ResultSet page = towns.nextPage(); !page.getRows().isEmpty(); page = towns.nextPage()) {
+            count += page.getRows().size();
+        }
+        assertEquals(250, count);
+    }
+
+    @Test
+    public void itShouldRecordOperationMetrics() throws Exception {
+        InstrumentedKeyStore keyStore = new InstrumentedKeyStore(new ColumnKeyStore());
+        keyStore.getMetrics().registerMBeans("io.cred.test");
+        try {
+            keyStore.createTable("cities");
+            for (int i = 0; i < 100; i++) {
+                keyStore.putAll("cities", "city_" + i, Arrays.asList(new Entry("latitude", (double) (i % 10)), new Entry("name", "City " + i)));
+            }
+            for (int i = 0; i < 50; i++) {
+                keyStore.get("cities", "city_" + i, new String[]{"name"});
+            }
+            assertThrows(KeyAlreadyExistsException.class, () -> keyStore.put("cities", "city_1", new Entry("name", "Again")));
+
+            MetricsSnapshot snapshot = keyStore.snapshot();
+            assertEquals(100, snapshot.getLatency(Operation.PUT_ALL).getCount());
+            assertEquals(50, snapshot.getLatency(Operation.GET).getCount());
+            assertEquals(1, snapshot.getErrors(Operation.PUT));
+            HistogramSnapshot get = snapshot.getLatency(Operation.GET);
+            assertTrue(get.getP50() <= get.getP99() && get.getP99() <= get.getP999() && get.getP999() <= get.getMax());
+
+            TableStats cities = snapshot.getTables().get("cities");
+            assertEquals(100, cities.getRowCount());
+            assertEquals(2, cities.getAttributeCount());
+            assertEquals(110, cities.getPostingListCount());
+            assertEquals(10, cities.getPostingListSizes().getMax());
+            assertTrue(cities.getEstimatedHeapBytes() > 0);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(50L, server.getAttribute(new ObjectName("io.cred.test:type=Operation,name=\"get\""), "Count"));
+            assertEquals(100L, server.getAttribute(new ObjectName("io.cred.test:type=Table,name=\"cities\""), "RowCount"));
+        } finally {
+            keyStore.close();
+        }
+    }
+
+    @Test
+    public void itShouldKeepOffHeapColumnsWithinCapacity() {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities", TableConfig.defaults().withOffHeapStorage(256 * 1024));
+        for (int i = 0; i < 1_000; i++) {
+            keyStore.putAll("cities", "city_" + i, Arrays.asList(new Entry("latitude", (double) i), new Entry("name", "City " + i),
+                    new Entry("capital", i % 2 == 0)));
+        }
+        ResultSet row = keyStore.get("cities", "city_7", new String[]{"latitude", "name", "capital"});
+        assertEquals(7.0, row.getRows().get(0).getEntries().get(0).getValue());
+        assertEquals("City 7", row.getRows().get(0).getEntries().get(1).getValue());
+        assertEquals(false, row.getRows().get(0).getEntries().get(2).getValue());
+        assertEquals(500, keyStore.search("cities", new Entry("capital", true)).size());
+
+        Table table = TableRegistry.getTable("cities").get();
+        long used = table.stats().getOffHeapUsedBytes();
+        assertTrue(used > 0);
+        keyStore.delete("cities", "city_7");
+        // "City 7" takes one 16 byte block, the double and boolean slots belong to chunks that stay allocated
+        assertEquals(used - 16, table.stats().getOffHeapUsedBytes());
+        keyStore.put("cities", "city_7", new Entry("name", "City 7"));
+        assertEquals(used, table.stats().getOffHeapUsedBytes());
+
+        String large = String.join("", Collections.nCopies(64 * 1024, "x"));
+        assertThrows(OffHeapCapacityExceededException.class, () -> {
+            for (int i = 0; i < 100; i++) {
+                keyStore.put("cities", "large_" + i, new Entry("name", large));
+            }
+        });
+        assertTrue(table.stats().getOffHeapUsedBytes() <= 256 * 1024);
+        assertTrue(keyStore.get("cities", "large_0", new String[]{"name"}).getRows().get(0).getEntries().get(0).getValue() != null);
+    }
+
+    @Test
+    public void itShouldScanOffHeapColumnsWhileTheirBlocksAreReused() throws Exception {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities", TableConfig.defaults().withOffHeapStorage(4 * 1024 * 1024));
+        for (int i = 0; i < 1_000; i++) {
+            keyStore.put("cities", "city_" + i, new Entry("name", "City " + i));
+        }
+        // every rewrite frees the block of the old name, the next one takes it with other bytes
+        AtomicBoolean stopped = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> {
+            for (int round = 0; !stopped.get(); round++) {
+                for (int i = 0; i < 1_000; i++) {
+                    String name = round % 2 == 0 ? "City " + i + " " + "x".repeat(i % 50) : "City " + i;
+                    keyStore.update("cities", "city_" + i, Collections.singletonList(new Entry("name", name)));
+                }
+            }
+        });
+        try {
+            for (int i = 0; i < 50; i++) {
+                // rows moving between postings meanwhile may be missed, a name read from a reused block would not match
+                ResultSet matched = keyStore.search("cities", new String[]{"name"}, like("name", "City %"));
+                assertTrue(matched.getRows().size() <= 1_000);
+                matched.getRows().forEach(row -> assertTrue(((String) row.getEntries().get(0).getValue()).startsWith("City ")));
+                assertEquals(1_000L, keyStore.aggregate("cities", "name", Aggregate.COUNT, null, null).getValue());
+            }
+        } finally {
+            stopped.set(true);
+            executor.shutdown();
+        }
+        writer.get();
+    }
+
+    @Test
+    public void itShouldCompressSealedChunks() {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("orders");
+        Map<String, List<Entry>> rows = new LinkedHashMap<>();
+        String[] statuses = {"NEW", "PAID", "SHIPPED"};
+        for (int i = 0; i < 10_240; i++) {
+            rows.put("order_" + i, Arrays.asList(new Entry("status", statuses[i % 3]), new Entry("createdAt", 1_700_000_000_000L + i),
+                    new Entry("region", i < 5_000 ? "EU" : "US")));
+        }
+        keyStore.putBatch("orders", rows);
+
+        Table table = TableRegistry.getTable("orders").get();
+        ObjectColumnVector plainStrings = new ObjectColumnVector();
+        LongColumnVector plainLongs = new LongColumnVector();
+        for (int rowId = 0; rowId < 10_240; rowId++) {
+            plainStrings.set(rowId, "NEW");
+            plainLongs.setLong(rowId, rowId);
+        }
+        assertTrue(table.getAttributesMap().get("status").getValues().sizeInBytes() * 4 < plainStrings.sizeInBytes());
+        assertTrue(table.getAttributesMap().get("region").getValues().sizeInBytes() * 10 < plainStrings.sizeInBytes());
+        assertTrue(table.getAttributesMap().get("createdAt").getValues().sizeInBytes() * 4 < plainLongs.sizeInBytes());
+
+        ResultSet row = keyStore.get("orders", "order_4999", new String[]{"status", "createdAt", "region"});
+        assertEquals("PAID", row.getRows().get(0).getEntries().get(0).getValue());
+        assertEquals(1_700_000_004_999L, row.getRows().get(0).getEntries().get(1).getValue());
+        assertEquals("EU", row.getRows().get(0).getEntries().get(2).getValue());
+
+        // rows of a sealed chunk can still be deleted and their ids reused
+        keyStore.delete("orders", "order_10");
+        keyStore.putAll("orders", "order_new", Arrays.asList(new Entry("status", "CANCELLED"), new Entry("createdAt", 1L)));
+        table.compact();
+        ResultSet reused = keyStore.get("orders", "order_new", new String[]{"status", "createdAt", "region"});
+        assertEquals("CANCELLED", reused.getRows().get(0).getEntries().get(0).getValue());
+        assertEquals(1L, reused.getRows().get(0).getEntries().get(1).getValue());
+        assertNull(reused.getRows().get(0).getEntries().get(2).getValue());
+        assertNull(keyStore.get("orders", "order_10", new String[]{"status"}).getRows().get(0).getEntries().get(0).getValue());
+        assertEquals(3_414, keyStore.search("orders", new Entry("status", "NEW")).size());
+    }
+
+    @Test
+    public void itShouldKeepWritesToChunksBeingSealed() throws Exception {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("orders");
+        for (int i = 0; i < 1_024; i++) {
+            keyStore.putAll("orders", "order_" + i, Arrays.asList(new Entry("status", "NEW"), new Entry("amount", 0L)));
+        }
+        // the first chunk is encoded without locks while its rows keep changing, a write must never be lost to a seal
+        AtomicBoolean stopped = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<long[]> writer = executor.submit(() -> {
+            long[] amounts = new long[1_024];
+            for (long round = 1; !stopped.get(); round++) {
+                for (int i = 0; i < 1_024; i++) {
+                    keyStore.update("orders", "order_" + i, Arrays.asList(new Entry("status", round % 2 == 0 ? "NEW" : "PAID"), new Entry("amount", round)));
+                    amounts[i] = round;
+                }
+            }
+            return amounts;
+        });
+        for (int i = 1_024; i < 8_192; i++) {
+            keyStore.putAll("orders", "order_" + i, Arrays.asList(new Entry("status", "NEW"), new Entry("amount", (long) i)));
+        }
+        // every pass re-encodes the first chunk once a quarter of it was rewritten
+        Table table = TableRegistry.getTable("orders").get();
+        for (int i = 0; i < 500; i++) {
+            table.compact();
+        }
+        stopped.set(true);
+        long[] amounts = writer.get();
+        executor.shutdown();
+        table.compact();
+        for (int i = 0; i < 1_024; i++) {
+            List<Entry> row = keyStore.get("orders", "order_" + i, new String[]{"status", "amount"}).getRows().get(0).getEntries();
+            assertEquals(amounts[i], row.get(1).getValue());
+            assertEquals(amounts[i] % 2 == 0 ? "NEW" : "PAID", row.get(0).getValue());
+        }
+        assertEquals(8_191L, table.getLong("order_8191", "amount", -1L));
+        ObjectColumnVector plain = new ObjectColumnVector();
+        for (int rowId = 0; rowId < 8_192; rowId++) {
+            plain.set(rowId, "NEW");
+        }
+        assertTrue(table.getAttributesMap().get("status").getValues().sizeInBytes() * 4 < plain.sizeInBytes());
+    }
+
+    @Test
+    public void itShouldReadSnapshotsWhileRowsAreUpdated() {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("accounts");
+        keyStore.upsert("accounts", "alice", Arrays.asList(new Entry("balance", 100L), new Entry("tier", "gold")));
+        keyStore.putAll("accounts", "bob", Arrays.asList(new Entry("balance", 50L), new Entry("tier", "silver")));
+        String[] columns = {"balance", "tier"};
+
+        Table table = TableRegistry.getTable("accounts").get();
+        try (TableSnapshot snapshot = keyStore.snapshot("accounts")) {
+            keyStore.update("accounts", "alice", Collections.singletonList(new Entry("tier", "platinum")));
+            keyStore.upsert("accounts", "alice", Collections.singletonList(new Entry("balance", 250L)));
+            keyStore.delete("accounts", "bob");
+            keyStore.putAll("accounts", "carol", Collections.singletonList(new Entry("balance", 10L)));
+
+            ResultSet alice = keyStore.get("accounts", "alice", columns);
+            assertEquals(250L, alice.getRows().get(0).getEntries().get(0).getValue());
+            assertEquals("platinum", alice.getRows().get(0).getEntries().get(1).getValue());
+            assertEquals(Collections.singletonList("alice"), keyStore.search("accounts", new Entry("tier", "platinum")));
+            assertTrue(keyStore.search("accounts", new Entry("tier", "gold")).isEmpty());
+
+            ResultSet before = snapshot.getAll(Arrays.asList("alice", "bob", "carol"), columns);
+            assertEquals(100L, before.getRows().get(0).getEntries().get(0).getValue());
+            assertEquals("gold", before.getRows().get(0).getEntries().get(1).getValue());
+            assertEquals(50L, before.getRows().get(1).getEntries().get(0).getValue());
+            assertNull(before.getRows().get(2).getEntries().get(0).getValue());
+            assertTrue(table.collectVersions() > 0);
+        }
+        assertEquals(0, table.collectVersions());
+
+        assertThrows(KeyDoesNotExistsException.class, () -> keyStore.update("accounts", "bob", Collections.singletonList(new Entry("balance", 1L))));
+        assertThrows(InvalidDatatypeException.class, () -> keyStore.upsert("accounts", "alice", Collections.singletonList(new Entry("balance", "x"))));
+        assertEquals(250L, keyStore.get("accounts", "alice", columns).getRows().get(0).getEntries().get(0).getValue());
+    }
+
+    @Test
+    public void itShouldExpireRowsAfterTheirTtl() throws InterruptedException {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("sessions");
+        for (int i = 0; i < 2_000; i++) {
+            keyStore.putAll("sessions", "session_" + i, Arrays.asList(new Entry("user", "user_" + i % 10), new Entry("hits", i)), 150);
+        }
+        keyStore.put("sessions", "session_keep", new Entry("user", "user_0"));
+        keyStore.put("sessions", "session_long", new Entry("user", "user_0"), 60_000);
+        assertEquals("user_7", keyStore.get("sessions", "session_7", new String[]{"user"}).getRows().get(0).getEntries().get(0).getValue());
+        assertEquals(202, keyStore.search("sessions", new Entry("user", "user_0")).size());
+
+        Thread.sleep(200);
+        // hidden on read right away, whether or not the sweeper got to them
+        assertNull(keyStore.get("sessions", "session_7", new String[]{"user"}).getRows().get(0).getEntries().get(0).getValue());
+        assertEquals(2, keyStore.search("sessions", new Entry("user", "user_0")).size());
+        keyStore.put("sessions", "session_7", new Entry("user", "user_x"));
+        assertEquals("user_x", keyStore.get("sessions", "session_7", new String[]{"user"}).getRows().get(0).getEntries().get(0).getValue());
+
+        Table table = TableRegistry.getTable("sessions").get();
+        for (int i = 0; i < 100 && table.size() > 3; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(3, table.size());
+        assertNull(table.getAttributesMap().get("user").getValueIdMap().get("user_3"));
+        assertThrows(IllegalArgumentException.class, () -> keyStore.put("sessions", "session_0", new Entry("user", "user_0"), 0));
+    }
+
+    @Test
+    public void itShouldKeepSweepingWhenATableFailsToExpireRows() throws InterruptedException {
+        AtomicBoolean journalClosed = new AtomicBoolean(true);
+        Table failing = new Table("failing_sessions");
+        failing.setJournal(new TableJournal() {
+            @Override
+            public long logInsert(Table table, String key, List<Entry> entries, long expiresAtMillis) {
+                return 0;
+            }
+
+            @Override
+            public long logDelete(Table table, String key) {
+                if (journalClosed.get()) {
+                    throw new IllegalStateException("journal closed");
+                }
+                return 0;
+            }
+        });
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("sessions");
+        for (int i = 0; i < 100; i++) {
+            failing.insertRecord("session_" + i, Arrays.asList(new Entry("user", "user_" + i)), System.currentTimeMillis() + 50);
+            keyStore.put("sessions", "session_" + i, new Entry("user", "user_" + i), 50);
+        }
+
+        // the sweeper survives the failing table and goes on with the others
+        Table sessions = TableRegistry.getTable("sessions").get();
+        for (int i = 0; i < 100 && sessions.size() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, sessions.size());
+        assertEquals(100, failing.size());
+
+        // the keys that failed were put back on the wheel and go once the journal works again
+        journalClosed.set(false);
+        for (int i = 0; i < 100 && failing.size() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, failing.size());
+    }
+
+    @Test
+    public void itShouldEvictColdRowsBeyondTheMemoryBudget() throws Exception {
+        Path spillDirectory = Files.createTempDirectory("spill");
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("users", TableConfig.defaults().withMemoryBudget(64 * 1024, spillDirectory));
+        for (int i = 0; i < 5_000; i++) {
+            keyStore.putAll("users", "user_" + i, Arrays.asList(new Entry("name", "User " + i), new Entry("age", 20 + i % 50)));
+        }
+        Table table = TableRegistry.getTable("users").get();
+        // about 57 estimated bytes a row, roughly a thousand rows fit
+        assertTrue(table.stats().getEvictedRows() > 3_500);
+        assertTrue(table.stats().getSpillFileBytes() > 0);
+
+        // evicted rows are faulted back in on get and still found through their postings
+        ResultSet row = keyStore.get("users", "user_1", new String[]{"name", "age"});
+        assertEquals("User 1", row.getRows().get(0).getEntries().get(0).getValue());
+        assertEquals(21, row.getRows().get(0).getEntries().get(1).getValue());
+        assertEquals(100, keyStore.search("users", new Entry("age", 33)).size());
+        ResultSet all = keyStore.getAll("users", keyStore.search("users", new Entry("age", 33)), new String[]{"name", "age"});
+        all.getRows().forEach(r -> assertEquals(33, r.getEntries().get(1).getValue()));
+        assertEquals(40, table.getInt("user_4020", "age", -1));
+
+        keyStore.update("users", "user_2", Collections.singletonList(new Entry("age", 99)));
+        assertEquals(Collections.singletonList("user_2"), keyStore.search("users", new Entry("age", 99)));
+        keyStore.delete("users", "user_3");
+        assertEquals(99, keyStore.search("users", new Entry("age", 23)).size());
+        assertNull(keyStore.get("users", "user_3", new String[]{"name"}).getRows().get(0).getEntries().get(0).getValue());
+    }
+
+    @Test
+    public void itShouldSpreadEvictionOverTheWritesOverBudget() throws Exception {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("users", TableConfig.defaults().withMemoryBudget(512 * 1024, Files.createTempDirectory("spill")));
+        for (int i = 0; i < 5_000; i++) {
+            keyStore.putAll("users", "user_" + i, Arrays.asList(new Entry("name", "User " + i), new Entry("age", 20 + i % 50)));
+        }
+        Table table = TableRegistry.getTable("users").get();
+        long before = table.stats().getEvictedRows();
+        // takes the table a whole budget over, one put does not walk every row to make up for it
+        keyStore.put("users", "avatar", new Entry("name", "x".repeat(1 << 20)));
+        long after = table.stats().getEvictedRows();
+        assertTrue(after - before <= 1_024);
+        for (int i = 0; i < 50; i++) {
+            keyStore.put("users", "late_" + i, new Entry("age", i));
+        }
+        assertTrue(table.stats().getEvictedRows() > after);
+        assertEquals("User 7", keyStore.get("users", "user_7", new String[]{"name"}).getRows().get(0).getEntries().get(0).getValue());
+    }
+
+    @Test
+    public void itShouldAggregateColumnsInsideTheStore() {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities");
+        long populationSum = 0;
+        for (int i = 0; i < 3_000; i++) {
+            List<Entry> entries = new ArrayList<>(Arrays.asList(new Entry("radiations", i % 10),
+                    new Entry("latitude", i * 0.5), new Entry("region", "region_" + i % 3)));
+            if (i % 100 != 0) {
+                entries.add(new Entry("population", (long) i));
+                populationSum += i;
+            }
+            keyStore.putAll("cities", "city_" + i, entries);
+        }
+
+        assertEquals(2_970L, keyStore.aggregate("cities", "population", Aggregate.COUNT, null, null).getValue());
+        assertEquals(populationSum, keyStore.aggregate("cities", "population", Aggregate.SUM, null, null).getValue());
+        assertEquals(1L, keyStore.aggregate("cities", "population", Aggregate.MIN, null, null).getValue());
+        assertEquals(2_999L, keyStore.aggregate("cities", "population", Aggregate.MAX, null, null).getValue());
+        assertEquals(13_500L, keyStore.aggregate("cities", "radiations", Aggregate.SUM, null, null).getValue());
+        assertEquals(1_499.5, keyStore.aggregate("cities", "latitude", Aggregate.MAX, null, null).getValue());
+        assertEquals(749.75, keyStore.aggregate("cities", "latitude", Aggregate.AVG, null, null).getValue());
+        assertEquals(3_000L, keyStore.aggregate("cities", "region", Aggregate.COUNT, null, null).getValue());
+
+        // filter and group by go through the postings of the secondary index
+        assertEquals(2_700L, keyStore.aggregate("cities", "radiations", Aggregate.SUM, eq("radiations", 9), null).getValue());
+        AggregateResult byRegion = keyStore.aggregate("cities", "radiations", Aggregate.COUNT, eq("radiations", 0), "region");
+        assertNull(byRegion.getValue());
+        assertEquals(Arrays.asList("region_0", "region_1", "region_2"), new ArrayList<>(byRegion.getGroups().keySet()));
+        assertEquals(100L, byRegion.getGroups().get("region_1"));
+
+        keyStore.delete("cities", "city_2999");
+        assertEquals(2_998L, keyStore.aggregate("cities", "population", Aggregate.MAX, null, null).getValue());
+        assertNull(keyStore.aggregate("cities", "population", Aggregate.MIN, eq("radiations", 42), null).getValue());
+        assertThrows(InvalidDatatypeException.class, () -> keyStore.aggregate("cities", "region", Aggregate.SUM, null, null));
+        assertThrows(AttributeDoesNotExistsException.class, () -> keyStore.aggregate("cities", "altitude", Aggregate.COUNT, null, null));
+    }
+
+    @Test
+    public void itShouldCoalesceConcurrentPutsIntoBatches() throws Exception {
+        InstrumentedKeyStore instrumented = new InstrumentedKeyStore(new ColumnKeyStore());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        try (AsyncKeyStore keyStore = new AsyncKeyStore(instrumented, executor, 1_000)) {
+            keyStore.createTable("cities").get();
+            // the only executor thread is held while the puts queue up, they are written as one group
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            List<CompletableFuture<Void>> puts = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                puts.add(keyStore.putAll("cities", "city_" + i, Arrays.asList(new Entry("latitude", (double) (i % 10)), new Entry("name", "City " + i))));
+            }
+            CompletableFuture<Void> again = keyStore.put("cities", "city_1", new Entry("name", "Again"));
+            CompletableFuture<Void> invalid = keyStore.put("cities", "city_500", new Entry("latitude", "north"));
+            release.countDown();
+            CompletableFuture.allOf(puts.toArray(new CompletableFuture<?>[0])).get();
+
+            ExecutionException duplicate = assertThrows(ExecutionException.class, again::get);
+            assertTrue(duplicate.getCause() instanceof KeyAlreadyExistsException);
+            ExecutionException datatype = assertThrows(ExecutionException.class, invalid::get);
+            assertTrue(datatype.getCause() instanceof InvalidDatatypeException);
+            // the second put of city_1 is deferred to a group of its own
+            assertEquals(2, instrumented.snapshot().getLatency(Operation.PUT_BATCH).getCount());
+            assertEquals(50, keyStore.search("cities", new Entry("latitude", 3.0)).get().size());
+            assertEquals("City 7", keyStore.get("cities", "city_7", new String[]{"name"}).get().getRows().get(0).getEntries().get(0).getValue());
+
+            // callers racing on one key: exactly one insert wins
+            ExecutorService callers = Executors.newFixedThreadPool(8);
+            List<Future<Boolean>> racing = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                int caller = i;
+                racing.add(callers.submit(() -> {
+                    try {
+                        keyStore.put("cities", "contested", new Entry("name", "Caller " + caller)).get();
+                        return true;
+                    } catch (ExecutionException e) {
+                        return false;
+                    }
+                }));
+            }
+            int won = 0;
+            for (Future<Boolean> result : racing) {
+                won += result.get() ? 1 : 0;
+            }
+            callers.shutdown();
+            assertEquals(1, won);
+            assertThrows(ExecutionException.class, () -> keyStore.put("towns", "town_1", new Entry("name", "Town")).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void itShouldFailQueuedPutsWhenTheStoreThrowsAnError() throws Exception {
+        Error failure = new Error("store failed");
+        IKeyStore failing = new InstrumentedKeyStore(new ColumnKeyStore()) {
+            @Override
+            public BatchResult putBatch(String tableName, Map<String, List<Entry>> rows) {
+                throw failure;
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        try (AsyncKeyStore keyStore = new AsyncKeyStore(failing, executor, 1_000)) {
+            keyStore.createTable("cities").get();
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            // city_1 twice: the second put is deferred behind the group that fails
+            List<CompletableFuture<Void>> puts = Arrays.asList(keyStore.put("cities", "city_1", new Entry("name", "City 1")),
+                    keyStore.put("cities", "city_2", new Entry("name", "City 2")),
+                    keyStore.put("cities", "city_1", new Entry("name", "Again")));
+            release.countDown();
+            for (CompletableFuture<Void> put : puts) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> put.get(10, TimeUnit.SECONDS));
+                assertSame(failure, e.getCause());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void itShouldAnswerARequestWhoseResultCanNotBeEncoded() throws Exception {
+        ColumnKeyStore store = new ColumnKeyStore();
+        store.createTable("events");
+        // stored in process, the wire codec has no tag for it
+        store.put("events", "launch", new Entry("day", LocalDate.of(2024, 1, 1)));
+        store.put("events", "landing", new Entry("name", "Landing"));
+        KeyStoreServer server = KeyStoreServer.start(store, ServerConfig.of(0));
+        try (RemoteKeyStore keyStore = RemoteKeyStore.connect("localhost", server.getPort())) {
+            CompletableFuture<ResultSet> launch = keyStore.getAsync("events", "launch", new String[]{"day"});
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> launch.get(10, TimeUnit.SECONDS));
+            assertTrue(failure.getCause() instanceof InvalidDatatypeException);
+            // the connection is still in step
+            assertEquals("Landing", keyStore.get("events", "landing", new String[]{"name"}).getRows().get(0).getEntries().get(0).getValue());
+            assertEquals(0, keyStore.getPendingRequests());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void itShouldServeTheKeyStoreOverLoopback() throws Exception {
+        KeyStoreServer server = KeyStoreServer.start(new ColumnKeyStore(), ServerConfig.of(0).withEventLoops(2).withWorkerThreads(4));
+        try (RemoteKeyStore keyStore = RemoteKeyStore.connect("localhost", server.getPort())) {
+            assertTrue(keyStore.createTable("cities", TableConfig.defaults().withRangeIndex("latitude")));
+            assertFalse(keyStore.createTable("cities"));
+            keyStore.putAll("cities", "delhi", Arrays.asList(new Entry("latitude", 28.7), new Entry("pollution_level", "high")));
+            Map<String, List<Entry>> rows = new LinkedHashMap<>();
+            for (int i = 0; i < 200; i++) {
+                rows.put(String.format("city_%03d", i), Arrays.asList(new Entry("latitude", (double) (i % 20)), new Entry("population", (long) i)));
+            }
+            rows.put("delhi", Arrays.asList(new Entry("latitude", 1.0)));
+            BatchResult batch = keyStore.putBatch("cities", rows);
+            assertEquals(200, batch.getInsertedCount());
+            assertTrue(batch.getFailures().get("delhi") instanceof KeyAlreadyExistsException);
+
+            ResultSet delhi = keyStore.get("cities", "delhi", new String[]{"latitude", "pollution_level", "population"});
+            assertEquals(28.7, delhi.getRows().get(0).getEntries().get(0).getValue());
+            assertEquals("high", delhi.getRows().get(0).getEntries().get(1).getValue());
+            assertNull(delhi.getRows().get(0).getEntries().get(2).getValue());
+            assertEquals(Arrays.asList("delhi"), keyStore.search("cities", new Entry("pollution_level", "high")));
+            assertEquals(20, keyStore.search("cities", or(eq("latitude", 3.0), eq("latitude", 4.0))).size());
+            assertEquals(30, keyStore.searchRange("cities", "latitude", 0.0, 2.0, new String[]{"population"}).getRows().size());
+            assertEquals(19_900L, keyStore.aggregate("cities", "population", Aggregate.SUM, null, null).getValue());
+            assertEquals(10L, keyStore.aggregate("cities", "population", Aggregate.COUNT, null, "latitude").getGroups().get(5.0));
+
+            // pipelined: every request is written before the first response is read
+            List<CompletableFuture<ResultSet>> gets = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                gets.add(keyStore.getAsync("cities", String.format("city_%03d", i), new String[]{"population"}));
+            }
+            for (int i = 0; i < 200; i++) {
+                assertEquals((long) i, gets.get(i).get().getRows().get(0).getEntries().get(0).getValue());
+            }
+
+            TableSnapshot snapshot = keyStore.snapshot("cities");
+            keyStore.update("cities", "delhi", Arrays.asList(new Entry("pollution_level", "moderate")));
+            assertEquals("high", snapshot.get("delhi", new String[]{"pollution_level"}).getRows().get(0).getEntries().get(0).getValue());
+            snapshot.close();
+
+            ScanCursor cursor = keyStore.scan("cities", "city_050", "city_100", new String[]{"population"}, 20);
+            assertEquals("city_050", cursor.next().getKey());
+            ScanCursor resumed = keyStore.resumeScan("cities", cursor.getContinuationToken(), new String[]{"population"}, 20);
+            List<String> keys = new ArrayList<>();
+            resumed.forEachRemaining(row -> keys.add(row.getKey()));
+            assertEquals(49, keys.size());
+            assertEquals("city_051", keys.get(0));
+
+            keyStore.delete("cities", "delhi");
+            assertThrows(KeyAlreadyExistsException.class, () -> keyStore.put("cities", "city_001", new Entry("latitude", 0.0)));
+            assertThrows(TableDoesNotExistsException.class, () -> keyStore.get("towns", "town", new String[]{"name"}));
+            assertThrows(InvalidDatatypeException.class, () -> keyStore.aggregate("cities", "pollution_level", Aggregate.SUM, null, null));
+            assertEquals(0, keyStore.getPendingRequests());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void itShouldPartitionTablesOverShardsAndResize() {
+        try (ShardedKeyStore keyStore = new ShardedKeyStore(4, ShardedKeyStore.DEFAULT_VIRTUAL_NODES, true)) {
+            assertTrue(keyStore.createTable("cities"));
+            assertFalse(keyStore.createTable("cities"));
+            Map<String, List<Entry>> rows = new LinkedHashMap<>();
+            for (int i = 0; i < 1000; i++) {
+                rows.put(String.format("city_%04d", i), Arrays.asList(new Entry("latitude", (double) (i % 10)), new Entry("population", (long) i)));
+            }
+            assertEquals(1000, keyStore.putBatch("cities", rows).getInsertedCount());
+            keyStore.put("cities", "delhi", new Entry("pollution_level", "high"), 60_000);
+            assertThrows(KeyAlreadyExistsException.class, () -> keyStore.put("cities", "city_0001", new Entry("latitude", 0.0)));
+            assertEquals(0, TableRegistry.tablesCount());
+
+            ResultSet some = keyStore.getAll("cities", Arrays.asList("city_0999", "city_0003", "city_0500"), new String[]{"population"});
+            assertEquals(Arrays.asList(999L, 3L, 500L), some.getRows().stream()
+                    .map(row -> row.getEntries().get(0).getValue()).collect(Collectors.toList()));
+            assertEquals(100, keyStore.search("cities", new Entry("latitude", 3.0)).size());
+            assertEquals(Arrays.asList("delhi"), keyStore.search("cities", new Entry("pollution_level", "high")));
+
+            ResultSet range = keyStore.searchRange("cities", "latitude", 8.0, null, new String[]{"population"}, 150);
+            assertEquals(150, range.getRows().size());
+            assertEquals(1, range.getRows().get(0).getEntries().size());
+            assertEquals(100, range.getRows().stream().filter(row -> (Long) row.getEntries().get(0).getValue() % 10 == 8).count());
+
+            assertEquals(499_500L, keyStore.aggregate("cities", "population", Aggregate.SUM, null, null).getValue());
+            assertEquals(999L, keyStore.aggregate("cities", "population", Aggregate.MAX, null, null).getValue());
+            AggregateResult average = keyStore.aggregate("cities", "population", Aggregate.AVG, null, "latitude");
+            assertEquals(Arrays.asList(0.0, 1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 7.0, 8.0, 9.0), new ArrayList<>(average.getGroups().keySet()));
+            assertEquals(495.0, average.getGroups().get(0.0));
+
+            ScanCursor cursor = keyStore.scan("cities", "city_0100", "city_0200", new String[]{"population"}, 16);
+            assertEquals(16, cursor.nextPage().getRows().size());
+            ScanCursor resumed = keyStore.resumeScan("cities", cursor.getContinuationToken(), new String[]{"population"}, 16);
+            List<String> keys = new ArrayList<>();
+            resumed.forEachRemaining(row -> keys.add(row.getKey()));
+            assertEquals(84, keys.size());
+            assertEquals("city_0116", keys.get(0));
+            assertEquals("city_0199", keys.get(83));
+
+            TableSnapshot snapshot = keyStore.snapshot("cities");
+            keyStore.update("cities", "city_0042", Arrays.asList(new Entry("population", -1L)));
+
+            // growing to 5 shards only moves the keys the new shard takes over
+            long moved = keyStore.resize(5);
+            assertEquals(5, keyStore.getShardCount());
+            assertTrue(moved > 0 && moved < 400, "moved " + moved);
+            assertEquals(42L, snapshot.get("city_0042", new String[]{"population"}).getRows().get(0).getEntries().get(0).getValue());
+            snapshot.close();
+            assertEquals(-1L, keyStore.get("cities", "city_0042", new String[]{"population"}).getRows().get(0).getEntries().get(0).getValue());
+            assertEquals("high", keyStore.get("cities", "delhi", new String[]{"pollution_level"}).getRows().get(0).getEntries().get(0).getValue());
+            assertEquals(1000L, keyStore.aggregate("cities", "population", Aggregate.COUNT, null, null).getValue());
+
+            keyStore.resize(2);
+            assertEquals(100, keyStore.search("cities", new Entry("latitude", 3.0)).size());
+            keyStore.delete("cities", "city_0001");
+            assertEquals(999L, keyStore.aggregate("cities", "population", Aggregate.COUNT, null, null).getValue());
+            assertThrows(TableDoesNotExistsException.class, () -> keyStore.get("towns", "town", new String[]{"name"}));
+            assertThrows(AttributeDoesNotExistsException.class, () -> keyStore.search("cities", new Entry("area", 1)));
+        }
+    }
+
+    @Test
+    public void itShouldReplicateTheLeaderToReadReplicas() throws Exception {
+        ColumnKeyStore leader = new ColumnKeyStore();
+        leader.createTable("cities", TableConfig.defaults().withRangeIndex("latitude"));
+        for (int i = 0; i < 100; i++) {
+            leader.putAll("cities", "city_" + i, Arrays.asList(new Entry("latitude", (double) i), new Entry("pollution_level", i % 2 == 0 ? "high" : "low")));
+        }
+        ReplicationLog log = leader.enableReplication(256);
+        assertSame(log, leader.enableReplication(256));
+        ReplicationServer server = ReplicationServer.start(log, 0);
+        try (SocketReplicationSource source = new SocketReplicationSource("localhost", server.getPort())) {
+            ReplicaKeyStore local = new ReplicaKeyStore(log);
+            ReplicaKeyStore remote = new ReplicaKeyStore(source, 16);
+            // the snapshot covers the rows written before replication was enabled
+            assertEquals(50, local.search("cities", new Entry("pollution_level", "high")).size());
+            assertEquals(50, remote.search("cities", new Entry("pollution_level", "high")).size());
+
+            leader.createTable("towns");
+            leader.put("towns", "nainital", new Entry("latitude", 29.4));
+            leader.update("cities", "city_1", Arrays.asList(new Entry("pollution_level", "high")));
+            leader.delete("cities", "city_2");
+            Map<String, List<Entry>> rows = new LinkedHashMap<>();
+            for (int i = 100; i < 200; i++) {
+                rows.put("city_" + i, Arrays.asList(new Entry("latitude", (double) i)));
+            }
+            leader.putBatch("cities", rows);
+            long written = log.getLastSequenceOfThread();
+            assertEquals(log.getLastSequence(), written);
+
+            for (ReplicaKeyStore replica : Arrays.asList(local, remote)) {
+                assertTrue(replica.awaitSequence(written, 5_000));
+                assertEquals(0, replica.getLagRecords());
+                assertEquals(0, replica.getLagMillis());
+                assertEquals(29.4, replica.get("towns", "nainital", new String[]{"latitude"}).getRows().get(0).getEntries().get(0).getValue());
+                assertEquals("high", replica.get("cities", "city_1", new String[]{"pollution_level"}).getRows().get(0).getEntries().get(0).getValue());
+                assertNull(replica.get("cities", "city_2", new String[]{"latitude"}).getRows().get(0).getEntries().get(0).getValue());
+                assertEquals(50, replica.searchRange("cities", "latitude", 150.0, null, new String[]{"latitude"}).getRows().size());
+                assertThrows(UnsupportedOperationException.class, () -> replica.put("cities", "city_0", new Entry("latitude", 0.0)));
+            }
+
+            // a replica behind the retained records loads a new snapshot
+            local.close();
+            for (int i = 0; i < 300; i++) {
+                leader.put("towns", "town_" + i, new Entry("latitude", (double) i));
+            }
+            assertThrows(ReplicationLogTruncatedException.class, () -> log.poll(written, 10, 0));
+            assertTrue(remote.awaitSequence(log.getLastSequence(), 5_000));
+            assertEquals(301, remote.searchRange("towns", "latitude", null, null, new String[]{"latitude"}).getRows().size());
+            remote.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void itShouldGetFullRowsOfWideSparseTables() throws Exception {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("sensors");
+        // 200 columns, each row sets a handful of them on both sides of the first presence word
+        for (int i = 0; i < 200; i++) {
+            keyStore.put("sensors", "warmup_" + i, new Entry("reading_" + i, (long) i));
+        }
+        keyStore.putAll("sensors", "probe", Arrays.asList(new Entry("reading_3", 3L), new Entry("reading_70", 70L),
+                new Entry("reading_199", 199L)));
+        List<Entry> entries = keyStore.get("sensors", "probe").getRows().get(0).getEntries();
+        assertEquals(Arrays.asList("reading_3", "reading_70", "reading_199"),
+                entries.stream().map(Entry::getName).collect(Collectors.toList()));
+        assertEquals(199L, entries.get(2).getValue());
+
+        keyStore.update("sensors", "probe", Arrays.asList(new Entry("reading_128", 128L)));
+        assertEquals(4, keyStore.get("sensors", "probe").getRows().get(0).getEntries().size());
+        assertTrue(keyStore.get("sensors", "missing").getRows().get(0).getEntries().isEmpty());
+
+        // the delete leaves no posting behind and the reused row id carries none of the old columns
+        keyStore.delete("sensors", "probe");
+        assertEquals(Arrays.asList("warmup_70"), keyStore.search("sensors", new Entry("reading_70", 70L)));
+        Table table = TableRegistry.getTable("sensors").get();
+        assertEquals(1, table.getAttributesMap().get("reading_199").getValueIdMap().size());
+        keyStore.put("sensors", "probe", new Entry("reading_5", 5L));
+        assertEquals(1, keyStore.get("sensors", "probe").getRows().get(0).getEntries().size());
+
+        // a snapshot keeps the full row it saw
+        try (TableSnapshot snapshot = keyStore.snapshot("sensors")) {
+            keyStore.update("sensors", "probe", Arrays.asList(new Entry("reading_150", 150L)));
+            assertEquals(1, snapshot.get("probe", null).getRows().get(0).getEntries().size());
+        }
+
+        // presence is rebuilt from the postings of a checkpoint
+        Path directory = Files.createTempDirectory("presence");
+        table.checkpoint(directory);
+        Table reopened = Table.open(directory);
+        assertEquals(2, reopened.fetchRow("probe").getRows().get(0).getEntries().size());
+        assertEquals(100L, reopened.fetchRow("warmup_100").getRows().get(0).getEntries().get(0).getValue());
+    }
+
+    @Test
+    public void itShouldPlanFilterExpressionsOverIndexesAndColumns() throws Exception {
+        IKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities", TableConfig.defaults().withRangeIndex("population"));
+        String[] names = {"jakarta", "jaipur", "japan town", "delhi", "jammu", "kochi"};
+        Map<String, List<Entry>> rows = new LinkedHashMap<>();
+        for (int i = 0; i < 6000; i++) {
+            rows.put("city_" + i, Arrays.asList(new Entry("status", i % 50 == 0 ? "ACTIVE" : "INACTIVE"),
+                    new Entry("latitude", (i % 180) - 90.0 + i / 10_000.0), new Entry("name", names[i % names.length] + "_" + i),
+                    new Entry("population", (long) i)));
+        }
+        keyStore.putBatch("cities", rows);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 6000; i++) {
+            if (i % 50 == 0 && (i % 180) - 90.0 + i / 10_000.0 < 0 && names[i % names.length].startsWith("ja")) {
+                expected.add("city_" + i);
+            }
+        }
+
+        Predicate[] filter = {like("name", "ja%"), lt("latitude", 0.0), eq("status", "ACTIVE")};
+        assertEquals(expected, keyStore.search("cities", filter));
+        // the posting of ACTIVE drives, the columns without index only check its 120 rows
+        Table table = TableRegistry.getTable("cities").get();
+        assertTrue(table.explain(filter).startsWith("(status = ACTIVE [120] THEN "), table.explain(filter));
+        ResultSet projected = keyStore.search("cities", new String[]{"name"}, filter);
+        assertEquals(expected.size(), projected.getRows().size());
+        assertEquals(1, projected.getRows().get(0).getEntries().size());
+
+        // a narrow range over the range index drives instead
+        Predicate[] narrow = {eq("status", "INACTIVE"), between("population", 100L, 109L), like("name", "%pur%")};
+        assertTrue(table.explain(narrow).startsWith("(population >= 100 AND population <= 109 [10] THEN "), table.explain(narrow));
+        assertEquals(Arrays.asList("city_103", "city_109"), keyStore.search("cities", narrow));
+        assertEquals(Arrays.asList("city_103", "city_104", "city_109"),
+                keyStore.search("cities", between("population", 100L, 109L), or(like("name", "ja_pur%"), like("name", "japan%"))));
+        assertEquals(5, keyStore.search("cities", gt("population", 5994L)).size());
+        assertEquals(0, keyStore.search("cities", between("population", 9L, 1L)).size());
+        assertEquals(120L, keyStore.aggregate("cities", "population", Aggregate.COUNT, and(eq("status", "ACTIVE"), ge("latitude", -90.0)), null).getValue());
+        assertThrows(InvalidDatatypeException.class, () -> keyStore.search("cities", lt("latitude", 0L)));
+        assertThrows(InvalidDatatypeException.class, () -> keyStore.search("cities", like("population", "1%")));
+
+        // ranges and patterns travel to a remote store
+        KeyStoreServer server = KeyStoreServer.start(keyStore, ServerConfig.of(0));
+        try (RemoteKeyStore remote = RemoteKeyStore.connect("localhost", server.getPort())) {
+            assertEquals(expected, remote.search("cities", filter));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void itShouldStreamChangesToSubscribers() throws Exception {
+        ColumnKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities");
+        ChangeRing ring = keyStore.enableChangeCapture("cities", 16);
+        List<ChangeEvent> blocked = Collections.synchronizedList(new ArrayList<>());
+        Subscription blocking = keyStore.subscribe("cities", 1, blocked::addAll, SubscriptionConfig.defaults().withBackpressure(Backpressure.BLOCK));
+        // a handler slower than the writers, the small ring laps it
+        Subscription dropping = keyStore.subscribe("cities", ChangeRing.LATEST, events -> sleep(1),
+                SubscriptionConfig.defaults().withBackpressure(Backpressure.DROP).withMaxBatch(4));
+        CountDownLatch release = new CountDownLatch(1);
+        List<ChangeEvent> spilled = Collections.synchronizedList(new ArrayList<>());
+        Subscription spilling = keyStore.subscribe("cities", 1, events -> {
+            awaitLatch(release);
+            spilled.addAll(events);
+        }, SubscriptionConfig.defaults().withBackpressure(Backpressure.SPILL).withSpill(8, Files.createTempDirectory("cdc")));
+
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            int first = writer * 250;
+            futures.add(writers.submit(() -> {
+                for (int i = first; i < first + 250; i++) {
+                    keyStore.put("cities", "city_" + i, new Entry("latitude", (double) i));
+                    List<Entry> name = new ArrayList<>(Arrays.asList(new Entry("name", "City " + i)));
+                    keyStore.update("cities", "city_" + i, name);
+                    // the ring holds a copy, the caller may reuse its list
+                    name.clear();
+                    keyStore.delete("cities", "city_" + i);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        writers.shutdown();
+        assertEquals(3000L, ring.getLastSequence());
+        assertTrue(spilling.getSpilledEvents() > 8);
+        assertTrue(spilling.getLagEvents() > 0);
+        assertTrue(spilling.getLagMillis() >= 0);
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((blocking.getDeliveredSequence() < 3000 || spilling.getDeliveredSequence() < 3000) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        for (List<ChangeEvent> events : Arrays.asList(blocked, spilled)) {
+            assertEquals(3000, events.size());
+            Map<String, List<ChangeEvent.Type>> byKey = new LinkedHashMap<>();
+            for (int i = 0; i < events.size(); i++) {
+                assertEquals(i + 1L, events.get(i).getSequence());
+                byKey.computeIfAbsent(events.get(i).getKey(), key -> new ArrayList<>()).add(events.get(i).getType());
+            }
+            assertEquals(1000, byKey.size());
+            byKey.values().forEach(types -> assertEquals(Arrays.asList(ChangeEvent.Type.INSERT, ChangeEvent.Type.UPDATE, ChangeEvent.Type.DELETE), types));
+        }
+        assertEquals(0L, blocking.getLagEvents());
+        assertEquals(0L, spilling.getSpilledEvents());
+        assertEquals("City 7", blocked.stream().filter(event -> event.getKey().equals("city_7") && event.getType() == ChangeEvent.Type.UPDATE)
+                .findFirst().get().getEntries().get(0).getValue());
+        assertTrue(dropping.getDroppedEvents() > 0);
+        assertNull(dropping.getFailure());
+        assertThrows(IllegalArgumentException.class, () -> keyStore.subscribe("cities", 2, events -> {
+        }));
+        keyStore.close();
+        assertTrue(blocking.isClosed() && dropping.isClosed() && spilling.isClosed());
+    }
+
+    @Test
+    public void itShouldNotHoldUpWritersBehindASlowSubscriberByDefault() throws Exception {
+        ColumnKeyStore keyStore = new ColumnKeyStore();
+        keyStore.createTable("cities");
+        keyStore.enableChangeCapture("cities", 16);
+        // reads and writes the table it follows and is slower than the writers. Under BLOCK a full ring parks a
+        // writer, the handler's own write then waits behind that writer's version and neither ever returns
+        List<Object> seen = Collections.synchronizedList(new ArrayList<>());
+        Subscription subscription = keyStore.subscribe("cities", 1, events -> {
+            for (ChangeEvent event : events) {
+                if (event.getKey().startsWith("city_")) {
+                    Object name = keyStore.get("cities", event.getKey(), new String[]{"name"}).getRows().get(0).getEntries().get(0).getValue();
+                    keyStore.upsert("cities", "last_seen", Collections.singletonList(new Entry("name", event.getKey())));
+                    seen.add(name);
+                }
+            }
+            sleep(20);
+        });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> {
+            for (int i = 0; i < 1_000; i++) {
+                keyStore.put("cities", "city_" + i, new Entry("name", "City " + i));
+            }
+        });
+        writer.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertTrue(subscription.getLagEvents() > 0);
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        // the sequence counts the handler's own writes too
+        while (seen.size() < 1_000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1_000, seen.size());
+        assertEquals("City 999", seen.get(999));
+        assertEquals("city_999", keyStore.get("cities", "last_seen", new String[]{"name"}).getRows().get(0).getEntries().get(0).getValue());
+        assertNull(subscription.getFailure());
+        keyStore.close();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitLatch(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }